@@ -7,7 +7,10 @@ import com.pwr.zpi.conversation.VoiceTalking;
 import com.pwr.zpi.core.behaviours.CommonResources;
 import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.episodic.ConsolidatedSegment;
 import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledgeCache;
+import com.pwr.zpi.core.memory.episodic.EpisodicJournal;
 import com.pwr.zpi.core.memory.episodic.Observation;
 import com.pwr.zpi.core.memory.holons.HolonCollection;
 import com.pwr.zpi.core.memory.holons.HolonsIntercessor;
@@ -18,11 +21,14 @@ import com.pwr.zpi.core.memory.semantic.ObjectType;
 import com.pwr.zpi.exceptions.InvalidFormulaException;
 import com.pwr.zpi.exceptions.NotApplicableException;
 import com.pwr.zpi.exceptions.NotConsistentDKException;
+import com.pwr.zpi.io.Configuration;
 import com.pwr.zpi.io.DatabaseAO;
 import com.pwr.zpi.language.Formula;
+import com.pwr.zpi.language.GroundingStrategy;
 import com.pwr.zpi.core.behaviours.AnswerThread;
 import com.pwr.zpi.core.behaviours.UpdateThread;
 
+import java.nio.file.Path;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,6 +52,14 @@ public class Agent {
     private static DatabaseAO database;
     public static Collection<ObjectType> objectTypeCollection;
     private String label;
+    /**
+     * Strategy of grounding used in distributed knowledge built by this agent. If null, whole history is used.
+     */
+    private GroundingStrategy groundingStrategy;
+    /**
+     * Distributions of knowledge shared by all tasks of this agent (e.g. holons and grounding of formulas).
+     */
+    private final DistributedKnowledgeCache knowledgeCache = new DistributedKnowledgeCache(Configuration.DK_CACHE_SIZE);
     LifeCycle lifeCycle;
 
     private Agent(AgentBuilder builder) {
@@ -55,6 +69,7 @@ public class Agent {
         this.models = builder.getModels();
         database = builder.getDatabase();
         this.label=builder.getLabel();
+        this.groundingStrategy = builder.getGroundingStrategy();
     }
 
     public void startLifeCycle()
@@ -77,10 +92,39 @@ public class Agent {
         this.knowledgeBase = knowledgeBase;
     }
 
+    /**
+     * Returns the most recent published snapshot of knowledge base, which can be read without any locking while
+     * knowledge base is updated. If no snapshot was published, then knowledge base itself is returned.
+     *
+     * @return Read-only snapshot of knowledge base or knowledge base.
+     * @see #publishKnowledge()
+     */
+    public BPCollection getKnowledgeSnapshot() {
+        BPCollection snapshot = knowledgeBase.getPublishedSnapshot();
+        return snapshot != null ? snapshot : knowledgeBase;
+    }
+
+    /**
+     * Publishes snapshot of current state of knowledge base for readers. Snapshot isn't refreshed by single updates
+     * of knowledge base - it's published again once per cycle of update (see UpdateThread), so copying of memory
+     * doesn't follow each observation.
+     */
+    public void publishKnowledge() {
+        knowledgeBase.publishSnapshot();
+    }
+
     public IMCollection getModels() {
         return models;
     }
 
+    public GroundingStrategy getGroundingStrategy() {
+        return groundingStrategy;
+    }
+
+    public void setGroundingStrategy(GroundingStrategy groundingStrategy) {
+        this.groundingStrategy = groundingStrategy;
+    }
+
     public void setModels(IMCollection models) {
         this.models = models;
     }
@@ -115,7 +159,7 @@ public class Agent {
      */
     public DistributedKnowledge distributeKnowledge(Formula formula, int time) throws InvalidFormulaException {
         try {
-            return new DistributedKnowledge(this, formula, time);
+            return knowledgeCache.get(this, formula, time, false);
         } catch (NotConsistentDKException e) {
             e.printStackTrace();
             return null;
@@ -160,7 +204,8 @@ public class Agent {
      */
     public DistributedKnowledge distributeKnowledge(Formula formula) throws InvalidFormulaException {
         try {
-            return new DistributedKnowledge(this, formula);
+            BPCollection base = getKnowledgeSnapshot();
+            return knowledgeCache.get(this, base, formula, base.getTimestamp(), Configuration.DK_IS_COMPLEX, null);
         } catch (NotConsistentDKException e) {
             e.printStackTrace();
             return null;
@@ -181,7 +226,8 @@ public class Agent {
      */
     public DistributedKnowledge distributeKnowledge(Formula formula, int timestamp, boolean buildComplexDK) throws InvalidFormulaException {
         try {
-            return new DistributedKnowledge(this, formula, buildComplexDK);
+            BPCollection base = getKnowledgeSnapshot();
+            return knowledgeCache.get(this, base, formula, base.getTimestamp(), buildComplexDK, null);
         } catch (NotConsistentDKException e) {
             Logger.getAnonymousLogger().log(Level.WARNING, "Not able to distribute knowledge.", e);
             return null;
@@ -189,23 +235,34 @@ public class Agent {
     }
 
     public DistributedKnowledge distributeKnowledge(Formula formula, boolean buildComplexDK) throws InvalidFormulaException, NotConsistentDKException {
-        return new DistributedKnowledge(this, formula, true);
+        BPCollection base = getKnowledgeSnapshot();
+        return knowledgeCache.get(this, base, formula, base.getTimestamp(), true, null);
+    }
+
+    /**
+     * @return Cache of distributions of knowledge built by this agent.
+     */
+    public DistributedKnowledgeCache getKnowledgeCache() {
+        return knowledgeCache;
     }
 
 
     /**
      * This is method for realising one of fundamental task: registering task. Precisely, this method includes
-     * observation saved in agent database in program for processing.
+     * observation saved in agent database in program for processing. Observations are included in knowledge base
+     * as single batch.
      */
     public void discoverObservations(Collection<Observation> newObservations) {
         Logger.getAnonymousLogger().log(Level.INFO, "Discovering new observations ...");
 
         if (newObservations != null && !newObservations.isEmpty()) {
-            Logger.getAnonymousLogger().log(Level.FINE, "Processing " + newObservations.size() + " new observation(s):");
-            for (Observation obs : newObservations) {
-                Logger.getAnonymousLogger().log(Level.FINE, "\t" + obs);
-                registerObservation(obs);
+            Logger logger = Logger.getAnonymousLogger();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Processing " + newObservations.size() + " new observation(s):");
+                for (Observation obs : newObservations)
+                    logger.log(Level.FINE, "\t" + obs);
             }
+            knowledgeBase.includeNewObservations(newObservations, models.captureNewIMs(newObservations));
         }
 
     }
@@ -218,7 +275,6 @@ public class Agent {
     public void registerBaseProfile(BaseProfile newBp) {
         models.captureNewIM(newBp.getAffectedIMs());
         knowledgeBase.addToMemory(newBp);
-
     }
 
     /**
@@ -226,6 +282,28 @@ public class Agent {
      */
     public void updateMemory() {
         discoverObservations(database.fetchNewObservations());
+        syncJournal();
+    }
+
+    /**
+     * Flushes episodic journal of knowledge base (if any), writing new checkpoint when it's due.
+     */
+    public void syncJournal() {
+        EpisodicJournal journal = knowledgeBase.getJournal();
+        if (journal != null)
+            journal.sync();
+    }
+
+    /**
+     * Folds old base profiles from long-term memory into aggregated segments, if consolidation is enabled.
+     * @see BPCollection#consolidateLongTermMemory()
+     */
+    public void consolidateMemory() {
+        ConsolidatedSegment segment = knowledgeBase.consolidateLongTermMemory();
+        if (segment != null) {
+            Logger.getAnonymousLogger().log(Level.FINE, "Consolidated long-term memory: " + segment);
+            syncJournal();
+        }
     }
 
     /**
@@ -287,7 +365,9 @@ public class Agent {
         private HolonsIntercessor holonsIntercessor;
         private DatabaseAO database;
         private Contextualisation contextualisation;
+        private GroundingStrategy groundingStrategy;
         private String label=null;
+        private Path journalDirectory;
 
 
         public AgentBuilder() {
@@ -328,11 +408,33 @@ public class Agent {
             return this;
         }
 
+        public AgentBuilder groundingStrategy(GroundingStrategy groundingStrategy) {
+            this.groundingStrategy = groundingStrategy;
+            return this;
+        }
+
+        /**
+         * Makes agent record its episodic memory in journal kept in given directory. If directory contains checkpoint,
+         * knowledge base and individual models are restored from it (replacing given knowledge base), otherwise
+         * journal starts with content of given knowledge base.
+         */
+        public AgentBuilder journal(Path directory) {
+            this.journalDirectory = directory;
+            return this;
+        }
+
         /**
          * Method which creates
          * @return
          */
         public Agent build() {
+            if (journalDirectory != null) {
+                EpisodicJournal journal = EpisodicJournal.open(journalDirectory);
+                if (journal.hasCheckpoint()) {
+                    knowledgeBase = journal.recover();
+                    models.captureNewIM(journal.getIndividualModels());
+                } else knowledgeBase.setJournal(journal);
+            }
             return new Agent(this);
         }
 
@@ -359,6 +461,10 @@ public class Agent {
         public String getLabel() {
             return label;
         }
+
+        public GroundingStrategy getGroundingStrategy() {
+            return groundingStrategy;
+        }
     }
 
     /**
@@ -429,6 +535,7 @@ public class Agent {
             talkingThread = new VoiceTalking(listeningThread);
             talkingThread.start();
             commonResources = new CommonResources();
+            publishKnowledge();
             updateThread = new Thread(new UpdateThread(Agent.this, commonResources));
             if(thread==null)
             {
@@ -49,8 +49,8 @@ public class AnswerThread implements Runnable {
     /**
      * Method tries to process asked question, starting from retrieving formula if it is possible,
      * then use it to perform grounding of the formula and finally generating answer to given question based on grounded
-     * knowledge. Task of grounding formulas cannot be performed in two cases: if similar formula is currently being
-     * processed or if memory is being updated
+     * knowledge. Task of grounding formulas cannot be performed if similar formula is currently being processed.
+     * Grounding reads published snapshot of agent's knowledge, so it doesn't wait for update of memory.
      */
     @Override
     public void run() {
@@ -61,7 +61,6 @@ public class AnswerThread implements Runnable {
             formula = question1.getFormula();
             statics2.addFormula(formula);
             Map<Formula, ModalOperator> map;
-            statics2.acquire(false);
             map = Grounder.performFormulaGrounding(agent, formula);
             releaseResources(formula);
             if(formula instanceof ComplexFormula)
@@ -87,7 +86,6 @@ public class AnswerThread implements Runnable {
 
     private void releaseResources(Formula formula)
     {
-        statics2.release(false);
         statics2.removeFormula(formula);
     }
 }
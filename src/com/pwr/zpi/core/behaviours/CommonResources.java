@@ -10,7 +10,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Class holding common resources for threads, like formulas being processed or semaphore
+ * Class holding common resources for threads, like formulas being processed. Access to agent's knowledge doesn't
+ * need any synchronization, because threads answering questions read published snapshots of knowledge base.
  */
 public class CommonResources {
 
@@ -22,55 +23,6 @@ public class CommonResources {
      * Object used in synchronization
      */
     private static final Object foo = new Object();
-    /**
-     * Object used in synchronization
-     */
-    private static final Object foo2 = new Object();
-
-    /**
-     * Semaphore that controls co-existence of AnswerThread and UpdateThread
-     */
-    private static int semaphore = 0;
-
-    /**
-     * method which blocks access for specific threads
-     * @param isMemoryUpdateThread  true if blocking thread is the memory update thread
-     */
-    void acquire(boolean isMemoryUpdateThread)
-    {
-        synchronized (foo2) {
-            if (isMemoryUpdateThread) {
-                while (semaphore != 0)
-                    try {
-                        foo2.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                semaphore--;
-            } else {
-                while (semaphore < 0)
-                    try {
-                        foo2.wait();
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                semaphore++;
-            }
-        }
-    }
-    /**
-     * method releases blockage and allows other threads to access resources
-     * @param isMemoryUpdateThread  true if releasing thread is the memory update one
-     */
-    void release(boolean isMemoryUpdateThread)
-    {
-        synchronized (foo2) {
-            if (isMemoryUpdateThread)
-                semaphore++;
-            else semaphore--;
-            foo2.notifyAll();
-        }
-    }
 
     /**
      * Adds next formula to formulasInProcessing
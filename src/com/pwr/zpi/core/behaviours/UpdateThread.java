@@ -3,7 +3,9 @@ package com.pwr.zpi.core.behaviours;
 import com.pwr.zpi.core.Agent;
 
 /**
- * Thread that realises update of agent's memory by getting new observations from database.
+ * Thread that realises update of agent's memory by getting new observations from database. After update, old part
+ * of long-term memory is consolidated and new snapshot of knowledge is published, so threads answering questions
+ * never wait for update.
  *
  * @author Mateusz Gawlowski
  */
@@ -20,8 +22,8 @@ public class UpdateThread implements Runnable {
 
     @Override
     public void run() {
-        commonResources.acquire(true);
         agent.updateMemory();
-        commonResources.release(true);
+        agent.consolidateMemory();
+        agent.publishKnowledge();
     }
 }
@@ -4,12 +4,14 @@
 package com.pwr.zpi.core.memory.episodic;
 
 import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.core.memory.semantic.identifiers.Identifier;
 import com.pwr.zpi.io.Configuration;
 import com.pwr.zpi.language.State;
 import com.pwr.zpi.language.Trait;
 import com.pwr.zpi.language.Formula;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -20,6 +22,13 @@ import java.util.stream.Collectors;
  * and long-term memory(obszar przedswiadomy/PT) and provides complete set of operations on stored base profiles.
  * Contains knowledge collected till moment in time described by timestamp. Timestamp is updated according to last recent
  * timestamp specified among entire base profiles.
+ * If sealing is enabled (SEAL_BASE_PROFILES or setSealing(boolean)), base profiles are sealed when timestamp of this
+ * collection advances past their timestamps, so only base profiles related with current timestamp can receive new
+ * observations.
+ * Collection can publish read-only snapshots of its state (see publishSnapshot()), which can be read by other threads
+ * without any locking while the collection is modified by single writer.
+ * Modifications of collection can be recorded in episodic journal (see setJournal(EpisodicJournal)), so collection
+ * can be restored after restart.
  * All operations should be //todo
  *
  * @author Grzegorz Kostkowski
@@ -33,6 +42,12 @@ public class BPCollection {
      */
     private static final boolean OVERRIDE_IF_EXISTS = Configuration.OVERRIDE_IF_EXISTS;
     private static final int MAX_WM_CAPACITY = Configuration.MAX_WM_CAPACITY;
+    private static final boolean APPROXIMATE_GROUNDING = Configuration.APPROXIMATE_GROUNDING;
+    private static final boolean MAPPED_LM = Configuration.MAPPED_LM;
+    private static final boolean COMPACT_BASE_PROFILES = Configuration.COMPACT_BASE_PROFILES;
+    private static final int LM_CONSOLIDATION_HORIZON = Configuration.LM_CONSOLIDATION_HORIZON;
+    private static final int LM_CONSOLIDATION_BATCH = Configuration.LM_CONSOLIDATION_BATCH;
+    private static final AtomicLong NEXT_ID = new AtomicLong();
 
 
 
@@ -45,28 +60,94 @@ public class BPCollection {
         WM, LM;
     }
     /**
-     * Map of BaseProfile representing working memory - each for successive moments in time - from beginning till
-     * current timestamp set for this BPCollection.
+     * Base profiles representing working memory - each for successive moments in time - from beginning till
+     * current timestamp set for this BPCollection. Ordered by timestamp.
      */
-    protected Set<BaseProfile> workingMemory;
+    protected TimestampedMemory workingMemory;
 
     /**
-     * Map of BaseProfile representing long-term memory - each for successive moments in time - from beginning till
-     * current timestamp set for this BPCollection.
+     * Base profiles representing long-term memory - each for successive moments in time - from beginning till
+     * current timestamp set for this BPCollection. Ordered by timestamp. If MAPPED_LM is set then long-term memory
+     * is kept in memory-mapped file and contains read-only copies of added base profiles.
      */
-    protected Set<BaseProfile> longTermMemory;
+    protected TimestampedMemory longTermMemory;
     private int timestamp;
+    /**
+     * Identifier of this collection, which is a part of identity of base profiles sealed by this collection.
+     */
+    private final long id = NEXT_ID.getAndIncrement();
+    /**
+     * Number of base profiles sealed by this collection, which gives each of them distinct sequence number.
+     */
+    private long sealedCount;
+    /**
+     * Determines if base profiles are sealed once timestamp of this collection advances past their timestamps.
+     */
+    private volatile boolean sealing = Configuration.SEAL_BASE_PROFILES;
+    /**
+     * Bitmap index of base profiles from both memories. It is kept in sync with memory containers by all operations
+     * of this class and follows modifications of stored base profiles.
+     */
+    private final GroundingIndex groundingIndex;
+    /**
+     * Cardinalities of grounding sets for all stored base profiles, maintained in the same way as groundingIndex.
+     */
+    private final GroundingCounters groundingCounters;
+    /**
+     * Timestamps of stored base profiles per observed individual model, maintained in the same way as groundingIndex.
+     */
+    private final ObservationIndex observationIndex;
+    /**
+     * Samples of stored base profiles used by approximate grounding. Maintained only when approximate grounding is
+     * enabled. Snapshot copies samples of its source once its base profiles are indexed.
+     */
+    private GroundingSampler groundingSampler;
+    /**
+     * Sliding windows over stored base profiles, created on demand for particular sizes of window.
+     */
+    private final Map<Integer, GroundingWindow> groundingWindows = new HashMap<>();
+    /**
+     * Aggregated counts of base profiles folded from long-term memory, ordered by time.
+     */
+    private final List<ConsolidatedSegment> consolidatedSegments = new ArrayList<>();
+    /**
+     * Policy which selects base profile shifted to long-term memory when working memory is full.
+     */
+    private volatile EvictionPolicy evictionPolicy = EvictionPolicy.forName(Configuration.WM_EVICTION_POLICY);
+    /**
+     * Collection which published this snapshot, null if this collection isn't a snapshot.
+     */
+    private final BPCollection source;
+    /**
+     * Version of source at the moment of creating this snapshot.
+     */
+    private final long snapshotVersion;
+    /**
+     * The most recent snapshot published by this collection.
+     */
+    private volatile BPCollection published;
+    /**
+     * Journal which records modifications of this collection, null if they aren't recorded.
+     */
+    private EpisodicJournal journal;
+
     /**
      * Simple constructor to initialize empty BPCollection with initials values. Sets timestamp to default value.
      */
     public BPCollection() {
-        this.workingMemory = new HashSet<>();
-        this.longTermMemory = new HashSet<>();
+        this.workingMemory = new TimestampedMemory();
+        this.longTermMemory = newLongTermMemory(Collections.emptySet());
         this.timestamp = INIT_TIMESTAMP;
+        this.source = null;
+        this.snapshotVersion = 0;
+        this.groundingIndex = new GroundingIndex();
+        this.groundingCounters = new GroundingCounters();
+        this.observationIndex = new ObservationIndex();
+        this.groundingSampler = newGroundingSampler();
     }
 
     /**
-     * Constructor for complete initialization with data given as parameters.
+     * Constructor for complete initialization with data given as parameters. Given sets are copied.
      *
      * @param workingMemory
      * @param longTermMemory
@@ -74,9 +155,204 @@ public class BPCollection {
     public BPCollection(Set<BaseProfile> workingMemory, Set<BaseProfile> longTermMemory) {
         if (workingMemory == null || longTermMemory == null)
             throw new NullPointerException("One of parameters is null.");
-        this.workingMemory = workingMemory;
-        this.longTermMemory = longTermMemory;
+        this.workingMemory = new TimestampedMemory(workingMemory);
+        this.longTermMemory = newLongTermMemory(longTermMemory);
         this.timestamp = spotLastTimestamp();
+        this.source = null;
+        this.snapshotVersion = 0;
+        this.groundingIndex = new GroundingIndex();
+        this.groundingCounters = new GroundingCounters();
+        this.observationIndex = new ObservationIndex();
+        this.groundingSampler = newGroundingSampler();
+        indexMemory(MemoryType.WM);
+        indexMemory(MemoryType.LM);
+        sealClosed(getMemoryContainer(MemoryType.WM));
+        sealClosed(getMemoryContainer(MemoryType.LM));
+    }
+
+    /**
+     * Creates read-only snapshot of given collection. Sealed base profiles (and base profiles of mapped memory) are
+     * shared with source, other ones are copied and sealed, so snapshot doesn't change when source is modified.
+     * If previous snapshot of source is given, new snapshot shares memories, indexes and copied base profiles with it:
+     * only base profiles related with given changed timestamps are copied and indexed again.
+     *
+     * @param source
+     * @param previous Previous snapshot of source or null if snapshot should be built from scratch.
+     * @param changed  Timestamps changed in source since previous snapshot was created.
+     */
+    private BPCollection(BPCollection source, BPCollection previous, Set<Integer> changed) {
+        this.source = source;
+        this.snapshotVersion = source.getVersion();
+        this.timestamp = source.timestamp;
+        this.evictionPolicy = source.evictionPolicy.getType().create();
+        Set<IndividualModel> affected = new HashSet<>();
+        if (previous == null) {
+            this.workingMemory = new TimestampedMemory();
+            this.longTermMemory = new TimestampedMemory();
+            this.groundingIndex = new GroundingIndex();
+            this.groundingCounters = new GroundingCounters();
+            this.observationIndex = new ObservationIndex();
+            Map<BaseProfile, BaseProfile> copies = new IdentityHashMap<>();
+            for (MemoryType memType : MemoryType.values())
+                for (BaseProfile bp : source.getMemoryContainer(memType))
+                    getMemoryContainer(memType).add(copies.computeIfAbsent(bp, this::freeze));
+            indexMemory(MemoryType.WM);
+            indexMemory(MemoryType.LM);
+            for (ConsolidatedSegment segment : source.consolidatedSegments)
+                groundingCounters.addSegment(segment);
+        } else {
+            this.workingMemory = new TimestampedMemory(previous.workingMemory);
+            this.longTermMemory = new TimestampedMemory(previous.longTermMemory);
+            this.groundingIndex = new GroundingIndex(previous.groundingIndex);
+            this.groundingCounters = new GroundingCounters(previous.groundingCounters);
+            this.observationIndex = new ObservationIndex(previous.observationIndex);
+            for (int ts : changed)
+                updateSnapshot(ts, affected);
+            Set<ConsolidatedSegment> present = Collections.newSetFromMap(new IdentityHashMap<>());
+            present.addAll(source.consolidatedSegments);
+            for (ConsolidatedSegment segment : previous.consolidatedSegments)
+                if (!present.remove(segment))
+                    groundingCounters.removeSegment(segment);
+            for (ConsolidatedSegment segment : source.consolidatedSegments)
+                if (present.contains(segment))
+                    groundingCounters.addSegment(segment);
+        }
+        consolidatedSegments.addAll(source.consolidatedSegments);
+        if (source.groundingSampler != null)
+            this.groundingSampler = new GroundingSampler(source.groundingSampler,
+                    previous != null ? previous.groundingSampler : null, affected, this::findFrozen);
+    }
+
+    /**
+     * Replaces base profiles of this snapshot related with given timestamp with frozen base profiles of source.
+     * New base profiles are indexed before old ones are removed from index, so base profiles which stay in snapshot
+     * (e.g. shifted between memories) keep their ordinals.
+     *
+     * @param timestamp Changed timestamp.
+     * @param affected  Set which collects individual models mentioned by replaced base profiles.
+     */
+    private void updateSnapshot(int timestamp, Set<IndividualModel> affected) {
+        Map<MemoryType, List<BaseProfile>> previous = new EnumMap<>(MemoryType.class);
+        Map<MemoryType, List<BaseProfile>> current = new EnumMap<>(MemoryType.class);
+        List<BaseProfile> candidates = new ArrayList<>();
+        for (MemoryType memType : MemoryType.values()) {
+            previous.put(memType, new ArrayList<>(getMemoryContainer(memType).getAll(timestamp)));
+            candidates.addAll(previous.get(memType));
+        }
+        for (MemoryType memType : MemoryType.values()) {
+            List<BaseProfile> frozen = new ArrayList<>();
+            for (BaseProfile bp : source.getMemoryContainer(memType).getAll(timestamp))
+                frozen.add(freeze(bp, candidates));
+            current.put(memType, frozen);
+        }
+        for (MemoryType memType : MemoryType.values())
+            for (BaseProfile bp : current.get(memType))
+                if (!containsIdentical(previous.get(memType), bp)) {
+                    indexBaseProfile(bp, memType);
+                    affected.addAll(bp.getAffectedIMs(State.values()));
+                }
+        for (MemoryType memType : MemoryType.values())
+            for (BaseProfile bp : previous.get(memType))
+                if (!containsIdentical(current.get(memType), bp)) {
+                    getMemoryContainer(memType).remove(bp);
+                    unindexBaseProfile(bp, memType);
+                    affected.addAll(bp.getAffectedIMs(State.values()));
+                }
+        for (MemoryType memType : MemoryType.values())
+            for (BaseProfile bp : current.get(memType))
+                if (!containsIdentical(previous.get(memType), bp))
+                    getMemoryContainer(memType).add(bp);
+    }
+
+    private static boolean containsIdentical(List<BaseProfile> bps, BaseProfile bp) {
+        for (BaseProfile candidate : bps)
+            if (candidate == bp)
+                return true;
+        return false;
+    }
+
+    private BaseProfile freeze(BaseProfile bp) {
+        if (bp.isSealed() || bp instanceof MappedBaseProfile)
+            return bp;
+        BaseProfile res = reopen(bp);
+        seal(res);
+        return res;
+    }
+
+    /**
+     * Freezes given base profile of source, reusing one of given frozen base profiles if it's equal to it.
+     */
+    private BaseProfile freeze(BaseProfile bp, List<BaseProfile> frozen) {
+        if (!bp.isSealed() && !(bp instanceof MappedBaseProfile))
+            for (BaseProfile candidate : frozen)
+                if (candidate.equals(bp))
+                    return candidate;
+        return freeze(bp);
+    }
+
+    /**
+     * Returns base profile of this snapshot which was made of given base profile of source.
+     *
+     * @return Frozen base profile or null if there is no such.
+     */
+    private BaseProfile findFrozen(BaseProfile bp) {
+        for (MemoryType memType : MemoryType.values())
+            for (BaseProfile candidate : getMemoryContainer(memType).getAll(bp.getTimestamp()))
+                if (candidate == bp || !bp.isSealed() && !(bp instanceof MappedBaseProfile) && candidate.equals(bp))
+                    return candidate;
+        return null;
+    }
+
+    /**
+     * Creates snapshot of current state of this collection and publishes it, so it's returned by
+     * getPublishedSnapshot() until next publication. If nothing has changed since last publication, then previous
+     * snapshot is returned. Snapshot is read-only; it's reclaimed by garbage collector when no reader refers to it.
+     * New snapshot shares structure with previous one, so publishing costs time proportional to number of base
+     * profiles changed since previous publication, not to size of collection.
+     *
+     * @return Published snapshot.
+     * @throws IllegalStateException If this collection is a snapshot.
+     */
+    public BPCollection publishSnapshot() {
+        checkWritable();
+        BPCollection res = published;
+        if (res == null || res.snapshotVersion != getVersion() || res.timestamp != timestamp) {
+            trackChanges();
+            Set<Integer> changed = res != null ? getChangedTimestamps(res.snapshotVersion) : null;
+            res = new BPCollection(this, changed != null ? res : null, changed);
+            published = res;
+        }
+        return res;
+    }
+
+    private static GroundingSampler newGroundingSampler() {
+        return APPROXIMATE_GROUNDING ? new GroundingSampler(GroundingSampler.getRequiredSampleSize(
+                Configuration.APPROXIMATION_ERROR, Configuration.APPROXIMATION_CONFIDENCE)) : null;
+    }
+
+    /**
+     * @return The most recent snapshot published by this collection or null if no snapshot was published.
+     */
+    public BPCollection getPublishedSnapshot() {
+        return published;
+    }
+
+    public boolean isSnapshot() {
+        return source != null;
+    }
+
+    /**
+     * @throws IllegalStateException If this collection is a read-only snapshot.
+     */
+    private void checkWritable() {
+        if (source != null)
+            throw new IllegalStateException("Snapshot of collection is read-only.");
+    }
+
+    private static TimestampedMemory newLongTermMemory(Set<BaseProfile> bps) {
+        TimestampedMemory res = MAPPED_LM ? new MappedMemory() : new TimestampedMemory();
+        res.addAll(bps);
+        return res;
     }
 
     /**
@@ -85,27 +361,117 @@ public class BPCollection {
      * @return
      */
     private int spotLastTimestamp() {
-        Set<BaseProfile> storedBPs = getBaseProfiles(Integer.MAX_VALUE);
         int mostRecent = INIT_TIMESTAMP;
-        if (storedBPs != null && !storedBPs.isEmpty())
-            mostRecent = storedBPs.stream().mapToInt(BaseProfile::getTimestamp).max().getAsInt();
+        boolean isEmpty = true;
+        for (MemoryType memType : MemoryType.values()) {
+            BaseProfile latest = getMemoryContainer(memType).getLatest();
+            if (latest != null) {
+                mostRecent = isEmpty ? latest.getTimestamp() : Math.max(mostRecent, latest.getTimestamp());
+                isEmpty = false;
+            }
+        }
         return mostRecent;
     }
 
     /**
-     * By default, inserts to bp located in wm
+     * By default, inserts to bp located in wm. New base profile is compact if COMPACT_BASE_PROFILES is set.
+     * If related base profile is already sealed, then it's replaced with its extended copy.
      * @param newObservation
      */
     public void includeNewObservation(Observation newObservation, IndividualModel individualModel) {
+        checkWritable();
         int newTimestamp = newObservation.getTimestamp();
-        BaseProfile alreadyExisting = null;
-        if ((alreadyExisting=getBaseProfile(newTimestamp, MemoryType.WM)) == null) {
-            alreadyExisting = new BaseProfile(newObservation.getTimestamp());
-            addToMemory(alreadyExisting);
-        }
+        BaseProfile alreadyExisting = getBaseProfile(newTimestamp, MemoryType.WM);
+        boolean isStored = alreadyExisting != null && !alreadyExisting.isSealed();
+        if (!isStored)
+            alreadyExisting = alreadyExisting == null ? newBaseProfile(newTimestamp) : reopen(alreadyExisting);
 
         for (Trait trait: newObservation.getValuedTraits().keySet())
             alreadyExisting.addObservationByValue(individualModel, trait, newObservation.getValuedTraits().get(trait));
+        if (!isStored)
+            addToMemory(alreadyExisting);
+    }
+
+    /**
+     * Batch version of includeNewObservation(Observation, IndividualModel). Observations are grouped by timestamp, so
+     * each affected base profile of working memory is created (or extended) once and indexed once. Timestamp of
+     * collection is updated once and working memory is checked for overflow once, after all base profiles are stored.
+     * Content of memory is the same as after including observations one by one in ascending order of timestamps.
+     *
+     * @param newObservations Observations to include.
+     * @param individualModels Individual models related with identifiers of given observations.
+     */
+    public void includeNewObservations(Collection<Observation> newObservations,
+                                       Map<Identifier, IndividualModel> individualModels) {
+        if (newObservations == null || individualModels == null)
+            throw new NullPointerException("One or more parameters are nulls.");
+        checkWritable();
+        if (newObservations.isEmpty())
+            return;
+        Map<Integer, List<Observation>> byTimestamp = new TreeMap<>();
+        for (Observation obs : newObservations)
+            byTimestamp.computeIfAbsent(obs.getTimestamp(), t -> new ArrayList<>()).add(obs);
+
+        List<BaseProfile> extended = new ArrayList<>(byTimestamp.size());
+        for (Map.Entry<Integer, List<Observation>> entry : byTimestamp.entrySet()) {
+            BaseProfile alreadyExisting = getBaseProfile(entry.getKey(), MemoryType.WM);
+            BaseProfile target;
+            if (alreadyExisting == null)
+                target = newBaseProfile(entry.getKey());
+            else if (alreadyExisting.isSealed())
+                target = reopen(alreadyExisting);
+            else {
+                // detached for a moment, so observers aren't notified about each observation
+                workingMemory.remove(alreadyExisting);
+                unindexBaseProfile(alreadyExisting, MemoryType.WM);
+                target = alreadyExisting;
+            }
+            for (Observation obs : entry.getValue()) {
+                IndividualModel im = individualModels.get(obs.getIdentifier());
+                if (im == null)
+                    throw new IllegalStateException("Individual model for " + obs.getIdentifier() + " not specified.");
+                for (Map.Entry<Trait, Boolean> valuedTrait : obs.getValuedTraits().entrySet())
+                    target.addObservationByValue(im, valuedTrait.getKey(), valuedTrait.getValue());
+            }
+            extended.add(target);
+        }
+
+        List<BaseProfile> stored = new ArrayList<>(extended.size());
+        for (BaseProfile bp : extended) {
+            BaseProfile storedBP = store(MemoryType.WM, bp);
+            if (journal != null)
+                journal.profileStored(MemoryType.WM, storedBP);
+            stored.add(storedBP);
+        }
+        int previousTimestamp = timestamp;
+        if (updateTimestamp(extended.toArray(new BaseProfile[extended.size()])))
+            sealRange(previousTimestamp);
+        sealClosed(stored);
+        while (workingMemory.size() > MAX_WM_CAPACITY) {
+            BaseProfile victim = evictionPolicy.evict(workingMemory);
+            if (victim == null)
+                break;
+            if (workingMemory.remove(victim))
+                unindexBaseProfile(victim, MemoryType.WM);
+            if (journal != null)
+                journal.profileShifted(MemoryType.WM, MemoryType.LM, victim.getTimestamp());
+            sealClosed(Collections.singleton(store(MemoryType.LM, victim)));
+        }
+    }
+
+    static BaseProfile newBaseProfile(int timestamp) {
+        return COMPACT_BASE_PROFILES ? new CompactBaseProfile(timestamp) : new BaseProfile(timestamp);
+    }
+
+    /**
+     * @return New modifiable base profile with content of given one.
+     */
+    private static BaseProfile reopen(BaseProfile sealed) {
+        BaseProfile res = newBaseProfile(sealed.getTimestamp());
+        for (State state : State.values())
+            for (Map.Entry<Trait, Set<IndividualModel>> entry : sealed.getContainer(state).entrySet())
+                res.addObservations(state, new HashSet<>(entry.getValue()), entry.getKey());
+        return res;
     }
 
 
@@ -114,29 +480,61 @@ public class BPCollection {
      * If there is already specified base profile with same timestamp, then two actions are possible:
      * -override old one (default action).
      * -update old one with observations in new one.
+     * Note: if long-term memory is mapped, it stores read-only copy of given base profile.
      *
      * @param newBPs
      * @param type
      * @param overrideIfExisting
      */
     public void addToMemory(MemoryType type, boolean overrideIfExisting, BaseProfile ... newBPs) {
-        for (BaseProfile newBP : newBPs) {
-            Set<BaseProfile> affectedMemory = getMemoryContainer(type);
-            BaseProfile alreadyExisted = getBaseProfile(newBP.getTimestamp());
-            if (alreadyExisted != null) {
-                /*if (!overrideIfExisting)
-                    BaseProfile.joinBaseProfiles(newBP, alreadyExisted);*/
-                affectedMemory.remove(alreadyExisted);
-            }
-            if (workingMemory.size() == MAX_WM_CAPACITY)
-                shiftBaseProfile(MemoryType.WM, MemoryType.LM, getOldestBP(MemoryType.WM));
-            affectedMemory.add(newBP);
-            updateTimestamp(newBP);
+        checkWritable();
+        for (BaseProfile newBP : newBPs)
+            add(type, newBP, true);
+    }
+
+    /**
+     * Adds single base profile, shifting base profile from working memory to long-term memory if it's full.
+     *
+     * @param recorded If true, stored base profile is recorded in journal.
+     */
+    private void add(MemoryType type, BaseProfile newBP, boolean recorded) {
+        TimestampedMemory affectedMemory = getMemoryContainer(type);
+        BaseProfile alreadyExisted = affectedMemory.get(newBP.getTimestamp());
+        if (alreadyExisted != null) {
+            /*if (!overrideIfExisting)
+                BaseProfile.joinBaseProfiles(newBP, alreadyExisted);*/
+            if (affectedMemory.remove(alreadyExisted))
+                unindexBaseProfile(alreadyExisted, type);
+        }
+        if (workingMemory.size() == MAX_WM_CAPACITY) {
+            BaseProfile victim = evictionPolicy.evict(workingMemory);
+            if (victim != null)
+                shiftBaseProfile(MemoryType.WM, MemoryType.LM, victim);
         }
+        BaseProfile stored = store(type, newBP);
+        if (recorded && journal != null)
+            journal.profileStored(type, stored);
+        int previousTimestamp = timestamp;
+        if (updateTimestamp(stored))
+            sealRange(previousTimestamp);
+        else sealClosed(Collections.singleton(stored));
     }
 
-    private BaseProfile getOldestBP(MemoryType memoryType) {
-        return getMemoryContainer(memoryType).stream().min(Comparator.comparing(BaseProfile::getTimestamp)).get();
+    /**
+     * Adds given base profile to specified memory (replacing base profile with the same timestamp) and indexes it,
+     * without checking capacity of working memory.
+     *
+     * @return Stored base profile (read-only copy if memory is mapped).
+     */
+    private BaseProfile store(MemoryType type, BaseProfile newBP) {
+        TimestampedMemory affectedMemory = getMemoryContainer(type);
+        BaseProfile alreadyExisted = affectedMemory.get(newBP.getTimestamp());
+        if (alreadyExisted != null && affectedMemory.remove(alreadyExisted))
+            unindexBaseProfile(alreadyExisted, type);
+        affectedMemory.add(newBP);
+        BaseProfile stored = affectedMemory.get(newBP.getTimestamp());
+        indexBaseProfile(stored, type);
+        return stored;
     }
 
     /**
@@ -168,10 +566,16 @@ public class BPCollection {
     public boolean deleteFromMemory(MemoryType type, List<BaseProfile> oldBPs) {
         if (type == null || oldBPs == null)
             throw new NullPointerException("One or more parameters are nulls.");
+        checkWritable();
         boolean res = false;
         Set<BaseProfile> affectedMemory = getMemoryContainer(type);
         for (BaseProfile bp : oldBPs)
-            res = affectedMemory.remove(bp) || res;
+            if (affectedMemory.remove(bp)) {
+                unindexBaseProfile(bp, type);
+                if (journal != null)
+                    journal.profileRemoved(type, bp.getTimestamp());
+                res = true;
+            }
         return res;
     }
 
@@ -241,9 +645,21 @@ public class BPCollection {
             throw new IllegalStateException("Not valid timestamp.");
         if (memType == null)
             throw new NullPointerException("Memory type not specified.");
-        Set<BaseProfile> affectedMemory = getMemoryContainer(memType);
-        Optional<BaseProfile> potentialRes = affectedMemory.stream().filter(bp -> bp.getTimestamp() == timestamp).findAny();
-        return potentialRes.isPresent() ? potentialRes.get() : null;
+        return getMemoryContainer(memType).get(timestamp);
+    }
+
+    /**
+     * Returns the most recent base profile from pointed memory, related with moment in time not later than given
+     * timestamp.
+     *
+     * @param endTimestamp
+     * @param memType      Specifies type of memory.
+     * @return Base profile or null if there is no such.
+     */
+    public BaseProfile getLatestBaseProfile(int endTimestamp, MemoryType memType) {
+        if (memType == null)
+            throw new NullPointerException("Memory type not specified.");
+        return getMemoryContainer(memType).getLatest(endTimestamp);
     }
 
 
@@ -290,6 +706,7 @@ public class BPCollection {
     /**
      * Returns set of base profiles which are associated with moment in time from range [beginning, given endTimestamp],
      * from specified memory.
+     * Note: returned set is read-only view backed by memory, so it reflects later changes of memory.
      *
      * @param endTimestamp
      * @param memType
@@ -299,21 +716,27 @@ public class BPCollection {
     public Set<BaseProfile> getBaseProfiles(int endTimestamp, MemoryType memType) throws IllegalStateException {
         if (endTimestamp < 0)
             throw new IllegalStateException("Incorrect endTimestamp.");
-        Set<BaseProfile> affectedMemory = getMemoryContainer(memType);
-        return affectedMemory.stream().filter(bp -> bp.timestamp <= endTimestamp).collect(Collectors.toSet());
+        return getMemoryContainer(memType).headSet(endTimestamp);
     }
 
     /**
      * Shifts given BaseProfile from source memory to destination memory.
      * Note: adding to destination will be performed even if given base profile is wasn't present in source to
      * keep state after operation consistent.
+     * Base profile is indexed in destination memory before it's removed from index of source memory, so it stays
+     * indexed (and counted) all the time and keeps its ordinal in grounding index.
      *
      * @param toMove
      */
     void shiftBaseProfile(MemoryType src, MemoryType dest, BaseProfile toMove) {
         if (!src.equals(dest)) {
-            getMemoryContainer(src).remove(toMove);
-            addToMemory(dest, true, toMove);
+            checkWritable();
+            boolean removed = getMemoryContainer(src).remove(toMove);
+            if (journal != null)
+                journal.profileShifted(src, dest, toMove.getTimestamp());
+            add(dest, toMove, false);
+            if (removed)
+                unindexBaseProfile(toMove, src);
         }
     }
 
@@ -326,7 +749,7 @@ public class BPCollection {
     public void duplicateBaseProfile(MemoryType src, MemoryType dest, BaseProfile toDuplicate) {
         if (!src.equals(dest))
             addToMemory(dest, true, toDuplicate);
-        if (!new ArrayList<>(getMemoryContainer(src)).contains(toDuplicate))
+        if (!getMemoryContainer(src).contains(toDuplicate))
             throw new IllegalStateException("Memory specified as source doesn't contain given base profile.");
     }
 
@@ -337,10 +760,12 @@ public class BPCollection {
      * @return
      */
     public Set<BaseProfile> determineIncludingMemory(BaseProfile bp) {
+        if (bp == null)
+            throw new NullPointerException("Base profile not specified.");
         Set<BaseProfile> res = null;
-        if (new ArrayList<>(workingMemory).contains(bp))
+        if (workingMemory.contains(bp))
             res = workingMemory;
-        else if (new ArrayList<>(longTermMemory).contains(bp))
+        else if (longTermMemory.contains(bp))
             res = longTermMemory;
         return res;
     }
@@ -350,7 +775,7 @@ public class BPCollection {
      * @param type
      * @return
      */
-    public Set<BaseProfile> getMemoryContainer(MemoryType type) {
+    public TimestampedMemory getMemoryContainer(MemoryType type) {
         switch (type) {
             case LM:
                 return longTermMemory;
@@ -392,28 +817,36 @@ public class BPCollection {
     }
 
     public double getMayhapsNumber(int endTimestamp,Formula formula,int i){
-        Set<BaseProfile> out = new HashSet<>();
-        Set<BaseProfile> observations = getBaseProfiles(endTimestamp, MemoryType.LM);
-        Set<BaseProfile> observations2 = getBaseProfiles(endTimestamp, MemoryType.WM);
-        observations.addAll(observations2);
+        Set<BaseProfile> observations = getBaseProfiles(endTimestamp);
         double suma = 0;
         for (BaseProfile bp : observations) {
             if(bp.checkIfObserved(formula.getModel(), formula.getTraits().get(i), State.MAYHAPS)){
                 suma++;
             }
         }
+        double size = observations.size();
+        for (ConsolidatedSegment segment : getConsolidatedSegments(endTimestamp)) {
+            suma += segment.getCount(formula.getModel(), formula.getTraits().get(i), State.MAYHAPS);
+            size += segment.size();
+        }
 
-        Logger.getAnonymousLogger().log(Level.FINEST, "Suma " +suma + " obser " + observations.size() + " / "  + suma/(observations.size()) );
+        Logger.getAnonymousLogger().log(Level.FINEST, "Suma " +suma + " obser " + size + " / "  + suma/size );
         if(suma>0){
-        return suma/observations.size();}
+        return suma/size;}
         else return 0.0;
     }
 
+    /**
+     * Returns number of base profiles related with moments in time till given timestamp, including base profiles
+     * folded into consolidated segments.
+     *
+     * @throws IllegalStateException When given timestamp falls inside consolidated segment.
+     */
     public double getCompleteSize(int endTimestamp) {
-        Set<BaseProfile> observations = getBaseProfiles(endTimestamp, MemoryType.LM);
-        Set<BaseProfile> observations2 = getBaseProfiles(endTimestamp, MemoryType.WM);
-        observations.addAll(observations2);
-        return observations.size();
+        int res = getBaseProfiles(endTimestamp).size();
+        for (ConsolidatedSegment segment : getConsolidatedSegments(endTimestamp))
+            res += segment.size();
+        return res;
     }
     public Set<IndividualModel> getIMsByTraitState(Trait trait, State state, int endTimestamp) {
         return getIMsByTraitState(trait, state, endTimestamp, MemoryType.WM, MemoryType.LM);
@@ -431,15 +864,564 @@ public class BPCollection {
     }
 
     public void setTimestamp(int timestamp) {
+        checkWritable();
+        int previousTimestamp = this.timestamp;
         this.timestamp = timestamp;
+        if (timestamp > previousTimestamp)
+            sealRange(previousTimestamp);
+        if (journal != null)
+            journal.timestampSet(timestamp);
+    }
+
+    /**
+     * @return Identifier of this collection, unique within virtual machine.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Seals given base profiles related with timestamps earlier than current timestamp.
+     */
+    private void sealClosed(Collection<BaseProfile> bps) {
+        if (sealing)
+            for (BaseProfile bp : bps)
+                if (bp.getTimestamp() < timestamp)
+                    seal(bp);
+    }
+
+    private void seal(BaseProfile bp) {
+        if (!bp.isSealed())
+            bp.seal(id, ++sealedCount);
+    }
+
+    /**
+     * Seals base profiles from both memories which were closed by advancing timestamp from given one.
+     */
+    private void sealRange(int previousTimestamp) {
+        for (MemoryType memType : MemoryType.values())
+            sealClosed(getMemoryContainer(memType).subSet(previousTimestamp, timestamp - 1));
     }
 
     public void setWorkingMemory(Set<BaseProfile> workingMemory) {
-        this.workingMemory = workingMemory;
+        checkWritable();
+        unindexMemory(MemoryType.WM);
+        this.workingMemory = new TimestampedMemory(workingMemory);
+        indexMemory(MemoryType.WM);
+        sealClosed(this.workingMemory);
+        if (journal != null)
+            journal.checkpoint();
     }
 
     public void setLongTermMemory(Set<BaseProfile> longTermMemory) {
-        this.longTermMemory = longTermMemory;
+        checkWritable();
+        unindexMemory(MemoryType.LM);
+        TimestampedMemory replaced = this.longTermMemory;
+        this.longTermMemory = newLongTermMemory(longTermMemory);
+        if (replaced instanceof MappedMemory)
+            ((MappedMemory) replaced).close();
+        for (ConsolidatedSegment segment : consolidatedSegments)
+            groundingCounters.removeSegment(segment);
+        consolidatedSegments.clear();
+        indexMemory(MemoryType.LM);
+        sealClosed(this.longTermMemory);
+        if (journal != null)
+            journal.checkpoint();
+    }
+
+    /**
+     * Performs consolidation of long-term memory with horizon and size of batch taken from configuration. Does
+     * nothing if LM_CONSOLIDATION_HORIZON isn't positive.
+     *
+     * @return New segment or null if nothing was consolidated.
+     * @see #consolidateLongTermMemory(int, int)
+     */
+    public ConsolidatedSegment consolidateLongTermMemory() {
+        if (LM_CONSOLIDATION_HORIZON <= 0)
+            return null;
+        return consolidateLongTermMemory(LM_CONSOLIDATION_HORIZON, LM_CONSOLIDATION_BATCH);
+    }
+
+    /**
+     * Folds base profiles from long-term memory which are older than given horizon into new consolidated segment.
+     * Folded base profiles are removed from memory and index, but they are still included in grounding counters,
+     * so cardinalities of grounding sets obtained with getGroundingCard(Formula, int) don't change. Grounding sets don't
+     * contain folded base profiles, so contextualisation, which selects base profiles from grounding sets, fails for
+     * moments in time covered by segments. Base profiles covered by grounding windows and base profiles present also
+     * in working memory are kept.
+     *
+     * @param horizon Number of the most recent moments in time which base profiles are kept individually.
+     * @param minSize Minimal number of base profiles required to create segment.
+     * @return New segment or null if there was not enough base profiles to fold.
+     */
+    public ConsolidatedSegment consolidateLongTermMemory(int horizon, int minSize) {
+        if (horizon <= 0)
+            throw new IllegalStateException("Not valid horizon.");
+        checkWritable();
+        int end = timestamp - horizon;
+        for (GroundingWindow window : groundingWindows.values())
+            end = Math.min(end, timestamp - window.getSize());
+        List<BaseProfile> folded = getFoldable(end);
+        if (folded.isEmpty() || folded.size() < minSize)
+            return null;
+        if (journal != null)
+            journal.consolidated(end);
+        return fold(folded);
+    }
+
+    /**
+     * @return Base profiles from long-term memory older than given timestamp, which aren't present in working memory.
+     */
+    private List<BaseProfile> getFoldable(int endTimestamp) {
+        List<BaseProfile> res = new ArrayList<>();
+        for (BaseProfile bp : longTermMemory.headSet(endTimestamp))
+            if (!workingMemory.contains(bp))
+                res.add(bp);
+        return res;
+    }
+
+    private ConsolidatedSegment fold(List<BaseProfile> folded) {
+        ConsolidatedSegment res = new ConsolidatedSegment(folded);
+        for (BaseProfile bp : folded)
+            if (longTermMemory.remove(bp))
+                unindexBaseProfile(bp, MemoryType.LM);
+        restoreSegment(res);
+        return res;
+    }
+
+    /**
+     * Attaches journal which will record modifications of this collection. Checkpoint of current content is written
+     * immediately. Null detaches current journal.
+     *
+     * @param journal
+     * @see EpisodicJournal#recover()
+     */
+    public void setJournal(EpisodicJournal journal) {
+        checkWritable();
+        if (this.journal != null && this.journal != journal)
+            this.journal.close();
+        if (journal != null)
+            journal.attach(this);
+    }
+
+    public EpisodicJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets journal notified about modifications, without writing anything. Called by journal.
+     */
+    void bindJournal(EpisodicJournal journal) {
+        for (MemoryType memType : MemoryType.values())
+            for (BaseProfile bp : getMemoryContainer(memType)) {
+                if (this.journal != null)
+                    bp.removeObserver(this.journal);
+                if (journal != null)
+                    observe(bp, journal);
+            }
+        this.journal = journal;
+    }
+
+    /**
+     * Stores base profile restored from journal, without checking capacity of working memory - shifts are restored
+     * as they were recorded. Base profile which is already closed is sealed before it's stored, so it's not observed.
+     */
+    void restore(MemoryType type, BaseProfile bp) {
+        if (sealing && bp.getTimestamp() < timestamp)
+            seal(bp);
+        BaseProfile stored = store(type, bp);
+        int previousTimestamp = timestamp;
+        if (updateTimestamp(stored))
+            sealRange(previousTimestamp);
+        else sealClosed(Collections.singleton(stored));
+    }
+
+    void restoreRemoval(MemoryType type, int bpTimestamp) {
+        BaseProfile bp = getMemoryContainer(type).get(bpTimestamp);
+        if (bp != null && getMemoryContainer(type).remove(bp))
+            unindexBaseProfile(bp, type);
+    }
+
+    void restoreShift(MemoryType src, MemoryType dest, int bpTimestamp) {
+        BaseProfile bp = getMemoryContainer(src).get(bpTimestamp);
+        if (bp != null) {
+            if (getMemoryContainer(src).remove(bp))
+                unindexBaseProfile(bp, src);
+            restore(dest, bp);
+        }
+    }
+
+    void restoreObservation(MemoryType type, int bpTimestamp, IndividualModel im, Trait trait, State state) {
+        BaseProfile bp = getMemoryContainer(type).get(bpTimestamp);
+        Boolean value = state == State.MAYHAPS ? null : state == State.IS;
+        if (bp != null && !bp.isSealed())
+            bp.addObservationByValue(im, trait, value);
+        else {
+            BaseProfile extended = bp == null ? newBaseProfile(bpTimestamp) : reopen(bp);
+            extended.addObservationByValue(im, trait, value);
+            restore(type, extended);
+        }
+    }
+
+    void restoreConsolidation(int endTimestamp) {
+        List<BaseProfile> folded = getFoldable(endTimestamp);
+        if (!folded.isEmpty())
+            fold(folded);
+    }
+
+    void restoreSegment(ConsolidatedSegment segment) {
+        groundingCounters.addSegment(segment);
+        consolidatedSegments.add(segment);
+    }
+
+    /**
+     * @return Read-only list of consolidated segments of long-term memory, ordered by time.
+     */
+    public List<ConsolidatedSegment> getConsolidatedSegments() {
+        return Collections.unmodifiableList(consolidatedSegments);
+    }
+
+    /**
+     * @return Number of base profiles folded into consolidated segments.
+     */
+    public int getConsolidatedSize() {
+        int res = 0;
+        for (ConsolidatedSegment segment : consolidatedSegments)
+            res += segment.size();
+        return res;
+    }
+
+    /**
+     * Checks if some base profiles related with moments in time till given timestamp are folded into consolidated
+     * segments, so they are not available individually (e.g. in grounding sets), but only through counters.
+     */
+    public boolean isConsolidated(int timestamp) {
+        return !consolidatedSegments.isEmpty() && consolidatedSegments.get(0).getBeginTimestamp() <= timestamp;
+    }
+
+    /**
+     * Checks if base profiles related with moments in time till given timestamp are available individually.
+     *
+     * @throws IllegalStateException If some of them are folded into consolidated segments.
+     */
+    public void checkNotConsolidated(int timestamp) {
+        if (isConsolidated(timestamp))
+            throw new IllegalStateException("Base profiles till timestamp " + timestamp
+                    + " are folded into consolidated segments.");
+    }
+
+    /**
+     * Returns segments which fold base profiles related with moments in time till given timestamp.
+     *
+     * @throws IllegalStateException When given timestamp falls inside some segment, so only part of its base profiles
+     *                               is related with moments in time till timestamp.
+     */
+    private List<ConsolidatedSegment> getConsolidatedSegments(int timestamp) {
+        List<ConsolidatedSegment> res = new ArrayList<>();
+        for (ConsolidatedSegment segment : consolidatedSegments) {
+            if (segment.getBeginTimestamp() > timestamp)
+                break;
+            if (segment.getEndTimestamp() > timestamp)
+                throw new IllegalStateException("Base profiles till timestamp " + timestamp + " are partially folded into "
+                        + segment + ".");
+            res.add(segment);
+        }
+        return res;
+    }
+
+    /**
+     * Returns cardinalities of grounding sets for given formulas among base profiles related with moments in time till
+     * given timestamp, including base profiles folded into consolidated segments. Grounding counters are used when
+     * they describe all base profiles till timestamp. Otherwise base profiles kept individually are counted on
+     * grounding index and counts of segments which end before timestamp are added.
+     *
+     * @return Map of cardinalities of grounding sets as values and respective formulas as keys.
+     * @throws IllegalStateException When given timestamp falls inside consolidated segment or some formula isn't
+     *                               supported by counters of consolidated segments.
+     */
+    public Map<Formula, Integer> getGroundingCards(Collection<Formula> formulas, int timestamp) {
+        boolean useCounters = groundingCounters.isComplete(timestamp);
+        BitSet scope = null;
+        List<ConsolidatedSegment> segments = null;
+        Map<Formula, Integer> res = new HashMap<>();
+        for (Formula f : formulas)
+            if (useCounters && groundingCounters.isSupported(f))
+                res.put(f, groundingCounters.getGroundingCard(f));
+            else {
+                if (scope == null) {
+                    scope = groundingIndex.getScope(timestamp);
+                    segments = getConsolidatedSegments(timestamp);
+                }
+                int card = groundingIndex.countGroundingProfiles(f, scope);
+                for (ConsolidatedSegment segment : segments) {
+                    if (!segment.isSupported(f))
+                        throw new IllegalStateException("Formula " + f + " is not supported by " + segment + ".");
+                    card += segment.getGroundingCard(f);
+                }
+                res.put(f, card);
+            }
+        return res;
+    }
+
+    /**
+     * Returns bitmap index of base profiles stored in this collection. Index shouldn't be modified outside this class.
+     *
+     * @return Grounding index maintained by this collection.
+     */
+    public GroundingIndex getGroundingIndex() {
+        return groundingIndex;
+    }
+
+    /**
+     * Returns version of content of this collection. Version changes whenever base profile is added, removed, shifted
+     * between memories or when stored base profile is modified. Snapshot has version of its source at the moment of
+     * creating snapshot.
+     *
+     * @return Current version.
+     */
+    public long getVersion() {
+        return source != null ? snapshotVersion : groundingIndex.getVersion();
+    }
+
+    /**
+     * Returns timestamps of base profiles which were added, removed, shifted between memories or modified since given
+     * version. For snapshot, changes of its source are returned, so they may include changes made after snapshot was
+     * created.
+     *
+     * @param sinceVersion Version returned by getVersion() of this collection, its source or other snapshot of source.
+     * @return Set of timestamps or null if changes since given version are not known (e.g. they weren't tracked).
+     * @see GroundingIndex#getChangedTimestamps(long)
+     */
+    public Set<Integer> getChangedTimestamps(long sinceVersion) {
+        return getOrigin().groundingIndex.getChangedTimestamps(sinceVersion);
+    }
+
+    /**
+     * Starts remembering which moments in time change, so they can be returned by getChangedTimestamps(long).
+     */
+    public void trackChanges() {
+        getOrigin().groundingIndex.trackChanges();
+    }
+
+    /**
+     * @return Source of this snapshot or this collection if it isn't snapshot.
+     */
+    public BPCollection getOrigin() {
+        return source != null ? source : this;
+    }
+
+    /**
+     * Returns counters of grounding sets' cardinalities for base profiles stored in this collection.
+     *
+     * @return Grounding counters maintained by this collection.
+     */
+    public GroundingCounters getGroundingCounters() {
+        return groundingCounters;
+    }
+
+    /**
+     * Returns index of timestamps of stored base profiles per observed individual model.
+     *
+     * @return Observation index maintained by this collection.
+     */
+    public ObservationIndex getObservationIndex() {
+        return observationIndex;
+    }
+
+    /**
+     * Returns base profiles from both memories which present given individual model with any of given states, in
+     * descending order of timestamps. Base profiles are found lazily with help of observation index, so obtaining
+     * K latest of them costs O(K).
+     *
+     * @param im           Observed individual model.
+     * @param endTimestamp The most recent timestamp which can be taken into account.
+     * @param states       States of observation; all states if none is given.
+     * @return Lazy iterator over base profiles.
+     */
+    public Iterator<BaseProfile> getLatestBaseProfiles(IndividualModel im, int endTimestamp, State... states) {
+        Iterator<Integer> timestamps = observationIndex.getLatestTimestamps(im, endTimestamp, states);
+        Deque<BaseProfile> pending = new ArrayDeque<>(2);
+        return new Iterator<BaseProfile>() {
+            @Override
+            public boolean hasNext() {
+                while (pending.isEmpty() && timestamps.hasNext()) {
+                    int ts = timestamps.next();
+                    List<BaseProfile> inWM = workingMemory.getAll(ts), inLM = longTermMemory.getAll(ts);
+                    if (inWM.size() + inLM.size() == 1)
+                        pending.add(inWM.isEmpty() ? inLM.get(0) : inWM.get(0));
+                    else
+                        for (List<BaseProfile> group : Arrays.asList(inWM, inLM))
+                            for (BaseProfile bp : group)
+                                if (isObserving(bp, im, states) && !pending.contains(bp))
+                                    pending.add(bp);
+                }
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public BaseProfile next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return pending.poll();
+            }
+        };
+    }
+
+    private static boolean isObserving(BaseProfile bp, IndividualModel im, State... states) {
+        for (State state : states.length == 0 ? State.values() : states)
+            for (Set<IndividualModel> ims : bp.getContainer(state).values())
+                if (ims.contains(im))
+                    return true;
+        return false;
+    }
+
+    /**
+     * Returns samples of base profiles stored in this collection.
+     *
+     * @return Grounding sampler maintained by this collection or null if approximate grounding is disabled.
+     */
+    public GroundingSampler getGroundingSampler() {
+        return groundingSampler;
+    }
+
+    /**
+     * Returns policy which selects base profiles shifted from full working memory to long-term memory. Snapshot has
+     * policy of the same type as its source, which doesn't follow working memory of snapshot.
+     *
+     * @return Eviction policy used by this collection.
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public boolean isSealing() {
+        return sealing;
+    }
+
+    /**
+     * Enables or disables sealing of base profiles. Enabling seals base profiles which are already closed; disabling
+     * doesn't reopen sealed ones.
+     *
+     * @param sealing
+     */
+    public void setSealing(boolean sealing) {
+        checkWritable();
+        this.sealing = sealing;
+        sealClosed(workingMemory);
+        sealClosed(longTermMemory);
+    }
+
+    /**
+     * Replaces eviction policy. New policy starts following current content of working memory.
+     *
+     * @param evictionPolicy
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        if (evictionPolicy == null)
+            throw new NullPointerException("Eviction policy not specified.");
+        checkWritable();
+        evictionPolicy.clear();
+        for (BaseProfile bp : workingMemory)
+            evictionPolicy.register(bp);
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * Informs eviction policy that given base profiles from working memory were used by single grounding. Snapshot
+     * passes them to eviction policy of its source.
+     *
+     * @param bps Base profiles from grounding sets which are located in working memory.
+     */
+    public void recordGrounding(Collection<BaseProfile> bps) {
+        (source != null ? source.evictionPolicy : evictionPolicy).recordGrounding(bps);
+    }
+
+    /**
+     * Returns sliding window which covers given number of the most recent moments in time. Window is created on first
+     * request and then maintained by this collection.
+     *
+     * @param size Number of moments in time covered by window.
+     * @return Grounding window maintained by this collection.
+     */
+    public synchronized GroundingWindow getGroundingWindow(int size) {
+        GroundingWindow res = groundingWindows.get(size);
+        if (res == null) {
+            res = new GroundingWindow(size);
+            int latest = spotLastTimestamp();
+            int oldest = (int) Math.max(Integer.MIN_VALUE, (long) latest - size + 1);
+            for (MemoryType memType : MemoryType.values())
+                // base profiles of snapshot don't change, so only the ones covered by window are registered
+                for (BaseProfile bp : source != null ? getMemoryContainer(memType).subSet(oldest, latest)
+                        : getMemoryContainer(memType)) {
+                    res.register(bp);
+                    observe(bp, res);
+                }
+            groundingWindows.put(size, res);
+        }
+        return res;
+    }
+
+    private void indexBaseProfile(BaseProfile bp, MemoryType memType) {
+        if (groundingIndex.register(bp, memType)) {
+            groundingCounters.register(bp);
+            observationIndex.register(bp);
+            observe(bp, groundingIndex);
+            observe(bp, groundingCounters);
+            observe(bp, observationIndex);
+            if (groundingSampler != null) {
+                groundingSampler.register(bp);
+                observe(bp, groundingSampler);
+            }
+            for (GroundingWindow window : groundingWindows.values()) {
+                window.register(bp);
+                observe(bp, window);
+            }
+            if (journal != null)
+                observe(bp, journal);
+        }
+        if (memType == MemoryType.WM && source == null)
+            evictionPolicy.register(bp);
+    }
+
+    /**
+     * Sealed base profiles don't change, so they aren't observed - they may be shared by many snapshots. Snapshot
+     * doesn't observe any base profiles, as base profiles of mapped memory are shared with its source.
+     */
+    private void observe(BaseProfile bp, BaseProfileObserver observer) {
+        if (source == null && !bp.isSealed())
+            bp.addObserver(observer);
+    }
+
+    private void unindexBaseProfile(BaseProfile bp, MemoryType memType) {
+        if (groundingIndex.unregister(bp, memType)) {
+            groundingCounters.unregister(bp);
+            observationIndex.unregister(bp);
+            bp.removeObserver(groundingIndex);
+            bp.removeObserver(groundingCounters);
+            bp.removeObserver(observationIndex);
+            if (groundingSampler != null) {
+                groundingSampler.unregister(bp);
+                bp.removeObserver(groundingSampler);
+            }
+            for (GroundingWindow window : groundingWindows.values()) {
+                window.unregister(bp);
+                bp.removeObserver(window);
+            }
+            if (journal != null)
+                bp.removeObserver(journal);
+        }
+        if (memType == MemoryType.WM && source == null)
+            evictionPolicy.unregister(bp);
+    }
+
+    private void indexMemory(MemoryType memType) {
+        for (BaseProfile bp : getMemoryContainer(memType))
+            indexBaseProfile(bp, memType);
+    }
+
+    private void unindexMemory(MemoryType memType) {
+        for (BaseProfile bp : getMemoryContainer(memType))
+            unindexBaseProfile(bp, memType);
     }
 
     public Set<BaseProfile> getWorkingMemory() {
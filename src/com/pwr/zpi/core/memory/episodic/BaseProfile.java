@@ -12,6 +12,10 @@ import java.util.*;
 
 /**
  * Represents state of world from agent perspective. It's established for certain moment in time.
+ * Base profile can be modified only until it's sealed - BPCollection seals base profile when its timestamp advances
+ * past timestamp of base profile. Sealed base profile is read-only and caches its hash code. Sealing collection
+ * gives it a sequence number, so sealed base profiles with the same sealing collection and sequence number are equal
+ * without comparing their content.
  * //todo
  * @author Grzegorz Kostkowski
  */
@@ -34,6 +38,24 @@ public class  BaseProfile {
     protected Map<Trait, Set<IndividualModel>> indefiniteByTraits;
     protected int timestamp;
 
+    /**
+     * Structures which follow content of this base profile. Initialized lazily - most of profiles are observed
+     * only by one BPCollection.
+     */
+    private List<BaseProfileObserver> observers;
+
+    private static final long NOT_SEALED = -1;
+    /**
+     * Identifier of collection which sealed this base profile or NOT_SEALED. Written after sealedHash, so reader which
+     * sees sealed state sees also cached hash code.
+     */
+    private volatile long sealedBy = NOT_SEALED;
+    /**
+     * Sequence number given by sealing collection, distinct for each base profile sealed by that collection.
+     */
+    private long sealNumber;
+    private int sealedHash;
+
     //protected Set<Observation> observations;
 
     /**
@@ -55,7 +77,7 @@ public class  BaseProfile {
      *                        indefiniteByTraits
      * @param timestamp
      */
-    private BaseProfile(List<Map<Trait, Set<IndividualModel>>> baseProfileMaps, int timestamp) {
+    BaseProfile(List<Map<Trait, Set<IndividualModel>>> baseProfileMaps, int timestamp) {
         if (timestamp < 0)
             throw new IllegalStateException("Not valid timestamp.");
         if (baseProfileMaps == null || baseProfileMaps.size() < 3)
@@ -85,16 +107,24 @@ public class  BaseProfile {
     }
 
     public void setTimestamp(int timestamp) {
+        checkNotSealed();
         this.timestamp = timestamp;
+        notifyProfileReplaced();
     }
     public void setDescribedByTraits(Map<Trait, Set<IndividualModel>> describedByTraits) {
+        checkNotSealed();
         this.describedByTraits = describedByTraits;
+        notifyProfileReplaced();
     }
     public void setNotDescribedByTraits(Map<Trait, Set<IndividualModel>> notDescribedByTraits) {
+        checkNotSealed();
         this.notDescribedByTraits = notDescribedByTraits;
+        notifyProfileReplaced();
     }
     public void setIndefiniteByTraits(Map<Trait, Set<IndividualModel>> indefiniteByTraits) {
+        checkNotSealed();
         this.indefiniteByTraits = indefiniteByTraits;
+        notifyProfileReplaced();
     }
 
 
@@ -106,9 +136,9 @@ public class  BaseProfile {
      */
     public Set<IndividualModel> getAffectedIMs() {
         Set<IndividualModel> res = new HashSet<IndividualModel>();
-        getAffectedIMs(describedByTraits, res);
-        getAffectedIMs(notDescribedByTraits, res);
-        getAffectedIMs(indefiniteByTraits, res);
+        getAffectedIMs(getDescribedByTraits(), res);
+        getAffectedIMs(getNotDescribedByTraits(), res);
+        getAffectedIMs(getIndefiniteByTraits(), res);
         return res;
     }
 
@@ -179,7 +209,7 @@ public class  BaseProfile {
      * @return Set of Individual models.
      */
     public Set<IndividualModel> getIMsDescribedByTrait(Trait trait) {
-        return describedByTraits.get(trait);
+        return getDescribedByTraits().get(trait);
     }
 
     /**
@@ -190,7 +220,7 @@ public class  BaseProfile {
      * @return Set of Individual models.
      */
     public Set<IndividualModel> getIMsNotDescribedByTrait(Trait trait) {
-        return notDescribedByTraits.get(trait);
+        return getNotDescribedByTraits().get(trait);
     }
 
     /**
@@ -201,7 +231,7 @@ public class  BaseProfile {
      * @return Set of Individual models.
      */
     public Set<IndividualModel> getIMsIndefiniteByTrait(Trait trait) {
-        return indefiniteByTraits.get(trait);
+        return getIndefiniteByTraits().get(trait);
     }
 
     /**
@@ -215,11 +245,11 @@ public class  BaseProfile {
     public Set<IndividualModel> getIMsByTraitState(Trait trait, State state) {
         switch (state) {
             case IS:
-                return describedByTraits.get(trait);
+                return getDescribedByTraits().get(trait);
             case IS_NOT:
-                return notDescribedByTraits.get(trait);
+                return getNotDescribedByTraits().get(trait);
             default:
-                return indefiniteByTraits.get(trait);
+                return getIndefiniteByTraits().get(trait);
         }
     }
 
@@ -236,11 +266,11 @@ public class  BaseProfile {
             throw new NullPointerException("One of parameters is null.");
         switch (state) {
             case IS:
-                return describedByTraits.containsKey(trait) && new ArrayList<>(describedByTraits.get(trait)).contains(object);
+                return getDescribedByTraits().containsKey(trait) && new ArrayList<>(getDescribedByTraits().get(trait)).contains(object);
             case IS_NOT:
-                return notDescribedByTraits.containsKey(trait) && new ArrayList<>(notDescribedByTraits.get(trait)).contains(object);
+                return getNotDescribedByTraits().containsKey(trait) && new ArrayList<>(getNotDescribedByTraits().get(trait)).contains(object);
             case MAYHAPS:
-                return indefiniteByTraits.containsKey(trait) && new ArrayList<>(indefiniteByTraits.get(trait)).contains(object);
+                return getIndefiniteByTraits().containsKey(trait) && new ArrayList<>(getIndefiniteByTraits().get(trait)).contains(object);
             default: return false;
         }
     }
@@ -249,44 +279,59 @@ public class  BaseProfile {
         //if (timestamp == this.timestamp)
         if (individualModels == null || relatedTrait == null)
             throw new NullPointerException("One of parameters is null.");
+        checkNotSealed();
         describedByTraits.put(relatedTrait, individualModels);
+        notifyProfileReplaced();
         //else throw new IllegalStateException("Given observation not belong to this BP.");
     }
 
     public void addNotDescribedObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
         if (individualModels == null || relatedTrait == null)
             throw new NullPointerException("One of parameters is null.");
+        checkNotSealed();
         notDescribedByTraits.put(relatedTrait, individualModels);
+        notifyProfileReplaced();
     }
 
     public void addIndefiniteObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
         if (individualModels == null || relatedTrait == null)
             throw new NullPointerException("One of parameters is null.");
+        checkNotSealed();
         indefiniteByTraits.put(relatedTrait, individualModels);
+        notifyProfileReplaced();
     }
 
     public void addDescribedObservation(IndividualModel individualModel, Trait relatedTrait/*, int timestamp*/) {
         if (individualModel == null || relatedTrait == null)
             throw new NullPointerException("One of parameters is null.");
-        if (!describedByTraits.containsKey(relatedTrait))
+        checkNotSealed();
+        boolean traitIntroduced = !describedByTraits.containsKey(relatedTrait);
+        if (traitIntroduced)
             describedByTraits.put(relatedTrait, new HashSet<>());
-        describedByTraits.get(relatedTrait).add(individualModel);
+        if (describedByTraits.get(relatedTrait).add(individualModel))
+            notifyObservationAdded(individualModel, relatedTrait, State.IS, traitIntroduced);
     }
 
     public void addNotDescribedObservation(IndividualModel individualModel, Trait relatedTrait) {
         if (individualModel == null || relatedTrait == null)
             throw new NullPointerException("One of parameters is null.");
-        if (!notDescribedByTraits.containsKey(relatedTrait))
+        checkNotSealed();
+        boolean traitIntroduced = !notDescribedByTraits.containsKey(relatedTrait);
+        if (traitIntroduced)
             notDescribedByTraits.put(relatedTrait, new HashSet<>());
-        notDescribedByTraits.get(relatedTrait).add(individualModel);
+        if (notDescribedByTraits.get(relatedTrait).add(individualModel))
+            notifyObservationAdded(individualModel, relatedTrait, State.IS_NOT, traitIntroduced);
     }
 
     public void addIndefiniteObservation(IndividualModel individualModel, Trait relatedTrait) {
         if (individualModel == null || relatedTrait == null)
             throw new NullPointerException("One of parameters is null.");
-        if (!indefiniteByTraits.containsKey(relatedTrait))
+        checkNotSealed();
+        boolean traitIntroduced = !indefiniteByTraits.containsKey(relatedTrait);
+        if (traitIntroduced)
             indefiniteByTraits.put(relatedTrait, new HashSet<>());
-        indefiniteByTraits.get(relatedTrait).add(individualModel);
+        if (indefiniteByTraits.get(relatedTrait).add(individualModel))
+            notifyObservationAdded(individualModel, relatedTrait, State.MAYHAPS, traitIntroduced);
     }
 
     /**
@@ -304,6 +349,95 @@ public class  BaseProfile {
             addNotDescribedObservation(individualModel, relatedTrait);
     }
 
+    /**
+     * Registers structure which should be notified about changes of this base profile.
+     * @param observer
+     */
+    void addObserver(BaseProfileObserver observer) {
+        if (observers == null)
+            observers = new ArrayList<>(1);
+        if (!observers.contains(observer))
+            observers.add(observer);
+    }
+
+    void removeObserver(BaseProfileObserver observer) {
+        if (observers != null)
+            observers.remove(observer);
+    }
+
+    void notifyObservationAdded(IndividualModel individualModel, Trait relatedTrait, State state,
+                                        boolean traitIntroduced) {
+        if (observers != null)
+            for (BaseProfileObserver observer : observers)
+                observer.observationAdded(this, individualModel, relatedTrait, state, traitIntroduced);
+    }
+
+    void notifyProfileReplaced() {
+        if (observers != null)
+            for (BaseProfileObserver observer : observers)
+                observer.profileReplaced(this);
+    }
+
+    /**
+     * Seals this base profile: content becomes read-only and hash code is computed once. Sealing already sealed base
+     * profile has no effect.
+     *
+     * @param collectionId Identifier of sealing collection, used as a part of identity of sealed base profile.
+     * @param sealNumber   Sequence number of this base profile among base profiles sealed by given collection.
+     */
+    synchronized void seal(long collectionId, long sealNumber) {
+        if (isSealed())
+            return;
+        freezeContent();
+        sealedHash = computeHashCode();
+        this.sealNumber = sealNumber;
+        sealedBy = collectionId;
+    }
+
+    /**
+     * Replaces containers with read-only ones. Subclasses which expose read-only containers don't need to do anything.
+     */
+    void freezeContent() {
+        describedByTraits = freeze(describedByTraits);
+        notDescribedByTraits = freeze(notDescribedByTraits);
+        indefiniteByTraits = freeze(indefiniteByTraits);
+    }
+
+    private static Map<Trait, Set<IndividualModel>> freeze(Map<Trait, Set<IndividualModel>> container) {
+        Map<Trait, Set<IndividualModel>> res = new HashMap<>(container.size() * 4 / 3 + 1);
+        for (Map.Entry<Trait, Set<IndividualModel>> entry : container.entrySet())
+            res.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+        return Collections.unmodifiableMap(res);
+    }
+
+    public boolean isSealed() {
+        return sealedBy != NOT_SEALED;
+    }
+
+    /**
+     * @throws IllegalStateException If base profile is sealed.
+     */
+    void checkNotSealed() {
+        if (isSealed())
+            throw new IllegalStateException("Base profile for timestamp " + getTimestamp() + " is sealed.");
+    }
+
+    /**
+     * Adds given individual models to container related with given state.
+     */
+    void addObservations(State state, Set<IndividualModel> individualModels, Trait relatedTrait) {
+        switch (state) {
+            case IS:
+                addDescribedObservations(individualModels, relatedTrait);
+                break;
+            case IS_NOT:
+                addNotDescribedObservations(individualModels, relatedTrait);
+                break;
+            default:
+                addIndefiniteObservations(individualModels, relatedTrait);
+        }
+    }
+
     public void copy(BaseProfile other) {
         setDescribedByTraits(new HashMap<>(other.getDescribedByTraits()));
         setNotDescribedByTraits(new HashMap<>(other.getNotDescribedByTraits()));
@@ -326,7 +460,7 @@ public class  BaseProfile {
     }
 
     public boolean determineIfSetHasTrait(Trait P, int time) {
-        return describedByTraits.containsKey(P);
+        return getDescribedByTraits().containsKey(P);
     }
 
     /**
@@ -336,7 +470,7 @@ public class  BaseProfile {
      * @return
      */
     public boolean determineIfSetHasNotTrait(@SuppressWarnings("rawtypes") Trait P, int time) {
-        return notDescribedByTraits.containsKey(P);
+        return getNotDescribedByTraits().containsKey(P);
     }
 
     /**
@@ -361,20 +495,24 @@ public class  BaseProfile {
      */
     public Set<Trait> getAllTraits() {
         Set<Trait> res = new HashSet<>();
-        res.addAll(describedByTraits.keySet());
-        res.addAll(notDescribedByTraits.keySet());
-        res.addAll(indefiniteByTraits.keySet());
+        res.addAll(getDescribedByTraits().keySet());
+        res.addAll(getNotDescribedByTraits().keySet());
+        res.addAll(getIndefiniteByTraits().keySet());
         return res;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof BaseProfile)) return false;
 
         BaseProfile that = (BaseProfile) o;
 
         if (getTimestamp() != that.getTimestamp()) return false;
+        if (isSealed() && that.isSealed()) {
+            if (sealedHash != that.sealedHash) return false;
+            if (sealedBy == that.sealedBy && sealNumber == that.sealNumber) return true;
+        }
         if (!getDescribedByTraits().equals(that.getDescribedByTraits())) return false;
         if (!getNotDescribedByTraits().equals(that.getNotDescribedByTraits())) return false;
         return getIndefiniteByTraits().equals(that.getIndefiniteByTraits());
@@ -382,6 +520,10 @@ public class  BaseProfile {
 
     @Override
     public int hashCode() {
+        return isSealed() ? sealedHash : computeHashCode();
+    }
+
+    private int computeHashCode() {
         int result = getDescribedByTraits().hashCode();
         result = 31 * result + getNotDescribedByTraits().hashCode();
         result = 31 * result + getIndefiniteByTraits().hashCode();
@@ -412,11 +554,11 @@ public class  BaseProfile {
     public Map<Trait, Set<IndividualModel>> getContainer(State state) {
         switch (state) {
             case IS:
-                return describedByTraits;
+                return getDescribedByTraits();
             case IS_NOT:
-                return notDescribedByTraits;
+                return getNotDescribedByTraits();
             default:
-                return indefiniteByTraits;
+                return getIndefiniteByTraits();
         }
     }
 
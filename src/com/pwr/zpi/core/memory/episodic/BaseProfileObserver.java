@@ -0,0 +1,36 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+/**
+ * Receives notifications about changes of observations stored in base profile. It is implemented by structures
+ * which keep data derived from contained base profiles (e.g. indexes maintained by BPCollection) and therefore
+ * have to follow modifications of profiles which are already stored in memory.
+ *
+ * @author Grzegorz Kostkowski
+ */
+interface BaseProfileObserver {
+
+    /**
+     * Called after single observation of individual model was included in base profile.
+     *
+     * @param bp    Modified base profile.
+     * @param im    Observed individual model.
+     * @param trait Observed trait.
+     * @param state State of observed trait.
+     * @param traitIntroduced True if trait wasn't present in container related with given state before this observation.
+     */
+    void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state, boolean traitIntroduced);
+
+    /**
+     * Called after content of base profile was replaced as a whole (e.g. one of maps or timestamp was set).
+     *
+     * @param bp Modified base profile.
+     */
+    void profileReplaced(BaseProfile bp);
+}
@@ -0,0 +1,434 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.*;
+
+/**
+ * Base profile which keeps observations in primitive arrays instead of maps of sets. Traits and individual models are
+ * replaced with interned integer identifiers; each base profile keeps identifiers of individual models and traits it
+ * mentions in small arrays (slots), and states of every pair (individual model, trait) are packed as three
+ * consecutive bits of bitmap - one bit per state, so pair can be observed in more than one state, as in regular base
+ * profile. Bit of state is found by index arithmetic: ((modelSlot * traitCapacity + traitSlot) * STATES + state).
+ * Second bitmap marks traits present in particular containers (container may include trait with empty set of
+ * individual models).
+ * Getters of containers (getDescribedByTraits() etc.) return read-only views backed by this base profile, so
+ * existing code works without changes, whereas checkIfObserved(..) and isContainingClearDescriptionFor(..) don't
+ * allocate any objects.
+ *
+ * @author Grzegorz Kostkowski
+ * @see com.pwr.zpi.io.Configuration#COMPACT_BASE_PROFILES
+ */
+public class CompactBaseProfile extends BaseProfile {
+
+    private static final Interner<Trait> TRAITS = new Interner<>();
+    private static final Interner<IndividualModel> MODELS = new Interner<>();
+    private static final int STATES = State.values().length;
+    private static final int MIN_CAPACITY = 4;
+    private static final int[] NO_IDS = new int[0];
+    private static final long[] NO_BITS = new long[0];
+
+    /**
+     * Identifiers of individual models, indexed by slots.
+     */
+    private int[] models = NO_IDS;
+    private int modelsNumber;
+    /**
+     * Identifiers of traits, indexed by slots. Length of array is trait capacity used by index arithmetic.
+     */
+    private int[] traits = NO_IDS;
+    private int traitsNumber;
+    /**
+     * States of pairs (individual model, trait).
+     */
+    private long[] observed = NO_BITS;
+    /**
+     * Presence of traits in containers, bit (traitSlot * STATES + state).
+     */
+    private long[] present = NO_BITS;
+
+    public CompactBaseProfile(int timestamp) {
+        super(Collections.nCopies(3, Collections.emptyMap()), timestamp);
+    }
+
+    /**
+     * Creates compact copy of given base profile. Observers of given base profile aren't copied.
+     *
+     * @param other
+     */
+    public CompactBaseProfile(BaseProfile other) {
+        this(other.getTimestamp());
+        for (State state : State.values())
+            putContainer(state, other.getContainer(state));
+    }
+
+    private static int getWords(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static boolean getBit(long[] bitmap, int index) {
+        return (bitmap[index >>> 6] & 1L << index) != 0;
+    }
+
+    private static void setBit(long[] bitmap, int index) {
+        bitmap[index >>> 6] |= 1L << index;
+    }
+
+    private static void clearBit(long[] bitmap, int index) {
+        bitmap[index >>> 6] &= ~(1L << index);
+    }
+
+    private int getIndex(int modelSlot, int traitSlot, State state) {
+        return (modelSlot * traits.length + traitSlot) * STATES + state.ordinal();
+    }
+
+    private static int find(int[] ids, int number, int id) {
+        for (int i = 0; i < number; i++)
+            if (ids[i] == id)
+                return i;
+        return -1;
+    }
+
+    private int findModelSlot(Object model) {
+        if (!(model instanceof IndividualModel))
+            return -1;
+        int id = MODELS.findId(model);
+        return id >= 0 ? find(models, modelsNumber, id) : -1;
+    }
+
+    private int findTraitSlot(Object trait) {
+        if (!(trait instanceof Trait))
+            return -1;
+        int id = TRAITS.findId(trait);
+        return id >= 0 ? find(traits, traitsNumber, id) : -1;
+    }
+
+    private int getModelSlot(IndividualModel model) {
+        int id = MODELS.getId(model);
+        int res = find(models, modelsNumber, id);
+        if (res < 0) {
+            if (modelsNumber == models.length)
+                relayout(Math.max(MIN_CAPACITY, 2 * models.length), traits.length);
+            models[modelsNumber] = id;
+            res = modelsNumber++;
+        }
+        return res;
+    }
+
+    private int getTraitSlot(Trait trait) {
+        int id = TRAITS.getId(trait);
+        int res = find(traits, traitsNumber, id);
+        if (res < 0) {
+            if (traitsNumber == traits.length)
+                relayout(models.length, Math.max(MIN_CAPACITY, 2 * traits.length));
+            traits[traitsNumber] = id;
+            res = traitsNumber++;
+        }
+        return res;
+    }
+
+    /**
+     * Changes capacities of slots, moving bits of states to positions given by new trait capacity.
+     */
+    private void relayout(int modelCapacity, int traitCapacity) {
+        long[] newObserved = new long[getWords(modelCapacity * traitCapacity * STATES)];
+        for (int m = 0; m < modelsNumber; m++)
+            for (int t = 0; t < traitsNumber; t++)
+                for (int s = 0; s < STATES; s++)
+                    if (getBit(observed, (m * traits.length + t) * STATES + s))
+                        setBit(newObserved, (m * traitCapacity + t) * STATES + s);
+        observed = newObserved;
+        models = Arrays.copyOf(models, modelCapacity);
+        traits = Arrays.copyOf(traits, traitCapacity);
+        present = Arrays.copyOf(present, getWords(traitCapacity * STATES));
+    }
+
+    private boolean isPresent(int traitSlot, State state) {
+        return getBit(present, traitSlot * STATES + state.ordinal());
+    }
+
+    private boolean isObserved(int modelSlot, int traitSlot, State state) {
+        return modelSlot >= 0 && traitSlot >= 0 && getBit(observed, getIndex(modelSlot, traitSlot, state));
+    }
+
+    private void addObservation(IndividualModel individualModel, Trait relatedTrait, State state) {
+        if (individualModel == null || relatedTrait == null)
+            throw new NullPointerException("One of parameters is null.");
+        checkNotSealed();
+        int traitSlot = getTraitSlot(relatedTrait);
+        int modelSlot = getModelSlot(individualModel);
+        boolean traitIntroduced = !isPresent(traitSlot, state);
+        setBit(present, traitSlot * STATES + state.ordinal());
+        int index = getIndex(modelSlot, traitSlot, state);
+        if (!getBit(observed, index)) {
+            setBit(observed, index);
+            notifyObservationAdded(individualModel, relatedTrait, state, traitIntroduced);
+        }
+    }
+
+    /**
+     * Sets given individual models as the only ones related with given trait in container of given state.
+     */
+    private void putModels(Set<IndividualModel> individualModels, Trait relatedTrait, State state) {
+        if (individualModels == null || relatedTrait == null)
+            throw new NullPointerException("One of parameters is null.");
+        checkNotSealed();
+        int traitSlot = getTraitSlot(relatedTrait);
+        for (int m = 0; m < modelsNumber; m++)
+            clearBit(observed, getIndex(m, traitSlot, state));
+        setBit(present, traitSlot * STATES + state.ordinal());
+        for (IndividualModel im : individualModels) {
+            int modelSlot = getModelSlot(im);
+            setBit(observed, getIndex(modelSlot, traitSlot, state));
+        }
+    }
+
+    private void putContainer(State state, Map<Trait, Set<IndividualModel>> container) {
+        if (container == null)
+            throw new NullPointerException("Container not specified.");
+        checkNotSealed();
+        for (int t = 0; t < traitsNumber; t++) {
+            clearBit(present, t * STATES + state.ordinal());
+            for (int m = 0; m < modelsNumber; m++)
+                clearBit(observed, getIndex(m, t, state));
+        }
+        for (Map.Entry<Trait, Set<IndividualModel>> entry : container.entrySet())
+            putModels(entry.getValue(), entry.getKey(), state);
+    }
+
+    @Override
+    void freezeContent() {
+        // views of containers are read-only and mutators check if base profile is sealed
+    }
+
+    @Override
+    public Map<Trait, Set<IndividualModel>> getDescribedByTraits() {
+        return new ContainerView(State.IS);
+    }
+
+    @Override
+    public Map<Trait, Set<IndividualModel>> getNotDescribedByTraits() {
+        return new ContainerView(State.IS_NOT);
+    }
+
+    @Override
+    public Map<Trait, Set<IndividualModel>> getIndefiniteByTraits() {
+        return new ContainerView(State.MAYHAPS);
+    }
+
+    @Override
+    public void setDescribedByTraits(Map<Trait, Set<IndividualModel>> describedByTraits) {
+        putContainer(State.IS, describedByTraits);
+        notifyProfileReplaced();
+    }
+
+    @Override
+    public void setNotDescribedByTraits(Map<Trait, Set<IndividualModel>> notDescribedByTraits) {
+        putContainer(State.IS_NOT, notDescribedByTraits);
+        notifyProfileReplaced();
+    }
+
+    @Override
+    public void setIndefiniteByTraits(Map<Trait, Set<IndividualModel>> indefiniteByTraits) {
+        putContainer(State.MAYHAPS, indefiniteByTraits);
+        notifyProfileReplaced();
+    }
+
+    @Override
+    public void addDescribedObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
+        putModels(individualModels, relatedTrait, State.IS);
+        notifyProfileReplaced();
+    }
+
+    @Override
+    public void addNotDescribedObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
+        putModels(individualModels, relatedTrait, State.IS_NOT);
+        notifyProfileReplaced();
+    }
+
+    @Override
+    public void addIndefiniteObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
+        putModels(individualModels, relatedTrait, State.MAYHAPS);
+        notifyProfileReplaced();
+    }
+
+    @Override
+    public void addDescribedObservation(IndividualModel individualModel, Trait relatedTrait) {
+        addObservation(individualModel, relatedTrait, State.IS);
+    }
+
+    @Override
+    public void addNotDescribedObservation(IndividualModel individualModel, Trait relatedTrait) {
+        addObservation(individualModel, relatedTrait, State.IS_NOT);
+    }
+
+    @Override
+    public void addIndefiniteObservation(IndividualModel individualModel, Trait relatedTrait) {
+        addObservation(individualModel, relatedTrait, State.MAYHAPS);
+    }
+
+    @Override
+    public boolean checkIfObserved(IndividualModel object, Trait trait, State state) {
+        if (object == null || trait == null || state == null)
+            throw new NullPointerException("One of parameters is null.");
+        return isObserved(findModelSlot(object), findTraitSlot(trait), state);
+    }
+
+    @Override
+    public boolean isContainingClearDescriptionFor(IndividualModel model, Trait selectedTrait) {
+        int modelSlot = findModelSlot(model);
+        int traitSlot = findTraitSlot(selectedTrait);
+        return isObserved(modelSlot, traitSlot, State.IS) || isObserved(modelSlot, traitSlot, State.IS_NOT);
+    }
+
+    @Override
+    public List<Trait> getRelatedTraits(IndividualModel relatedObject, State state) {
+        List<Trait> res = new ArrayList<>();
+        int modelSlot = findModelSlot(relatedObject);
+        for (int t = 0; t < traitsNumber; t++)
+            if (isObserved(modelSlot, t, state))
+                res.add(TRAITS.get(traits[t]));
+        return res;
+    }
+
+    /**
+     * Read-only view of container related with single state.
+     */
+    private final class ContainerView extends AbstractMap<Trait, Set<IndividualModel>> {
+        private final State state;
+
+        ContainerView(State state) {
+            this.state = state;
+        }
+
+        @Override
+        public Set<IndividualModel> get(Object key) {
+            int traitSlot = findTraitSlot(key);
+            return traitSlot >= 0 && isPresent(traitSlot, state) ? new ModelsView(traitSlot, state) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int traitSlot = findTraitSlot(key);
+            return traitSlot >= 0 && isPresent(traitSlot, state);
+        }
+
+        @Override
+        public int size() {
+            int res = 0;
+            for (int t = 0; t < traitsNumber; t++)
+                if (isPresent(t, state))
+                    res++;
+            return res;
+        }
+
+        @Override
+        public Set<Entry<Trait, Set<IndividualModel>>> entrySet() {
+            return new AbstractSet<Entry<Trait, Set<IndividualModel>>>() {
+                @Override
+                public Iterator<Entry<Trait, Set<IndividualModel>>> iterator() {
+                    return new SlotIterator<Entry<Trait, Set<IndividualModel>>>(traitsNumber) {
+                        @Override
+                        boolean isIncluded(int slot) {
+                            return isPresent(slot, state);
+                        }
+
+                        @Override
+                        Entry<Trait, Set<IndividualModel>> get(int slot) {
+                            return new SimpleImmutableEntry<>(TRAITS.get(traits[slot]), new ModelsView(slot, state));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ContainerView.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only view of individual models related with single trait in container of single state.
+     */
+    private final class ModelsView extends AbstractSet<IndividualModel> {
+        private final int traitSlot;
+        private final State state;
+
+        ModelsView(int traitSlot, State state) {
+            this.traitSlot = traitSlot;
+            this.state = state;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return isObserved(findModelSlot(o), traitSlot, state);
+        }
+
+        @Override
+        public Iterator<IndividualModel> iterator() {
+            return new SlotIterator<IndividualModel>(modelsNumber) {
+                @Override
+                boolean isIncluded(int slot) {
+                    return isObserved(slot, traitSlot, state);
+                }
+
+                @Override
+                IndividualModel get(int slot) {
+                    return MODELS.get(models[slot]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int res = 0;
+            for (int m = 0; m < modelsNumber; m++)
+                if (isObserved(m, traitSlot, state))
+                    res++;
+            return res;
+        }
+    }
+
+    /**
+     * Iterates over slots accepted by isIncluded(..).
+     */
+    private abstract static class SlotIterator<E> implements Iterator<E> {
+        private final int number;
+        private int next = -1;
+
+        SlotIterator(int number) {
+            this.number = number;
+        }
+
+        abstract boolean isIncluded(int slot);
+
+        abstract E get(int slot);
+
+        private int findNext() {
+            int res = next + 1;
+            while (res < number && !isIncluded(res))
+                res++;
+            return res;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return findNext() < number;
+        }
+
+        @Override
+        public E next() {
+            int slot = findNext();
+            if (slot >= number)
+                throw new NoSuchElementException();
+            next = slot;
+            return get(slot);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.Formula;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Aggregated counts of base profiles folded from long-term memory. Segment keeps the same counters as
+ * GroundingCounters (number of base profiles per individual model, trait and state, occurrences of traits and
+ * conjunctive cells for pairs of traits), but not base profiles themselves, so its size depends on number of observed
+ * individual models and traits instead of number of moments in time.
+ * Segment is immutable.
+ *
+ * @author Grzegorz Kostkowski
+ * @see BPCollection#consolidateLongTermMemory(int, int)
+ */
+public final class ConsolidatedSegment {
+
+    private final int beginTimestamp;
+    private final int endTimestamp;
+    private final int size;
+    private final Map<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> counters;
+
+    /**
+     * @param bps Folded base profiles, not empty.
+     */
+    ConsolidatedSegment(Collection<BaseProfile> bps) {
+        if (bps == null || bps.isEmpty())
+            throw new IllegalStateException("Collection of base profiles not specified or empty.");
+        int begin = Integer.MAX_VALUE, end = Integer.MIN_VALUE;
+        for (BaseProfile bp : bps) {
+            begin = Math.min(begin, bp.getTimestamp());
+            end = Math.max(end, bp.getTimestamp());
+        }
+        this.beginTimestamp = begin;
+        this.endTimestamp = end;
+        this.size = bps.size();
+        this.counters = GroundingCounters.count(bps);
+    }
+
+    /**
+     * Creates segment with given counters, e.g. restored from episodic journal.
+     */
+    ConsolidatedSegment(int beginTimestamp, int endTimestamp, int size,
+                        Map<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> counters) {
+        this.beginTimestamp = beginTimestamp;
+        this.endTimestamp = endTimestamp;
+        this.size = size;
+        this.counters = counters;
+    }
+
+    Map<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Timestamp of the oldest folded base profile.
+     */
+    public int getBeginTimestamp() {
+        return beginTimestamp;
+    }
+
+    /**
+     * @return Timestamp of the most recent folded base profile.
+     */
+    public int getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    /**
+     * @return Number of folded base profiles.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns number of folded base profiles which present individual model with given state of trait.
+     */
+    public int getCount(IndividualModel im, Trait trait, State state) {
+        Map<Trait, GroundingCounters.TraitCounters> byTrait = counters.get(im);
+        GroundingCounters.TraitCounters tc = byTrait != null ? byTrait.get(trait) : null;
+        return tc != null ? tc.states[state.ordinal()] : 0;
+    }
+
+    /**
+     * Checks if number of folded base profiles which belong to grounding set of given formula can be obtained from
+     * counters of this segment.
+     *
+     * @see GroundingCounters#isSupported(Formula)
+     */
+    public boolean isSupported(Formula formula) {
+        return GroundingCounters.isSupported(counters, formula);
+    }
+
+    /**
+     * Returns number of folded base profiles which belong to grounding set of given formula.
+     *
+     * @throws IllegalStateException When formula is not supported.
+     * @see #isSupported(Formula)
+     */
+    public int getGroundingCard(Formula formula) {
+        return GroundingCounters.getGroundingCard(counters, formula);
+    }
+
+    @Override
+    public String toString() {
+        return "ConsolidatedSegment{[" + beginTimestamp + ", " + endTimestamp + "], size=" + size + "}";
+    }
+}
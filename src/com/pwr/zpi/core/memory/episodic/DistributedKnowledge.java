@@ -8,13 +8,20 @@ import com.pwr.zpi.exceptions.InvalidFormulaException;
 import com.pwr.zpi.exceptions.NotConsistentDKException;
 import com.pwr.zpi.core.memory.semantic.IndividualModel;
 import com.pwr.zpi.io.Configuration;
+import com.pwr.zpi.language.ConjunctiveGrounding;
 import com.pwr.zpi.language.Formula;
 import com.pwr.zpi.language.Grounder;
+import com.pwr.zpi.language.GroundingMetrics;
+import com.pwr.zpi.language.GroundingStrategy;
 import com.pwr.zpi.language.Trait;
 import com.sun.istack.internal.NotNull;
 import javafx.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Class represents distribution of knowledge as  a set of "classes" established for given moment in time,
@@ -28,7 +35,17 @@ import java.util.*;
  * TA1 - Represents set of all base profiles, which are included in long-term memory and presents individualModel as described by
  * given trait.
  * Etc.
+ * Distribution is lazy: grounding sets, classes and proof of consistency are evaluated on first request and then
+ * memoised, so construction itself doesn't visit base profiles. It's safe when related observations base is published
+ * snapshot which doesn't change; otherwise distribution should be used before knowledge base is modified. The only
+ * exception is eviction policy which tracks grounding - then classes from working memory are built (and passed to
+ * policy) during construction.
+ * Grounding sets and classes are immutable persistent sets, so copies of distribution and distributions advanced
+ * from it share them instead of copying.
+ * Consistency is verified during construction according to current verification mode. Each failed check is counted
+ * and logged.
  *
+ * @see Configuration#DK_VERIFICATION
  * @author Grzegorz Kostkowski
  */
 public class DistributedKnowledge implements Cloneable {
@@ -39,6 +56,43 @@ public class DistributedKnowledge implements Cloneable {
      */
     private static final boolean DK_IS_COMPLEX = Configuration.DK_IS_COMPLEX;
 
+    /**
+     * Modes of verifying consistency of built distributions.
+     */
+    public enum Verification {
+        /**
+         * Each distribution is checked, inconsistent one is rejected with NotConsistentDKException.
+         */
+        ALWAYS,
+        /**
+         * Randomly chosen distributions are checked, inconsistency is only counted and logged.
+         */
+        SAMPLED,
+        /**
+         * Distributions are checked only on explicit request.
+         */
+        OFF;
+
+        /**
+         * Returns mode of given name. Unknown name is reported and replaced with ALWAYS mode.
+         *
+         * @param name Name of mode, case insensitive.
+         */
+        public static Verification forName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Unknown verification mode " + name + ", ALWAYS is used.");
+                return ALWAYS;
+            }
+        }
+    }
+
+    private static volatile Verification verification = Verification.forName(Configuration.DK_VERIFICATION);
+    private static volatile double verificationRate = Configuration.DK_VERIFICATION_RATE;
+    private static final LongAdder verified = new LongAdder();
+    private static final LongAdder inconsistent = new LongAdder();
+
 
     /**
      * Describes what kind of knowledge distribution this instance represents.
@@ -48,148 +102,454 @@ public class DistributedKnowledge implements Cloneable {
     private final Formula relatedFormula;
     private final List<Trait> traits;
     private final IndividualModel individualModel;
-    private Set<BaseProfile> inLM;
-    private Set<BaseProfile> inWM;
 
     private BPCollection relatedObservationsBase;
+    /**
+     * Strategy of grounding selected by agent, null if whole history is used.
+     */
+    private GroundingStrategy groundingStrategy;
 
     /**
      * Complementary formulas for this.relatedFormula. For convenience, complementary formulas contains also this.relatedFormula.
      */
     private List<Formula> complementaryFormulas = new ArrayList<>();
 
-    private Map<Formula, Set<BaseProfile>> groundingSetsMap;
     /**
-     * Map of classes for this knowledge distribution. Exact class is certain value in map
-     * and associated key is pair which represent mental model (relatedFormula) and memory type which are used
-     * to build such class.
+     * Grounding sets and classes of complementary formulas. They may be shared with distributions of other
+     * complementary formulas (see DistributedKnowledgeCache).
      */
-    private Map<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> dkClasses;
+    private final Distribution distribution;
+    /**
+     * Result of checking consistency, null until first request.
+     */
+    private Boolean consistent;
 
 
     public DistributedKnowledge(Agent agent, Formula formula, int timestamp, boolean makeCompleteDistribution)
             throws InvalidFormulaException, NotConsistentDKException {
-        if (agent == null || formula == null)
-            throw new NullPointerException("One of parameters is null.");
-        if (timestamp < 0)
-            throw new IllegalStateException("Not valid timestamp.");
+        this(agent, formula, makeCompleteDistribution, newDistribution(agent, formula, timestamp));
+    }
 
-        this.timestamp = timestamp;
+    public DistributedKnowledge(Agent agent, Formula formula)
+            throws InvalidFormulaException, NotConsistentDKException {
+        this(agent, formula, DK_IS_COMPLEX);
+    }
+
+    public DistributedKnowledge(Agent agent, Formula formula, int timestamp)
+            throws InvalidFormulaException, NotConsistentDKException {
+        this(agent, formula, timestamp, false);
+    }
+
+    public DistributedKnowledge(Agent agent, Formula formula, boolean makeCompleteDistribution)
+            throws InvalidFormulaException, NotConsistentDKException {
+        this(agent, formula, makeCompleteDistribution, newDistribution(agent, formula));
+    }
+
+    /**
+     * Creates distribution of knowledge for given formula which uses given grounding sets and classes.
+     *
+     * @param distribution Grounding sets and classes built for complementary formulas of given formula.
+     */
+    DistributedKnowledge(Agent agent, Formula formula, boolean makeCompleteDistribution, Distribution distribution)
+            throws InvalidFormulaException, NotConsistentDKException {
+        this.distribution = distribution;
+        this.timestamp = distribution.timestamp;
         this.relatedFormula = formula;
         this.traits = formula.getTraits();
         this.individualModel = formula.getModel();
-        dkClasses = new HashMap<>();
         dkIsComplex = makeCompleteDistribution;
 
-        relatedObservationsBase = agent.getKnowledgeBase();
+        relatedObservationsBase = distribution.base;
+        groundingStrategy = agent.getGroundingStrategy();
+        complementaryFormulas = formula.getComplementaryFormulas();
 
-        inLM = relatedObservationsBase.getBaseProfiles(timestamp, BPCollection.MemoryType.LM);
-        inWM = relatedObservationsBase.getBaseProfiles(timestamp, BPCollection.MemoryType.WM);
+        if (relatedObservationsBase.getEvictionPolicy().isGroundingTracked())
+            recordGrounding();
+        verify();
+    }
 
-//        if (makeCompleteDistribution)
-        complementaryFormulas = formula.getComplementaryFormulas();
-        groundingSetsMap = Grounder.getGroundingSets(complementaryFormulas, BPCollection.asBaseProfilesSet(inWM, inLM));
-        /*else {
-            groundingSetsMap = new HashMap<>();
-            groundingSetsMap.put(relatedFormula,
-                    Grounder.getGroundingSet(relatedFormula, BPCollection.asBaseProfilesSet(inWM, inLM)));
-        }*/
-
-        if (makeCompleteDistribution)
-            for (Formula cformula : complementaryFormulas) {
-                setDkClass(inWM, cformula, BPCollection.MemoryType.WM);
-                setDkClass(inLM, cformula, BPCollection.MemoryType.LM);
+    /**
+     * Creates copy of given distribution of knowledge which uses given grounding sets and classes.
+     */
+    private DistributedKnowledge(DistributedKnowledge dk, Distribution distribution) {
+        this.dkIsComplex = dk.dkIsComplex;
+        this.timestamp = distribution.timestamp;
+        this.relatedFormula = dk.relatedFormula;
+        this.traits = new ArrayList<>(dk.traits);
+        this.individualModel = dk.individualModel;
+        this.relatedObservationsBase = dk.relatedObservationsBase;
+        this.complementaryFormulas = new ArrayList<>(dk.complementaryFormulas);
+        this.distribution = distribution;
+        this.consistent = distribution == dk.distribution ? dk.consistent : null;
+        this.groundingStrategy = dk.groundingStrategy;
+    }
+
+    private static Distribution newDistribution(Agent agent, Formula formula, int timestamp)
+            throws InvalidFormulaException {
+        if (agent == null || formula == null)
+            throw new NullPointerException("One of parameters is null.");
+        return newDistribution(agent.getKnowledgeSnapshot(), formula, timestamp);
+    }
+
+    /**
+     * Creates distribution for timestamp of agent's knowledge snapshot, reading the snapshot once.
+     */
+    private static Distribution newDistribution(Agent agent, Formula formula) throws InvalidFormulaException {
+        if (agent == null || formula == null)
+            throw new NullPointerException("One of parameters is null.");
+        BPCollection base = agent.getKnowledgeSnapshot();
+        return newDistribution(base, formula, base.getTimestamp());
+    }
+
+    private static Distribution newDistribution(BPCollection base, Formula formula, int timestamp)
+            throws InvalidFormulaException {
+        if (timestamp < 0)
+            throw new IllegalStateException("Not valid timestamp.");
+        return new Distribution(base, timestamp, formula.getComplementaryFormulas());
+    }
+
+    /**
+     * Grounding sets and classes of one family of complementary formulas, for given moment in time and observations
+     * base. They are evaluated on first request and memoised, so single instance may be used by distributions of all
+     * formulas of family. Grounding sets and classes are persistent sets, so distribution advanced from earlier one
+     * shares with it all nodes which aren't affected by changes.
+     */
+    static final class Distribution {
+        private final BPCollection base;
+        private final int timestamp;
+        private final List<Formula> formulas;
+        private Map<Formula, Set<BaseProfile>> groundingSets;
+        /**
+         * Version of observations base for which grounding sets were evaluated.
+         */
+        private long version;
+        private final Map<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> classes = new HashMap<>();
+        private final Map<Formula, Boolean> consistency = new HashMap<>();
+
+        /**
+         * @param formulas Complementary formulas which make up family.
+         */
+        Distribution(BPCollection base, int timestamp, List<Formula> formulas) {
+            this.base = base;
+            this.timestamp = timestamp;
+            this.formulas = formulas;
+        }
+
+        synchronized Map<Formula, Set<BaseProfile>> getGroundingSets() {
+            if (groundingSets == null)
+                setGroundingSets(null);
+            return groundingSets;
+        }
+
+        /**
+         * Evaluates grounding sets from given grounding of conjunctions, unless they are already evaluated or given
+         * grounding concerns other observations base or moment in time.
+         *
+         * @param shared Grounding of conjunctions shared by formulas built on the same traits.
+         */
+        synchronized void groundWith(ConjunctiveGrounding shared) {
+            if (groundingSets == null && shared.isApplicable(base, timestamp))
+                setGroundingSets(shared);
+        }
+
+        private void setGroundingSets(ConjunctiveGrounding shared) {
+            long start = GroundingMetrics.start();
+            base.trackChanges();
+            version = base.getVersion();
+            try {
+                groundingSets = shared != null ? shared.getGroundingSets(formulas)
+                        : Grounder.getGroundingSets(formulas, base, timestamp);
+            } catch (InvalidFormulaException e) {
+                throw new IllegalStateException("Not able to build grounding sets.", e);
+            }
+            groundingSets.replaceAll((formula, set) -> PersistentProfileSet.of(set));
+            GroundingMetrics.stop(GroundingMetrics.Phase.DISTRIBUTION, formulas.get(0).getType(), start);
+            GroundingMetrics.count(GroundingMetrics.Counter.GROUNDING_SETS_BUILT, formulas.get(0).getType(),
+                    groundingSets.size());
+        }
+
+        synchronized Set<BaseProfile> getClass(Formula formula, BPCollection.MemoryType mem) {
+            Pair<Formula, BPCollection.MemoryType> key = new Pair<>(formula, mem);
+            if (!classes.containsKey(key))
+                setClasses(formula);
+            return classes.get(key);
+        }
+
+        /**
+         * Builds classes from both memories for given formula. Each base profile of grounding set is assigned to
+         * memory which stores it (at its timestamp), so neither of memories has to be copied.
+         */
+        private void setClasses(Formula formula) {
+            long start = GroundingMetrics.start();
+            Set<BaseProfile> groundingSet = getGroundingSets().get(formula);
+            PersistentProfileSet.Builder inWM = PersistentProfileSet.empty().toBuilder(),
+                    inLM = PersistentProfileSet.empty().toBuilder();
+            for (BaseProfile bp : groundingSet) {
+                if (base.getMemoryContainer(BPCollection.MemoryType.WM).contains(bp))
+                    inWM.add(bp);
+                if (base.getMemoryContainer(BPCollection.MemoryType.LM).contains(bp))
+                    inLM.add(bp);
             }
-        else {
-            setDkClass(inWM, formula, BPCollection.MemoryType.WM);
-            setDkClass(inLM, formula, BPCollection.MemoryType.LM);
+            classes.put(new Pair<>(formula, BPCollection.MemoryType.WM), inWM.build());
+            classes.put(new Pair<>(formula, BPCollection.MemoryType.LM), inLM.build());
+            GroundingMetrics.stop(GroundingMetrics.Phase.DISTRIBUTION, formula.getType(), start);
+            GroundingMetrics.count(GroundingMetrics.Counter.PROFILES_SCANNED, formula.getType(), groundingSet.size());
         }
 
-        checkIfConsistent();
+        /**
+         * Evaluates grounding sets and classes of this distribution from grounding sets and classes of given earlier
+         * distribution of the same family, re-evaluating only base profiles related with changed moments in time and
+         * with moments after timestamp of given distribution. Nothing is done if grounding sets of this distribution
+         * are already evaluated, grounding sets of given one aren't, or changes aren't known.
+         *
+         * @param old     Distribution of the same formulas for not later moment in time.
+         * @param changed Timestamps of base profiles which changed since grounding sets of old distribution were
+         *                evaluated; if null, they are taken from observations base.
+         * @return True if grounding sets were evaluated from given distribution.
+         */
+        boolean advanceFrom(Distribution old, Set<Integer> changed) {
+            Map<Formula, Set<BaseProfile>> oldSets;
+            Map<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> oldClasses;
+            long oldVersion;
+            synchronized (old) {
+                oldSets = old.groundingSets;
+                oldClasses = new HashMap<>(old.classes);
+                oldVersion = old.version;
+            }
+            if (old == this || oldSets == null || old.timestamp > timestamp || old.base.getOrigin() != base.getOrigin()
+                    || !oldSets.keySet().equals(new HashSet<>(formulas)))
+                return false;
+            synchronized (this) {
+                if (groundingSets != null)
+                    return false;
+                long currVersion = base.getVersion();
+                if (changed == null)
+                    changed = base.getChangedTimestamps(oldVersion);
+                if (changed == null)
+                    return false;
+                long start = GroundingMetrics.start();
+                Set<BaseProfile> current = new HashSet<>();
+                for (BPCollection.MemoryType mem : BPCollection.MemoryType.values()) {
+                    TimestampedMemory memory = base.getMemoryContainer(mem);
+                    current.addAll(memory.subSet(old.timestamp + 1, timestamp));
+                    for (int ts : changed)
+                        if (ts <= old.timestamp)
+                            current.addAll(memory.getAll(ts));
+                }
+                Map<Formula, Set<BaseProfile>> fresh;
+                try {
+                    fresh = Grounder.getGroundingSets(formulas, current);
+                } catch (InvalidFormulaException e) {
+                    throw new IllegalStateException("Not able to build grounding sets.", e);
+                }
+                groundingSets = new HashMap<>();
+                for (Formula formula : formulas)
+                    groundingSets.put(formula, advance(oldSets.get(formula), changed, fresh.get(formula), null));
+                for (Map.Entry<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> entry : oldClasses.entrySet())
+                    classes.put(entry.getKey(), advance(entry.getValue(), changed,
+                            fresh.get(entry.getKey().getKey()), entry.getKey().getValue()));
+                version = currVersion;
+                GroundingMetrics.stop(GroundingMetrics.Phase.DISTRIBUTION, formulas.get(0).getType(), start);
+                GroundingMetrics.count(GroundingMetrics.Counter.PROFILES_SCANNED, formulas.get(0).getType(),
+                        current.size());
+                return true;
+            }
+        }
 
+        /**
+         * Derives from given set of base profiles set without ones related with changed moments in time and with
+         * given new base profiles. Nodes of old set which aren't affected are shared.
+         *
+         * @param mem If given, only new base profiles stored in this memory are added.
+         */
+        private PersistentProfileSet advance(Set<BaseProfile> old, Set<Integer> changed, Set<BaseProfile> added,
+                                             BPCollection.MemoryType mem) {
+            PersistentProfileSet.Builder res = PersistentProfileSet.of(old).toBuilder();
+            for (int ts : changed)
+                res.removeTimestamp(ts);
+            for (BaseProfile bp : added)
+                if (mem == null || base.getMemoryContainer(mem).contains(bp))
+                    res.add(bp);
+            return res.build();
+        }
+
+        /**
+         * Checks classes associated with single mental model. Classes are subsets of grounding set by definition,
+         * so it's enough to check if each base profile of grounding set belongs to exactly one of them.
+         */
+        synchronized boolean isConsistent(Formula formula) {
+            Boolean res = consistency.get(formula);
+            if (res == null) {
+                Set<BaseProfile> ra = getClass(formula, BPCollection.MemoryType.WM),
+                        ta = getClass(formula, BPCollection.MemoryType.LM);
+                res = true;
+                for (BaseProfile bp : getGroundingSets().get(formula))
+                    if (ra.contains(bp) == ta.contains(bp)) {
+                        res = false;
+                        break;
+                    }
+                consistency.put(formula, res);
+            }
+            return res;
+        }
     }
 
-    public DistributedKnowledge(Agent agent, Formula formula)
-            throws InvalidFormulaException, NotConsistentDKException {
-        this(agent, formula, agent.getKnowledgeBase().getTimestamp(), DK_IS_COMPLEX);
+
+    /**
+     * Returns distribution of knowledge for the same formula and later moment in time, assuming that related
+     * observations base already contains given changes. If grounding sets of this distribution were evaluated, then
+     * grounding sets and classes of new one are derived from them by re-evaluating only base profiles related with
+     * given base profiles' moments in time and with moments from range (timestamp, newTimestamp].
+     *
+     * @param newTimestamp Moment in time of new distribution, not earlier than timestamp of this one.
+     * @param added        Base profiles added (or modified) since this distribution was built.
+     * @param shiftedToLM  Base profiles shifted from working memory to long-term memory since this distribution was
+     *                     built.
+     * @return New distribution of knowledge.
+     * @throws NotConsistentDKException If new distribution is verified and it isn't consistent.
+     */
+    public DistributedKnowledge advanceTo(int newTimestamp, Collection<BaseProfile> added,
+                                          Collection<BaseProfile> shiftedToLM) throws NotConsistentDKException {
+        if (added == null || shiftedToLM == null)
+            throw new NullPointerException("One of parameters is null.");
+        if (newTimestamp < timestamp)
+            throw new IllegalStateException("Not valid timestamp.");
+        Set<Integer> changed = new HashSet<>();
+        for (BaseProfile bp : added)
+            changed.add(bp.getTimestamp());
+        for (BaseProfile bp : shiftedToLM)
+            changed.add(bp.getTimestamp());
+        Distribution next = new Distribution(relatedObservationsBase, newTimestamp, distribution.formulas);
+        next.advanceFrom(distribution, changed);
+        DistributedKnowledge res = new DistributedKnowledge(this, next);
+        res.verify();
+        return res;
     }
 
-    public DistributedKnowledge(Agent agent, Formula formula, int timestamp)
-            throws InvalidFormulaException, NotConsistentDKException {
-        this(agent, formula, timestamp, false);
+    /**
+     * Prepares given distribution of the same formulas for later moment in time (e.g. newly built for update of
+     * holon). If grounding sets of this distribution were evaluated and given one doesn't have them yet, then they
+     * are derived from grounding sets and classes of this distribution, by applying only changes made in knowledge
+     * base in the meantime.
+     *
+     * @param newer More recent distribution of knowledge.
+     * @return Given distribution.
+     */
+    public DistributedKnowledge advanceTo(DistributedKnowledge newer) {
+        if (newer == null)
+            throw new NullPointerException("Distributed knowledge not specified.");
+        newer.distribution.advanceFrom(distribution, null);
+        return newer;
     }
 
-    public DistributedKnowledge(Agent agent, Formula formula, boolean makeCompleteDistribution)
-            throws InvalidFormulaException, NotConsistentDKException {
-        this(agent, formula, agent.getKnowledgeBase().getTimestamp(), makeCompleteDistribution);
+    /**
+     * Checks consistency if current verification mode requires so.
+     */
+    private void verify() throws NotConsistentDKException {
+        if (isVerified()) {
+            try {
+                checkConsistency();
+            } catch (NotConsistentDKException e) {
+                if (verification == Verification.ALWAYS)
+                    throw e;
+            }
+        }
     }
 
-    private DistributedKnowledge(boolean dkIsComplex, int timestamp, Formula relatedFormula, List<Trait> traits,
-                                IndividualModel individualModel, Set<BaseProfile> inLM, Set<BaseProfile> inWM,
-                                BPCollection relatedObservationsBase, List<Formula> complementaryFormulas,
-                                Map<Formula, Set<BaseProfile>> groundingSetsMap,
-                                 Map<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> dkClasses) {
-        this.dkIsComplex = dkIsComplex;
-        this.timestamp = timestamp;
-        this.relatedFormula = relatedFormula;
-        this.traits = traits;
-        this.individualModel = individualModel;
-        this.inLM = inLM;
-        this.inWM = inWM;
-        this.relatedObservationsBase = relatedObservationsBase;
-        this.complementaryFormulas = complementaryFormulas;
-        this.groundingSetsMap = groundingSetsMap;
-        this.dkClasses = dkClasses;
+    /**
+     * Performs checking to ensure that knowledge distribution was built in proper way. Classes are built if needed,
+     * result of checking is memoised.
+     *
+     * @throws NotConsistentDKException If some base profile of grounding set doesn't belong to exactly one class.
+     */
+    public synchronized void checkConsistency() throws NotConsistentDKException {
+        if (consistent == null) {
+            long start = GroundingMetrics.start();
+            boolean res = true;
+            for (Formula currFormula : getDistributedFormulas())
+                res &= distribution.isConsistent(currFormula);
+            consistent = res;
+            GroundingMetrics.stop(GroundingMetrics.Phase.CONSISTENCY_CHECK, relatedFormula.getType(), start);
+            verified.increment();
+            if (!res) {
+                inconsistent.increment();
+                Logger.getAnonymousLogger().log(Level.WARNING, "Distributed knowledge of " + relatedFormula
+                        + " at " + timestamp + " is not consistent.");
+            }
+        }
+        if (!consistent)
+            throw new NotConsistentDKException();
+    }
+
+    private static boolean isVerified() {
+        switch (verification) {
+            case ALWAYS:
+                return true;
+            case SAMPLED:
+                return ThreadLocalRandom.current().nextDouble() < verificationRate;
+            default:
+                return false;
+        }
     }
 
+    /**
+     * @return Current mode of verifying consistency of new distributions.
+     */
+    public static Verification getVerification() {
+        return verification;
+    }
 
     /**
-     * Performs checking to ensure that knowledge distribution was built in proper way.
+     * Changes mode of verifying consistency of new distributions, e.g. tests may force checking each of them.
      */
-    private void checkIfConsistent() throws NotConsistentDKException {
-        if (!dkIsComplex)
-            makeChecking(relatedFormula);
-        else for (Formula currFormula : complementaryFormulas)
-            makeChecking(currFormula);
+    public static void setVerification(Verification verification) {
+        if (verification == null)
+            throw new NullPointerException("Verification mode not specified.");
+        DistributedKnowledge.verification = verification;
     }
 
     /**
-     * Performs checking for classes associated with single mental model.
+     * Changes part of distributions which are checked in SAMPLED mode.
      *
-     * @param formula
-     * @throws NotConsistentDKException
+     * @param rate Value from range [0, 1].
      */
-    private void makeChecking(Formula formula) throws NotConsistentDKException {
-        Set<BaseProfile> ra = getDkClassByDesc(formula, BPCollection.MemoryType.WM),
-                ta = getDkClassByDesc(formula, BPCollection.MemoryType.LM);
-        Set<BaseProfile> groundingSet = groundingSetsMap.get(formula);
-
-        Set<BaseProfile> intersection1 = new HashSet<BaseProfile>(inWM);
-        intersection1.retainAll(groundingSet);
-        if (!ra.containsAll(intersection1))
-            throw new NotConsistentDKException();
-        Set<BaseProfile> intersection2 = new HashSet<BaseProfile>(inLM);
-        intersection2.retainAll(groundingSet);
-        if (!ta.containsAll(intersection2))
-            throw new NotConsistentDKException();
-        Set<BaseProfile> intersection3 = new HashSet<BaseProfile>(ra);
-        intersection3.retainAll(ta);
-        if (!intersection3.isEmpty())
-            throw new NotConsistentDKException();
-        Set<BaseProfile> sum = new HashSet<BaseProfile>(ra);
-        sum.addAll(ta);
-        if (!sum.containsAll(groundingSet))
-            throw new NotConsistentDKException();
+    public static void setVerificationRate(double rate) {
+        if (rate < 0 || rate > 1)
+            throw new IllegalStateException("Not valid verification rate.");
+        verificationRate = rate;
+    }
+
+    /**
+     * @return Number of distributions checked so far.
+     */
+    public static long getVerifiedCount() {
+        return verified.sum();
     }
 
-    private void setDkClass(Set<BaseProfile> affectedMemory, Formula formula,
-                            BPCollection.MemoryType memType) {
-        Set<BaseProfile> currClass = new HashSet<>();
-        dkClasses.put(new Pair<>(formula, memType), currClass);
-        currClass.addAll(affectedMemory);
-        currClass.retainAll(groundingSetsMap.get(formula));
+    /**
+     * @return Number of distributions which turned out to be not consistent.
+     */
+    public static long getInconsistentCount() {
+        return inconsistent.sum();
+    }
+
+    /**
+     * Passes base profiles from working memory which belong to built classes to eviction policy of related
+     * observations base.
+     */
+    private void recordGrounding() {
+        List<BaseProfile> grounded = new ArrayList<>();
+        for (Formula formula : getDistributedFormulas())
+            grounded.addAll(getDkClassByDesc(formula, BPCollection.MemoryType.WM));
+        relatedObservationsBase.recordGrounding(grounded);
     }
 
+    /**
+     * @return Formulas (mental models) for which classes are built.
+     */
+    private List<Formula> getDistributedFormulas() {
+        return dkIsComplex ? complementaryFormulas : Collections.singletonList(relatedFormula);
+    }
 
     /**
      * Return knowledge distribution classes. Note that if there are no base profile that fulfills requirements then
@@ -199,7 +559,11 @@ public class DistributedKnowledge implements Cloneable {
      */
     @NotNull
     public Map<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> getDistributionClasses() {
-        return dkClasses;
+        Map<Pair<Formula, BPCollection.MemoryType>, Set<BaseProfile>> res = new HashMap<>();
+        for (Formula formula : getDistributedFormulas())
+            for (BPCollection.MemoryType mem : BPCollection.MemoryType.values())
+                res.put(new Pair<>(formula, mem), distribution.getClass(formula, mem));
+        return res;
     }
 
     public int getTimestamp() {
@@ -226,18 +590,16 @@ public class DistributedKnowledge implements Cloneable {
     }
 
     /**
-     * Gives class according to given relatedFormula (mental model) and memory type.
+     * Gives class according to given relatedFormula (mental model) and memory type. Class is built on first request.
      *
-     * @return
+     * @return Class or null if classes aren't built for given formula.
      */
     public Set<BaseProfile> getDkClassByDesc(Formula formula, BPCollection.MemoryType mem) {
-        return dkClasses.get(new Pair<>(formula, mem));
+        return getDistributedFormulas().contains(formula) ? distribution.getClass(formula, mem) : null;
     }
 
     public Set<BaseProfile> getGroundingSet(Formula formula) {
-        TreeMap<Formula, Set<BaseProfile>> res = new TreeMap<>();
-        res.putAll(groundingSetsMap);
-        return res.get(formula);
+        return mapOfGroundingSets().get(formula);
     }
 
     public boolean isDkComplex() {
@@ -248,12 +610,19 @@ public class DistributedKnowledge implements Cloneable {
         return relatedObservationsBase;
     }
 
+    /**
+     * @return Strategy of grounding used for this knowledge distribution or null if whole history is used.
+     */
+    public GroundingStrategy getGroundingStrategy() {
+        return groundingStrategy;
+    }
+
     public boolean isRelated(Formula formula) {
         return formula.equals(this.relatedFormula) || complementaryFormulas.contains(formula);
     }
 
     public Map<Formula, Set<BaseProfile>> mapOfGroundingSets() {
-        return groundingSetsMap;
+        return distribution.getGroundingSets();
     }
 
     /**
@@ -279,15 +648,15 @@ public class DistributedKnowledge implements Cloneable {
     }
 
     public Map<Formula, Set<BaseProfile>> getGroundingSetsMap() {
-        return groundingSetsMap;
+        return distribution.getGroundingSets();
     }
 
 
+    /**
+     * Creates copy which shares grounding sets and classes with this distribution.
+     */
     @Override
-    public DistributedKnowledge clone() throws CloneNotSupportedException {
-        return new DistributedKnowledge(dkIsComplex, timestamp, relatedFormula, new ArrayList<>(traits), individualModel,
-                new HashSet<>(inLM), new HashSet<>(inWM), relatedObservationsBase,
-                new ArrayList<>(complementaryFormulas), new HashMap<>(groundingSetsMap),
-                new HashMap<>(dkClasses));
+    public synchronized DistributedKnowledge clone() throws CloneNotSupportedException {
+        return new DistributedKnowledge(this, distribution);
     }
 }
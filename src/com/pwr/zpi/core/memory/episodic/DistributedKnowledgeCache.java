@@ -0,0 +1,195 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.Agent;
+import com.pwr.zpi.exceptions.InvalidFormulaException;
+import com.pwr.zpi.exceptions.NotConsistentDKException;
+import com.pwr.zpi.language.ConjunctiveGrounding;
+import com.pwr.zpi.language.Formula;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of distributions of knowledge built by single agent. Entries are identified by standard formula, moment in
+ * time, observations base and its version, so all complementary formulas share one entry and entry is never used
+ * after knowledge base was modified. Each entry keeps lazily evaluated grounding sets and classes, and each request gets
+ * its own DistributedKnowledge which uses them.
+ * Key doesn't refer to observations base - snapshots are identified by collection which published them, so snapshots
+ * with the same content share entries. When entry for newer version of knowledge base is created, entries of older
+ * versions are removed, so cache doesn't keep outdated snapshots alive.
+ * Cache holds at most given number of entries and removes the least recently used one when it's full. Cache may be
+ * used by many threads (e.g. answer threads).
+ *
+ * @author Grzegorz Kostkowski
+ * @see com.pwr.zpi.io.Configuration#DK_CACHE_SIZE
+ */
+public final class DistributedKnowledgeCache {
+
+    private final int capacity;
+    private final Map<Key, DistributedKnowledge.Distribution> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity Maximal number of entries; non-positive value disables caching.
+     */
+    public DistributedKnowledgeCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, DistributedKnowledge.Distribution>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, DistributedKnowledge.Distribution> eldest) {
+                return size() > DistributedKnowledgeCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns distribution of knowledge for given formula, built by given agent for given moment in time. Grounding
+     * sets and classes are taken from cache if they were already requested for any complementary formula at the same
+     * version of agent's knowledge.
+     *
+     * @see DistributedKnowledge#DistributedKnowledge(Agent, Formula, int, boolean)
+     */
+    public DistributedKnowledge get(Agent agent, Formula formula, int timestamp, boolean makeCompleteDistribution)
+            throws InvalidFormulaException, NotConsistentDKException {
+        return get(agent, formula, timestamp, makeCompleteDistribution, null);
+    }
+
+    /**
+     * Returns distribution of knowledge for given formula, like get(Agent, Formula, int, boolean). If grounding sets
+     * of distribution aren't evaluated yet, they are composed from given grounding of conjunctions (when it concerns
+     * the same observations base and moment in time).
+     *
+     * @param shared Grounding of conjunctions shared by formulas built on the same traits; may be null.
+     */
+    public DistributedKnowledge get(Agent agent, Formula formula, int timestamp, boolean makeCompleteDistribution,
+                                    ConjunctiveGrounding shared)
+            throws InvalidFormulaException, NotConsistentDKException {
+        if (agent == null)
+            throw new NullPointerException("One of parameters is null.");
+        return get(agent, agent.getKnowledgeSnapshot(), formula, timestamp, makeCompleteDistribution, shared);
+    }
+
+    /**
+     * Returns distribution of knowledge for given formula, like get(Agent, Formula, int, boolean, ConjunctiveGrounding),
+     * but built on given observations base instead of snapshot of agent's knowledge read by this method. It lets
+     * caller use the same snapshot (and its timestamp) for whole request.
+     *
+     * @param base Observations base of agent, usually its knowledge snapshot.
+     */
+    public DistributedKnowledge get(Agent agent, BPCollection base, Formula formula, int timestamp,
+                                    boolean makeCompleteDistribution, ConjunctiveGrounding shared)
+            throws InvalidFormulaException, NotConsistentDKException {
+        if (agent == null || base == null || formula == null)
+            throw new NullPointerException("One of parameters is null.");
+        if (timestamp < 0)
+            throw new IllegalStateException("Not valid timestamp.");
+
+        DistributedKnowledge.Distribution distribution;
+        if (capacity <= 0) {
+            misses.increment();
+            distribution = new DistributedKnowledge.Distribution(base, timestamp, formula.getComplementaryFormulas());
+        } else {
+            Key key = new Key(formula.getStandardFormula(), timestamp, base);
+            synchronized (entries) {
+                distribution = entries.get(key);
+                if (distribution == null) {
+                    distribution = new DistributedKnowledge.Distribution(base, timestamp,
+                            key.formula.getComplementaryFormulas());
+                    entries.keySet().removeIf(cached -> cached.isOlderThan(key));
+                    entries.put(key, distribution);
+                    misses.increment();
+                } else hits.increment();
+            }
+        }
+        if (shared != null)
+            distribution.groundWith(shared);
+        return new DistributedKnowledge(agent, formula, makeCompleteDistribution, distribution);
+    }
+
+    /**
+     * Removes all entries. Counters are kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Number of requests served with cached entry.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of requests which created new entry (or all requests when caching is disabled).
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Key {
+        private final Formula formula;
+        private final int timestamp;
+        /**
+         * Identifier of collection which published observations base (or of base itself if it isn't snapshot).
+         */
+        private final long origin;
+        /**
+         * Snapshots don't change, so they aren't mixed with modifiable collection of the same version.
+         */
+        private final boolean snapshot;
+        private final long version;
+
+        Key(Formula formula, int timestamp, BPCollection base) {
+            this.formula = formula;
+            this.timestamp = timestamp;
+            this.origin = base.getOrigin().getId();
+            this.snapshot = base.isSnapshot();
+            this.version = base.getVersion();
+        }
+
+        /**
+         * Checks if this key concerns older version of the same knowledge base than given key.
+         */
+        boolean isOlderThan(Key key) {
+            return origin == key.origin && version < key.version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return timestamp == that.timestamp && origin == that.origin && snapshot == that.snapshot
+                    && version == that.version && formula.equals(that.formula);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = formula.hashCode();
+            result = 31 * result + timestamp;
+            result = 31 * result + Long.hashCode(origin);
+            result = 31 * result + Boolean.hashCode(snapshot);
+            return 31 * result + Long.hashCode(version);
+        }
+    }
+}
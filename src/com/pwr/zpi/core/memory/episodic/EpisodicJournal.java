@@ -0,0 +1,695 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.episodic.BPCollection.MemoryType;
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.core.memory.semantic.ObjectType;
+import com.pwr.zpi.core.memory.semantic.identifiers.Identifier;
+import com.pwr.zpi.io.Configuration;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of modifications of BPCollection, which allows to restore content of collection after restart
+ * without replaying observations. Journal records base profiles stored in memories, observations included in stored
+ * base profiles, shifts of base profiles between memories, removals, changes of timestamp and consolidations of
+ * long-term memory. Periodically (see sync()) compact checkpoint of whole collection is written and journal starts
+ * anew, so recovery reads the latest checkpoint and the tail of journal written after it.
+ * Directory of journal contains files checkpoint-N.bin and journal-N.bin, where journal-N.bin contains records written
+ * after checkpoint-N.bin. Both files consist of records framed with length and CRC32 checksum, so torn tail of journal
+ * (e.g. after crash) is detected and discarded during recovery. Checkpoint is written to temporary file and renamed, so
+ * it's never seen partially written. Traits and individual models are written once, as dictionary records, and then
+ * referred by integer identifiers. Checkpoint includes grounding counters, so they aren't recounted during recovery.
+ * Records are buffered: they reach file when sync() or close() is called or buffer is full.
+ *
+ * @author Grzegorz Kostkowski
+ * @see BPCollection#setJournal(EpisodicJournal)
+ * @see Configuration#JOURNAL_CHECKPOINT_INTERVAL
+ */
+public final class EpisodicJournal implements BaseProfileObserver, Closeable {
+
+    private static final byte TRAIT = 1, MODEL = 2, PUT = 3, REMOVE = 4, SHIFT = 5, OBSERVATION = 6, TIMESTAMP = 7,
+            CONSOLIDATE = 8, SEGMENT = 9, COUNTERS = 10, END = 11;
+    private static final String CHECKPOINT_PREFIX = "checkpoint-", JOURNAL_PREFIX = "journal-", EXTENSION = ".bin";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final MemoryType[] MEMORY_TYPES = MemoryType.values();
+    private static final State[] STATES = State.values();
+
+    private final Path directory;
+    private final int checkpointInterval;
+    private final Interner<Trait> traits = new Interner<>();
+    private final Interner<IndividualModel> models = new Interner<>();
+    private final Record record = new Record();
+    private final Record definition = new Record();
+    /**
+     * Sequence number of the latest checkpoint, -1 if there is no checkpoint.
+     */
+    private long sequence = -1;
+    private DataOutputStream out;
+    private long recordsSinceCheckpoint;
+    private BPCollection collection;
+
+    /**
+     * Opens journal kept in given directory, which is created if it doesn't exist. Interval of checkpoints is taken
+     * from configuration.
+     *
+     * @param directory
+     * @return Opened journal, not attached to any collection.
+     */
+    public static EpisodicJournal open(Path directory) {
+        return new EpisodicJournal(directory, Configuration.JOURNAL_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param directory
+     * @param checkpointInterval Number of records after which sync() writes new checkpoint.
+     */
+    public EpisodicJournal(Path directory, int checkpointInterval) {
+        if (directory == null)
+            throw new NullPointerException("Directory not specified.");
+        if (checkpointInterval <= 0)
+            throw new IllegalArgumentException("Interval of checkpoints should be positive.");
+        this.directory = directory;
+        this.checkpointInterval = checkpointInterval;
+        try {
+            Files.createDirectories(directory);
+            String pattern = CHECKPOINT_PREFIX + "*" + EXTENSION;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, pattern)) {
+                for (Path file : files)
+                    sequence = Math.max(sequence, parseSequence(file, CHECKPOINT_PREFIX));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open episodic journal in " + directory, e);
+        }
+    }
+
+    private static long parseSequence(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(prefix) || !name.endsWith(EXTENSION))
+            return -1;
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path getFile(String prefix, long seq) {
+        return directory.resolve(prefix + seq + EXTENSION);
+    }
+
+    /**
+     * @return True if directory contains checkpoint, so recover() restores some collection.
+     */
+    public synchronized boolean hasCheckpoint() {
+        return sequence >= 0;
+    }
+
+    /**
+     * Restores collection from the latest checkpoint and the tail of journal and attaches this journal to it. Torn or
+     * corrupted tail of journal is discarded. If there is no checkpoint, then new empty collection is returned.
+     *
+     * @return Restored collection.
+     * @throws IllegalStateException If journal is already attached or it can't be read.
+     */
+    public synchronized BPCollection recover() {
+        if (collection != null)
+            throw new IllegalStateException("Journal is already attached to collection.");
+        BPCollection res = new BPCollection();
+        if (sequence < 0) {
+            res.setJournal(this);
+            return res;
+        }
+        Path checkpoint = getFile(CHECKPOINT_PREFIX, sequence);
+        Path journal = getFile(JOURNAL_PREFIX, sequence);
+        res.getGroundingCounters().defer();
+        try {
+            if (!replay(checkpoint, res).complete)
+                throw new IllegalStateException("Checkpoint " + checkpoint + " is incomplete.");
+            if (Files.exists(journal)) {
+                Replay tail = replay(journal, res);
+                if (tail.validLength < Files.size(journal)) {
+                    Logger.getAnonymousLogger().log(Level.WARNING, "Discarding torn tail of episodic journal "
+                            + journal + " after " + tail.validLength + " bytes.");
+                    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                        channel.truncate(tail.validLength);
+                    }
+                }
+                recordsSinceCheckpoint = tail.records;
+            }
+            out = openJournal(journal, true);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot recover episodic journal from " + directory, e);
+        }
+        collection = res;
+        res.bindJournal(this);
+        return res;
+    }
+
+    /**
+     * Attaches this journal to given collection and writes checkpoint of its current content.
+     */
+    synchronized void attach(BPCollection collection) {
+        if (this.collection != null && this.collection != collection)
+            throw new IllegalStateException("Journal is already attached to other collection.");
+        this.collection = collection;
+        collection.bindJournal(this);
+        checkpoint();
+    }
+
+    /**
+     * @return Individual models known to this journal (e.g. restored by recover()).
+     */
+    public synchronized Set<IndividualModel> getIndividualModels() {
+        Set<IndividualModel> res = new HashSet<>();
+        for (int i = 0; i < models.size(); i++)
+            res.add(models.get(i));
+        return res;
+    }
+
+    /**
+     * Flushes buffered records and writes new checkpoint if at least checkpoint interval records were written since
+     * the latest checkpoint.
+     *
+     * @return True if checkpoint was written.
+     */
+    public synchronized boolean sync() {
+        checkAttached();
+        if (recordsSinceCheckpoint >= checkpointInterval) {
+            checkpoint();
+            return true;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw writeFailure(e);
+        }
+        return false;
+    }
+
+    /**
+     * Writes checkpoint of whole attached collection and starts new journal. Files of previous checkpoint and journal
+     * are removed once new checkpoint is complete.
+     */
+    public synchronized void checkpoint() {
+        if (collection == null)
+            throw new IllegalStateException("Journal is not attached to collection.");
+        long next = sequence + 1;
+        Path checkpoint = getFile(CHECKPOINT_PREFIX, next);
+        Path temporary = directory.resolve(CHECKPOINT_PREFIX + next + ".tmp");
+        try {
+            DataOutputStream previous = out;
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+                 DataOutputStream checkpointOut = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE))) {
+                out = checkpointOut;
+                writeCheckpoint();
+                checkpointOut.flush();
+                file.getFD().sync();
+            } finally {
+                out = previous;
+            }
+            Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (out != null)
+                out.close();
+            out = openJournal(getFile(JOURNAL_PREFIX, next), false);
+            deleteFilesBefore(next);
+        } catch (IOException e) {
+            throw writeFailure(e);
+        }
+        sequence = next;
+        recordsSinceCheckpoint = 0;
+    }
+
+    private void deleteFilesBefore(long seq) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                long fileSeq = Math.max(parseSequence(file, CHECKPOINT_PREFIX), parseSequence(file, JOURNAL_PREFIX));
+                if (fileSeq >= 0 && fileSeq < seq)
+                    Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void writeCheckpoint() {
+        timestampSet(collection.getTimestamp());
+        for (int i = 0; i < traits.size(); i++)
+            writeTrait(i, traits.get(i));
+        for (int i = 0; i < models.size(); i++)
+            writeModel(i, models.get(i));
+        for (MemoryType memType : MEMORY_TYPES)
+            for (BaseProfile bp : collection.getMemoryContainer(memType))
+                profileStored(memType, bp);
+        for (ConsolidatedSegment segment : collection.getConsolidatedSegments())
+            writeSegment(segment);
+        record.begin(COUNTERS);
+        writeCounters(collection.getGroundingCounters().getCounters());
+        write(record);
+        record.begin(END);
+        write(record);
+    }
+
+    private static DataOutputStream openJournal(Path file, boolean append) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), append), BUFFER_SIZE));
+    }
+
+    /**
+     * Flushes buffered records, closes journal and detaches it from collection.
+     */
+    @Override
+    public synchronized void close() {
+        if (collection != null) {
+            collection.bindJournal(null);
+            collection = null;
+        }
+        try {
+            if (out != null)
+                out.close();
+        } catch (IOException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot close episodic journal.", e);
+        }
+        out = null;
+    }
+
+    private void checkAttached() {
+        if (collection == null || out == null)
+            throw new IllegalStateException("Journal is not attached to collection.");
+    }
+
+    private static IllegalStateException writeFailure(IOException e) {
+        return new IllegalStateException("Cannot write episodic journal.", e);
+    }
+
+    synchronized void profileStored(MemoryType type, BaseProfile bp) {
+        record.begin(PUT);
+        record.writeByte(type.ordinal());
+        record.writeInt(bp.getTimestamp());
+        for (State state : STATES) {
+            Map<Trait, Set<IndividualModel>> container = bp.getContainer(state);
+            record.writeInt(container.size());
+            for (Map.Entry<Trait, Set<IndividualModel>> entry : container.entrySet()) {
+                record.writeInt(getTraitId(entry.getKey()));
+                record.writeInt(entry.getValue().size());
+                for (IndividualModel im : entry.getValue())
+                    record.writeInt(getModelId(im));
+            }
+        }
+        write(record);
+    }
+
+    synchronized void profileRemoved(MemoryType type, int timestamp) {
+        record.begin(REMOVE);
+        record.writeByte(type.ordinal());
+        record.writeInt(timestamp);
+        write(record);
+    }
+
+    synchronized void profileShifted(MemoryType src, MemoryType dest, int timestamp) {
+        record.begin(SHIFT);
+        record.writeByte(src.ordinal());
+        record.writeByte(dest.ordinal());
+        record.writeInt(timestamp);
+        write(record);
+    }
+
+    synchronized void timestampSet(int timestamp) {
+        record.begin(TIMESTAMP);
+        record.writeInt(timestamp);
+        write(record);
+    }
+
+    synchronized void consolidated(int endTimestamp) {
+        record.begin(CONSOLIDATE);
+        record.writeInt(endTimestamp);
+        write(record);
+    }
+
+    @Override
+    public synchronized void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state,
+                                              boolean traitIntroduced) {
+        for (MemoryType memType : MEMORY_TYPES)
+            if (isStored(memType, bp)) {
+                record.begin(OBSERVATION);
+                record.writeByte(memType.ordinal());
+                record.writeInt(bp.getTimestamp());
+                record.writeInt(getModelId(im));
+                record.writeInt(getTraitId(trait));
+                record.writeByte(state.ordinal());
+                write(record);
+            }
+    }
+
+    @Override
+    public synchronized void profileReplaced(BaseProfile bp) {
+        for (MemoryType memType : MEMORY_TYPES)
+            if (isStored(memType, bp))
+                profileStored(memType, bp);
+    }
+
+    private boolean isStored(MemoryType memType, BaseProfile bp) {
+        if (collection != null)
+            for (BaseProfile stored : collection.getMemoryContainer(memType).getAll(bp.getTimestamp()))
+                if (stored == bp)
+                    return true;
+        return false;
+    }
+
+    private void writeSegment(ConsolidatedSegment segment) {
+        record.begin(SEGMENT);
+        record.writeInt(segment.getBeginTimestamp());
+        record.writeInt(segment.getEndTimestamp());
+        record.writeInt(segment.size());
+        writeCounters(segment.getCounters());
+        write(record);
+    }
+
+    private void writeCounters(Map<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> counters) {
+        record.writeInt(counters.size());
+        for (Map.Entry<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> imEntry : counters.entrySet()) {
+            record.writeInt(getModelId(imEntry.getKey()));
+            record.writeInt(imEntry.getValue().size());
+            for (Map.Entry<Trait, GroundingCounters.TraitCounters> entry : imEntry.getValue().entrySet()) {
+                GroundingCounters.TraitCounters tc = entry.getValue();
+                record.writeInt(getTraitId(entry.getKey()));
+                for (int count : tc.states)
+                    record.writeInt(count);
+                record.writeInt(tc.occurrences);
+                record.writeInt(tc.contradictions);
+                record.writeInt(tc.conjunctions != null ? tc.conjunctions.size() : 0);
+                if (tc.conjunctions != null)
+                    for (Map.Entry<Trait, int[]> conjunction : tc.conjunctions.entrySet()) {
+                        record.writeInt(getTraitId(conjunction.getKey()));
+                        for (int cell : conjunction.getValue())
+                            record.writeInt(cell);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Returns identifier of given trait. New trait is defined by dictionary record written before current record.
+     */
+    private int getTraitId(Trait trait) {
+        int res = traits.findId(trait);
+        if (res < 0) {
+            res = traits.getId(trait);
+            writeTrait(res, trait);
+        }
+        return res;
+    }
+
+    private int getModelId(IndividualModel im) {
+        int res = models.findId(im);
+        if (res < 0) {
+            ObjectType type = im.getType();
+            List<Trait> typeTraits = type != null && type.getTraits() != null ? type.getTraits()
+                    : Collections.emptyList();
+            for (Trait trait : typeTraits)
+                getTraitId(trait);
+            res = models.getId(im);
+            writeModel(res, im);
+        }
+        return res;
+    }
+
+    private void writeTrait(int id, Trait trait) {
+        definition.begin(TRAIT);
+        definition.writeInt(id);
+        definition.writeString(trait.getName());
+        write(definition);
+    }
+
+    private void writeModel(int id, IndividualModel im) {
+        ObjectType type = im.getType();
+        definition.begin(MODEL);
+        definition.writeInt(id);
+        definition.writeString(im.getIdentifier().getClass().getName());
+        definition.writeString(im.getIdentifier().getIdNumber());
+        definition.writeByte(type != null ? 1 : 0);
+        if (type != null) {
+            definition.writeString(type.getTypeId());
+            List<Trait> typeTraits = type.getTraits() != null ? type.getTraits() : Collections.emptyList();
+            definition.writeInt(typeTraits.size());
+            for (Trait trait : typeTraits)
+                definition.writeInt(traits.getId(trait));
+        }
+        write(definition);
+    }
+
+    private void write(Record rec) {
+        if (out == null)
+            throw new IllegalStateException("Journal is closed.");
+        try {
+            rec.writeTo(out);
+        } catch (IOException e) {
+            throw writeFailure(e);
+        }
+        recordsSinceCheckpoint++;
+    }
+
+    /**
+     * Applies records of given file to given collection, which has no journal attached.
+     */
+    private Replay replay(Path file, BPCollection target) throws IOException {
+        Replay res = new Replay();
+        CRC32 crc = new CRC32();
+        byte[] payload = new byte[256];
+        long fileSize = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file),
+                BUFFER_SIZE))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > fileSize - res.validLength - 2 * Integer.BYTES)
+                    break;
+                if (payload.length < length)
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                int checksum;
+                try {
+                    in.readFully(payload, 0, length);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum)
+                    break;
+                if (apply(ByteBuffer.wrap(payload, 0, length), target))
+                    res.complete = true;
+                res.validLength += length + 2 * Integer.BYTES;
+                res.records++;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return True if record marks end of checkpoint.
+     */
+    private boolean apply(ByteBuffer data, BPCollection target) throws IOException {
+        byte type = data.get();
+        switch (type) {
+            case TRAIT:
+                readTrait(data);
+                break;
+            case MODEL:
+                readModel(data);
+                break;
+            case PUT: {
+                MemoryType memType = MEMORY_TYPES[data.get()];
+                target.restore(memType, readProfile(data));
+                break;
+            }
+            case REMOVE: {
+                MemoryType memType = MEMORY_TYPES[data.get()];
+                target.restoreRemoval(memType, data.getInt());
+                break;
+            }
+            case SHIFT: {
+                MemoryType src = MEMORY_TYPES[data.get()];
+                MemoryType dest = MEMORY_TYPES[data.get()];
+                target.restoreShift(src, dest, data.getInt());
+                break;
+            }
+            case OBSERVATION: {
+                MemoryType memType = MEMORY_TYPES[data.get()];
+                int timestamp = data.getInt();
+                IndividualModel im = models.get(data.getInt());
+                Trait trait = traits.get(data.getInt());
+                target.restoreObservation(memType, timestamp, im, trait, STATES[data.get()]);
+                break;
+            }
+            case TIMESTAMP:
+                target.setTimestamp(data.getInt());
+                break;
+            case CONSOLIDATE:
+                target.restoreConsolidation(data.getInt());
+                break;
+            case SEGMENT:
+                target.restoreSegment(readSegment(data));
+                break;
+            case COUNTERS:
+                target.getGroundingCounters().load(readCounters(data));
+                break;
+            case END:
+                return true;
+            default:
+                throw new IOException("Unknown type of record in episodic journal: " + type);
+        }
+        return false;
+    }
+
+    private void readTrait(ByteBuffer data) throws IOException {
+        int id = data.getInt();
+        defined(id, traits.getId(new Trait(readString(data))));
+    }
+
+    private void readModel(ByteBuffer data) throws IOException {
+        int id = data.getInt();
+        String identifierClass = readString(data);
+        Identifier identifier;
+        try {
+            identifier = (Identifier) Class.forName(identifierClass).newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IOException("Cannot restore identifier of class " + identifierClass, e);
+        }
+        identifier.setId(readString(data));
+        ObjectType type = null;
+        if (data.get() != 0) {
+            String typeId = readString(data);
+            int traitsNumber = data.getInt();
+            List<Trait> typeTraits = new ArrayList<>(traitsNumber);
+            for (int i = 0; i < traitsNumber; i++)
+                typeTraits.add(traits.get(data.getInt()));
+            type = new ObjectType(typeId, typeTraits);
+        }
+        defined(id, models.getId(new IndividualModel(identifier, type)));
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void defined(int expected, int actual) throws IOException {
+        if (expected != actual)
+            throw new IOException("Dictionary of episodic journal is inconsistent.");
+    }
+
+    private BaseProfile readProfile(ByteBuffer data) {
+        BaseProfile res = BPCollection.newBaseProfile(data.getInt());
+        for (State state : STATES) {
+            int traitsNumber = data.getInt();
+            for (int i = 0; i < traitsNumber; i++) {
+                Trait trait = traits.get(data.getInt());
+                int modelsNumber = data.getInt();
+                Set<IndividualModel> ims = new HashSet<>(modelsNumber * 4 / 3 + 1);
+                for (int j = 0; j < modelsNumber; j++)
+                    ims.add(models.get(data.getInt()));
+                res.addObservations(state, ims, trait);
+            }
+        }
+        return res;
+    }
+
+    private ConsolidatedSegment readSegment(ByteBuffer data) {
+        int begin = data.getInt(), end = data.getInt(), size = data.getInt();
+        return new ConsolidatedSegment(begin, end, size, readCounters(data));
+    }
+
+    private Map<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> readCounters(ByteBuffer data) {
+        int modelsNumber = data.getInt();
+        Map<IndividualModel, Map<Trait, GroundingCounters.TraitCounters>> counters = new HashMap<>();
+        for (int i = 0; i < modelsNumber; i++) {
+            Map<Trait, GroundingCounters.TraitCounters> byTrait = new HashMap<>();
+            counters.put(models.get(data.getInt()), byTrait);
+            int traitsNumber = data.getInt();
+            for (int j = 0; j < traitsNumber; j++) {
+                GroundingCounters.TraitCounters tc = new GroundingCounters.TraitCounters();
+                byTrait.put(traits.get(data.getInt()), tc);
+                for (int k = 0; k < tc.states.length; k++)
+                    tc.states[k] = data.getInt();
+                tc.occurrences = data.getInt();
+                tc.contradictions = data.getInt();
+                int conjunctionsNumber = data.getInt();
+                for (int k = 0; k < conjunctionsNumber; k++) {
+                    int[] cells = tc.getConjunction(traits.get(data.getInt()));
+                    for (int l = 0; l < cells.length; l++)
+                        cells[l] = data.getInt();
+                }
+            }
+        }
+        return counters;
+    }
+
+    private static class Replay {
+        long validLength;
+        long records;
+        boolean complete;
+    }
+
+    /**
+     * Buffer of single record, encoded in big-endian order like DataOutput.
+     */
+    private static final class Record {
+        private final CRC32 crc = new CRC32();
+        private byte[] buf = new byte[256];
+        private int count;
+
+        void begin(byte type) {
+            count = 0;
+            writeByte(type);
+        }
+
+        void writeByte(int v) {
+            ensureCapacity(1);
+            buf[count++] = (byte) v;
+        }
+
+        void writeInt(int v) {
+            ensureCapacity(Integer.BYTES);
+            buf[count++] = (byte) (v >>> 24);
+            buf[count++] = (byte) (v >>> 16);
+            buf[count++] = (byte) (v >>> 8);
+            buf[count++] = (byte) v;
+        }
+
+        void writeString(String v) {
+            byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+
+        private void ensureCapacity(int length) {
+            if (count + length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            crc.reset();
+            crc.update(buf, 0, count);
+            out.writeInt(count);
+            out.write(buf, 0, count);
+            out.writeInt((int) crc.getValue());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects base profile which is shifted from full working memory to long-term memory. Policy follows content of
+ * working memory (it is notified by BPCollection about each base profile added to and removed from working memory)
+ * and, if it requires so, about groundings which used base profiles from working memory. Thanks to that victim is
+ * selected in constant or logarithmic time, without visiting entire working memory.
+ * The most recent base profile is never selected, because it collects observations for current moment in time.
+ * Policy counts evictions and recorded groundings.
+ *
+ * @author Grzegorz Kostkowski
+ * @see com.pwr.zpi.io.Configuration#WM_EVICTION_POLICY
+ */
+public abstract class EvictionPolicy {
+
+    /**
+     * Available policies.
+     */
+    public enum Type {
+        /**
+         * Evicts base profile with the lowest timestamp.
+         */
+        FIFO,
+        /**
+         * Evicts base profile which was least recently used by grounding.
+         */
+        LRU,
+        /**
+         * Evicts base profile which contributed least to recent groundings.
+         */
+        SALIENCE;
+
+        public EvictionPolicy create() {
+            switch (this) {
+                case LRU:
+                    return new LruEvictionPolicy();
+                case SALIENCE:
+                    return new SalienceEvictionPolicy();
+                default:
+                    return new FifoEvictionPolicy();
+            }
+        }
+    }
+
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong groundings = new AtomicLong();
+
+    /**
+     * Creates policy of given type. Unknown name is reported and replaced with FIFO policy.
+     *
+     * @param name Name of policy type, case insensitive.
+     * @return New policy.
+     */
+    public static EvictionPolicy forName(String name) {
+        try {
+            return Type.valueOf(name.trim().toUpperCase()).create();
+        } catch (IllegalArgumentException | NullPointerException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Unknown eviction policy " + name + ", FIFO is used.");
+            return Type.FIFO.create();
+        }
+    }
+
+    public abstract Type getType();
+
+    /**
+     * Called after base profile was added to working memory.
+     */
+    abstract void register(BaseProfile bp);
+
+    /**
+     * Called after base profile was removed from working memory.
+     */
+    abstract void unregister(BaseProfile bp);
+
+    /**
+     * Removes all registered base profiles.
+     */
+    abstract void clear();
+
+    /**
+     * Selects base profile which should leave given working memory. Doesn't modify state of policy - selected base
+     * profile is unregistered when it is actually removed from working memory.
+     *
+     * @param workingMemory Working memory followed by this policy.
+     * @return Base profile other than the most recent one, or null if there is no such.
+     */
+    abstract BaseProfile selectVictim(TimestampedMemory workingMemory);
+
+    /**
+     * Informs if policy uses information about groundings. If not, recording groundings can be omitted.
+     */
+    public boolean isGroundingTracked() {
+        return false;
+    }
+
+    /**
+     * Called for base profiles from working memory which were used by single grounding.
+     *
+     * @param bps Base profiles from working memory which belong to grounding sets built by grounding.
+     */
+    void grounded(Collection<BaseProfile> bps) {
+    }
+
+    /**
+     * Selects victim and counts eviction.
+     *
+     * @see #selectVictim(TimestampedMemory)
+     */
+    final BaseProfile evict(TimestampedMemory workingMemory) {
+        BaseProfile victim = selectVictim(workingMemory);
+        if (victim != null)
+            evictions.incrementAndGet();
+        return victim;
+    }
+
+    final void recordGrounding(Collection<BaseProfile> bps) {
+        if (isGroundingTracked()) {
+            groundings.incrementAndGet();
+            grounded(bps);
+        }
+    }
+
+    /**
+     * @return Number of base profiles evicted from working memory with this policy.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Number of groundings recorded by this policy. Always 0 for policies which don't track groundings.
+     */
+    public long getGroundingCount() {
+        return groundings.get();
+    }
+
+    /**
+     * Resets counters of evictions and groundings.
+     */
+    public void resetCounters() {
+        evictions.set(0);
+        groundings.set(0);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+/**
+ * Evicts base profile with the lowest timestamp. Working memory is ordered by timestamp, so policy doesn't keep any
+ * state and victim is found in logarithmic time.
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class FifoEvictionPolicy extends EvictionPolicy {
+
+    @Override
+    public Type getType() {
+        return Type.FIFO;
+    }
+
+    @Override
+    void register(BaseProfile bp) {
+    }
+
+    @Override
+    void unregister(BaseProfile bp) {
+    }
+
+    @Override
+    void clear() {
+    }
+
+    @Override
+    BaseProfile selectVictim(TimestampedMemory workingMemory) {
+        BaseProfile oldest = workingMemory.getOldest();
+        return oldest != workingMemory.getLatest() ? oldest : null;
+    }
+}
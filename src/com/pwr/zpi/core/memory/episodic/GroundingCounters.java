@@ -0,0 +1,490 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.Formula;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.*;
+
+/**
+ * Keeps cardinalities of grounding sets for all individual models and traits observed in collection of base profiles.
+ * For every pair (individual model, trait) it counts base profiles presenting individual model with each state of trait.
+ * For every observed pair of traits of the same individual model it counts four conjunctive cells (IS or IS_NOT of
+ * first trait combined with IS or IS_NOT of second trait).
+ * Counters are updated incrementally when new observations are included in registered base profiles, therefore
+ * cardinalities of grounding sets for simple modalities and modal conjunctions are available in constant time.
+ * Grounding set of modal disjunction (regular or exclusive) is a union of grounding sets of its dependent conjunctions,
+ * so its cardinality is a sum of respective conjunctive cells, as long as no base profile presents individual model
+ * with both IS and IS_NOT state of one of traits (such base profiles would be counted in more than one cell).
+ * When some registered base profile is replaced as a whole, counters are rebuilt lazily on next reading.
+ * Counters may also include consolidated segments - aggregated counts of base profiles which are no longer kept
+ * individually.
+ * Note: Counters describe all registered base profiles, so they can replace grounding sets only for moments in time
+ * which are not older than the most recent registered base profile.
+ * Copy of counters shares maps of counters with source counters, which are copied by counters modified first (in the
+ * same way as containers of GroundingIndex).
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class GroundingCounters implements BaseProfileObserver {
+
+    private static final State[] CLEAR_STATES = {State.IS, State.IS_NOT};
+
+    /**
+     * Counters related with single pair (individual model, trait).
+     */
+    static class TraitCounters {
+        /**
+         * Number of base profiles per state of trait (indexed by ordinal of state).
+         */
+        final int[] states = new int[State.values().length];
+        /**
+         * Sum of numbers of base profile's containers which include trait, counted over base profiles presenting
+         * individual model with clear state of trait.
+         */
+        int occurrences;
+        /**
+         * Number of base profiles presenting individual model with both IS and IS_NOT state of trait.
+         */
+        int contradictions;
+        /**
+         * Conjunctive cells for pairs with other traits of the same individual model.
+         */
+        Map<Trait, int[]> conjunctions;
+
+        TraitCounters() {
+        }
+
+        TraitCounters(TraitCounters source) {
+            add(source, 1);
+        }
+
+        int[] getConjunction(Trait other) {
+            if (conjunctions == null)
+                conjunctions = new HashMap<>();
+            return conjunctions.computeIfAbsent(other, t -> new int[4]);
+        }
+
+        void add(TraitCounters other, int sign) {
+            for (int i = 0; i < states.length; i++)
+                states[i] += sign * other.states[i];
+            occurrences += sign * other.occurrences;
+            contradictions += sign * other.contradictions;
+            if (other.conjunctions != null)
+                for (Map.Entry<Trait, int[]> entry : other.conjunctions.entrySet()) {
+                    int[] cells = getConjunction(entry.getKey());
+                    for (int i = 0; i < cells.length; i++)
+                        cells[i] += sign * entry.getValue()[i];
+                }
+        }
+    }
+
+    /**
+     * Registered base profiles, null for copy of counters - it doesn't know base profiles registered in source.
+     */
+    private final Set<BaseProfile> registered;
+    private final List<ConsolidatedSegment> segments;
+    private final Map<IndividualModel, Map<Trait, TraitCounters>> counters;
+    private int maxTimestamp = Integer.MIN_VALUE;
+    private boolean upToDate = true;
+    /**
+     * Maps and counters which may be modified in place, because they were created by these counters. Null if counters
+     * don't share them with other ones.
+     */
+    private Set<Object> owned;
+
+    public GroundingCounters() {
+        registered = Collections.newSetFromMap(new IdentityHashMap<>());
+        segments = new ArrayList<>();
+        counters = new HashMap<>();
+    }
+
+    /**
+     * Creates counters equal to given ones, which share maps of counters with them. Copy counts base profiles which
+     * are registered or unregistered later, but it doesn't follow modifications of base profiles, so they shouldn't
+     * change.
+     *
+     * @param source
+     */
+    GroundingCounters(GroundingCounters source) {
+        source.rebuildIfRequired();
+        source.owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        registered = null;
+        segments = new ArrayList<>(source.segments);
+        counters = new HashMap<>(source.counters);
+        maxTimestamp = source.maxTimestamp;
+    }
+
+    /**
+     * Includes content of given base profile in counters.
+     *
+     * @param bp
+     */
+    public void register(BaseProfile bp) {
+        if (registered == null || registered.add(bp)) {
+            if (upToDate)
+                include(bp, 1);
+            maxTimestamp = Math.max(maxTimestamp, bp.getTimestamp());
+        }
+    }
+
+    /**
+     * Excludes content of given base profile from counters.
+     *
+     * @param bp
+     */
+    public void unregister(BaseProfile bp) {
+        if ((registered == null || registered.remove(bp)) && upToDate)
+            include(bp, -1);
+    }
+
+    /**
+     * Includes counts of given consolidated segment. Base profiles folded into segment shouldn't be registered.
+     *
+     * @param segment
+     */
+    void addSegment(ConsolidatedSegment segment) {
+        segments.add(segment);
+        if (upToDate)
+            merge(segment.getCounters(), 1);
+        maxTimestamp = Math.max(maxTimestamp, segment.getEndTimestamp());
+    }
+
+    void removeSegment(ConsolidatedSegment segment) {
+        if (segments.remove(segment) && upToDate)
+            merge(segment.getCounters(), -1);
+    }
+
+    /**
+     * @return Current counters of all registered base profiles and segments. They shouldn't be modified.
+     */
+    Map<IndividualModel, Map<Trait, TraitCounters>> getCounters() {
+        rebuildIfRequired();
+        return counters;
+    }
+
+    /**
+     * Stops counting registered base profiles until counters are loaded (or rebuilt on next reading).
+     */
+    void defer() {
+        upToDate = false;
+        counters.clear();
+    }
+
+    /**
+     * Replaces counters with given ones, which should describe all registered base profiles and segments (e.g.
+     * counters restored from episodic journal).
+     */
+    void load(Map<IndividualModel, Map<Trait, TraitCounters>> counters) {
+        this.counters.clear();
+        this.counters.putAll(counters);
+        upToDate = true;
+    }
+
+    /**
+     * Removes all base profiles and consolidated segments from counters.
+     */
+    public void clear() {
+        if (registered != null)
+            registered.clear();
+        segments.clear();
+        counters.clear();
+        maxTimestamp = Integer.MIN_VALUE;
+        upToDate = true;
+    }
+
+    @Override
+    public void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state, boolean traitIntroduced) {
+        if (!upToDate || !isRegistered(bp))
+            return;
+        TraitCounters tc = getCounters(im, trait);
+        tc.states[state.ordinal()]++;
+        boolean isClear = state != State.MAYHAPS;
+        if (isClear && !isObserved(bp, im, trait, state == State.IS ? State.IS_NOT : State.IS))
+            tc.occurrences += countOccurrences(bp, trait) - (traitIntroduced ? 1 : 0);
+        else if (isClear)
+            tc.contradictions++;
+        if (traitIntroduced)
+            for (IndividualModel clearIM : getClearlyObserved(bp, trait))
+                getCounters(clearIM, trait).occurrences++;
+        if (isClear)
+            for (State otherState : CLEAR_STATES)
+                for (Trait otherTrait : bp.getRelatedTraits(im, otherState))
+                    if (!otherTrait.equals(trait)) {
+                        tc.getConjunction(otherTrait)[cell(state, otherState)]++;
+                        getCounters(im, otherTrait).getConjunction(trait)[cell(otherState, state)]++;
+                    }
+    }
+
+    @Override
+    public void profileReplaced(BaseProfile bp) {
+        if (isRegistered(bp)) {
+            upToDate = false;
+            maxTimestamp = Math.max(maxTimestamp, bp.getTimestamp());
+        }
+    }
+
+    /**
+     * Counts content of given base profiles.
+     *
+     * @return Counters grouped by individual models and traits.
+     */
+    static Map<IndividualModel, Map<Trait, TraitCounters>> count(Collection<BaseProfile> bps) {
+        GroundingCounters res = new GroundingCounters();
+        for (BaseProfile bp : bps)
+            res.include(bp, 1);
+        return res.counters;
+    }
+
+    /**
+     * Copy of counters doesn't know which base profiles are registered, so it doesn't follow their modifications.
+     */
+    private boolean isRegistered(BaseProfile bp) {
+        return registered != null && registered.contains(bp);
+    }
+
+    /**
+     * Adds (sign = 1) or subtracts (sign = -1) counters of source to counters of target.
+     */
+    private void merge(Map<IndividualModel, Map<Trait, TraitCounters>> source, int sign) {
+        for (Map.Entry<IndividualModel, Map<Trait, TraitCounters>> imEntry : source.entrySet())
+            for (Map.Entry<Trait, TraitCounters> traitEntry : imEntry.getValue().entrySet())
+                getCounters(imEntry.getKey(), traitEntry.getKey()).add(traitEntry.getValue(), sign);
+    }
+
+    /**
+     * Adds (sign = 1) or subtracts (sign = -1) content of given base profile to counters.
+     */
+    private void include(BaseProfile bp, int sign) {
+        Map<IndividualModel, Map<Trait, Integer>> observedStates = new HashMap<>();
+        for (State state : State.values())
+            for (Map.Entry<Trait, Set<IndividualModel>> entry : bp.getContainer(state).entrySet())
+                for (IndividualModel im : entry.getValue())
+                    observedStates.computeIfAbsent(im, k -> new HashMap<>())
+                            .merge(entry.getKey(), 1 << state.ordinal(), (m1, m2) -> m1 | m2);
+
+        for (Map.Entry<IndividualModel, Map<Trait, Integer>> imEntry : observedStates.entrySet())
+            for (Map.Entry<Trait, Integer> traitEntry : imEntry.getValue().entrySet()) {
+                TraitCounters tc = getCounters(imEntry.getKey(), traitEntry.getKey());
+                int mask = traitEntry.getValue();
+                for (State state : State.values())
+                    if (hasState(mask, state))
+                        tc.states[state.ordinal()] += sign;
+                if (hasState(mask, State.IS) || hasState(mask, State.IS_NOT))
+                    tc.occurrences += sign * countOccurrences(bp, traitEntry.getKey());
+                if (hasState(mask, State.IS) && hasState(mask, State.IS_NOT))
+                    tc.contradictions += sign;
+                for (Map.Entry<Trait, Integer> otherEntry : imEntry.getValue().entrySet())
+                    if (!otherEntry.getKey().equals(traitEntry.getKey()))
+                        for (State state : CLEAR_STATES)
+                            for (State otherState : CLEAR_STATES)
+                                if (hasState(mask, state) && hasState(otherEntry.getValue(), otherState))
+                                    tc.getConjunction(otherEntry.getKey())[cell(state, otherState)] += sign;
+            }
+    }
+
+    private void rebuildIfRequired() {
+        if (upToDate)
+            return;
+        counters.clear();
+        maxTimestamp = Integer.MIN_VALUE;
+        for (ConsolidatedSegment segment : segments) {
+            merge(segment.getCounters(), 1);
+            maxTimestamp = Math.max(maxTimestamp, segment.getEndTimestamp());
+        }
+        for (BaseProfile bp : registered) {
+            include(bp, 1);
+            maxTimestamp = Math.max(maxTimestamp, bp.getTimestamp());
+        }
+        upToDate = true;
+    }
+
+    private static boolean hasState(int mask, State state) {
+        return (mask & 1 << state.ordinal()) != 0;
+    }
+
+    private static int cell(State first, State second) {
+        return (first == State.IS ? 0 : 2) + (second == State.IS ? 0 : 1);
+    }
+
+    private static boolean isObserved(BaseProfile bp, IndividualModel im, Trait trait, State state) {
+        Set<IndividualModel> ims = bp.getContainer(state).get(trait);
+        return ims != null && ims.contains(im);
+    }
+
+    /**
+     * Returns number of base profile's containers which include given trait.
+     */
+    private static int countOccurrences(BaseProfile bp, Trait trait) {
+        int res = 0;
+        for (State state : State.values())
+            if (bp.getContainer(state).containsKey(trait))
+                res++;
+        return res;
+    }
+
+    private static Set<IndividualModel> getClearlyObserved(BaseProfile bp, Trait trait) {
+        Set<IndividualModel> res = new HashSet<>();
+        for (State state : CLEAR_STATES) {
+            Set<IndividualModel> ims = bp.getContainer(state).get(trait);
+            if (ims != null)
+                res.addAll(ims);
+        }
+        return res;
+    }
+
+    /**
+     * Returns counters which may be modified in place, creating them (or copying shared ones) if required.
+     */
+    private TraitCounters getCounters(IndividualModel im, Trait trait) {
+        Map<Trait, TraitCounters> byTrait = counters.get(im);
+        if (byTrait == null || !owns(byTrait))
+            counters.put(im, byTrait = own(byTrait == null ? new HashMap<>() : new HashMap<>(byTrait)));
+        TraitCounters res = byTrait.get(trait);
+        if (res == null || !owns(res))
+            byTrait.put(trait, res = own(res == null ? new TraitCounters() : new TraitCounters(res)));
+        return res;
+    }
+
+    private boolean owns(Object container) {
+        return owned == null || owned.contains(container);
+    }
+
+    private <T> T own(T container) {
+        if (owned != null)
+            owned.add(container);
+        return container;
+    }
+
+    private TraitCounters findCounters(IndividualModel im, Trait trait) {
+        rebuildIfRequired();
+        return findCounters(counters, im, trait);
+    }
+
+    private static TraitCounters findCounters(Map<IndividualModel, Map<Trait, TraitCounters>> counters,
+                                              IndividualModel im, Trait trait) {
+        Map<Trait, TraitCounters> byTrait = counters.get(im);
+        return byTrait != null ? byTrait.get(trait) : null;
+    }
+
+    /**
+     * Checks if counters describe all base profiles related with moment in time from range [beginning, timestamp],
+     * namely whether there is no registered base profile more recent than given timestamp.
+     *
+     * @param timestamp
+     * @return
+     */
+    public boolean isComplete(int timestamp) {
+        rebuildIfRequired();
+        return timestamp >= maxTimestamp;
+    }
+
+    /**
+     * Returns number of base profiles which present individual model with given state of trait.
+     */
+    public int getCount(IndividualModel im, Trait trait, State state) {
+        TraitCounters tc = findCounters(im, trait);
+        return tc != null ? tc.states[state.ordinal()] : 0;
+    }
+
+    /**
+     * Returns number of base profiles which present individual model with given clear states of two different traits.
+     *
+     * @throws IllegalStateException When one of states is not clear (IS or IS_NOT).
+     */
+    public int getCount(IndividualModel im, Trait fstTrait, State fstState, Trait sndTrait, State sndState) {
+        if (fstState == State.MAYHAPS || sndState == State.MAYHAPS)
+            throw new IllegalStateException("Conjunctive cells are counted only for clear states.");
+        TraitCounters tc = findCounters(im, fstTrait);
+        if (tc == null || tc.conjunctions == null)
+            return 0;
+        int[] cells = tc.conjunctions.get(sndTrait);
+        return cells != null ? cells[cell(fstState, sndState)] : 0;
+    }
+
+    /**
+     * Returns sum of numbers of containers (described, not described and indefinite observations) which include given
+     * trait, counted over base profiles which present individual model as described or not described by this trait.
+     */
+    public int getOccurrences(IndividualModel im, Trait trait) {
+        TraitCounters tc = findCounters(im, trait);
+        return tc != null ? tc.occurrences : 0;
+    }
+
+    /**
+     * Checks if cardinality of grounding set for given formula can be obtained from counters. It's possible for
+     * simple modalities and for modal conjunctions and disjunctions (regular and exclusive) of two different traits
+     * with clear states. Disjunctions are supported only if no counted base profile presents individual model with
+     * contradictory states of one of traits.
+     *
+     * @param formula
+     * @return
+     */
+    public boolean isSupported(Formula formula) {
+        rebuildIfRequired();
+        return isSupported(counters, formula);
+    }
+
+    /**
+     * Returns cardinality of grounding set for given formula.
+     *
+     * @param formula Simple modality, modal conjunction or modal disjunction.
+     * @return
+     * @see #isSupported(Formula)
+     */
+    public int getGroundingCard(Formula formula) {
+        rebuildIfRequired();
+        return getGroundingCard(counters, formula);
+    }
+
+    /**
+     * Checks if cardinality of grounding set for given formula can be obtained from given counters.
+     *
+     * @see #isSupported(Formula)
+     */
+    static boolean isSupported(Map<IndividualModel, Map<Trait, TraitCounters>> counters, Formula formula) {
+        if (formula.getType() == Formula.Type.SIMPLE_MODALITY)
+            return true;
+        List<Trait> traits = formula.getTraits();
+        if (formula.getStates().contains(State.MAYHAPS) || traits.get(0).equals(traits.get(1)))
+            return false;
+        if (formula.getType() == Formula.Type.MODAL_CONJUNCTION)
+            return true;
+        for (Trait trait : traits) {
+            TraitCounters tc = findCounters(counters, formula.getModel(), trait);
+            if (tc != null && tc.contradictions != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns cardinality of grounding set for given formula, obtained from given counters.
+     *
+     * @throws IllegalStateException When formula is not supported.
+     * @see #isSupported(Formula)
+     */
+    static int getGroundingCard(Map<IndividualModel, Map<Trait, TraitCounters>> counters, Formula formula) {
+        if (!isSupported(counters, formula))
+            throw new IllegalStateException("Formula not supported by grounding counters.");
+        IndividualModel im = formula.getModel();
+        List<Trait> traits = formula.getTraits();
+        TraitCounters tc = findCounters(counters, im, traits.get(0));
+        if (formula.getType() == Formula.Type.SIMPLE_MODALITY)
+            return tc != null ? tc.states[formula.getStates().get(0).ordinal()] : 0;
+        int[] cells = tc != null && tc.conjunctions != null ? tc.conjunctions.get(traits.get(1)) : null;
+        if (cells == null)
+            return 0;
+        int res = 0;
+        for (Formula conjunction : formula.getDependentFormulas()) {
+            List<State> states = conjunction.getStates();
+            res += cells[cell(states.get(0), states.get(1))];
+        }
+        return res;
+    }
+}
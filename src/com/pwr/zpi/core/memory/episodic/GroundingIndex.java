@@ -0,0 +1,620 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.ComplexFormula;
+import com.pwr.zpi.language.Formula;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.*;
+
+/**
+ * Bitmap index over collection of base profiles. Each indexed base profile receives an ordinal number and for each
+ * combination of (individual model, trait, state) one bitmap of ordinals is kept. Bit is set if base profile
+ * with respective ordinal presents individual model as having given state of trait.
+ * Thanks to that, grounding set of simple modality is single bitmap lookup and grounding sets of conjunctions,
+ * disjunctions and exclusive disjunctions are produced with bitwise AND/OR/XOR, without visiting base profiles.
+ * Index can be maintained incrementally (by BPCollection, which registers it as observer of stored base profiles)
+ * or built once for any collection of base profiles.
+ * Note: Ordinals of removed base profiles are reused by base profiles registered later, so bitmaps stay as dense as
+ * the index itself. Base profile which is moved between memories keeps its ordinal, as long as it's registered in the
+ * destination memory before it's unregistered from the source one.
+ * On request, index also remembers timestamps of base profiles affected by the most recent modifications, so it's
+ * possible to find out which moments in time changed since some version.
+ * Copy of index shares bitmaps and other containers with source index - container is copied by index which modifies
+ * it first, so building modified copy of large index costs as much as modifications (and copying affected bitmaps).
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class GroundingIndex implements BaseProfileObserver {
+
+    private static final int STATES_NUMBER = State.values().length;
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * Indexed base profiles and timestamps under which they are kept in byTimestamp, for successive ordinals.
+     */
+    private static final class Page {
+        final BaseProfile[] profiles;
+        final int[] timestamps;
+
+        Page() {
+            profiles = new BaseProfile[PAGE_SIZE];
+            timestamps = new int[PAGE_SIZE];
+        }
+
+        Page(Page source) {
+            profiles = source.profiles.clone();
+            timestamps = source.timestamps.clone();
+        }
+    }
+
+    /**
+     * Pages of ordinals; ordinal of base profile determines its page and position in page. Removed base profiles
+     * leave null.
+     */
+    private Page[] pages = new Page[1];
+    /**
+     * Number of ordinals assigned so far.
+     */
+    private int end;
+    private int size;
+    /**
+     * Ordinals left by removed base profiles, which are assigned again before new ordinals.
+     */
+    private BitSet freeOrdinals = new BitSet();
+    /**
+     * Base profiles are identified by reference - their equality is derived from mutable content. Copy of index
+     * doesn't keep this map; it finds base profiles among ones related with the same timestamp.
+     */
+    private final Map<BaseProfile, Integer> ordinals;
+    private final Map<IndividualModel, Map<Trait, BitSet[]>> bitmaps;
+    private BitSet inWM = new BitSet();
+    private BitSet inLM = new BitSet();
+    /**
+     * Ordinals of indexed base profiles related with each timestamp, used to limit scope to range of timestamps.
+     */
+    private final TimestampMap<int[]> byTimestamp;
+    private int maxTimestamp = Integer.MIN_VALUE;
+    /**
+     * Containers (pages, maps and bitmaps) which may be modified in place, because they were created by this index.
+     * Null if index doesn't share containers with other index.
+     */
+    private Set<Object> owned;
+    /**
+     * Incremented on every modification of index.
+     */
+    private long version;
+    /**
+     * Number of the most recent modifications whose timestamps are remembered.
+     */
+    private static final int CHANGE_LOG_SIZE = 4096;
+    /**
+     * Timestamps of base profiles affected by the most recent modifications, placed at position given by version
+     * (modulo size of log). Log is created on first request, so indexes which are never asked about changes don't
+     * maintain it. Log may be read by other threads than the one which modifies index.
+     *
+     * @see #trackChanges()
+     */
+    private int[] changeLog;
+    private long changeLogStart;
+    private final Object changeLock = new Object();
+
+    public GroundingIndex() {
+        ordinals = new IdentityHashMap<>();
+        bitmaps = new HashMap<>();
+        byTimestamp = new TimestampMap<>();
+    }
+
+    /**
+     * Builds index for given base profiles, without distinguishing memory types.
+     *
+     * @param bps Indexed base profiles.
+     */
+    public GroundingIndex(Collection<BaseProfile> bps) {
+        this();
+        if (bps == null)
+            throw new NullPointerException("Base profiles not specified.");
+        for (BaseProfile bp : bps)
+            register(bp, BPCollection.MemoryType.WM);
+    }
+
+    /**
+     * Creates index with the same content as given one, which shares containers with it. Changes of given index
+     * aren't tracked by copy.
+     *
+     * @param source
+     */
+    GroundingIndex(GroundingIndex source) {
+        source.owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        pages = own(source.pages.clone());
+        end = source.end;
+        size = source.size;
+        freeOrdinals = source.freeOrdinals;
+        ordinals = null;
+        bitmaps = new HashMap<>(source.bitmaps);
+        inWM = source.inWM;
+        inLM = source.inLM;
+        byTimestamp = new TimestampMap<>(source.byTimestamp);
+        maxTimestamp = source.maxTimestamp;
+        version = source.version;
+    }
+
+    private boolean owns(Object container) {
+        return owned == null || owned.contains(container);
+    }
+
+    private <T> T own(T container) {
+        if (owned != null)
+            owned.add(container);
+        return container;
+    }
+
+    private int findOrdinal(BaseProfile bp) {
+        if (ordinals != null) {
+            Integer res = ordinals.get(bp);
+            return res != null ? res : -1;
+        }
+        int[] present = byTimestamp.get(bp.getTimestamp());
+        if (present != null)
+            for (int ordinal : present)
+                if (getProfile(ordinal) == bp)
+                    return ordinal;
+        return -1;
+    }
+
+    private Page getWritablePage(int ordinal) {
+        int i = ordinal >> PAGE_BITS;
+        if (i >= pages.length)
+            pages = own(Arrays.copyOf(pages, Math.max(i + 1, pages.length * 2)));
+        Page res = pages[i];
+        if (res == null)
+            pages[i] = res = own(new Page());
+        else if (!owns(res))
+            pages[i] = res = own(new Page(res));
+        return res;
+    }
+
+    private void setProfile(int ordinal, BaseProfile bp) {
+        getWritablePage(ordinal).profiles[ordinal & PAGE_SIZE - 1] = bp;
+    }
+
+    private int getTimestamp(int ordinal) {
+        return pages[ordinal >> PAGE_BITS].timestamps[ordinal & PAGE_SIZE - 1];
+    }
+
+    private BitSet getWritableFreeOrdinals() {
+        if (!owns(freeOrdinals))
+            freeOrdinals = own((BitSet) freeOrdinals.clone());
+        return freeOrdinals;
+    }
+
+    /**
+     * Includes base profile in index as member of given memory. If base profile is already indexed then only its
+     * membership is updated.
+     *
+     * @param bp
+     * @param memType
+     * @return True if base profile wasn't indexed before this operation.
+     */
+    public boolean register(BaseProfile bp, BPCollection.MemoryType memType) {
+        int ordinal = findOrdinal(bp);
+        boolean isNew = ordinal < 0;
+        if (isNew) {
+            ordinal = freeOrdinals.nextSetBit(0);
+            if (ordinal < 0)
+                ordinal = end++;
+            else
+                getWritableFreeOrdinals().clear(ordinal);
+            setProfile(ordinal, bp);
+            if (ordinals != null)
+                ordinals.put(bp, ordinal);
+            size++;
+            addTimestamp(ordinal, bp.getTimestamp());
+            indexContent(bp, ordinal);
+        }
+        getWritableMembership(memType).set(ordinal);
+        changed(bp.getTimestamp());
+        return isNew;
+    }
+
+    /**
+     * Excludes base profile from given memory. Base profile is removed from index when it isn't member of any memory.
+     *
+     * @param bp
+     * @param memType
+     * @return True if base profile doesn't belong to any memory after this operation.
+     */
+    public boolean unregister(BaseProfile bp, BPCollection.MemoryType memType) {
+        int ordinal = findOrdinal(bp);
+        if (ordinal < 0)
+            return true;
+        if (getMembership(memType).get(ordinal))
+            getWritableMembership(memType).clear(ordinal);
+        changed(bp.getTimestamp());
+        if (inWM.get(ordinal) || inLM.get(ordinal))
+            return false;
+        clearContent(bp, ordinal);
+        removeTimestamp(ordinal);
+        if (ordinals != null)
+            ordinals.remove(bp);
+        size--;
+        setProfile(ordinal, null);
+        getWritableFreeOrdinals().set(ordinal);
+        return true;
+    }
+
+    private void addTimestamp(int ordinal, int timestamp) {
+        getWritablePage(ordinal).timestamps[ordinal & PAGE_SIZE - 1] = timestamp;
+        int[] present = byTimestamp.get(timestamp);
+        int[] res = present == null ? new int[1] : Arrays.copyOf(present, present.length + 1);
+        res[res.length - 1] = ordinal;
+        byTimestamp.put(timestamp, res);
+    }
+
+    private void removeTimestamp(int ordinal) {
+        int timestamp = getTimestamp(ordinal);
+        int[] present = byTimestamp.get(timestamp);
+        if (present.length == 1) {
+            byTimestamp.remove(timestamp);
+            return;
+        }
+        int[] rest = new int[present.length - 1];
+        for (int i = 0, j = 0; i < present.length; i++)
+            if (present[i] != ordinal)
+                rest[j++] = present[i];
+        byTimestamp.put(timestamp, rest);
+    }
+
+    /**
+     * Removes all base profiles from index.
+     */
+    public void clear() {
+        pages = own(new Page[1]);
+        end = 0;
+        size = 0;
+        freeOrdinals = own(new BitSet());
+        if (ordinals != null)
+            ordinals.clear();
+        bitmaps.clear();
+        inWM = own(new BitSet());
+        inLM = own(new BitSet());
+        byTimestamp.clear();
+        maxTimestamp = Integer.MIN_VALUE;
+        synchronized (changeLock) {
+            version++;
+            changeLogStart = version;
+        }
+    }
+
+    @Override
+    public void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state, boolean traitIntroduced) {
+        int ordinal = findOrdinal(bp);
+        if (ordinal >= 0) {
+            getWritableBitmap(im, trait, state).set(ordinal);
+            changed(bp.getTimestamp());
+        }
+    }
+
+    /**
+     * Content which was replaced isn't known any more, so ordinal of base profile is cleared in all bitmaps. Content
+     * of base profiles is replaced only by its setters, which aren't used while observations are included.
+     */
+    @Override
+    public void profileReplaced(BaseProfile bp) {
+        int ordinal = findOrdinal(bp);
+        if (ordinal >= 0) {
+            clearAllContent(ordinal);
+            if (getTimestamp(ordinal) != bp.getTimestamp()) {
+                changed(getTimestamp(ordinal));
+                removeTimestamp(ordinal);
+                addTimestamp(ordinal, bp.getTimestamp());
+            }
+            indexContent(bp, ordinal);
+            changed(bp.getTimestamp());
+        }
+    }
+
+    private void changed(int timestamp) {
+        synchronized (changeLock) {
+            version++;
+            if (changeLog != null)
+                changeLog[(int) (version % CHANGE_LOG_SIZE)] = timestamp;
+        }
+    }
+
+    /**
+     * Starts remembering timestamps of modified base profiles, unless they are already remembered.
+     */
+    public void trackChanges() {
+        synchronized (changeLock) {
+            if (changeLog == null) {
+                changeLog = new int[CHANGE_LOG_SIZE];
+                changeLogStart = version;
+            }
+        }
+    }
+
+    /**
+     * Returns timestamps of base profiles which were registered, unregistered or modified after given version of
+     * index. Changes are known only if they were made after changes started to be tracked and they are not older than
+     * CHANGE_LOG_SIZE modifications.
+     *
+     * @param sinceVersion Version of index returned by getVersion().
+     * @return Set of timestamps or null if changes are not known.
+     */
+    public Set<Integer> getChangedTimestamps(long sinceVersion) {
+        trackChanges();
+        synchronized (changeLock) {
+            if (sinceVersion < changeLogStart || sinceVersion > version || version - sinceVersion > CHANGE_LOG_SIZE)
+                return null;
+            Set<Integer> res = new HashSet<>();
+            for (long v = sinceVersion + 1; v <= version; v++)
+                res.add(changeLog[(int) (v % CHANGE_LOG_SIZE)]);
+            return res;
+        }
+    }
+
+    private void indexContent(BaseProfile bp, int ordinal) {
+        for (State state : State.values())
+            for (Map.Entry<Trait, Set<IndividualModel>> entry : bp.getContainer(state).entrySet())
+                for (IndividualModel im : entry.getValue())
+                    getWritableBitmap(im, entry.getKey(), state).set(ordinal);
+        maxTimestamp = Math.max(maxTimestamp, bp.getTimestamp());
+    }
+
+    /**
+     * Clears ordinal of given base profile in bitmaps related with its content. All bits of base profile were set
+     * because of its content - observations only extend it and replacing content clears all bits of base profile.
+     */
+    private void clearContent(BaseProfile bp, int ordinal) {
+        for (State state : State.values())
+            for (Map.Entry<Trait, Set<IndividualModel>> entry : bp.getContainer(state).entrySet())
+                for (IndividualModel im : entry.getValue()) {
+                    BitSet bitmap = getBitmap(im, entry.getKey(), state);
+                    if (bitmap != null && bitmap.get(ordinal))
+                        getWritableBitmap(im, entry.getKey(), state).clear(ordinal);
+                }
+    }
+
+    private void clearAllContent(int ordinal) {
+        for (Map.Entry<IndividualModel, Map<Trait, BitSet[]>> imEntry : bitmaps.entrySet())
+            for (Map.Entry<Trait, BitSet[]> traitEntry : imEntry.getValue().entrySet())
+                for (State state : State.values())
+                    if (traitEntry.getValue()[state.ordinal()].get(ordinal))
+                        getWritableBitmap(imEntry.getKey(), traitEntry.getKey(), state).clear(ordinal);
+    }
+
+    private BitSet getMembership(BPCollection.MemoryType memType) {
+        return memType == BPCollection.MemoryType.LM ? inLM : inWM;
+    }
+
+    private BitSet getWritableMembership(BPCollection.MemoryType memType) {
+        BitSet res = getMembership(memType);
+        if (!owns(res)) {
+            res = own((BitSet) res.clone());
+            if (memType == BPCollection.MemoryType.LM)
+                inLM = res;
+            else
+                inWM = res;
+        }
+        return res;
+    }
+
+    private BitSet getBitmap(IndividualModel im, Trait trait, State state) {
+        Map<Trait, BitSet[]> byTrait = bitmaps.get(im);
+        BitSet[] byState = byTrait != null ? byTrait.get(trait) : null;
+        return byState != null ? byState[state.ordinal()] : null;
+    }
+
+    /**
+     * Returns bitmap which may be modified in place, creating it (or copying shared one) if required.
+     */
+    private BitSet getWritableBitmap(IndividualModel im, Trait trait, State state) {
+        Map<Trait, BitSet[]> byTrait = bitmaps.get(im);
+        if (byTrait == null || !owns(byTrait))
+            bitmaps.put(im, byTrait = own(byTrait == null ? new HashMap<>() : new HashMap<>(byTrait)));
+        BitSet[] byState = byTrait.get(trait);
+        if (byState == null) {
+            byState = new BitSet[STATES_NUMBER];
+            for (int i = 0; i < STATES_NUMBER; i++)
+                byState[i] = own(new BitSet());
+            byTrait.put(trait, own(byState));
+        } else if (!owns(byState))
+            byTrait.put(trait, byState = own(byState.clone()));
+        BitSet res = byState[state.ordinal()];
+        if (!owns(res))
+            byState[state.ordinal()] = res = own((BitSet) res.clone());
+        return res;
+    }
+
+    /**
+     * Returns ordinals of base profiles which present given individual model as having given state of trait.
+     *
+     * @return New bitmap, which can be freely modified.
+     */
+    public BitSet getProfiles(IndividualModel im, Trait trait, State state) {
+        BitSet res = getBitmap(im, trait, state);
+        return res != null ? (BitSet) res.clone() : new BitSet();
+    }
+
+    /**
+     * Returns ordinals of base profiles which belong to at least one of given memories and are related with moment
+     * in time from range [beginning, given endTimestamp].
+     *
+     * @param endTimestamp
+     * @param memTypes If none is given, then both memories are taken into consideration.
+     * @return New bitmap.
+     */
+    public BitSet getScope(int endTimestamp, BPCollection.MemoryType... memTypes) {
+        return getScope(Integer.MIN_VALUE, endTimestamp, memTypes);
+    }
+
+    /**
+     * Returns ordinals of base profiles which belong to at least one of given memories and are related with moment
+     * in time from range [beginTimestamp, endTimestamp].
+     * Ordinals are limited to range by visiting timestamps inside or outside of range - whichever are fewer, so
+     * narrow window and range which excludes only the most recent moments are both cheap.
+     *
+     * @param beginTimestamp
+     * @param endTimestamp
+     * @param memTypes       If none is given, then both memories are taken into consideration.
+     * @return New bitmap.
+     */
+    public BitSet getScope(int beginTimestamp, int endTimestamp, BPCollection.MemoryType... memTypes) {
+        BitSet res = new BitSet();
+        if (memTypes.length == 0)
+            memTypes = BPCollection.MemoryType.values();
+        for (BPCollection.MemoryType memType : memTypes)
+            res.or(getMembership(memType));
+        if (beginTimestamp > endTimestamp)
+            return new BitSet();
+        if (endTimestamp < maxTimestamp || beginTimestamp > Integer.MIN_VALUE) {
+            if (isInsideSmaller(beginTimestamp, endTimestamp)) {
+                BitSet selected = new BitSet();
+                for (Iterator<int[]> it = byTimestamp.ascending(beginTimestamp, endTimestamp); it.hasNext(); )
+                    for (int ordinal : it.next())
+                        selected.set(ordinal);
+                res.and(selected);
+            } else
+                for (Iterator<int[]> it : getOutside(beginTimestamp, endTimestamp))
+                    while (it.hasNext())
+                        for (int ordinal : it.next())
+                            res.clear(ordinal);
+        }
+        return res;
+    }
+
+    /**
+     * Returns timestamps (with ordinals) from outside of range [beginTimestamp, endTimestamp].
+     */
+    private List<Iterator<int[]>> getOutside(int beginTimestamp, int endTimestamp) {
+        List<Iterator<int[]>> res = new ArrayList<>(2);
+        if (beginTimestamp > Integer.MIN_VALUE)
+            res.add(byTimestamp.ascending(Integer.MIN_VALUE, beginTimestamp - 1));
+        if (endTimestamp < Integer.MAX_VALUE)
+            res.add(byTimestamp.ascending(endTimestamp + 1, Integer.MAX_VALUE));
+        return res;
+    }
+
+    /**
+     * Checks if range [beginTimestamp, endTimestamp] has fewer timestamps than the rest of index, visiting at most
+     * twice as many timestamps as the smaller side has.
+     */
+    private boolean isInsideSmaller(int beginTimestamp, int endTimestamp) {
+        Iterator<int[]> it = byTimestamp.ascending(beginTimestamp, endTimestamp);
+        for (Iterator<int[]> other : getOutside(beginTimestamp, endTimestamp))
+            for (; other.hasNext(); other.next()) {
+                if (!it.hasNext())
+                    return true;
+                it.next();
+            }
+        return false;
+    }
+
+    /**
+     * Returns ordinals of all indexed base profiles.
+     */
+    public BitSet getScope() {
+        return getScope(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Produces bitmap of base profiles which fulfill given formula, in the same sense as Formula.isFormulaFulfilled.
+     * Conjunction is realised as AND, disjunction as OR and exclusive disjunction as XOR of bitmaps related with
+     * particular traits.
+     *
+     * @param formula
+     * @param scope   Ordinals of base profiles taken into consideration.
+     * @return New bitmap.
+     */
+    public BitSet getFulfillingProfiles(Formula formula, BitSet scope) {
+        List<Trait> traits = formula.getTraits();
+        List<State> states = formula.getStates();
+        BitSet res = getProfiles(formula.getModel(), traits.get(0), states.get(0));
+        if (formula.getType() != Formula.Type.SIMPLE_MODALITY) {
+            BitSet other = getBitmap(formula.getModel(), traits.get(1), states.get(1));
+            if (other == null)
+                other = new BitSet();
+            switch (((ComplexFormula) formula).getOperator()) {
+                case AND:
+                    res.and(other);
+                    break;
+                case OR:
+                    res.or(other);
+                    break;
+                case XOR:
+                    res.xor(other);
+            }
+        }
+        res.and(scope);
+        return res;
+    }
+
+    /**
+     * Produces bitmap which represents grounding set of given formula. In case of disjunctions, grounding set is
+     * composed of grounding sets of dependent conjunctions.
+     *
+     * @param formula Simple modality, modal conjunction or modal disjunction (regular or exclusive).
+     * @param scope   Ordinals of base profiles taken into consideration.
+     * @return New bitmap.
+     * @see Formula#getDependentFormulas()
+     */
+    public BitSet getGroundingProfiles(Formula formula, BitSet scope) {
+        List<Formula> dependentFormulas = formula.getDependentFormulas();
+        BitSet res = getFulfillingProfiles(dependentFormulas.get(0), scope);
+        for (int i = 1; i < dependentFormulas.size(); i++)
+            res.or(getFulfillingProfiles(dependentFormulas.get(i), scope));
+        return res;
+    }
+
+    /**
+     * Counts grounding set of given formula, without producing set of base profiles.
+     */
+    public int countGroundingProfiles(Formula formula, BitSet scope) {
+        return getGroundingProfiles(formula, scope).cardinality();
+    }
+
+    /**
+     * Produces set of base profiles indicated by given ordinals.
+     *
+     * @param selected
+     * @return New set of base profiles.
+     */
+    public Set<BaseProfile> materialise(BitSet selected) {
+        Set<BaseProfile> res = new HashSet<>(Math.max(16, (int) (selected.cardinality() / .75f) + 1));
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1))
+            res.add(getProfile(i));
+        return res;
+    }
+
+    /**
+     * Returns base profile indicated by given ordinal.
+     *
+     * @param ordinal
+     * @return Base profile or null if there is no indexed base profile with such ordinal.
+     */
+    public BaseProfile getProfile(int ordinal) {
+        return ordinal < end ? pages[ordinal >> PAGE_BITS].profiles[ordinal & PAGE_SIZE - 1] : null;
+    }
+
+    /**
+     * Returns number which changes whenever content of index changes - it can be used to detect if results derived
+     * from indexed base profiles are still valid.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Number of indexed base profiles.
+     */
+    public int size() {
+        return size;
+    }
+}
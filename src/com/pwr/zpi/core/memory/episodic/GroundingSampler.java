@@ -0,0 +1,285 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Keeps fixed-size uniform sample (reservoir) of base profiles for every individual model. Base profile is offered to
+ * reservoir of individual model when it mentions this individual model for the first time (in any state of any trait),
+ * so each reservoir is uniform sample of base profiles which concern related individual model. Such samples are used
+ * to estimate relative cardinalities of grounding sets in time independent of size of memory.
+ * Base profiles excluded from sampler are only detached: they are skipped when sample is read and they aren't offered
+ * again if they are included once more (as it happens when base profile is shifted between memories). Thanks to that
+ * sample restricted to registered base profiles stays uniform.
+ * Read-only copy of sampler (see GroundingSampler(GroundingSampler, GroundingSampler, Collection, Function)) keeps
+ * samples of its source, so they aren't drawn again; samples of individual models which didn't change since previous
+ * copy are shared with it.
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class GroundingSampler implements BaseProfileObserver {
+
+    private static class Reservoir {
+        final List<BaseProfile> sample;
+        /**
+         * Number of base profiles offered to this reservoir since last rebuild.
+         */
+        long offered;
+        /**
+         * Number of registered base profiles which mention related individual model.
+         */
+        int population;
+
+        Reservoir() {
+            sample = new ArrayList<>();
+        }
+
+        Reservoir(List<BaseProfile> sample, long offered, int population) {
+            this.sample = sample;
+            this.offered = offered;
+            this.population = population;
+        }
+    }
+
+    private final int capacity;
+    private final Random random;
+    private final Set<BaseProfile> registered = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<BaseProfile> detached = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<IndividualModel, Reservoir> reservoirs = new HashMap<>();
+    private boolean upToDate = true;
+    /**
+     * Individual models which reservoirs changed since this sampler was copied for the last time, null if all of
+     * them could change.
+     */
+    private Set<IndividualModel> changed;
+
+    /**
+     * @param capacity Maximal size of sample kept for single individual model.
+     */
+    public GroundingSampler(int capacity) {
+        this(capacity, new Random());
+    }
+
+    GroundingSampler(int capacity, Random random) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity of sample should be positive.");
+        this.capacity = capacity;
+        this.random = random;
+    }
+
+    /**
+     * Creates read-only copy of given sampler with the same samples. Base profiles are replaced in samples with
+     * their counterparts given by mapping (base profiles for which null is returned are skipped). Samples of
+     * individual models which didn't change since previous copy of source and aren't explicitly given are shared
+     * with previous copy.
+     *
+     * @param source   Copied sampler.
+     * @param previous The most recent copy of source or null if all samples should be copied.
+     * @param affected Individual models which samples should be copied even if they didn't change.
+     * @param mapping  Function which gives counterpart of sampled base profile.
+     */
+    GroundingSampler(GroundingSampler source, GroundingSampler previous, Collection<IndividualModel> affected,
+                     Function<BaseProfile, BaseProfile> mapping) {
+        this.capacity = source.capacity;
+        this.random = null;
+        source.rebuildIfRequired();
+        Collection<IndividualModel> copied;
+        if (previous == null || source.changed == null)
+            copied = source.reservoirs.keySet();
+        else {
+            reservoirs.putAll(previous.reservoirs);
+            copied = new HashSet<>(source.changed);
+            copied.addAll(affected);
+        }
+        for (IndividualModel im : copied) {
+            Reservoir reservoir = source.reservoirs.get(im);
+            if (reservoir == null) {
+                reservoirs.remove(im);
+                continue;
+            }
+            List<BaseProfile> sample = new ArrayList<>(reservoir.sample.size());
+            for (BaseProfile bp : source.getSample(im)) {
+                BaseProfile counterpart = mapping.apply(bp);
+                if (counterpart != null)
+                    sample.add(counterpart);
+            }
+            reservoirs.put(im, new Reservoir(sample, reservoir.offered, reservoir.population));
+        }
+        source.changed = new HashSet<>();
+    }
+
+    /**
+     * Counts size of sample which guarantees (by Hoeffding's inequality) that estimated proportion differs from real
+     * one by less than given error with given confidence.
+     *
+     * @param error      Maximal absolute error of estimated proportion.
+     * @param confidence Probability that error of estimation isn't exceeded, from range (0, 1).
+     * @return Required sample size.
+     */
+    public static int getRequiredSampleSize(double error, double confidence) {
+        if (error <= 0 || confidence <= 0 || confidence >= 1)
+            throw new IllegalArgumentException("Not valid error bound or confidence.");
+        return (int) Math.ceil(Math.log(2 / (1 - confidence)) / (2 * error * error));
+    }
+
+    /**
+     * Counts error bound of proportion estimated from sample of given size, for given confidence.
+     *
+     * @see #getRequiredSampleSize(double, double)
+     */
+    public static double getErrorBound(int sampleSize, double confidence) {
+        if (sampleSize <= 0)
+            return 1;
+        return Math.sqrt(Math.log(2 / (1 - confidence)) / (2 * sampleSize));
+    }
+
+    /**
+     * Includes given base profile in sampler.
+     *
+     * @param bp
+     */
+    public void register(BaseProfile bp) {
+        if (!registered.add(bp) || !upToDate)
+            return;
+        boolean reattached = detached.remove(bp);
+        for (IndividualModel im : bp.getAffectedIMs(State.values())) {
+            Reservoir reservoir = getReservoir(im);
+            reservoir.population++;
+            if (!reattached)
+                offer(reservoir, bp);
+            changed(im);
+        }
+    }
+
+    /**
+     * Excludes given base profile from sampler.
+     *
+     * @param bp
+     */
+    public void unregister(BaseProfile bp) {
+        if (!registered.remove(bp) || !upToDate)
+            return;
+        detached.add(bp);
+        for (IndividualModel im : bp.getAffectedIMs(State.values())) {
+            getReservoir(im).population--;
+            changed(im);
+        }
+        if (detached.size() > registered.size())
+            upToDate = false;
+    }
+
+    /**
+     * Removes all base profiles from sampler.
+     */
+    public void clear() {
+        registered.clear();
+        detached.clear();
+        reservoirs.clear();
+        upToDate = true;
+        changed = null;
+    }
+
+    @Override
+    public void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state, boolean traitIntroduced) {
+        if (upToDate && registered.contains(bp) && countMentions(bp, im) == 1) {
+            Reservoir reservoir = getReservoir(im);
+            reservoir.population++;
+            offer(reservoir, bp);
+            changed(im);
+        }
+    }
+
+    @Override
+    public void profileReplaced(BaseProfile bp) {
+        if (registered.contains(bp))
+            upToDate = false;
+    }
+
+    /**
+     * Algorithm R: n-th offered base profile replaces random element of sample with probability capacity/n.
+     */
+    private void offer(Reservoir reservoir, BaseProfile bp) {
+        reservoir.offered++;
+        if (reservoir.sample.size() < capacity)
+            reservoir.sample.add(bp);
+        else {
+            long pos = (long) (random.nextDouble() * reservoir.offered);
+            if (pos < capacity)
+                reservoir.sample.set((int) pos, bp);
+        }
+    }
+
+    private static int countMentions(BaseProfile bp, IndividualModel im) {
+        int res = 0;
+        for (State state : State.values())
+            for (Set<IndividualModel> ims : bp.getContainer(state).values())
+                if (ims.contains(im))
+                    res++;
+        return res;
+    }
+
+    private void changed(IndividualModel im) {
+        if (changed != null)
+            changed.add(im);
+    }
+
+    private Reservoir getReservoir(IndividualModel im) {
+        return reservoirs.computeIfAbsent(im, k -> new Reservoir());
+    }
+
+    private void rebuildIfRequired() {
+        if (upToDate)
+            return;
+        reservoirs.clear();
+        detached.clear();
+        for (BaseProfile bp : registered)
+            for (IndividualModel im : bp.getAffectedIMs(State.values())) {
+                Reservoir reservoir = getReservoir(im);
+                reservoir.population++;
+                offer(reservoir, bp);
+            }
+        upToDate = true;
+        changed = null;
+    }
+
+    /**
+     * Returns uniform sample of registered base profiles which mention given individual model.
+     *
+     * @param im
+     * @return New list of sampled base profiles.
+     */
+    public List<BaseProfile> getSample(IndividualModel im) {
+        rebuildIfRequired();
+        Reservoir reservoir = reservoirs.get(im);
+        if (reservoir == null)
+            return new ArrayList<>();
+        List<BaseProfile> res = new ArrayList<>(reservoir.sample.size());
+        for (BaseProfile bp : reservoir.sample)
+            if (!detached.contains(bp))
+                res.add(bp);
+        return res;
+    }
+
+    /**
+     * Returns number of registered base profiles which mention given individual model.
+     */
+    public int getPopulation(IndividualModel im) {
+        rebuildIfRequired();
+        Reservoir reservoir = reservoirs.get(im);
+        return reservoir != null ? reservoir.population : 0;
+    }
+
+    /**
+     * @return Maximal size of sample kept for single individual model.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.*;
+
+/**
+ * Sliding window over collection of base profiles: keeps grounding counters only for base profiles related with the
+ * most recent moments in time. Window covers timestamps from range (upper - size, upper], where upper is the greatest
+ * timestamp among registered base profiles. Base profiles enter the window when they are registered and leave it
+ * when window moves forward, so counters of window are always available in constant time.
+ *
+ * @author Grzegorz Kostkowski
+ * @see GroundingCounters
+ */
+public class GroundingWindow implements BaseProfileObserver {
+
+    private final int size;
+    private final GroundingCounters counters = new GroundingCounters();
+    /**
+     * Base profiles included in window, grouped by timestamp.
+     */
+    private final TreeMap<Integer, Set<BaseProfile>> members = new TreeMap<>();
+    /**
+     * Timestamps under which base profiles are kept in members.
+     */
+    private final Map<BaseProfile, Integer> memberTimestamps = new IdentityHashMap<>();
+    private int upper = Integer.MIN_VALUE;
+
+    /**
+     * @param size Number of the most recent moments in time covered by window.
+     */
+    public GroundingWindow(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Size of window should be positive.");
+        this.size = size;
+    }
+
+    /**
+     * Includes given base profile in window if it's related with moment in time covered by window. Window is moved
+     * forward when base profile is more recent than all registered ones.
+     *
+     * @param bp
+     */
+    public void register(BaseProfile bp) {
+        int ts = bp.getTimestamp();
+        if (ts > upper)
+            moveTo(ts);
+        if (ts > upper - size && !memberTimestamps.containsKey(bp)) {
+            members.computeIfAbsent(ts, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(bp);
+            memberTimestamps.put(bp, ts);
+            counters.register(bp);
+        }
+    }
+
+    /**
+     * Excludes given base profile from window.
+     *
+     * @param bp
+     */
+    public void unregister(BaseProfile bp) {
+        Integer ts = memberTimestamps.remove(bp);
+        if (ts != null) {
+            Set<BaseProfile> bps = members.get(ts);
+            bps.remove(bp);
+            if (bps.isEmpty())
+                members.remove(ts);
+            counters.unregister(bp);
+        }
+    }
+
+    /**
+     * Removes all base profiles from window.
+     */
+    public void clear() {
+        members.clear();
+        memberTimestamps.clear();
+        counters.clear();
+        upper = Integer.MIN_VALUE;
+    }
+
+    private void moveTo(int newUpper) {
+        upper = newUpper;
+        while (!members.isEmpty() && members.firstKey() <= upper - size)
+            for (BaseProfile bp : members.pollFirstEntry().getValue()) {
+                memberTimestamps.remove(bp);
+                counters.unregister(bp);
+            }
+    }
+
+    @Override
+    public void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state, boolean traitIntroduced) {
+        counters.observationAdded(bp, im, trait, state, traitIntroduced);
+    }
+
+    /**
+     * Base profile which timestamp was changed is included in window again, if it fits range of window.
+     * Note: Window observes only base profiles registered in collection it is maintained for.
+     */
+    @Override
+    public void profileReplaced(BaseProfile bp) {
+        Integer ts = memberTimestamps.get(bp);
+        if (ts == null || ts != bp.getTimestamp()) {
+            unregister(bp);
+            register(bp);
+        } else
+            counters.profileReplaced(bp);
+    }
+
+    /**
+     * Checks if window describes moments in time from range (timestamp - size, timestamp]. It takes place when given
+     * timestamp is the most recent one among registered base profiles.
+     *
+     * @param timestamp
+     * @return
+     */
+    public boolean isComplete(int timestamp) {
+        return timestamp == upper || members.isEmpty() && timestamp > upper;
+    }
+
+    /**
+     * Returns grounding counters of base profiles included in window. Counters shouldn't be modified outside window.
+     */
+    public GroundingCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Number of the most recent moments in time covered by window.
+     */
+    public int getSize() {
+        return size;
+    }
+}
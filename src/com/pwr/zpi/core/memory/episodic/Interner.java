@@ -0,0 +1,64 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns consecutive integer identifiers to equal values (e.g. traits or individual models), so that they can be
+ * stored in primitive arrays. Identifiers are never released. Reading is lock-free, assigning new identifiers is
+ * synchronized.
+ *
+ * @param <T> Type of interned values.
+ * @author Grzegorz Kostkowski
+ */
+final class Interner<T> {
+
+    private final Map<T, Integer> ids = new ConcurrentHashMap<>();
+    private volatile Object[] values = new Object[16];
+    private int size;
+
+    /**
+     * @return Identifier of given value, assigned on first request.
+     */
+    int getId(T value) {
+        Integer res = ids.get(value);
+        return res != null ? res : assignId(value);
+    }
+
+    private synchronized int assignId(T value) {
+        Integer res = ids.get(value);
+        if (res != null)
+            return res;
+        Object[] arr = values;
+        if (size == arr.length)
+            arr = Arrays.copyOf(arr, size * 2);
+        arr[size] = value;
+        values = arr;
+        ids.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @return Identifier of given value or -1 if value wasn't interned.
+     */
+    int findId(Object value) {
+        Integer res = ids.get(value);
+        return res != null ? res : -1;
+    }
+
+    /**
+     * @return Value with given identifier.
+     */
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        return (T) values[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+}
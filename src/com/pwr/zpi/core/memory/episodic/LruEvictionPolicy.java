@@ -0,0 +1,61 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts base profile which was least recently used by grounding. Base profiles are kept in order of last use, where
+ * adding to working memory counts as use. Recording use and selecting victim take constant time.
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class LruEvictionPolicy extends EvictionPolicy {
+
+    /**
+     * Base profiles keyed by timestamp, ordered from least to most recently used.
+     */
+    private final LinkedHashMap<Integer, BaseProfile> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public Type getType() {
+        return Type.LRU;
+    }
+
+    @Override
+    public boolean isGroundingTracked() {
+        return true;
+    }
+
+    @Override
+    synchronized void register(BaseProfile bp) {
+        order.put(bp.getTimestamp(), bp);
+    }
+
+    @Override
+    synchronized void unregister(BaseProfile bp) {
+        order.remove(bp.getTimestamp(), bp);
+    }
+
+    @Override
+    synchronized void clear() {
+        order.clear();
+    }
+
+    @Override
+    synchronized void grounded(Collection<BaseProfile> bps) {
+        for (BaseProfile bp : bps)
+            order.get(bp.getTimestamp());
+    }
+
+    @Override
+    synchronized BaseProfile selectVictim(TimestampedMemory workingMemory) {
+        BaseProfile latest = workingMemory.getLatest();
+        for (BaseProfile bp : order.values())
+            if (bp != latest)
+                return bp;
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only base profile stored in mapped memory. It keeps only timestamp and position of encoded record, content is
+ * decoded on first access into CompactBaseProfile and kept through soft reference, so it can be reclaimed by garbage
+ * collector and decoded again when it's needed. Any attempt of modification causes UnsupportedOperationException.
+ *
+ * @author Grzegorz Kostkowski
+ * @see MappedMemory
+ */
+final class MappedBaseProfile extends BaseProfile {
+
+    private final MappedMemory store;
+    private final long position;
+    private volatile SoftReference<CompactBaseProfile> content;
+
+    MappedBaseProfile(MappedMemory store, int timestamp, long position) {
+        super(Collections.nCopies(3, Collections.emptyMap()), timestamp);
+        this.store = store;
+        this.position = position;
+    }
+
+    boolean isStoredIn(MappedMemory store) {
+        return this.store == store;
+    }
+
+    private CompactBaseProfile getContent() {
+        SoftReference<CompactBaseProfile> ref = content;
+        CompactBaseProfile res = ref != null ? ref.get() : null;
+        if (res == null) {
+            res = store.decode(position);
+            content = new SoftReference<>(res);
+        }
+        return res;
+    }
+
+    @Override
+    void freezeContent() {
+        // content is read-only anyway
+    }
+
+    @Override
+    public Map<Trait, Set<IndividualModel>> getDescribedByTraits() {
+        return getContent().getDescribedByTraits();
+    }
+
+    @Override
+    public Map<Trait, Set<IndividualModel>> getNotDescribedByTraits() {
+        return getContent().getNotDescribedByTraits();
+    }
+
+    @Override
+    public Map<Trait, Set<IndividualModel>> getIndefiniteByTraits() {
+        return getContent().getIndefiniteByTraits();
+    }
+
+    @Override
+    public boolean checkIfObserved(IndividualModel object, Trait trait, State state) {
+        return getContent().checkIfObserved(object, trait, state);
+    }
+
+    @Override
+    public boolean isContainingClearDescriptionFor(IndividualModel model, Trait selectedTrait) {
+        return getContent().isContainingClearDescriptionFor(model, selectedTrait);
+    }
+
+    @Override
+    public List<Trait> getRelatedTraits(IndividualModel relatedObject, State state) {
+        return getContent().getRelatedTraits(relatedObject, state);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Base profile stored in mapped memory is read-only.");
+    }
+
+    @Override
+    public void setTimestamp(int timestamp) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setDescribedByTraits(Map<Trait, Set<IndividualModel>> describedByTraits) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setNotDescribedByTraits(Map<Trait, Set<IndividualModel>> notDescribedByTraits) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setIndefiniteByTraits(Map<Trait, Set<IndividualModel>> indefiniteByTraits) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addDescribedObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addNotDescribedObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addIndefiniteObservations(Set<IndividualModel> individualModels, Trait relatedTrait) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addDescribedObservation(IndividualModel individualModel, Trait relatedTrait) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addNotDescribedObservation(IndividualModel individualModel, Trait relatedTrait) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addIndefiniteObservation(IndividualModel individualModel, Trait relatedTrait) {
+        throw readOnly();
+    }
+}
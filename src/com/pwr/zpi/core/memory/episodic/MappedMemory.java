@@ -0,0 +1,222 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.io.Configuration;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Timestamped memory which keeps content of base profiles in memory-mapped file instead of heap. Added base profiles
+ * are encoded and appended to file; memory stores read-only MappedBaseProfile instead of given base profile, which
+ * decodes its content lazily, only when it's accessed. Thanks to that heap contains only small handles of stored base
+ * profiles and operating system decides which parts of file are kept in memory.
+ * Traits and individual models are encoded as integer identifiers of dictionaries kept by this memory, decoded content
+ * is kept as CompactBaseProfile. Record of base profile has form: timestamp, then for each state (IS, IS_NOT,
+ * MAYHAPS): number of traits and for each trait its identifier, number of individual models and their identifiers.
+ * File is mapped in segments of fixed size and records don't cross boundaries of segments. Space of removed base
+ * profiles isn't reused.
+ *
+ * @author Grzegorz Kostkowski
+ * @see Configuration#MAPPED_LM
+ */
+public class MappedMemory extends TimestampedMemory implements Closeable {
+
+    private static final int INT_SIZE = Integer.BYTES;
+
+    private final Path file;
+    private final boolean isTemporary;
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    /**
+     * Position in file at which next record will be written.
+     */
+    private long end;
+
+    private final Interner<Trait> traits = new Interner<>();
+    private final Interner<IndividualModel> models = new Interner<>();
+
+    /**
+     * Creates memory backed by temporary file, which is deleted when memory is closed or virtual machine exits.
+     * Size of segment is taken from configuration.
+     */
+    public MappedMemory() {
+        this(createTemporaryFile(), Configuration.MAPPED_LM_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * Creates memory backed by given file. Existing content of file is overwritten.
+     *
+     * @param file
+     * @param segmentSize Size of single mapped region in bytes. Encoded base profile can't be greater.
+     */
+    public MappedMemory(Path file, int segmentSize) {
+        this(file, segmentSize, false);
+    }
+
+    private MappedMemory(Path file, int segmentSize, boolean isTemporary) {
+        if (file == null)
+            throw new NullPointerException("File not specified.");
+        if (segmentSize <= 0)
+            throw new IllegalArgumentException("Size of segment should be positive.");
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.isTemporary = isTemporary;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open file of mapped memory: " + file, e);
+        }
+    }
+
+    private static Path createTemporaryFile() {
+        try {
+            Path res = Files.createTempFile("long-term-memory", ".bin");
+            res.toFile().deleteOnExit();
+            return res;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create file of mapped memory.", e);
+        }
+    }
+
+    /**
+     * Encodes given base profile and stores it in this memory. Stored base profile is read-only and it's available
+     * through get(..) and other methods of this memory.
+     *
+     * @param bp
+     * @return True if base profile wasn't present.
+     * @throws IllegalStateException If memory contains other base profile related with the same timestamp.
+     */
+    @Override
+    public synchronized boolean add(BaseProfile bp) {
+        if (bp == null)
+            throw new NullPointerException("Base profile not specified.");
+        if (bp instanceof MappedBaseProfile && ((MappedBaseProfile) bp).isStoredIn(this))
+            return super.add(bp);
+        BaseProfile existing = get(bp.getTimestamp());
+        if (existing != null) {
+            if (existing.equals(bp))
+                return false;
+            throw new IllegalStateException("Memory already contains base profile for timestamp " + bp.getTimestamp() + ".");
+        }
+        return super.add(new MappedBaseProfile(this, bp.getTimestamp(), append(encode(bp))));
+    }
+
+    private ByteBuffer encode(BaseProfile bp) {
+        int size = INT_SIZE;
+        for (State state : State.values()) {
+            size += INT_SIZE;
+            for (Set<IndividualModel> ims : bp.getContainer(state).values())
+                size += (2 + ims.size()) * INT_SIZE;
+        }
+        ByteBuffer res = ByteBuffer.allocate(size);
+        res.putInt(bp.getTimestamp());
+        for (State state : State.values()) {
+            Map<Trait, Set<IndividualModel>> container = bp.getContainer(state);
+            res.putInt(container.size());
+            for (Map.Entry<Trait, Set<IndividualModel>> entry : container.entrySet()) {
+                res.putInt(traits.getId(entry.getKey()));
+                res.putInt(entry.getValue().size());
+                for (IndividualModel im : entry.getValue())
+                    res.putInt(models.getId(im));
+            }
+        }
+        res.flip();
+        return res;
+    }
+
+    /**
+     * Writes given record at the end of file, starting new segment if record doesn't fit in current one.
+     *
+     * @return Position of record.
+     */
+    private long append(ByteBuffer record) {
+        int length = record.remaining();
+        if (length > segmentSize)
+            throw new IllegalArgumentException("Base profile doesn't fit in segment of mapped memory.");
+        if (end % segmentSize + length > segmentSize)
+            end += segmentSize - end % segmentSize;
+        ByteBuffer segment = getSegment((int) (end / segmentSize)).duplicate();
+        segment.position((int) (end % segmentSize));
+        segment.put(record);
+        long res = end;
+        end += length;
+        return res;
+    }
+
+    private MappedByteBuffer getSegment(int index) {
+        try {
+            while (segments.size() <= index)
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * segmentSize,
+                        segmentSize));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map segment of file " + file, e);
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * Decodes content of base profile stored at given position.
+     *
+     * @return New base profile with decoded content.
+     */
+    CompactBaseProfile decode(long position) {
+        ByteBuffer segment = segments.get((int) (position / segmentSize));
+        int pos = (int) (position % segmentSize);
+        CompactBaseProfile res = new CompactBaseProfile(segment.getInt(pos));
+        pos += INT_SIZE;
+        for (State state : State.values()) {
+            int traitsNumber = segment.getInt(pos);
+            pos += INT_SIZE;
+            for (int i = 0; i < traitsNumber; i++) {
+                Trait trait = traits.get(segment.getInt(pos));
+                int modelsNumber = segment.getInt(pos + INT_SIZE);
+                pos += 2 * INT_SIZE;
+                Set<IndividualModel> ims = new HashSet<>();
+                for (int j = 0; j < modelsNumber; j++, pos += INT_SIZE)
+                    ims.add(models.get(segment.getInt(pos)));
+                res.addObservations(state, ims, trait);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return Number of bytes occupied by records, including unused ends of segments.
+     */
+    public long getStoredBytes() {
+        return end;
+    }
+
+    /**
+     * Closes file of this memory and deletes it if it's temporary. Mapped segments remain readable until they are
+     * reclaimed, but no base profile can be added.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            if (isTemporary)
+                Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot close file of mapped memory.", e);
+        }
+    }
+}
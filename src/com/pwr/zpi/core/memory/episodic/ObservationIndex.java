@@ -0,0 +1,263 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.language.State;
+import com.pwr.zpi.language.Trait;
+
+import java.util.*;
+
+/**
+ * Secondary index of base profiles by observed individual models. For every individual model and state it keeps
+ * ordered timestamps of registered base profiles which present individual model with given state of any trait.
+ * Thanks to that, K latest base profiles observing some object are found in O(K) steps (after logarithmic search of
+ * the first one), without visiting other base profiles.
+ * Index is built on first reading, so collections which are never queried don't pay for its maintenance. Then it's
+ * updated incrementally when base profiles are registered or new observations are included in registered base
+ * profiles. When some registered base profile is replaced as a whole, index is rebuilt lazily on next reading.
+ * Index may be read by many threads (e.g. when it belongs to snapshot of collection), so lazy building is synchronized.
+ * Copy of index shares maps of timestamps with source index, which are copied by index modified first (in the same
+ * way as containers of GroundingIndex).
+ *
+ * @author Grzegorz Kostkowski
+ * @see BPCollection#getObservationIndex()
+ */
+public class ObservationIndex implements BaseProfileObserver {
+
+    private static final int STATES_NUMBER = State.values().length;
+
+    /**
+     * Registered base profiles, null for copy of index - it doesn't know base profiles registered in source.
+     */
+    private final Set<BaseProfile> registered;
+    private int size;
+    /**
+     * Number of registered base profiles per timestamp, kept for each individual model and state (indexed by ordinal
+     * of state). More than one base profile with the same timestamp may be registered (e.g. in both memories).
+     */
+    private final Map<IndividualModel, List<TimestampMap<Integer>>> timestamps;
+    private boolean upToDate;
+    /**
+     * Lists and maps which may be modified in place, because they were created by this index. Null if index doesn't
+     * share them with other one.
+     */
+    private Set<Object> owned;
+
+    public ObservationIndex() {
+        registered = Collections.newSetFromMap(new IdentityHashMap<>());
+        timestamps = new HashMap<>();
+    }
+
+    /**
+     * Creates index equal to given one, which shares maps of timestamps with it. Copy is built at once; it follows
+     * base profiles which are registered or unregistered later, but not modifications of base profiles, so they
+     * shouldn't change.
+     *
+     * @param source
+     */
+    ObservationIndex(ObservationIndex source) {
+        synchronized (source) {
+            source.ensureUpToDate();
+            source.owned = Collections.newSetFromMap(new IdentityHashMap<>());
+            timestamps = new HashMap<>(source.timestamps);
+            size = source.size;
+        }
+        owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        registered = null;
+        upToDate = true;
+    }
+
+    /**
+     * Includes given base profile in index.
+     *
+     * @param bp
+     */
+    public synchronized void register(BaseProfile bp) {
+        if (registered == null || registered.add(bp)) {
+            size++;
+            if (upToDate)
+                include(bp, 1);
+        }
+    }
+
+    /**
+     * Excludes given base profile from index.
+     *
+     * @param bp
+     */
+    public synchronized void unregister(BaseProfile bp) {
+        if (registered == null || registered.remove(bp)) {
+            size--;
+            if (upToDate)
+                include(bp, -1);
+        }
+    }
+
+    /**
+     * Removes all base profiles from index.
+     */
+    public synchronized void clear() {
+        if (registered != null)
+            registered.clear();
+        size = 0;
+        timestamps.clear();
+        upToDate = registered == null;
+    }
+
+    @Override
+    public synchronized void observationAdded(BaseProfile bp, IndividualModel im, Trait trait, State state,
+                                              boolean traitIntroduced) {
+        if (upToDate && isRegistered(bp) && !isObservedByOtherTrait(bp, im, trait, state))
+            update(im, state, bp.getTimestamp(), 1);
+    }
+
+    private static boolean isObservedByOtherTrait(BaseProfile bp, IndividualModel im, Trait trait, State state) {
+        for (Map.Entry<Trait, Set<IndividualModel>> entry : bp.getContainer(state).entrySet())
+            if (!entry.getKey().equals(trait) && entry.getValue().contains(im))
+                return true;
+        return false;
+    }
+
+    @Override
+    public synchronized void profileReplaced(BaseProfile bp) {
+        if (isRegistered(bp))
+            upToDate = false;
+    }
+
+    /**
+     * Copy of index doesn't know which base profiles are registered, so it doesn't follow their modifications.
+     */
+    private boolean isRegistered(BaseProfile bp) {
+        return registered != null && registered.contains(bp);
+    }
+
+    /**
+     * Returns timestamps of registered base profiles which present given individual model with any of given states,
+     * in descending order, starting from given timestamp. Each timestamp is returned once.
+     *
+     * @param im           Observed individual model.
+     * @param endTimestamp The most recent timestamp which can be returned.
+     * @param states       States of observation; all states if none is given.
+     * @return Lazy iterator over timestamps.
+     */
+    public synchronized Iterator<Integer> getLatestTimestamps(IndividualModel im, int endTimestamp, State... states) {
+        if (im == null || states == null)
+            throw new NullPointerException("One or more parameters are nulls.");
+        ensureUpToDate();
+        List<TimestampMap<Integer>> byState = timestamps.get(im);
+        if (byState == null)
+            return Collections.emptyIterator();
+        List<Iterator<Integer>> sources = new ArrayList<>(STATES_NUMBER);
+        for (State state : states.length == 0 ? State.values() : states)
+            if (byState.get(state.ordinal()) != null)
+                sources.add(byState.get(state.ordinal()).descendingTimestamps(endTimestamp, Integer.MIN_VALUE));
+        return sources.size() == 1 ? sources.get(0) : new DescendingMerge(sources);
+    }
+
+    /**
+     * Returns at most k latest timestamps of registered base profiles which present given individual model with any
+     * of given states.
+     *
+     * @return Timestamps in descending order.
+     * @see #getLatestTimestamps(IndividualModel, int, State...)
+     */
+    public List<Integer> getLatestTimestamps(IndividualModel im, int endTimestamp, int k, State... states) {
+        List<Integer> res = new ArrayList<>(Math.max(0, Math.min(k, 16)));
+        Iterator<Integer> it = getLatestTimestamps(im, endTimestamp, states);
+        while (res.size() < k && it.hasNext())
+            res.add(it.next());
+        return res;
+    }
+
+    /**
+     * @return Number of registered base profiles.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void ensureUpToDate() {
+        if (!upToDate) {
+            timestamps.clear();
+            for (BaseProfile bp : registered)
+                include(bp, 1);
+            upToDate = true;
+        }
+    }
+
+    private void include(BaseProfile bp, int sign) {
+        for (State state : State.values())
+            for (IndividualModel im : bp.getAffectedIMs(bp.getContainer(state), new HashSet<>()))
+                update(im, state, bp.getTimestamp(), sign);
+    }
+
+    private void update(IndividualModel im, State state, int timestamp, int sign) {
+        List<TimestampMap<Integer>> byState = timestamps.get(im);
+        if (byState == null || !owns(byState))
+            timestamps.put(im, byState = own(byState == null
+                    ? new ArrayList<>(Collections.nCopies(STATES_NUMBER, null)) : new ArrayList<>(byState)));
+        TimestampMap<Integer> counts = byState.get(state.ordinal());
+        if (counts == null || !owns(counts))
+            byState.set(state.ordinal(), counts = own(counts == null ? new TimestampMap<>() : new TimestampMap<>(counts)));
+        Integer count = counts.get(timestamp);
+        int res = (count != null ? count : 0) + sign;
+        if (res == 0)
+            counts.remove(timestamp);
+        else
+            counts.put(timestamp, res);
+    }
+
+    private boolean owns(Object container) {
+        return owned == null || owned.contains(container);
+    }
+
+    private <T> T own(T container) {
+        if (owned != null)
+            owned.add(container);
+        return container;
+    }
+
+    /**
+     * Merges descending iterators, skipping repeated values.
+     */
+    private static class DescendingMerge implements Iterator<Integer> {
+        private final List<Iterator<Integer>> sources;
+        private final Integer[] heads;
+
+        DescendingMerge(List<Iterator<Integer>> sources) {
+            this.sources = sources;
+            this.heads = new Integer[sources.size()];
+            for (int i = 0; i < heads.length; i++)
+                advance(i);
+        }
+
+        private void advance(int i) {
+            heads[i] = sources.get(i).hasNext() ? sources.get(i).next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            for (Integer head : heads)
+                if (head != null)
+                    return true;
+            return false;
+        }
+
+        @Override
+        public Integer next() {
+            int max = -1;
+            for (int i = 0; i < heads.length; i++)
+                if (heads[i] != null && (max < 0 || heads[i] > heads[max]))
+                    max = i;
+            if (max < 0)
+                throw new NoSuchElementException();
+            Integer res = heads[max];
+            for (int i = 0; i < heads.length; i++)
+                while (heads[i] != null && heads[i].equals(res))
+                    advance(i);
+            return res;
+        }
+    }
+}
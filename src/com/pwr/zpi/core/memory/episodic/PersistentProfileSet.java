@@ -0,0 +1,358 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.*;
+
+/**
+ * Immutable set of base profiles, which shares its structure with sets derived from it. Base profiles are kept in
+ * trie indexed by their timestamps (32 children per node), so adding base profile or removing base profiles related
+ * with some moment in time copies only O(log32 T) nodes on the path to that moment, while the rest of nodes is shared
+ * by both versions. Many base profiles (which aren't equal) may be related with the same moment in time.
+ * Base profiles are iterated in ascending order of timestamps.
+ * Batch of changes is applied by Builder, which copies each affected node at most once.
+ *
+ * @author Grzegorz Kostkowski
+ * @see DistributedKnowledge
+ */
+public final class PersistentProfileSet extends AbstractSet<BaseProfile> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final int MAX_SHIFT = 30;
+    private static final PersistentProfileSet EMPTY = new PersistentProfileSet(null, 0, 0);
+
+    /**
+     * Node of trie; on the lowest level (shift 0) slots contain single base profile or array of base profiles
+     * related with the same timestamp. Additional last slot of node refers to builder's token of edition which
+     * created it.
+     */
+    private final Object[] root;
+    /**
+     * Shift of timestamps for root level, so root covers timestamps from range [0, 2^(shift + BITS)).
+     */
+    private final int shift;
+    private final int size;
+
+    private PersistentProfileSet(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * @return Empty set.
+     */
+    public static PersistentProfileSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates set of given base profiles. Given collection is returned if it's already persistent set.
+     *
+     * @param bps
+     */
+    public static PersistentProfileSet of(Collection<BaseProfile> bps) {
+        if (bps == null)
+            throw new NullPointerException("Collection of base profiles not specified.");
+        if (bps instanceof PersistentProfileSet)
+            return (PersistentProfileSet) bps;
+        Builder builder = new Builder(EMPTY);
+        for (BaseProfile bp : bps)
+            builder.add(bp);
+        return builder.build();
+    }
+
+    /**
+     * @return Set which contains also given base profile.
+     */
+    public PersistentProfileSet with(BaseProfile bp) {
+        return toBuilder().add(bp).build();
+    }
+
+    /**
+     * @return Set without base profiles related with given moment in time.
+     */
+    public PersistentProfileSet withoutTimestamp(int timestamp) {
+        return toBuilder().removeTimestamp(timestamp).build();
+    }
+
+    /**
+     * @return Builder which applies changes to this set.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Returns base profiles related with given moment in time.
+     *
+     * @return Collection of base profiles, empty if there is no such base profile.
+     */
+    public Collection<BaseProfile> getBaseProfiles(int timestamp) {
+        Object slot = find(timestamp);
+        if (slot == null)
+            return Collections.emptyList();
+        if (slot instanceof BaseProfile)
+            return Collections.singletonList((BaseProfile) slot);
+        return Collections.unmodifiableList(Arrays.asList((BaseProfile[]) slot));
+    }
+
+    private Object find(int timestamp) {
+        if (root == null || timestamp < 0 || timestamp >>> shift >>> BITS != 0)
+            return null;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(timestamp >>> level) & MASK];
+            if (node == null)
+                return null;
+        }
+        return node[timestamp & MASK];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof BaseProfile))
+            return false;
+        Object slot = find(((BaseProfile) o).getTimestamp());
+        if (slot instanceof BaseProfile)
+            return slot.equals(o);
+        if (slot != null)
+            for (BaseProfile bp : (BaseProfile[]) slot)
+                if (bp.equals(o))
+                    return true;
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<BaseProfile> iterator() {
+        return new ProfileIterator(root, shift);
+    }
+
+    /**
+     * Collects changes of persistent set - added base profiles and removed moments in time. Nodes of source set are
+     * copied on first change and then modified in place, so source set itself isn't affected. Builder shouldn't be
+     * used after building set.
+     */
+    public static final class Builder {
+        private Object[] root;
+        private int shift;
+        private int size;
+        /**
+         * Token of current edition - nodes which refer to it were created by this builder and may be modified in
+         * place.
+         */
+        private Object edit = new Object();
+
+        private Builder(PersistentProfileSet source) {
+            this.root = source.root;
+            this.shift = source.shift;
+            this.size = source.size;
+        }
+
+        /**
+         * Adds given base profile, unless equal base profile is already included.
+         *
+         * @param bp
+         * @return This builder.
+         */
+        public Builder add(BaseProfile bp) {
+            if (bp == null)
+                throw new NullPointerException("Base profile not specified.");
+            int timestamp = bp.getTimestamp();
+            if (timestamp < 0)
+                throw new IllegalStateException("Not valid timestamp.");
+            if (root == null) {
+                root = newNode();
+                shift = 0;
+            }
+            while (shift < MAX_SHIFT && timestamp >>> shift >>> BITS != 0) {
+                Object[] parent = newNode();
+                parent[0] = root;
+                root = parent;
+                shift += BITS;
+            }
+            root = editable(root);
+            Object[] node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                int i = (timestamp >>> level) & MASK;
+                Object[] child = node[i] == null ? newNode() : editable((Object[]) node[i]);
+                node[i] = child;
+                node = child;
+            }
+            int i = timestamp & MASK;
+            Object slot = node[i];
+            if (slot == null)
+                node[i] = bp;
+            else if (slot instanceof BaseProfile) {
+                if (slot.equals(bp))
+                    return this;
+                node[i] = new BaseProfile[]{(BaseProfile) slot, bp};
+            } else {
+                BaseProfile[] bps = (BaseProfile[]) slot;
+                for (BaseProfile present : bps)
+                    if (present.equals(bp))
+                        return this;
+                BaseProfile[] extended = Arrays.copyOf(bps, bps.length + 1);
+                extended[bps.length] = bp;
+                node[i] = extended;
+            }
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds all given base profiles.
+         *
+         * @return This builder.
+         */
+        public Builder addAll(Collection<BaseProfile> bps) {
+            for (BaseProfile bp : bps)
+                add(bp);
+            return this;
+        }
+
+        /**
+         * Removes base profiles related with given moment in time.
+         *
+         * @return This builder.
+         */
+        public Builder removeTimestamp(int timestamp) {
+            if (root == null || timestamp < 0 || timestamp >>> shift >>> BITS != 0)
+                return this;
+            Object[][] path = new Object[shift / BITS + 1][];
+            Object[] node = root;
+            int depth = 0;
+            for (int level = shift; level > 0; level -= BITS) {
+                path[depth++] = node;
+                node = (Object[]) node[(timestamp >>> level) & MASK];
+                if (node == null)
+                    return this;
+            }
+            path[depth] = node;
+            Object slot = node[timestamp & MASK];
+            if (slot == null)
+                return this;
+            size -= slot instanceof BaseProfile ? 1 : ((BaseProfile[]) slot).length;
+            // copies path from root, removing nodes which become empty
+            Object[] parent = null;
+            for (int d = 0, level = shift; d <= depth; d++, level -= BITS) {
+                Object[] copy = editable(path[d]);
+                if (parent == null)
+                    root = copy;
+                else
+                    parent[(timestamp >>> (level + BITS)) & MASK] = copy;
+                path[d] = copy;
+                parent = copy;
+            }
+            path[depth][timestamp & MASK] = null;
+            for (int d = depth, level = 0; d > 0 && isEmpty(path[d]); d--, level += BITS)
+                path[d - 1][(timestamp >>> (level + BITS)) & MASK] = null;
+            if (size == 0)
+                root = null;
+            return this;
+        }
+
+        private static boolean isEmpty(Object[] node) {
+            for (int i = 0; i < WIDTH; i++)
+                if (node[i] != null)
+                    return false;
+            return true;
+        }
+
+        private Object[] newNode() {
+            Object[] node = new Object[WIDTH + 1];
+            node[WIDTH] = edit;
+            return node;
+        }
+
+        private Object[] editable(Object[] node) {
+            if (node[WIDTH] == edit)
+                return node;
+            Object[] copy = node.clone();
+            copy[WIDTH] = edit;
+            return copy;
+        }
+
+        /**
+         * @return Persistent set with collected changes.
+         */
+        public PersistentProfileSet build() {
+            edit = new Object();
+            return size == 0 ? EMPTY : new PersistentProfileSet(root, shift, size);
+        }
+    }
+
+    /**
+     * Iterates over slots of trie in depth-first order.
+     */
+    private static class ProfileIterator implements Iterator<BaseProfile> {
+        private final Object[][] nodes;
+        private final int[] positions;
+        private int depth;
+        private BaseProfile[] group;
+        private int groupPosition;
+        private BaseProfile next;
+
+        ProfileIterator(Object[] root, int shift) {
+            nodes = new Object[shift / BITS + 1][];
+            positions = new int[nodes.length];
+            nodes[0] = root;
+            depth = root == null ? -1 : 0;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            if (group != null) {
+                if (groupPosition < group.length) {
+                    next = group[groupPosition++];
+                    return;
+                }
+                group = null;
+            }
+            while (depth >= 0) {
+                if (positions[depth] == WIDTH) {
+                    depth--;
+                    continue;
+                }
+                Object child = nodes[depth][positions[depth]++];
+                if (child == null)
+                    continue;
+                if (depth < nodes.length - 1) {
+                    nodes[++depth] = (Object[]) child;
+                    positions[depth] = 0;
+                } else if (child instanceof BaseProfile) {
+                    next = (BaseProfile) child;
+                    return;
+                } else {
+                    group = (BaseProfile[]) child;
+                    next = group[0];
+                    groupPosition = 1;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public BaseProfile next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            BaseProfile res = next;
+            advance();
+            return res;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.*;
+
+/**
+ * Evicts base profile which contributed least to recent groundings. Salience of base profile grows by one with each
+ * grounding which used it and decays exponentially with number of groundings performed later, so that contribution
+ * loses half of its weight after halfLife groundings. Adding to working memory counts as single contribution, thus
+ * new base profiles aren't evicted before they have a chance to be used. Ties are resolved in favour of newer base
+ * profiles.
+ * Instead of decaying all saliences, weight of new contributions grows exponentially; saliences are rescaled
+ * from time to time to avoid overflow. Recording contribution and selecting victim take logarithmic time.
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class SalienceEvictionPolicy extends EvictionPolicy {
+
+    public static final int DEF_HALF_LIFE = 50;
+    /**
+     * Exponent of weight of contribution at which saliences are rescaled.
+     */
+    private static final int MAX_EXPONENT = 512;
+
+    private final int halfLife;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>();
+    /**
+     * Number of groundings recorded since last rescaling.
+     */
+    private long clock;
+
+    public SalienceEvictionPolicy() {
+        this(DEF_HALF_LIFE);
+    }
+
+    /**
+     * @param halfLife Number of groundings after which contribution loses half of its weight.
+     */
+    public SalienceEvictionPolicy(int halfLife) {
+        if (halfLife <= 0)
+            throw new IllegalArgumentException("Half-life has to be positive.");
+        this.halfLife = halfLife;
+    }
+
+    @Override
+    public Type getType() {
+        return Type.SALIENCE;
+    }
+
+    @Override
+    public boolean isGroundingTracked() {
+        return true;
+    }
+
+    @Override
+    synchronized void register(BaseProfile bp) {
+        Entry entry = new Entry(bp, getWeight());
+        Entry replaced = entries.put(bp.getTimestamp(), entry);
+        if (replaced != null)
+            ranking.remove(replaced);
+        ranking.add(entry);
+    }
+
+    @Override
+    synchronized void unregister(BaseProfile bp) {
+        Entry entry = entries.get(bp.getTimestamp());
+        if (entry != null && entry.bp.equals(bp)) {
+            entries.remove(bp.getTimestamp());
+            ranking.remove(entry);
+        }
+    }
+
+    @Override
+    synchronized void clear() {
+        entries.clear();
+        ranking.clear();
+        clock = 0;
+    }
+
+    @Override
+    synchronized void grounded(Collection<BaseProfile> bps) {
+        if (++clock >= (long) MAX_EXPONENT * halfLife)
+            rescale();
+        double weight = getWeight();
+        for (BaseProfile bp : bps) {
+            Entry entry = entries.get(bp.getTimestamp());
+            if (entry != null && entry.bp.equals(bp)) {
+                ranking.remove(entry);
+                entry.salience += weight;
+                ranking.add(entry);
+            }
+        }
+    }
+
+    @Override
+    synchronized BaseProfile selectVictim(TimestampedMemory workingMemory) {
+        BaseProfile latest = workingMemory.getLatest();
+        for (Entry entry : ranking)
+            if (entry.bp != latest)
+                return entry.bp;
+        return null;
+    }
+
+    /**
+     * @return Salience of given base profile relative to single contribution made by the most recent grounding, or
+     * 0 if base profile isn't registered.
+     */
+    synchronized double getSalience(BaseProfile bp) {
+        Entry entry = entries.get(bp.getTimestamp());
+        return entry != null && entry.bp.equals(bp) ? entry.salience / getWeight() : 0;
+    }
+
+    private double getWeight() {
+        return Math.pow(2, (double) clock / halfLife);
+    }
+
+    /**
+     * Divides all saliences by weight of current contribution and resets clock. Order of base profiles could change
+     * only for saliences which become indistinguishable, so ranking is rebuilt.
+     */
+    private void rescale() {
+        double weight = getWeight();
+        ranking.clear();
+        for (Entry entry : entries.values()) {
+            entry.salience /= weight;
+            ranking.add(entry);
+        }
+        clock = 0;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final BaseProfile bp;
+        private double salience;
+
+        Entry(BaseProfile bp, double salience) {
+            this.bp = bp;
+            this.salience = salience;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            int res = Double.compare(salience, o.salience);
+            return res != 0 ? res : Integer.compare(bp.getTimestamp(), o.bp.getTimestamp());
+        }
+    }
+}
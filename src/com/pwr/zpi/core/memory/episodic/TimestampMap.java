@@ -0,0 +1,332 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Map from timestamps to values, ordered by timestamps. Entries are kept in trie indexed by timestamps (32 children
+ * per node) like in PersistentProfileSet, but map is modified in place. Root covers only range of timestamps which
+ * share the same prefix, so depth of trie depends on distance between timestamps, not on their values.
+ * Copy of map shares all nodes with it. Each node refers to token of map which may modify it in place; other map
+ * copies node on first modification, so copying map takes constant time and every later modification copies at most
+ * O(log32 T) nodes on the path to modified timestamp.
+ *
+ * @param <V> Type of values.
+ * @author Grzegorz Kostkowski
+ * @see PersistentProfileSet
+ */
+final class TimestampMap<V> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * Node of trie; on the lowest level (shift 0) slots contain values. Additional last slot of node refers to token
+     * of map which created it.
+     */
+    private Object[] root;
+    /**
+     * Shift of keys for root level.
+     */
+    private int shift;
+    /**
+     * Common part of keys covered by root, namely key >>> (shift + BITS).
+     */
+    private long prefix;
+    private int size;
+    /**
+     * Token of this map - nodes which refer to it may be modified in place.
+     */
+    private Object edit = new Object();
+
+    TimestampMap() {
+    }
+
+    /**
+     * Creates map with the same entries as given one, which shares nodes with it.
+     *
+     * @param source
+     */
+    TimestampMap(TimestampMap<V> source) {
+        this.root = source.root;
+        this.shift = source.shift;
+        this.prefix = source.prefix;
+        this.size = source.size;
+        source.edit = new Object();
+    }
+
+    /**
+     * Keys are unsigned, so ordering of keys is the same as ordering of timestamps (also negative ones).
+     */
+    private static long key(int timestamp) {
+        return timestamp - (long) Integer.MIN_VALUE;
+    }
+
+    private static int timestamp(long key) {
+        return (int) (key + Integer.MIN_VALUE);
+    }
+
+    private boolean isCovered(long key) {
+        return root != null && key >>> shift >>> BITS == prefix;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int timestamp) {
+        long key = key(timestamp);
+        if (!isCovered(key))
+            return null;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(int) (key >>> level) & MASK];
+            if (node == null)
+                return null;
+        }
+        return (V) node[(int) key & MASK];
+    }
+
+    /**
+     * @return Previous value related with given timestamp or null if there was no such.
+     */
+    @SuppressWarnings("unchecked")
+    V put(int timestamp, V value) {
+        if (value == null)
+            throw new NullPointerException("Value not specified.");
+        long key = key(timestamp);
+        if (root == null) {
+            root = newNode();
+            shift = 0;
+            prefix = key >>> BITS;
+        }
+        while (!isCovered(key)) {
+            Object[] parent = newNode();
+            parent[(int) prefix & MASK] = root;
+            root = parent;
+            shift += BITS;
+            prefix >>>= BITS;
+        }
+        root = editable(root);
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int i = (int) (key >>> level) & MASK;
+            Object[] child = node[i] == null ? newNode() : editable((Object[]) node[i]);
+            node[i] = child;
+            node = child;
+        }
+        int i = (int) key & MASK;
+        V res = (V) node[i];
+        node[i] = value;
+        if (res == null)
+            size++;
+        return res;
+    }
+
+    /**
+     * @return Removed value or null if there was no value related with given timestamp.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int timestamp) {
+        long key = key(timestamp);
+        if (!isCovered(key))
+            return null;
+        Object[][] path = new Object[shift / BITS + 1][];
+        Object[] node = root;
+        int depth = 0;
+        for (int level = shift; level > 0; level -= BITS) {
+            path[depth++] = node;
+            node = (Object[]) node[(int) (key >>> level) & MASK];
+            if (node == null)
+                return null;
+        }
+        path[depth] = node;
+        V res = (V) node[(int) key & MASK];
+        if (res == null)
+            return null;
+        // copies path from root, removing nodes which become empty
+        Object[] parent = null;
+        for (int d = 0, level = shift; d <= depth; d++, level -= BITS) {
+            Object[] copy = editable(path[d]);
+            if (parent == null)
+                root = copy;
+            else
+                parent[(int) (key >>> (level + BITS)) & MASK] = copy;
+            path[d] = copy;
+            parent = copy;
+        }
+        path[depth][(int) key & MASK] = null;
+        for (int d = depth, level = 0; d > 0 && isEmpty(path[d]); d--, level += BITS)
+            path[d - 1][(int) (key >>> (level + BITS)) & MASK] = null;
+        if (--size == 0)
+            root = null;
+        return res;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Returns cursor over values related with timestamps from range [from, to], in ascending order of timestamps.
+     */
+    Cursor<V> ascending(int from, int to) {
+        return new Cursor<>(this, from, to, false);
+    }
+
+    /**
+     * Returns cursor over values related with timestamps from range [to, from], in descending order of timestamps.
+     */
+    Cursor<V> descending(int from, int to) {
+        return new Cursor<>(this, from, to, true);
+    }
+
+    /**
+     * Returns timestamps from range [to, from] in descending order.
+     */
+    Iterator<Integer> descendingTimestamps(int from, int to) {
+        Cursor<V> cursor = descending(from, to);
+        return new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                cursor.next();
+                return cursor.getTimestamp();
+            }
+        };
+    }
+
+    private static boolean isEmpty(Object[] node) {
+        for (int i = 0; i < WIDTH; i++)
+            if (node[i] != null)
+                return false;
+        return true;
+    }
+
+    private Object[] newNode() {
+        Object[] node = new Object[WIDTH + 1];
+        node[WIDTH] = edit;
+        return node;
+    }
+
+    private Object[] editable(Object[] node) {
+        if (node[WIDTH] == edit)
+            return node;
+        Object[] copy = node.clone();
+        copy[WIDTH] = edit;
+        return copy;
+    }
+
+    /**
+     * Iterates over values of range of timestamps in depth-first order. Cursor follows nodes which were present when
+     * it reached them, so values removed from map later are skipped (unless removal copied visited node).
+     */
+    static final class Cursor<V> implements Iterator<V> {
+        private final Object[][] nodes;
+        private final int[] positions;
+        private final int step;
+        private final long prefix;
+        private final long last;
+        private int depth;
+        private V next;
+        private long nextKey;
+        private long key;
+
+        private Cursor(TimestampMap<V> map, int from, int to, boolean descending) {
+            int levels = map.shift / BITS + 1;
+            nodes = new Object[levels][];
+            positions = new int[levels];
+            step = descending ? -1 : 1;
+            prefix = map.prefix;
+            long first = key(from);
+            last = key(to);
+            depth = -1;
+            if (map.root == null || (descending ? first < last : first > last))
+                return;
+            long low = map.prefix << (map.shift + BITS), high = low + (1L << (map.shift + BITS)) - 1;
+            if (descending ? first < low : first > high)
+                return;
+            first = Math.max(low, Math.min(high, first));
+            // descends along path of the first key, as long as nodes on that path exist
+            nodes[0] = map.root;
+            depth = 0;
+            for (int level = map.shift; ; level -= BITS) {
+                positions[depth] = (int) (first >>> level) & MASK;
+                Object child = nodes[depth][positions[depth]];
+                if (level == 0 || child == null)
+                    break;
+                nodes[++depth] = (Object[]) child;
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                if (positions[depth] < 0 || positions[depth] == WIDTH) {
+                    if (--depth >= 0)
+                        positions[depth] += step;
+                    continue;
+                }
+                Object child = nodes[depth][positions[depth]];
+                if (child == null) {
+                    positions[depth] += step;
+                    continue;
+                }
+                if (depth < nodes.length - 1) {
+                    nodes[++depth] = (Object[]) child;
+                    positions[depth] = step > 0 ? 0 : MASK;
+                    continue;
+                }
+                long childKey = prefix;
+                for (int position : positions)
+                    childKey = childKey << BITS | position;
+                positions[depth] += step;
+                if (step > 0 ? childKey > last : childKey < last) {
+                    depth = -1;
+                    return;
+                }
+                next = (V) child;
+                nextKey = childKey;
+                return;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public V next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            V res = next;
+            key = nextKey;
+            advance();
+            return res;
+        }
+
+        /**
+         * @return Timestamp related with value returned by the most recent call of next().
+         */
+        int getTimestamp() {
+            return timestamp(key);
+        }
+    }
+}
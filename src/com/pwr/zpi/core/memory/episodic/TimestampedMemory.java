@@ -0,0 +1,291 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.core.memory.episodic;
+
+import java.util.*;
+
+/**
+ * Set of base profiles ordered and keyed by timestamp, so lookup of base profile, the oldest and the most recent base
+ * profile and ranges of timestamps take logarithmic time. Base profiles are located by timestamp, not by hash code,
+ * which isn't stable for base profiles still receiving observations.
+ * Usually each moment in time is represented by one base profile, but memory accepts also other (not equal) base
+ * profiles related with the same timestamp - they are kept in order of adding and get(int) returns the first one.
+ * Ranges are returned as read-only views backed by this memory.
+ * Copy of memory shares its structure with source memory, so it's created in constant time (see TimestampMap).
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class TimestampedMemory extends AbstractSet<BaseProfile> {
+
+    /**
+     * Base profile or array of base profiles related with each timestamp.
+     */
+    private final TimestampMap<Object> profiles;
+    private int size;
+
+    public TimestampedMemory() {
+        profiles = new TimestampMap<>();
+    }
+
+    /**
+     * Creates memory containing given base profiles.
+     *
+     * @param bps
+     */
+    public TimestampedMemory(Collection<BaseProfile> bps) {
+        this();
+        addAll(bps);
+    }
+
+    /**
+     * Creates copy of given memory, which shares its structure with given memory. Modifications of any of them don't
+     * affect the other one.
+     *
+     * @param source
+     */
+    TimestampedMemory(TimestampedMemory source) {
+        profiles = new TimestampMap<>(source.profiles);
+        size = source.size;
+    }
+
+    /**
+     * Adds given base profile. Base profile related with timestamp of other stored base profile is kept beside it.
+     *
+     * @param bp
+     * @return True if base profile wasn't present.
+     */
+    @Override
+    public boolean add(BaseProfile bp) {
+        if (bp == null)
+            throw new NullPointerException("Base profile not specified.");
+        Object existing = profiles.get(bp.getTimestamp());
+        if (existing == null)
+            profiles.put(bp.getTimestamp(), bp);
+        else {
+            if (indexOf(existing, bp) >= 0)
+                return false;
+            BaseProfile[] group = toArray(existing);
+            BaseProfile[] extended = Arrays.copyOf(group, group.length + 1);
+            extended[group.length] = bp;
+            profiles.put(bp.getTimestamp(), extended);
+        }
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof BaseProfile))
+            return false;
+        int timestamp = ((BaseProfile) o).getTimestamp();
+        Object existing = profiles.get(timestamp);
+        int i = existing != null ? indexOf(existing, (BaseProfile) o) : -1;
+        if (i < 0)
+            return false;
+        if (existing instanceof BaseProfile)
+            profiles.remove(timestamp);
+        else {
+            BaseProfile[] group = (BaseProfile[]) existing;
+            List<BaseProfile> rest = new ArrayList<>(Arrays.asList(group));
+            rest.remove(i);
+            profiles.put(timestamp, rest.size() == 1 ? rest.get(0) : rest.toArray(new BaseProfile[rest.size()]));
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof BaseProfile && isStored((BaseProfile) o);
+    }
+
+    private boolean isStored(BaseProfile bp) {
+        Object stored = profiles.get(bp.getTimestamp());
+        return stored != null && indexOf(stored, bp) >= 0;
+    }
+
+    /**
+     * Returns position of given base profile among base profiles related with the same timestamp, -1 if it's absent.
+     */
+    private static int indexOf(Object stored, BaseProfile bp) {
+        if (stored instanceof BaseProfile)
+            return stored == bp || stored.equals(bp) ? 0 : -1;
+        BaseProfile[] group = (BaseProfile[]) stored;
+        for (int i = 0; i < group.length; i++)
+            if (group[i] == bp || group[i].equals(bp))
+                return i;
+        return -1;
+    }
+
+    private static BaseProfile[] toArray(Object stored) {
+        return stored instanceof BaseProfile ? new BaseProfile[]{(BaseProfile) stored} : (BaseProfile[]) stored;
+    }
+
+    private static BaseProfile first(Object stored) {
+        return stored == null || stored instanceof BaseProfile ? (BaseProfile) stored : ((BaseProfile[]) stored)[0];
+    }
+
+    @Override
+    public Iterator<BaseProfile> iterator() {
+        return new ProfileIterator(profiles.ascending(Integer.MIN_VALUE, Integer.MAX_VALUE), false);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        profiles.clear();
+        size = 0;
+    }
+
+    /**
+     * @return Base profile related with given timestamp (the first added one if there are many) or null if there is
+     * no such.
+     */
+    public BaseProfile get(int timestamp) {
+        return first(profiles.get(timestamp));
+    }
+
+    /**
+     * @return All base profiles related with given timestamp, in order of adding.
+     */
+    public List<BaseProfile> getAll(int timestamp) {
+        Object stored = profiles.get(timestamp);
+        return stored == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(toArray(stored)));
+    }
+
+    /**
+     * @return Base profile with the lowest timestamp or null if memory is empty.
+     */
+    public BaseProfile getOldest() {
+        TimestampMap.Cursor<Object> cursor = profiles.ascending(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return cursor.hasNext() ? first(cursor.next()) : null;
+    }
+
+    /**
+     * @return Base profile with the greatest timestamp or null if memory is empty.
+     */
+    public BaseProfile getLatest() {
+        return getLatest(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return Base profile with the greatest timestamp not greater than given one or null if there is no such.
+     */
+    public BaseProfile getLatest(int endTimestamp) {
+        TimestampMap.Cursor<Object> cursor = profiles.descending(endTimestamp, Integer.MIN_VALUE);
+        return cursor.hasNext() ? first(cursor.next()) : null;
+    }
+
+    /**
+     * Returns read-only view of base profiles related with timestamps from range [beginning, endTimestamp].
+     * Note: size of view which doesn't cover all base profiles is counted in linear time.
+     *
+     * @param endTimestamp Inclusive upper bound of range.
+     * @return
+     */
+    public Set<BaseProfile> headSet(int endTimestamp) {
+        return new RangeView(Integer.MIN_VALUE, endTimestamp);
+    }
+
+    /**
+     * Returns read-only view of base profiles related with timestamps from range [beginTimestamp, endTimestamp].
+     *
+     * @see #headSet(int)
+     */
+    public Set<BaseProfile> subSet(int beginTimestamp, int endTimestamp) {
+        if (beginTimestamp > endTimestamp)
+            return Collections.emptySet();
+        return new RangeView(beginTimestamp, endTimestamp);
+    }
+
+    private class RangeView extends AbstractSet<BaseProfile> {
+        private final int beginTimestamp;
+        private final int endTimestamp;
+
+        RangeView(int beginTimestamp, int endTimestamp) {
+            this.beginTimestamp = beginTimestamp;
+            this.endTimestamp = endTimestamp;
+        }
+
+        @Override
+        public Iterator<BaseProfile> iterator() {
+            return new ProfileIterator(profiles.ascending(beginTimestamp, endTimestamp), true);
+        }
+
+        @Override
+        public int size() {
+            int res = 0;
+            for (TimestampMap.Cursor<Object> it = profiles.ascending(beginTimestamp, endTimestamp); it.hasNext(); ) {
+                Object stored = it.next();
+                res += stored instanceof BaseProfile ? 1 : ((BaseProfile[]) stored).length;
+            }
+            return res;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !profiles.ascending(beginTimestamp, endTimestamp).hasNext();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof BaseProfile))
+                return false;
+            int timestamp = ((BaseProfile) o).getTimestamp();
+            return timestamp >= beginTimestamp && timestamp <= endTimestamp && isStored((BaseProfile) o);
+        }
+    }
+
+    /**
+     * Iterates over base profiles of given groups. If it isn't read-only, it removes base profiles from this memory.
+     */
+    private class ProfileIterator implements Iterator<BaseProfile> {
+        private final TimestampMap.Cursor<Object> groups;
+        private final boolean readOnly;
+        private BaseProfile[] group;
+        private int position;
+        private BaseProfile last;
+
+        ProfileIterator(TimestampMap.Cursor<Object> groups, boolean readOnly) {
+            this.groups = groups;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return group != null && position < group.length || groups.hasNext();
+        }
+
+        @Override
+        public BaseProfile next() {
+            if (group == null || position == group.length) {
+                group = toArray(groups.next());
+                position = 0;
+            }
+            return last = group[position++];
+        }
+
+        @Override
+        public void remove() {
+            if (readOnly)
+                throw new UnsupportedOperationException();
+            if (last == null)
+                throw new IllegalStateException();
+            if (group.length == 1)
+                profiles.remove(groups.getTimestamp());
+            else {
+                List<BaseProfile> rest = new ArrayList<>(Arrays.asList(group));
+                rest.remove(--position);
+                group = rest.toArray(new BaseProfile[rest.size()]);
+                profiles.put(groups.getTimestamp(), group.length == 1 ? group[0] : group);
+            }
+            size--;
+            last = null;
+        }
+    }
+}
@@ -53,20 +53,27 @@ public class BinaryHolon implements Holon {
      */
     public boolean update(DistributedKnowledge dk) throws InvalidFormulaException, NotApplicableException {
 
+        if (this.dk != dk)
+            this.dk.advanceTo(dk);
         this.dk=dk;
         if (dk.getFormula().getType() != Formula.Type.SIMPLE_MODALITY) {
             throw new InvalidFormulaException();
         } else {
+            GroundingMetrics.count(GroundingMetrics.Counter.HOLONS_UPDATED, Formula.Type.SIMPLE_MODALITY, 1);
             double sumPositive = 0;
             double sumNegative = 0;
+            if (currContext != null)
+                dk.getRelatedObservationsBase().checkNotConsolidated(dk.getTimestamp());
             if (((SimpleFormula) dk.getComplementaryFormulas().get(0)).isNegated()) {
                 if(currContext != null){
-                currContext = context.performContextualisation(dk.mapOfGroundingSets());}
+                currContext = context.performContextualisation(dk.mapOfGroundingSets(),
+                        dk.getRelatedObservationsBase());}
                 sumPositive += Grounder.determineFulfillmentDouble(dk, dk.getComplementaryFormulas().get(0),currContext);
                 sumNegative += Grounder.determineFulfillmentDouble(dk,  dk.getComplementaryFormulas().get(1),currContext);
             } else {
                 if(currContext != null){
-                currContext = context.performContextualisation(dk.mapOfGroundingSets());}
+                currContext = context.performContextualisation(dk.mapOfGroundingSets(),
+                        dk.getRelatedObservationsBase());}
                 sumNegative += Grounder.determineFulfillmentDouble(dk,  dk.getComplementaryFormulas().get(1),currContext);
                 sumPositive += Grounder.determineFulfillmentDouble(dk,  dk.getComplementaryFormulas().get(0),currContext);
             }
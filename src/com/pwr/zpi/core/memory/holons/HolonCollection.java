@@ -1,7 +1,6 @@
 package com.pwr.zpi.core.memory.holons;
 
 import com.pwr.zpi.core.Agent;
-import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
 import com.pwr.zpi.core.memory.holons.context.contextualisation.Contextualisation;
 import com.pwr.zpi.exceptions.InvalidContextException;
 import com.pwr.zpi.exceptions.InvalidFormulaException;
@@ -99,7 +98,8 @@ public class HolonCollection {
         Holon holon = null;
         try {
             if (formula instanceof SimpleFormula)
-                holon = new BinaryHolon(new DistributedKnowledge(owner, formula, timestamp, true), holonsContextualisation);
+                holon = new BinaryHolon(owner.getKnowledgeCache().get(owner, formula, timestamp, true),
+                        holonsContextualisation);
             else holon = new NewNonBinaryHolon(owner.distributeKnowledge(formula, timestamp, true), holonsContextualisation);
 
             holonCollection.add(holon);
@@ -9,6 +9,7 @@ import com.pwr.zpi.exceptions.InvalidFormulaException;
 import com.pwr.zpi.exceptions.NotApplicableException;
 import com.pwr.zpi.language.ComplexFormula;
 import com.pwr.zpi.language.Formula;
+import com.pwr.zpi.language.GroundingMetrics;
 import com.pwr.zpi.language.LogicOperator;
 
 import java.util.HashMap;
@@ -67,7 +68,15 @@ public class HolonsIntercessor {
      * @return
      */
     public Map<Formula, Double> getSummaries(Formula currFormula, int timestamp) {
+        long start = GroundingMetrics.start();
+        try {
+            return retrieveSummaries(currFormula, timestamp);
+        } finally {
+            GroundingMetrics.stop(GroundingMetrics.Phase.SUMMARIZATION, currFormula.getType(), start);
+        }
+    }
 
+    private Map<Formula, Double> retrieveSummaries(Formula currFormula, int timestamp) {
         if (currFormula.usesDirectHolonConstruction()) {
             return holonsCollection.getHolon(currFormula, timestamp).getSummaries();
         } else {
@@ -10,6 +10,7 @@ import com.pwr.zpi.exceptions.InvalidFormulaException;
 import com.pwr.zpi.exceptions.NotApplicableException;
 import com.pwr.zpi.language.Formula;
 import com.pwr.zpi.language.Grounder;
+import com.pwr.zpi.language.GroundingMetrics;
 import com.pwr.zpi.util.Pair;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -66,8 +67,11 @@ public class NewNonBinaryHolon implements Holon{
      */
     @Override
     public void update() throws InvalidFormulaException, NotApplicableException {
+        GroundingMetrics.count(GroundingMetrics.Counter.HOLONS_UPDATED, relatedFormula.getType(), 1);
         applyContextualisationIfProvided();
-        summaries = Grounder.relativeCard_(contextualisedGroundedSets);
+        if (contextualisation != null)
+            summaries = Grounder.relativeCard_(contextualisedGroundedSets);
+        else summaries = Grounder.relativeCard_(dk);
     }
 
     public Formula getRelatedFormula() {
@@ -117,12 +121,17 @@ public class NewNonBinaryHolon implements Holon{
     }
 
     /**
-     * Method launches contextualistion mechanism, if such was provided
+     * Method launches contextualistion mechanism, if such was provided. Contextualisation selects base profiles from
+     * grounding sets, so it fails when some of them are folded into consolidated segments.
      */
     private void applyContextualisationIfProvided() {
-        if (contextualisation != null)
-            this.contextualisedGroundedSets = contextualisation.performContextualisation(dk.mapOfGroundingSets());
-        else this.contextualisedGroundedSets = dk.mapOfGroundingSets();
+        if (contextualisation != null) {
+            dk.getRelatedObservationsBase().checkNotConsolidated(dk.getTimestamp());
+            long start = GroundingMetrics.start();
+            this.contextualisedGroundedSets = contextualisation.performContextualisation(dk.mapOfGroundingSets(),
+                    dk.getRelatedObservationsBase());
+            GroundingMetrics.stop(GroundingMetrics.Phase.CONTEXTUALISATION, relatedFormula.getType(), start);
+        }
     }
 
     @Override
@@ -148,7 +157,7 @@ public class NewNonBinaryHolon implements Holon{
     private boolean updateDKifRequired(DistributedKnowledge dk) {
         if(dk.isNewerThan(this.dk)) {
             try {
-                this.dk = dk.clone();
+                this.dk = this.dk.advanceTo(dk).clone();
             } catch (CloneNotSupportedException e) {
                 Logger.getAnonymousLogger().log(Level.WARNING, "Not able to clone knowledge distribution.", e);
                 return false;
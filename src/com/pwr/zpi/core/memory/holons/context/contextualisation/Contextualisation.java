@@ -3,6 +3,7 @@
  */
 package com.pwr.zpi.core.memory.holons.context.contextualisation;
 
+import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
 import com.pwr.zpi.language.Formula;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
@@ -26,6 +27,18 @@ public interface Contextualisation {
      */
     Map<Formula, Set<BaseProfile>> performContextualisation(Map<Formula, Set<BaseProfile>> namedGroundingSets);
 
+    /**
+     * Variant of performContextualisation(Map) for grounding sets produced from given collection of base profiles,
+     * which allows to use indexes maintained by collection. By default collection is ignored.
+     * @param namedGroundingSets Map of grounding sets and related formulas.
+     * @param source Collection which contains all grounded base profiles.
+     * @return Map of grounding sets filtered in certain manner.
+     */
+    default Map<Formula, Set<BaseProfile>> performContextualisation(Map<Formula, Set<BaseProfile>> namedGroundingSets,
+                                                                    BPCollection source) {
+        return performContextualisation(namedGroundingSets);
+    }
+
     /**
      * This method provides names of all concrete implementations of this interface spoken in natural language.
      * Every contextualisation method which should be accessed via voice command must be included in resulted map.
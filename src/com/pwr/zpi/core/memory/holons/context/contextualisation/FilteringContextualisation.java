@@ -3,6 +3,7 @@
  */
 package com.pwr.zpi.core.memory.holons.context.contextualisation;
 
+import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
 import com.pwr.zpi.core.memory.holons.context.builders.ContextBuilder;
 import com.pwr.zpi.core.memory.holons.context.measures.Measure;
@@ -80,8 +81,21 @@ public class FilteringContextualisation implements Contextualisation {
      */
     @Override
     public Map<Formula, Set<BaseProfile>> performContextualisation(Map<Formula, Set<BaseProfile>> namedGroundingSets) {
+        return performContextualisation(namedGroundingSets, null);
+    }
+
+    /**
+     * Performs contextualisation, passing given collection to selector of representative base profiles.
+     *
+     * @param namedGroundingSets Map of grounding sets and related formulas.
+     * @param source Collection which contains all grounded base profiles or null if it's unknown.
+     * @return Map of grounding sets filtered in certain manner.
+     */
+    @Override
+    public Map<Formula, Set<BaseProfile>> performContextualisation(Map<Formula, Set<BaseProfile>> namedGroundingSets,
+                                                                   BPCollection source) {
         Map<Formula, Set<BaseProfile>> res = new TreeMap<>();
-        Context currentContext = buildContext(namedGroundingSets);
+        Context currentContext = buildContext(namedGroundingSets, source);
         for (Map.Entry<Formula, Set<BaseProfile>> entry : namedGroundingSets.entrySet()) {
             Set<BaseProfile> groundingSet = entry.getValue();
             res.put(entry.getKey(),
@@ -113,11 +127,12 @@ public class FilteringContextualisation implements Contextualisation {
     /**
      * Method creates context for given grounding sets.
      * @param namedGroundingSets
+     * @param source
      * @return
      */
-    private Context buildContext(Map<Formula, Set<BaseProfile>> namedGroundingSets) {
+    private Context buildContext(Map<Formula, Set<BaseProfile>> namedGroundingSets, BPCollection source) {
         Formula formula = provideFormula(namedGroundingSets);
-        return contextBuilder.build(formula.getModel(), selector.select(namedGroundingSets));
+        return contextBuilder.build(formula.getModel(), selector.select(namedGroundingSets, source));
     }
 
     /**
@@ -1,12 +1,14 @@
 package com.pwr.zpi.core.memory.holons.context.selectors;
 
+import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.language.CompiledFormula;
 import com.pwr.zpi.language.Formula;
 import com.pwr.zpi.language.State;
 import com.pwr.zpi.core.memory.semantic.IndividualModel;
 
-import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -18,8 +20,11 @@ import java.util.stream.Collectors;
  */
 public class LatestFocusedGroupSelector implements RepresentativesSelector {
 
+    private static final State[] CLEAR_STATES = {State.IS, State.IS_NOT};
+
     private Formula formula;
     private IndividualModel relatedObject;
+    private CompiledFormula compiledFormula;
     /**
      *
      * @param formula Description of base profile which can be used to build a context. If exemplary formula is
@@ -32,6 +37,7 @@ public class LatestFocusedGroupSelector implements RepresentativesSelector {
             throw new NullPointerException();
         this.formula = formula;
          relatedObject= formula.getModel();
+        compiledFormula = formula.compile();
 
     }
 
@@ -57,8 +63,45 @@ public class LatestFocusedGroupSelector implements RepresentativesSelector {
         return representativeBPs;
     }
 
+    /**
+     * Visits only base profiles which clearly observe related object, with help of observation index of given
+     * collection.
+     *
+     * @param namedGroundingSets
+     * @param source Collection which contains all grounded base profiles.
+     * @return
+     */
+    @Override
+    public Set<BaseProfile> select(Map<Formula, Set<BaseProfile>> namedGroundingSets, BPCollection source) {
+        if (source == null)
+            return select(namedGroundingSets);
+        if (namedGroundingSets == null || namedGroundingSets.isEmpty()) {
+            throw new NullPointerException("Representative base profiles cannot be resolved.");
+        }
+
+        Set<BaseProfile> representativeBPs = new HashSet<>();
+        Iterator<BaseProfile> observing = source.getLatestBaseProfiles(relatedObject, source.getTimestamp(),
+                CLEAR_STATES);
+        while (observing.hasNext()) {
+            BaseProfile bp = observing.next();
+            if (compiledFormula.isFulfilled(bp) && RepresentativesSelector.isGrounded(bp, namedGroundingSets))
+                representativeBPs.add(bp);
+        }
+        return representativeBPs;
+    }
+
     public boolean isEligible(BaseProfile bp) {
-        return new ArrayList<>(bp.getAffectedIMs(State.IS, State.IS_NOT)).contains(relatedObject)
-                && formula.isFormulaFulfilled(bp);
+        return compiledFormula.isFulfilled(bp) && isClearlyObserved(bp);
+    }
+
+    /**
+     * Checks if base profile presents related object as having or not having any trait.
+     */
+    private boolean isClearlyObserved(BaseProfile bp) {
+        for (State state : CLEAR_STATES)
+            for (Set<IndividualModel> ims : bp.getContainer(state).values())
+                if (ims.contains(relatedObject))
+                    return true;
+        return false;
     }
 }
@@ -1,5 +1,6 @@
 package com.pwr.zpi.core.memory.holons.context.selectors;
 
+import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
 import com.pwr.zpi.exceptions.InvalidGroupSelectorException;
 import com.pwr.zpi.io.Configuration;
@@ -9,6 +10,7 @@ import com.pwr.zpi.core.memory.semantic.IndividualModel;
 
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -54,4 +56,34 @@ public class LatestGroupSelector implements RepresentativesSelector {
                 .collect(Collectors.toSet());
         return representativeBPs;
     }
+
+    /**
+     * Finds n latest base profiles with help of observation index of given collection - base profiles observing
+     * related object are visited from the latest one, until n grounded ones are found.
+     *
+     * @param namedGroundingSets
+     * @param source Collection which contains all grounded base profiles.
+     * @return
+     */
+    @Override
+    public Set<BaseProfile> select(Map<Formula, Set<BaseProfile>> namedGroundingSets, BPCollection source) {
+        if (source == null)
+            return select(namedGroundingSets);
+        int groupSize = this.groupSize != 0 ? this.groupSize : LATEST_GROUP_SIZE;
+        if (namedGroundingSets == null || namedGroundingSets.isEmpty()) {
+            throw new NullPointerException("Representative base profiles cannot be resolved.");
+        }
+
+        IndividualModel relatedObject = namedGroundingSets.keySet().iterator().next().getModel();
+
+        Set<BaseProfile> representativeBPs = new HashSet<>();
+        Iterator<BaseProfile> latest = source.getLatestBaseProfiles(relatedObject, source.getTimestamp(),
+                State.IS, State.IS_NOT);
+        while (representativeBPs.size() < groupSize && latest.hasNext()) {
+            BaseProfile bp = latest.next();
+            if (RepresentativesSelector.isGrounded(bp, namedGroundingSets))
+                representativeBPs.add(bp);
+        }
+        return representativeBPs;
+    }
 }
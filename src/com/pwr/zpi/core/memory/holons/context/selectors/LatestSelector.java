@@ -1,5 +1,6 @@
 package com.pwr.zpi.core.memory.holons.context.selectors;
 
+import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
 import com.pwr.zpi.language.Formula;
 import com.pwr.zpi.language.State;
@@ -7,6 +8,7 @@ import com.pwr.zpi.core.memory.semantic.IndividualModel;
 
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -44,4 +46,34 @@ public class LatestSelector implements RepresentativesSelector {
         representativeBPs.add(res);
         return representativeBPs;
     }
+
+    /**
+     * Finds the latest base profile with help of observation index of given collection - base profiles observing
+     * related object are visited from the latest one, until the first grounded one is found.
+     *
+     * @param namedGroundingSets
+     * @param source Collection which contains all grounded base profiles.
+     * @return Set of BaseProfiles which contains latest one.
+     */
+    @Override
+    public Set<BaseProfile> select(Map<Formula, Set<BaseProfile>> namedGroundingSets, BPCollection source) {
+        if (source == null)
+            return select(namedGroundingSets);
+        if (namedGroundingSets == null || namedGroundingSets.isEmpty())
+            throw new NullPointerException("Representative base profiles cannot be resolved.");
+
+        IndividualModel relatedObject = namedGroundingSets.keySet().iterator().next().getModel();
+
+        Iterator<BaseProfile> latest = source.getLatestBaseProfiles(relatedObject, source.getTimestamp(),
+                State.IS, State.IS_NOT);
+        while (latest.hasNext()) {
+            BaseProfile bp = latest.next();
+            if (RepresentativesSelector.isGrounded(bp, namedGroundingSets)) {
+                Set<BaseProfile> representativeBPs = new HashSet<>();
+                representativeBPs.add(bp);
+                return representativeBPs;
+            }
+        }
+        return select(namedGroundingSets);
+    }
 }
@@ -1,5 +1,6 @@
 package com.pwr.zpi.core.memory.holons.context.selectors;
 
+import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
 import com.pwr.zpi.language.Formula;
 
@@ -17,4 +18,27 @@ public interface RepresentativesSelector {
      * @return
      */
     Set<BaseProfile> select(Map<Formula, Set<BaseProfile>> namedGroundingSets);
+
+    /**
+     * Variant of select(Map) for grounding sets produced from given collection of base profiles. Implementations can
+     * use indexes maintained by collection instead of visiting all grounded base profiles. By default collection
+     * is ignored.
+     *
+     * @param namedGroundingSets
+     * @param source Collection which contains all grounded base profiles or null if it's unknown.
+     * @return
+     */
+    default Set<BaseProfile> select(Map<Formula, Set<BaseProfile>> namedGroundingSets, BPCollection source) {
+        return select(namedGroundingSets);
+    }
+
+    /**
+     * Checks if given base profile belongs to any of given grounding sets.
+     */
+    static boolean isGrounded(BaseProfile bp, Map<Formula, Set<BaseProfile>> namedGroundingSets) {
+        for (Set<BaseProfile> groundingSet : namedGroundingSets.values())
+            if (groundingSet.contains(bp))
+                return true;
+        return false;
+    }
 }
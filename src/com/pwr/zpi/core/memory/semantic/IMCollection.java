@@ -107,14 +107,34 @@ public class IMCollection {
         return res;
     }
 
+    /**
+     * Batch version of captureNewIM(Observation): resolves identifiers of all given observations in single pass over
+     * individual models and adds models for unknown identifiers.
+     *
+     * @param newObservations Observations which models are being checked.
+     * @return Map of identifiers of given observations to found or newly created IMs.
+     */
+    public Map<Identifier, IndividualModel> captureNewIMs(Collection<Observation> newObservations) {
+        Map<Identifier, IndividualModel> res = new HashMap<>();
+        for (Observation obs : newObservations)
+            res.put(obs.getIdentifier(), null);
+        for (IndividualModel model : individualModelSet)
+            res.replace(model.getIdentifier(), model);
+        for (Map.Entry<Identifier, IndividualModel> entry : res.entrySet())
+            if (entry.getValue() == null) {
+                IndividualModel newIM = new IndividualModel(entry.getKey(), entry.getKey().getType());
+                individualModelSet.add(newIM);
+                entry.setValue(newIM);
+            }
+        return res;
+    }
+
     /**
      * Method checks if there is unregistered IM in given IM set and adds such IM.
      *
      * @param allIMs Set of all IMs.
      */
     public <T> void captureNewIM(Set<IndividualModel> allIMs) {
-        for (IndividualModel im : allIMs)
-            if (!new ArrayList(individualModelSet).contains(im))
-                individualModelSet.add(im);
+        individualModelSet.addAll(allIMs);
     }
 }
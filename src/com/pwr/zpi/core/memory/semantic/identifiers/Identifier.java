@@ -56,4 +56,17 @@ public abstract class Identifier {
         return otherIdentifier.getClass() == this.getClass()
                 && this.getIdNumber().equals(((Identifier)otherIdentifier).getIdNumber());
     }
+
+    /**
+     * Hash code consistent with equals(), so identifiers (and individual models) can be used as keys of hashed
+     * collections.
+     *
+     * @return Hash code based on concrete identifier class and id number.
+     */
+    @Override
+    public int hashCode() {
+        int result = getClass().hashCode();
+        result = 31 * result + (idNumber != null ? idNumber.hashCode() : 0);
+        return result;
+    }
 }
@@ -33,9 +33,14 @@ public class Configuration {
     private static final String DEF_CONFIGURATION_FILENAME = "configuration.xml";
 
     /**
-     * Distributed knowledge static values.
+     * Distributed knowledge static values. DK_VERIFICATION selects when consistency of distributions is checked
+     * (ALWAYS, SAMPLED or OFF), sampled verification checks DK_VERIFICATION_RATE of distributions. Agent caches
+     * distributions of at most DK_CACHE_SIZE families of complementary formulas; non-positive size disables cache.
      */
     public static final boolean DK_IS_COMPLEX, DEF_DK_IS_COMPLEX = true;
+    public static final String DK_VERIFICATION, DEF_DK_VERIFICATION = "SAMPLED";
+    public static final double DK_VERIFICATION_RATE, DEF_DK_VERIFICATION_RATE = 0.01;
+    public static final int DK_CACHE_SIZE, DEF_DK_CACHE_SIZE = 64;
 
     /**
      * Scenario static values.
@@ -66,11 +71,40 @@ public class Configuration {
     public static final int LATEST_GROUP_SIZE, DEF_LATEST_GROUP_SIZE = 5;
 
     /**
-     * BPCollection static values.
+     * BPCollection static values. WM_EVICTION_POLICY names policy which selects base profile shifted from full working
+     * memory to long-term memory: FIFO, LRU or SALIENCE. MAPPED_LM keeps long-term memory in memory-mapped file,
+     * which is mapped in segments of MAPPED_LM_SEGMENT_SIZE bytes. COMPACT_BASE_PROFILES makes new base profiles
+     * keep observations in primitive arrays. SEAL_BASE_PROFILES makes base profiles read-only once timestamp of
+     * collection advances past their timestamps. Base profiles from long-term memory older than
+     * LM_CONSOLIDATION_HORIZON moments in time are folded into aggregated segments, in batches of at least
+     * LM_CONSOLIDATION_BATCH base profiles; non-positive horizon disables consolidation. Episodic journal writes new
+     * checkpoint after JOURNAL_CHECKPOINT_INTERVAL records.
      */
     public static final int INIT_TIMESTAMP, DEF_INIT_TIMESTAMP = 0;
     public static final int MAX_WM_CAPACITY, DEF_MAX_WM_CAPACITY = 100;
+    public static final String WM_EVICTION_POLICY, DEF_WM_EVICTION_POLICY = "FIFO";
     public static final boolean OVERRIDE_IF_EXISTS, DEF_OVERRIDE_IF_EXISTS = true;
+    public static final boolean MAPPED_LM, DEF_MAPPED_LM = false;
+    public static final int MAPPED_LM_SEGMENT_SIZE, DEF_MAPPED_LM_SEGMENT_SIZE = 16777216;
+    public static final boolean COMPACT_BASE_PROFILES, DEF_COMPACT_BASE_PROFILES = false;
+    public static final boolean SEAL_BASE_PROFILES, DEF_SEAL_BASE_PROFILES = false;
+    public static final int LM_CONSOLIDATION_HORIZON, DEF_LM_CONSOLIDATION_HORIZON = 0;
+    public static final int LM_CONSOLIDATION_BATCH, DEF_LM_CONSOLIDATION_BATCH = 100;
+    public static final int JOURNAL_CHECKPOINT_INTERVAL, DEF_JOURNAL_CHECKPOINT_INTERVAL = 100000;
+
+    /**
+     * Grounder static values. Grounding is performed in parallel only for at least PARALLEL_GROUNDING_THRESHOLD base
+     * profiles. GROUNDING_POOL_SIZE equal to 0 means number of available processors.
+     * Approximate grounding estimates relative cardinalities from samples of base profiles; estimation differs from
+     * exact value by less than APPROXIMATION_ERROR with probability APPROXIMATION_CONFIDENCE.
+     * GROUNDING_METRICS enables timing of particular phases of grounding.
+     */
+    public static final int PARALLEL_GROUNDING_THRESHOLD, DEF_PARALLEL_GROUNDING_THRESHOLD = 100000;
+    public static final int GROUNDING_POOL_SIZE, DEF_GROUNDING_POOL_SIZE = 0;
+    public static final boolean APPROXIMATE_GROUNDING, DEF_APPROXIMATE_GROUNDING = false;
+    public static final double APPROXIMATION_ERROR, DEF_APPROXIMATION_ERROR = 0.05;
+    public static final double APPROXIMATION_CONFIDENCE, DEF_APPROXIMATION_CONFIDENCE = 0.95;
+    public static final boolean GROUNDING_METRICS, DEF_GROUNDING_METRICS = false;
 
     /**
      * Voice server ports values.
@@ -136,6 +170,9 @@ public class Configuration {
 
         //Distributed knowledge
         DK_IS_COMPLEX = selectValue(reader.getValue("DK_IS_COMPLEX"), DEF_DK_IS_COMPLEX);
+        DK_VERIFICATION = selectValue(reader.getValue("DK_VERIFICATION"), DEF_DK_VERIFICATION);
+        DK_VERIFICATION_RATE = selectValue(reader.getValue("DK_VERIFICATION_RATE"), DEF_DK_VERIFICATION_RATE);
+        DK_CACHE_SIZE = selectValue(reader.getValue("DK_CACHE_SIZE"), DEF_DK_CACHE_SIZE);
 
         //Scenario
         FIRST_TRAIT_POS = selectValue(reader.getValue("FIRST_TRAIT_POS"), DEF_FIRST_TRAIT_POS);
@@ -160,7 +197,23 @@ public class Configuration {
         //BPCollection
         INIT_TIMESTAMP = selectValue(reader.getValue("INIT_TIMESTAMP"), DEF_INIT_TIMESTAMP);
         MAX_WM_CAPACITY = selectValue(reader.getValue("MAX_WM_CAPACITY"), DEF_MAX_WM_CAPACITY);
+        WM_EVICTION_POLICY = selectValue(reader.getValue("WM_EVICTION_POLICY"), DEF_WM_EVICTION_POLICY);
         OVERRIDE_IF_EXISTS = selectValue(reader.getValue("OVERRIDE_IF_EXISTS"), DEF_OVERRIDE_IF_EXISTS);
+        MAPPED_LM = selectValue(reader.getValue("MAPPED_LM"), DEF_MAPPED_LM);
+        MAPPED_LM_SEGMENT_SIZE = selectValue(reader.getValue("MAPPED_LM_SEGMENT_SIZE"), DEF_MAPPED_LM_SEGMENT_SIZE);
+        COMPACT_BASE_PROFILES = selectValue(reader.getValue("COMPACT_BASE_PROFILES"), DEF_COMPACT_BASE_PROFILES);
+        SEAL_BASE_PROFILES = selectValue(reader.getValue("SEAL_BASE_PROFILES"), DEF_SEAL_BASE_PROFILES);
+        LM_CONSOLIDATION_HORIZON = selectValue(reader.getValue("LM_CONSOLIDATION_HORIZON"), DEF_LM_CONSOLIDATION_HORIZON);
+        LM_CONSOLIDATION_BATCH = selectValue(reader.getValue("LM_CONSOLIDATION_BATCH"), DEF_LM_CONSOLIDATION_BATCH);
+        JOURNAL_CHECKPOINT_INTERVAL = selectValue(reader.getValue("JOURNAL_CHECKPOINT_INTERVAL"), DEF_JOURNAL_CHECKPOINT_INTERVAL);
+
+        //Grounder
+        PARALLEL_GROUNDING_THRESHOLD = selectValue(reader.getValue("PARALLEL_GROUNDING_THRESHOLD"), DEF_PARALLEL_GROUNDING_THRESHOLD);
+        GROUNDING_POOL_SIZE = selectValue(reader.getValue("GROUNDING_POOL_SIZE"), DEF_GROUNDING_POOL_SIZE);
+        APPROXIMATE_GROUNDING = selectValue(reader.getValue("APPROXIMATE_GROUNDING"), DEF_APPROXIMATE_GROUNDING);
+        APPROXIMATION_ERROR = selectValue(reader.getValue("APPROXIMATION_ERROR"), DEF_APPROXIMATION_ERROR);
+        APPROXIMATION_CONFIDENCE = selectValue(reader.getValue("APPROXIMATION_CONFIDENCE"), DEF_APPROXIMATION_CONFIDENCE);
+        GROUNDING_METRICS = selectValue(reader.getValue("GROUNDING_METRICS"), DEF_GROUNDING_METRICS);
 
         //Voice servers ports
         LISTENING_SERVER_PORT = selectValue(reader.getValue("LISTENING_SERVER_PORT"), DEF_LISTENING_SERVER_PORT);
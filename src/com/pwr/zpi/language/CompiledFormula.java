@@ -0,0 +1,148 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Predicate which checks if formula is fulfilled by base profile, in the same sense as Formula.isFormulaFulfilled.
+ * Individual model, traits and states are resolved once, when formula is compiled, and there is one specialised class
+ * for each shape of formula (simple modality, conjunction, disjunction and exclusive disjunction). Thanks to that
+ * evaluation consists only of direct lookups in containers of base profile and doesn't allocate any objects.
+ *
+ * @author Grzegorz Kostkowski
+ */
+public abstract class CompiledFormula {
+
+    final IndividualModel model;
+
+    private CompiledFormula(IndividualModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Compiles given formula. Note: usually Formula.compile() should be used, which keeps compiled predicate.
+     *
+     * @param formula Simple modality or complex formula.
+     * @return Predicate related with given formula.
+     */
+    public static CompiledFormula compile(Formula formula) {
+        if (formula == null)
+            throw new NullPointerException("Formula not specified.");
+        List<Trait> traits = formula.getTraits();
+        List<State> states = formula.getStates();
+        if (formula.getType() == Formula.Type.SIMPLE_MODALITY)
+            return new Simple(formula.getModel(), traits.get(0), states.get(0));
+        switch (((ComplexFormula) formula).getOperator()) {
+            case AND:
+                return new Conjunction(formula.getModel(), traits.get(0), states.get(0), traits.get(1), states.get(1));
+            case OR:
+                return new Disjunction(formula.getModel(), traits.get(0), states.get(0), traits.get(1), states.get(1));
+            case XOR:
+                return new ExclusiveDisjunction(formula.getModel(), traits.get(0), states.get(0), traits.get(1), states.get(1));
+            default:
+                throw new IllegalStateException("Not supported logic operator.");
+        }
+    }
+
+    /**
+     * Compiles simple modality for any state of trait, including states which can't be expressed by SimpleFormula.
+     *
+     * @return Predicate fulfilled by base profiles which present individual model as having given state of trait.
+     */
+    public static CompiledFormula compile(IndividualModel model, Trait trait, State state) {
+        if (model == null || trait == null || state == null)
+            throw new NullPointerException("One of parameters is null.");
+        return new Simple(model, trait, state);
+    }
+
+    /**
+     * Checks if given base profile is in accordance with mental model implied through compiled formula.
+     *
+     * @param bp
+     * @return
+     * @see Formula#isFormulaFulfilled(BaseProfile)
+     */
+    public abstract boolean isFulfilled(BaseProfile bp);
+
+    /**
+     * @return Individual model which is the subject of compiled formula.
+     */
+    public IndividualModel getModel() {
+        return model;
+    }
+
+    /**
+     * Checks if base profile presents individual model as having given state of trait.
+     */
+    static boolean isObserved(BaseProfile bp, IndividualModel im, Trait trait, State state) {
+        Set<IndividualModel> ims = bp.getContainer(state).get(trait);
+        return ims != null && ims.contains(im);
+    }
+
+    private static final class Simple extends CompiledFormula {
+        private final Trait trait;
+        private final State state;
+
+        Simple(IndividualModel model, Trait trait, State state) {
+            super(model);
+            this.trait = trait;
+            this.state = state;
+        }
+
+        @Override
+        public boolean isFulfilled(BaseProfile bp) {
+            return isObserved(bp, model, trait, state);
+        }
+    }
+
+    private static abstract class Binary extends CompiledFormula {
+        final Trait fstTrait;
+        final State fstState;
+        final Trait sndTrait;
+        final State sndState;
+
+        Binary(IndividualModel model, Trait fstTrait, State fstState, Trait sndTrait, State sndState) {
+            super(model);
+            this.fstTrait = fstTrait;
+            this.fstState = fstState;
+            this.sndTrait = sndTrait;
+            this.sndState = sndState;
+        }
+    }
+
+    private static final class Conjunction extends Binary {
+        Conjunction(IndividualModel model, Trait fstTrait, State fstState, Trait sndTrait, State sndState) {
+            super(model, fstTrait, fstState, sndTrait, sndState);
+        }
+
+        @Override
+        public boolean isFulfilled(BaseProfile bp) {
+            return isObserved(bp, model, fstTrait, fstState) && isObserved(bp, model, sndTrait, sndState);
+        }
+    }
+
+    private static final class Disjunction extends Binary {
+        Disjunction(IndividualModel model, Trait fstTrait, State fstState, Trait sndTrait, State sndState) {
+            super(model, fstTrait, fstState, sndTrait, sndState);
+        }
+
+        @Override
+        public boolean isFulfilled(BaseProfile bp) {
+            return isObserved(bp, model, fstTrait, fstState) || isObserved(bp, model, sndTrait, sndState);
+        }
+    }
+
+    private static final class ExclusiveDisjunction extends Binary {
+        ExclusiveDisjunction(IndividualModel model, Trait fstTrait, State fstState, Trait sndTrait, State sndState) {
+            super(model, fstTrait, fstState, sndTrait, sndState);
+        }
+
+        @Override
+        public boolean isFulfilled(BaseProfile bp) {
+            return isObserved(bp, model, fstTrait, fstState) ^ isObserved(bp, model, sndTrait, sndState);
+        }
+    }
+}
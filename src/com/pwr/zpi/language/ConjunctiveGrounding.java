@@ -0,0 +1,84 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BPCollection;
+import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.episodic.GroundingIndex;
+
+import java.util.*;
+
+/**
+ * Grounding of conjunctions shared by formulas built on the same individual model and the same traits. Grounding set
+ * of each such formula (simple modality, conjunction, disjunction or exclusive disjunction) is union of grounding sets
+ * of its dependent conjunctions, so bitmap of each conjunction is produced once and used by all formulas - e.g.
+ * families of A AND B, A OR B and A XOR B need single pass over bitmap index. Conjunctions are identified by states
+ * of traits, regardless of order of traits in formula.
+ * Bitmaps concern observations base (at its version) and moment in time given when instance was created.
+ *
+ * @author Grzegorz Kostkowski
+ * @see Grounder#performFormulaGrounding(com.pwr.zpi.core.Agent, Collection)
+ * @see Formula#getDependentFormulas()
+ */
+public final class ConjunctiveGrounding {
+
+    private final BPCollection base;
+    private final int timestamp;
+    private final long version;
+    private BitSet scope;
+    private final Map<List<Object>, BitSet> conjunctions = new HashMap<>();
+
+    /**
+     * @param base      Observations base.
+     * @param timestamp Moment in time which limits considered base profiles.
+     */
+    public ConjunctiveGrounding(BPCollection base, int timestamp) {
+        if (base == null)
+            throw new NullPointerException("Observations base not specified.");
+        this.base = base;
+        this.timestamp = timestamp;
+        this.version = base.getVersion();
+    }
+
+    /**
+     * Checks if this grounding may be used for given observations base and moment in time.
+     */
+    public boolean isApplicable(BPCollection base, int timestamp) {
+        return this.base == base && this.timestamp == timestamp && version == base.getVersion();
+    }
+
+    /**
+     * Composes grounding sets of given formulas from bitmaps of their dependent conjunctions. Bitmaps are produced on
+     * first request and reused by following ones.
+     *
+     * @param formulas Formulas built on the same individual model and traits.
+     * @return Map of grounding sets as values and respective formulas as keys.
+     * @throws IllegalStateException If observations base was modified after this grounding was created.
+     */
+    public synchronized Map<Formula, Set<BaseProfile>> getGroundingSets(Collection<Formula> formulas) {
+        if (version != base.getVersion())
+            throw new IllegalStateException("Observations base was modified.");
+        GroundingIndex index = base.getGroundingIndex();
+        if (scope == null)
+            scope = index.getScope(timestamp);
+        Map<Formula, Set<BaseProfile>> res = new HashMap<>();
+        for (Formula formula : formulas) {
+            BitSet profiles = new BitSet();
+            for (Formula conjunction : formula.getDependentFormulas())
+                profiles.or(getProfiles(index, conjunction));
+            res.put(formula, index.materialise(profiles));
+        }
+        return res;
+    }
+
+    private BitSet getProfiles(GroundingIndex index, Formula conjunction) {
+        Map<Trait, State> states = new HashMap<>();
+        for (int i = 0; i < conjunction.getTraits().size(); i++)
+            states.put(conjunction.getTraits().get(i), conjunction.getStates().get(i));
+        List<Object> key = Arrays.asList(conjunction.getModel(), states);
+        BitSet res = conjunctions.get(key);
+        if (res == null) {
+            res = index.getFulfillingProfiles(conjunction, scope);
+            conjunctions.put(key, res);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,52 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.core.memory.episodic.GroundingIndex;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Grounding strategy which takes into consideration all base profiles till timestamp of distributed knowledge, but
+ * weight of base profile decays exponentially with its age: base profile which is halfLife moments in time older than
+ * distributed knowledge weighs half as much as the most recent one.
+ *
+ * @author Grzegorz Kostkowski
+ */
+public class DecayGroundingStrategy implements GroundingStrategy {
+
+    private final double halfLife;
+
+    /**
+     * @param halfLife Number of moments in time after which weight of base profile is halved.
+     */
+    public DecayGroundingStrategy(double halfLife) {
+        if (halfLife <= 0)
+            throw new IllegalArgumentException("Half-life should be positive.");
+        this.halfLife = halfLife;
+    }
+
+    @Override
+    public Map<Formula, Double> relativeCards(DistributedKnowledge dk) {
+        GroundingIndex index = dk.getRelatedObservationsBase().getGroundingIndex();
+        int timestamp = dk.getTimestamp();
+        return Grounder.relativeCard_(dk.getComplementaryFormulas(), index, index.getScope(timestamp),
+                profiles -> {
+                    double res = 0;
+                    for (int i = profiles.nextSetBit(0); i >= 0; i = profiles.nextSetBit(i + 1))
+                        res += getWeight(timestamp - index.getProfile(i).getTimestamp());
+                    return res;
+                });
+    }
+
+    /**
+     * Returns weight of base profile of given age.
+     */
+    public double getWeight(int age) {
+        return Math.pow(2, -age / halfLife);
+    }
+
+    public double getHalfLife() {
+        return halfLife;
+    }
+}
@@ -0,0 +1,152 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BPCollection;
+import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.exceptions.InvalidFormulaException;
+import com.pwr.zpi.io.Configuration;
+import com.sun.istack.internal.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Record of all values which epistemic conditions of single formula depend on, captured at certain moment in time:
+ * whether last observation was clear, whether formula is fulfilled by last base profile, whether formula has its
+ * representation in working memory, relative cardinality taken from summarization and (for disjunctions) grounding plan
+ * used to check epsilon-concentration. Thanks to that epistemic conditions can be evaluated many times for different
+ * thresholds without visiting memory again.
+ *
+ * @author Grzegorz Kostkowski
+ * @see Grounder#checkEpistemicConditions(Formula, DistributedKnowledge, Map, int)
+ */
+public final class EpistemicRecord {
+
+    private static final ModalOperator[] CHECKED_OPERATORS = {ModalOperator.POS, ModalOperator.BEL, ModalOperator.KNOW};
+
+    private final Formula formula;
+    private final boolean hasLastClearState;
+    private final boolean isFulfilledByLast;
+    private final boolean isPresentInWM;
+    private final double relativeCard;
+    /**
+     * Plan for epsilon-concentration checking; null if formula doesn't need it or plan couldn't be created.
+     */
+    private final GroundingPlan plan;
+
+    private EpistemicRecord(Formula formula, boolean hasLastClearState, boolean isFulfilledByLast,
+                            boolean isPresentInWM, double relativeCard, GroundingPlan plan) {
+        this.formula = formula;
+        this.hasLastClearState = hasLastClearState;
+        this.isFulfilledByLast = isFulfilledByLast;
+        this.isPresentInWM = isPresentInWM;
+        this.relativeCard = relativeCard;
+        this.plan = plan;
+    }
+
+    /**
+     * Captures values required to check epistemic conditions of given formula.
+     *
+     * @param formula       Formula associated with given distribution of knowledge.
+     * @param dk
+     * @param summarization Summarization which contains relative cardinality of given formula.
+     * @param timestamp
+     * @return
+     */
+    public static EpistemicRecord record(Formula formula, DistributedKnowledge dk, Map<Formula, Double> summarization,
+                                         int timestamp) {
+        BaseProfile lastBP = dk.getRelatedObservationsBase()
+                .getBaseProfile(timestamp, BPCollection.MemoryType.WM);
+        boolean hasLastClearState = true;
+        for (Trait selectedTrait : formula.getTraits())  //supports complex formulas
+            hasLastClearState = hasLastClearState
+                    && lastBP.isContainingClearDescriptionFor(formula.getModel(), selectedTrait);
+        if (hasLastClearState)
+            return new EpistemicRecord(formula, true, formula.isFormulaFulfilled(lastBP), false, 0, null);
+
+        boolean isPresentInWM = Configuration.APPROXIMATE_GROUNDING ? isGroundedInWM(formula, dk)
+                : !dk.getDkClassByDesc(formula, BPCollection.MemoryType.WM).isEmpty();
+        GroundingPlan plan = null;
+        if (formula.needEpsilonConcentrationChecking()) {
+            long start = GroundingMetrics.start();
+            try {
+                plan = GroundingPlan.getPlan((ComplexFormula) formula, dk.getRelatedObservationsBase());
+            } catch (InvalidFormulaException e) {
+                Logger.getAnonymousLogger().log(Level.WARNING, "Cannot determine epsilon concentration.", e);
+            }
+            GroundingMetrics.stop(GroundingMetrics.Phase.EPSILON_CONCENTRATION, formula.getType(), start);
+        }
+        return new EpistemicRecord(formula, false, false, isPresentInWM, summarization.get(formula), plan);
+    }
+
+    /**
+     * Checks if class of given formula in working memory isn't empty, visiting only base profiles of working memory
+     * (which size is bounded), without building grounding sets of distribution.
+     */
+    private static boolean isGroundedInWM(Formula formula, DistributedKnowledge dk) {
+        List<CompiledFormula> conjunctions = new ArrayList<>();
+        for (Formula conjunction : formula.getDependentFormulas())
+            conjunctions.add(conjunction.compile());
+        for (BaseProfile bp : dk.getRelatedObservationsBase().getMemoryContainer(BPCollection.MemoryType.WM))
+            if (bp.getTimestamp() <= dk.getTimestamp())
+                for (CompiledFormula conjunction : conjunctions)
+                    if (conjunction.isFulfilled(bp))
+                        return true;
+        return false;
+    }
+
+    /**
+     * Decides which modal operator can occur for recorded formula, for given thresholds.
+     *
+     * @param thresholds            Thresholds for type of recorded formula, in order [MIN_POS, MAX_POS, MIN_BEL, MAX_BEL, KNOW].
+     * @param conjunctionThresholds Thresholds for modal conjunctions which determine concentration-epsilon. Used only
+     *                              when recorded formula requires epsilon-concentration checking.
+     * @return Modal operator or null if none is possible.
+     * @see Grounder#checkEpistemicCondition(boolean, boolean, double, ModalOperator, double[])
+     */
+    @Nullable
+    public ModalOperator evaluate(double[] thresholds, double[] conjunctionThresholds) {
+        if (hasLastClearState)
+            return isFulfilledByLast ? ModalOperator.KNOW : null;
+
+        ModalOperator res = null;
+        for (int i = 0; i < CHECKED_OPERATORS.length && res == null; i++)
+            res = Grounder.checkEpistemicCondition(true, isPresentInWM, relativeCard,
+                    CHECKED_OPERATORS[i], thresholds);
+
+        if (formula.needEpsilonConcentrationChecking()) {
+            if (plan == null)
+                return null;
+            long start = GroundingMetrics.start();
+            Double epsilon = Grounder.getRelevantEpsilon((ComplexFormula) formula, conjunctionThresholds);
+            boolean isConcentrated = epsilon != null
+                    && Grounder.isSetEpsilonConcentrated((ComplexFormula) formula, plan, epsilon);
+            GroundingMetrics.stop(GroundingMetrics.Phase.EPSILON_CONCENTRATION, formula.getType(), start);
+            if (!isConcentrated)
+                return null;
+        }
+        return res;
+    }
+
+    public Formula getFormula() {
+        return formula;
+    }
+
+    public boolean hasLastClearState() {
+        return hasLastClearState;
+    }
+
+    public boolean isPresentInWM() {
+        return isPresentInWM;
+    }
+
+    /**
+     * @return Relative cardinality of recorded formula. Meaningful only if last observation wasn't clear.
+     */
+    public double getRelativeCard() {
+        return relativeCard;
+    }
+}
@@ -14,6 +14,8 @@ import java.util.*;
  */
 public abstract class Formula {
 
+    private transient CompiledFormula compiled;
+
     public abstract List<Trait> getTraits();
 
     public abstract IndividualModel getModel();
@@ -133,32 +135,19 @@ public abstract class Formula {
      * @return
      */
     public boolean isFormulaFulfilled(BaseProfile bp) {
-        IndividualModel object = getModel();
-        List<Trait> traits = getTraits();
-        List<State> states = getStates();
-        LogicOperator op = null;
-        if (!getType().equals(Type.SIMPLE_MODALITY))
-            op = ((ComplexFormula) this).getOperator();
-
-        boolean res = op != null && op.equals(LogicOperator.AND);
-        for (int i = 0; i < traits.size(); i++) {
-            boolean partialRes = bp.checkIfObserved(object, traits.get(i), states.get(i));
-            if (op == null)
-                res = partialRes;
-            else switch (op) {
-                case AND:
-                    res = res && partialRes;
-                    break;
-                case OR:
-                    res = res || partialRes;
-                    break;
-                case XOR:
-                    if (res && partialRes)
-                        return false;
-                    res = res || partialRes;
-            }
-        }
-        return res;
+        return compile().isFulfilled(bp);
+    }
+
+    /**
+     * Returns predicate compiled from this formula. Predicate is created on first use and kept by formula.
+     *
+     * @return
+     * @see CompiledFormula
+     */
+    public CompiledFormula compile() {
+        if (compiled == null)
+            compiled = CompiledFormula.compile(this);
+        return compiled;
     }
 
     /**
@@ -5,6 +5,10 @@ import com.pwr.zpi.io.Configuration;
 import com.pwr.zpi.core.memory.episodic.BPCollection;
 import com.pwr.zpi.core.memory.episodic.BaseProfile;
 import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.core.memory.episodic.GroundingCounters;
+import com.pwr.zpi.core.memory.episodic.GroundingIndex;
+import com.pwr.zpi.core.memory.episodic.GroundingSampler;
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
 import com.pwr.zpi.exceptions.InvalidConfigurationException;
 import com.pwr.zpi.exceptions.InvalidFormulaException;
 import com.pwr.zpi.exceptions.NotApplicableException;
@@ -13,6 +17,9 @@ import com.sun.istack.internal.Nullable;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ToDoubleFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -33,6 +40,11 @@ public class Grounder {
     private static final double EPS_SND_COEFFICIENT = 1.0 / 2.0;
     private static final Double DEF_EPS_LOWER_RANGE = 0.0;
     private static boolean isEpsilonLogged =false;
+    /**
+     * Number of chunks created for each worker of pool in parallel grounding.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static ForkJoinPool groundingPool;
 
     /**
      * Gives complete collection of grounding sets for certain formulas (in this context may be known as mental model).
@@ -46,16 +58,97 @@ public class Grounder {
         if (formulas == null || all == null)
             throw new NullPointerException("One of parameters is null.");
 
-        Map<Formula, Set<BaseProfile>> res = new HashMap<>();
+        if (all.size() >= Configuration.PARALLEL_GROUNDING_THRESHOLD)
+            return getGroundingSets(formulas, all, getGroundingPool());
+        GroundingIndex index = new GroundingIndex(all);
+        return getGroundingSets(formulas, index, index.getScope());
+    }
+
+    /**
+     * Gives complete collection of grounding sets for certain formulas, evaluated in parallel on given pool. Base
+     * profiles are split into chunks, grounding sets are evaluated within each chunk and then merged.
+     *
+     * @param formulas Considered formulas.
+     * @param all      Collection of all available (for agent) base profiles, regardless memory type.
+     * @param pool     Pool which executes grounding of particular chunks.
+     * @return Map of grounding sets as values and respective formulas as keys.
+     * @see GroundingTask
+     */
+    public static Map<Formula, Set<BaseProfile>> getGroundingSets(Collection<Formula> formulas, Collection<BaseProfile> all,
+                                                                  ForkJoinPool pool) {
+        if (formulas == null || all == null || pool == null)
+            throw new NullPointerException("One of parameters is null.");
+        List<BaseProfile> profiles = new ArrayList<>(all);
+        int chunkSize = profiles.size() / (pool.getParallelism() * CHUNKS_PER_WORKER) + 1;
+        return pool.invoke(new GroundingTask(formulas, profiles, chunkSize));
+    }
+
+    /**
+     * Returns pool used by parallel grounding. Pool is created on first use, its size is defined by
+     * Configuration.GROUNDING_POOL_SIZE.
+     */
+    public static synchronized ForkJoinPool getGroundingPool() {
+        if (groundingPool == null)
+            groundingPool = new ForkJoinPool(Configuration.GROUNDING_POOL_SIZE > 0 ?
+                    Configuration.GROUNDING_POOL_SIZE : Runtime.getRuntime().availableProcessors());
+        return groundingPool;
+    }
+
+    /**
+     * Gives complete collection of grounding sets for certain formulas, basing on bitmap index maintained by given
+     * collection of base profiles. Only base profiles related with moment in time from range [beginning, timestamp]
+     * are taken into consideration.
+     *
+     * @param formulas     Considered formulas.
+     * @param bpCollection Collection of all available (for agent) base profiles.
+     * @param timestamp    Moment in time which limits considered base profiles.
+     * @return Map of grounding sets as values and respective formulas as keys.
+     */
+    public static Map<Formula, Set<BaseProfile>> getGroundingSets(Collection<Formula> formulas, BPCollection bpCollection,
+                                                                  int timestamp) throws InvalidFormulaException {
+        if (formulas == null || bpCollection == null)
+            throw new NullPointerException("One of parameters is null.");
+        GroundingIndex index = bpCollection.getGroundingIndex();
+        return getGroundingSets(formulas, index, index.getScope(timestamp));
+    }
 
+    private static Map<Formula, Set<BaseProfile>> getGroundingSets(Collection<Formula> formulas, GroundingIndex index,
+                                                                   BitSet scope) throws InvalidFormulaException {
+        Map<Formula, Set<BaseProfile>> res = new HashMap<>();
+        if (formulas.size() > 1 && scope.cardinality() >= Configuration.PARALLEL_GROUNDING_THRESHOLD) {
+            Map<Formula, ForkJoinTask<Set<BaseProfile>>> tasks = new HashMap<>();
+            for (Formula f : formulas)
+                tasks.put(f, getGroundingPool().submit(() -> index.materialise(index.getGroundingProfiles(f, scope))));
+            for (Map.Entry<Formula, ForkJoinTask<Set<BaseProfile>>> entry : tasks.entrySet())
+                res.put(entry.getKey(), entry.getValue().join());
+            return res;
+        }
         for (Formula f : formulas)
-            res.put(f, composeGroundingSet(f, all));
+            res.put(f, index.materialise(index.getGroundingProfiles(f, scope)));
         return res;
     }
 
     /**
-     * Method intermediates between getGroundingSetsMap() method and getGroundingSet() which provides concrete grounding
-     * set. This method was developed to allow seamless grounding process for conjunctions and disjunctions which base on
+     * Gives cardinalities of grounding sets for certain formulas without building grounding sets themselves.
+     * Grounding counters of given collection are used when they describe all base profiles till given timestamp.
+     * Base profiles folded into consolidated segments are included.
+     *
+     * @param formulas     Considered formulas.
+     * @param bpCollection Collection of all available (for agent) base profiles.
+     * @param timestamp    Moment in time which limits considered base profiles.
+     * @return Map of cardinalities of grounding sets as values and respective formulas as keys.
+     * @see #getGroundingSets(Collection, BPCollection, int)
+     */
+    public static Map<Formula, Integer> getGroundingCards(Collection<Formula> formulas, BPCollection bpCollection,
+                                                          int timestamp) throws InvalidFormulaException {
+        if (formulas == null || bpCollection == null)
+            throw new NullPointerException("One of parameters is null.");
+        return bpCollection.getGroundingCards(formulas, timestamp);
+    }
+
+    /**
+     * Method intermediates between getGroundingSetsMap() method and GroundingIndex which provides concrete grounding
+     * set (as bitmap of base profiles fulfilling given formula). This method was developed to allow seamless grounding process for conjunctions and disjunctions which base on
      * particular conjunctive grounding sets.
      * Note: it also supports simple modalities.
      *
@@ -77,40 +170,16 @@ public class Grounder {
      * @return Grounding set for given formula: conjunctive or disjunctive.
      */
     public static Set<BaseProfile> composeGroundingSet(Formula f, Set<BaseProfile> all) throws InvalidFormulaException {
-        Set<BaseProfile> res = new HashSet<>();
-
-        for (Formula partialFormula : f.getDependentFormulas())
-            res.addAll(getGroundingSet(partialFormula, all));
-        return res;
+        if (f == null || all == null)
+            throw new NullPointerException("One of parameters is null.");
+        GroundingIndex index = new GroundingIndex(all);
+        return index.materialise(index.getGroundingProfiles(f, index.getScope()));
     }
 
     public static Map<Formula, Set<BaseProfile>> getGroundingSets(Formula formula, Set<BaseProfile> all) throws InvalidFormulaException {
         return getGroundingSets(formula.getComplementaryFormulas(), all);
     }
 
-    /**
-     * Method produces grounding set for certain formula, basing on provided set of base profiles. Method supports
-     * simple modalities and modal conjunctions. In order to build grounding set for disjunction. please use
-     * <em>composeGroundingSet()</em> which uses this method in particular way to build desired grounding sets.
-     *
-     * @param formula Simple modality and modal conjunction.
-     * @param all     Set of all available base profiles.
-     * @return Grounding set for given formula.
-     * @throws InvalidFormulaException
-     */
-    private static Set<BaseProfile> getGroundingSet(Formula formula, Set<BaseProfile> all) throws InvalidFormulaException {
-        if (formula == null || all == null)
-            throw new NullPointerException("One of parameters is null.");
-
-        Set<BaseProfile> res = new HashSet<>();
-        for (BaseProfile bp : all) {
-            if (formula.isFormulaFulfilled(bp))
-                res.add(bp);
-        }
-        return res;
-    }
-
-
     /**
      * Method realises complete grounding of given formula. Formula is treated as standard formula (in non-negated form),
      * so according to complementarity of mental models, grounding is performed for all complementary formulas to this one.
@@ -133,7 +202,57 @@ public class Grounder {
             throws InvalidFormulaException, NotApplicableException, NotConsistentDKException {
 
         DistributedKnowledge dk = agent.distributeKnowledge(formula, true);
-        List<Formula> complementaryFormulas = formula.getStandardFormula().getComplementaryFormulas();
+        return groundComplementaryFormulas(agent, formula.getStandardFormula(), dk);
+    }
+
+    /**
+     * Method realises complete grounding of many formulas at once. Formulas are grouped according to individual model
+     * and set of traits they are built on. Within each group bitmaps of conjunctive grounding sets are produced once
+     * and shared by distributions of knowledge of all families of formulas (e.g. A AND B, A OR B and A XOR B), and single
+     * distribution of knowledge is built for each standard formula.
+     *
+     * @param agent
+     * @param formulas Formulas which will be grounded.
+     * @return Map which assigns to each given formula result of its grounding, the same as would be returned by
+     * performFormulaGrounding(Agent, Formula). Formulas with common standard formula share the same result map.
+     * @see #performFormulaGrounding(Agent, Formula)
+     * @see ConjunctiveGrounding
+     */
+    public static Map<Formula, Map<Formula, ModalOperator>> performFormulaGrounding(Agent agent, Collection<Formula> formulas)
+            throws InvalidFormulaException, NotApplicableException, NotConsistentDKException {
+        if (agent == null || formulas == null)
+            throw new NullPointerException("One of parameters is null.");
+
+        Map<List<Object>, Map<Formula, List<Formula>>> groups = new LinkedHashMap<>();
+        for (Formula formula : formulas)
+            groups.computeIfAbsent(Arrays.asList(formula.getModel(), new HashSet<>(formula.getTraits())),
+                    traits -> new LinkedHashMap<>())
+                    .computeIfAbsent(formula.getStandardFormula(), f -> new ArrayList<>()).add(formula);
+
+        BPCollection base = agent.getKnowledgeSnapshot();
+        int timestamp = base.getTimestamp();
+        Map<Formula, Map<Formula, ModalOperator>> res = new HashMap<>();
+        for (Map<Formula, List<Formula>> group : groups.values()) {
+            ConjunctiveGrounding shared = new ConjunctiveGrounding(base, timestamp);
+            for (Map.Entry<Formula, List<Formula>> family : group.entrySet()) {
+                DistributedKnowledge dk = agent.getKnowledgeCache().get(agent, base, family.getKey(), timestamp, true,
+                        shared);
+                Map<Formula, ModalOperator> familyRes = groundComplementaryFormulas(agent, family.getKey(), dk);
+                for (Formula formula : family.getValue())
+                    res.put(formula, familyRes);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Checks epistemic conditions for all formulas complementary to given standard formula, basing on given
+     * distribution of knowledge.
+     */
+    private static Map<Formula, ModalOperator> groundComplementaryFormulas(Agent agent, Formula standardFormula,
+                                                                           DistributedKnowledge dk)
+            throws InvalidFormulaException, NotApplicableException {
+        List<Formula> complementaryFormulas = standardFormula.getComplementaryFormulas();
         Map<Formula, ModalOperator> res = new HashMap<>();
         ModalOperator currOperator = null;
         int timestamp = dk.getTimestamp();
@@ -165,41 +284,20 @@ public class Grounder {
     @Nullable
     public static ModalOperator checkEpistemicConditions(Formula formula, DistributedKnowledge dk, Map<Formula, Double> summarization,
                                                          int timestamp) throws NotApplicableException {
-        boolean hasLastClearState = true;
         Logger.getAnonymousLogger().log(Level.FINEST, summarization+"");
-        BaseProfile lastBP = dk.getRelatedObservationsBase()
-                .getBaseProfile(timestamp, BPCollection.MemoryType.WM);
-        for (Trait selectedTrait : formula.getTraits()) {  //supports complex formulas
-            hasLastClearState = hasLastClearState &&
-                    lastBP.isContainingClearDescriptionFor(formula.getModel(), selectedTrait);
-        }
-
-
-        boolean isPresentInWM = !dk.getDkClassByDesc(formula, BPCollection.MemoryType.WM).isEmpty();
-        ModalOperator res = null;
-
-        if (!hasLastClearState) {
-//            double currRelCard = holon.getSummary(formula);
-            double currRelCard = summarization.get(formula);
-            ModalOperator[] checkedOps = {ModalOperator.POS, ModalOperator.BEL, ModalOperator.KNOW};
-            double[] appropriateTresholds;
-            try {
-                appropriateTresholds = getThresholds(formula);
-            } catch (InvalidConfigurationException e) {
-                Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to check epistemic conditions.", e);
-                return null;
-            }
-            for (int i = 0; i < checkedOps.length && res == null; i++)
-                res = checkEpistemicCondition(true, isPresentInWM, currRelCard,
-                        checkedOps[i], appropriateTresholds);
-        } else
-            return formula.isFormulaFulfilled(lastBP) ? ModalOperator.KNOW : null;
-
-        if (formula.needEpsilonConcentrationChecking()) {
-            if (!checkEpsilonConcentratedCondition((ComplexFormula) formula, dk.getRelatedObservationsBase().getBaseProfiles()))
-                return null;
+        long start = GroundingMetrics.start();
+        try {
+            EpistemicRecord record = EpistemicRecord.record(formula, dk, summarization, timestamp);
+            if (record.hasLastClearState())
+                return record.evaluate(null, null);
+            return record.evaluate(getThresholds(formula), formula.needEpsilonConcentrationChecking() ?
+                    getThresholds(Formula.Type.MODAL_CONJUNCTION) : null);
+        } catch (InvalidConfigurationException e) {
+            Logger.getAnonymousLogger().log(Level.SEVERE, "Unable to check epistemic conditions.", e);
+            return null;
+        } finally {
+            GroundingMetrics.stop(GroundingMetrics.Phase.EPISTEMIC_CONDITIONS, formula.getType(), start);
         }
-        return res;
     }
 
 
@@ -276,15 +374,171 @@ public class Grounder {
      */
     public static Map<Formula, Double> relativeCard_(Map<Formula, Set<BaseProfile>> groundingSets) throws InvalidFormulaException {
         Map<Formula, Double> res = new HashMap<>();
-        int totalSize = groundingSets.entrySet().stream()
-                .map(x -> x.getValue().size())
-                .reduce(0, (s1, s2) -> s1 + s2);
-        for (Formula f : groundingSets.keySet()) {
-            Set<BaseProfile> currGroundingSet = groundingSets.get(f);
-            if (f.getType().equals(Formula.Type.MODAL_DISJUNCTION) || f.getType().equals(Formula.Type.MODAL_EXCLUSIVE_DISJUNCTION))
-                currGroundingSet = getGroundingSet(f, BPCollection.asBaseProfilesSet(groundingSets.values()));
-            Double relativeCard = (double) currGroundingSet.size() / (double) totalSize;
-            res.put(f, relativeCard);
+        int totalSize = 0;
+        for (Set<BaseProfile> groundingSet : groundingSets.values())
+            totalSize += groundingSet.size();
+        GroundingIndex unionIndex = null;
+        for (Map.Entry<Formula, Set<BaseProfile>> entry : groundingSets.entrySet()) {
+            Formula f = entry.getKey();
+            int currCard = entry.getValue().size();
+            if (f.getType().equals(Formula.Type.MODAL_DISJUNCTION) || f.getType().equals(Formula.Type.MODAL_EXCLUSIVE_DISJUNCTION)) {
+                if (unionIndex == null)
+                    unionIndex = new GroundingIndex(BPCollection.asBaseProfilesSet(groundingSets.values()));
+                currCard = unionIndex.getFulfillingProfiles(f, unionIndex.getScope()).cardinality();
+            }
+            res.put(f, (double) currCard / (double) totalSize);
+        }
+        return res;
+    }
+
+    /**
+     * Method counts relative cardinality of grounding sets for given formulas, basing on bitmap index. It follows
+     * relativeCard_(Map), but size of each set of base profiles is given by provided measure - it can be number of
+     * base profiles or any sum of their weights.
+     *
+     * @param formulas Complementary formulas.
+     * @param index    Index of base profiles.
+     * @param scope    Ordinals of base profiles taken into consideration.
+     * @param measure  Size of bitmap of base profiles.
+     * @return
+     * @see #relativeCard_(Map)
+     */
+    public static Map<Formula, Double> relativeCard_(Collection<Formula> formulas, GroundingIndex index, BitSet scope,
+                                                     ToDoubleFunction<BitSet> measure) {
+        Map<Formula, BitSet> groundingProfiles = new HashMap<>();
+        BitSet union = new BitSet();
+        double totalSize = 0;
+        for (Formula f : formulas) {
+            BitSet profiles = index.getGroundingProfiles(f, scope);
+            groundingProfiles.put(f, profiles);
+            union.or(profiles);
+            totalSize += measure.applyAsDouble(profiles);
+        }
+        Map<Formula, Double> res = new HashMap<>();
+        for (Map.Entry<Formula, BitSet> entry : groundingProfiles.entrySet()) {
+            Formula f = entry.getKey();
+            double currCard = f.getType().equals(Formula.Type.MODAL_DISJUNCTION) || f.getType().equals(Formula.Type.MODAL_EXCLUSIVE_DISJUNCTION) ?
+                    measure.applyAsDouble(index.getFulfillingProfiles(f, union)) : measure.applyAsDouble(entry.getValue());
+            res.put(f, currCard / totalSize);
+        }
+        return res;
+    }
+
+    /**
+     * Method counts relative cardinality of grounding sets for all complementary formulas of given knowledge
+     * distribution. If it's possible, cardinalities are taken from grounding counters maintained by related collection
+     * of base profiles, without visiting grounding sets. Otherwise, grounding sets of knowledge distribution are used.
+     * In approximate mode grounding sets are never built: cardinalities are estimated from sample of base profiles and,
+     * when estimation isn't precise enough, counted on bitmap index.
+     *
+     * @param dk
+     * @return
+     * @throws InvalidFormulaException
+     * @see #relativeCard_(Map)
+     */
+    public static Map<Formula, Double> relativeCard_(DistributedKnowledge dk) throws InvalidFormulaException {
+        if (dk.getGroundingStrategy() != null)
+            return dk.getGroundingStrategy().relativeCards(dk);
+        Map<Formula, Integer> cards = getCountedGroundingCards(dk);
+        if (cards == null) {
+            if (!Configuration.APPROXIMATE_GROUNDING)
+                return relativeCard_(dk.mapOfGroundingSets());
+            BPCollection base = dk.getRelatedObservationsBase();
+            Map<Formula, Double> estimated = estimateRelativeCards(dk.getComplementaryFormulas(), base,
+                    dk.getTimestamp());
+            if (estimated != null)
+                return estimated;
+            GroundingIndex index = base.getGroundingIndex();
+            return relativeCard_(dk.getComplementaryFormulas(), index, index.getScope(dk.getTimestamp()),
+                    BitSet::cardinality);
+        }
+        int totalSize = 0;
+        for (int card : cards.values())
+            totalSize += card;
+        Map<Formula, Double> res = new HashMap<>();
+        for (Map.Entry<Formula, Integer> entry : cards.entrySet())
+            res.put(entry.getKey(), (double) entry.getValue() / (double) totalSize);
+        return res;
+    }
+
+    /**
+     * Estimates relative cardinalities of grounding sets for complementary formulas (simple modalities or modal
+     * conjunctions) from sample of base profiles kept by grounding sampler of given collection. Estimation is rejected
+     * when its error bound reaches any threshold defined for type of formulas, since then estimated value could
+     * indicate other modal operator than exact one - in such case exact cardinalities should be counted.
+     *
+     * @param complementaryFormulas Complementary formulas related with the same individual model.
+     * @param bpCollection          Collection of all available (for agent) base profiles.
+     * @param timestamp             Moment in time which limits considered base profiles.
+     * @return Map of estimated relative cardinalities or null if estimation is not possible or not precise enough.
+     */
+    @Nullable
+    public static Map<Formula, Double> estimateRelativeCards(Collection<Formula> complementaryFormulas,
+                                                            BPCollection bpCollection, int timestamp) {
+        GroundingSampler sampler = bpCollection.getGroundingSampler();
+        if (sampler == null || complementaryFormulas.isEmpty())
+            return null;
+        Formula.Type type = complementaryFormulas.iterator().next().getType();
+        if (!type.equals(Formula.Type.SIMPLE_MODALITY) && !type.equals(Formula.Type.MODAL_CONJUNCTION))
+            return null;
+        IndividualModel model = complementaryFormulas.iterator().next().getModel();
+        List<BaseProfile> sample = sampler.getSample(model);
+        boolean isExhaustive = sample.size() == sampler.getPopulation(model);
+
+        Map<Formula, Integer> sampledCards = new HashMap<>();
+        int totalSize = 0;
+        for (Formula f : complementaryFormulas) {
+            if (!f.getType().equals(type) || !f.getModel().equals(model))
+                return null;
+            CompiledFormula compiled = f.compile();
+            int card = 0;
+            for (BaseProfile bp : sample)
+                if (bp.getTimestamp() <= timestamp && compiled.isFulfilled(bp))
+                    card++;
+            sampledCards.put(f, card);
+            totalSize += card;
+        }
+        if (totalSize == 0)
+            return null;
+
+        double[] thresholds;
+        try {
+            thresholds = getThresholds(type);
+        } catch (InvalidConfigurationException e) {
+            return null;
+        }
+        double errorBound = isExhaustive ? 0 : GroundingSampler.getErrorBound(totalSize, Configuration.APPROXIMATION_CONFIDENCE);
+        Map<Formula, Double> res = new HashMap<>();
+        for (Map.Entry<Formula, Integer> entry : sampledCards.entrySet()) {
+            double relativeCard = (double) entry.getValue() / (double) totalSize;
+            for (double threshold : thresholds)
+                if (Math.abs(relativeCard - threshold) < errorBound)
+                    return null;
+            res.put(entry.getKey(), relativeCard);
+        }
+        return res;
+    }
+
+    /**
+     * Gives cardinalities of grounding sets of given knowledge distribution basing on grounding counters. When some
+     * base profiles of distribution are folded into consolidated segments, cardinalities are always counted (see
+     * BPCollection#getGroundingCards(Collection, int)), because grounding sets don't contain folded base profiles.
+     * Otherwise returns null when counters are not applicable (distribution is related with past moment in time or
+     * some formula is not supported by counters).
+     */
+    @Nullable
+    private static Map<Formula, Integer> getCountedGroundingCards(DistributedKnowledge dk) {
+        BPCollection base = dk.getRelatedObservationsBase();
+        if (base.isConsolidated(dk.getTimestamp()))
+            return base.getGroundingCards(dk.getComplementaryFormulas(), dk.getTimestamp());
+        GroundingCounters counters = base.getGroundingCounters();
+        if (!counters.isComplete(dk.getTimestamp()))
+            return null;
+        Map<Formula, Integer> res = new HashMap<>();
+        for (Formula f : dk.getComplementaryFormulas()) {
+            if (!counters.isSupported(f))
+                return null;
+            res.put(f, counters.getGroundingCard(f));
         }
         return res;
     }
@@ -341,44 +595,46 @@ public class Grounder {
      */
     static javafx.util.Pair<Double, Double> getConcentrationEpsilonRange(ComplexFormula formula)
             throws NotApplicableException, InvalidConfigurationException {
+        return getConcentrationEpsilonRange(formula, getThresholds(Formula.Type.MODAL_CONJUNCTION));
+    }
+
+    /**
+     * Method counts range of possible values of concentration-epsilon for given thresholds of modal conjunctions.
+     *
+     * @see #getConcentrationEpsilonRange(ComplexFormula)
+     */
+    static javafx.util.Pair<Double, Double> getConcentrationEpsilonRange(ComplexFormula formula, double[] conjThresholds)
+            throws NotApplicableException {
         switch (formula.getType()) {
             case MODAL_DISJUNCTION:
-                return new javafx.util.Pair<>(DEF_EPS_LOWER_RANGE, countEpsilonConcentrationPartial(DEF_DISJ_EPS_MULTIPLIER));
+                return new javafx.util.Pair<>(DEF_EPS_LOWER_RANGE, countEpsilonConcentrationPartial(DEF_DISJ_EPS_MULTIPLIER, conjThresholds));
             case MODAL_EXCLUSIVE_DISJUNCTION:
-                return new javafx.util.Pair<>(DEF_EPS_LOWER_RANGE, countEpsilonConcentrationPartial(DEF_EX_DISJ_EPS_MULTIPLIER));
+                return new javafx.util.Pair<>(DEF_EPS_LOWER_RANGE, countEpsilonConcentrationPartial(DEF_EX_DISJ_EPS_MULTIPLIER, conjThresholds));
             default:
                 throw new NotApplicableException("ConcentrationEpsilon cannot be counted for this type of formula.");
         }
-
     }
 
-    static private double countEpsilonConcentrationPartial(double multiplier) throws InvalidConfigurationException {
-        Formula.Type type = Formula.Type.MODAL_CONJUNCTION;
-        double minPos = getThresholds(type)[0];
-        double posBel = getThresholds(type)[1] == getThresholds(type)[2] ? getThresholds(type)[1] :
-                (getThresholds(type)[1] + getThresholds(type)[2]) / 2.0;
+    static private double countEpsilonConcentrationPartial(double multiplier, double[] conjThresholds) {
+        double minPos = conjThresholds[0];
+        double posBel = conjThresholds[1] == conjThresholds[2] ? conjThresholds[1] :
+                (conjThresholds[1] + conjThresholds[2]) / 2.0;
         return multiplier * Math.min(EPS_FST_COEFFICIENT - minPos, posBel - EPS_SND_COEFFICIENT);
     }
 
     /**
      * By default, returns value from the middle.
      */
-    static private double getConcentrationEpsilon(ComplexFormula formula) throws NotApplicableException, InvalidConfigurationException {
-        javafx.util.Pair<Double, Double> range = getConcentrationEpsilonRange(formula);
+    static private double getConcentrationEpsilon(ComplexFormula formula, double[] conjThresholds) throws NotApplicableException {
+        javafx.util.Pair<Double, Double> range = getConcentrationEpsilonRange(formula, conjThresholds);
         return Math.max(range.getKey(), range.getValue());
     }
 
 
-    private static boolean isMemberOfFamily(ComplexFormula formula, Collection<Formula> familyCandidate) {
+    private static boolean isMemberOfFamily(ComplexFormula formula, Collection<Formula> familyCandidate,
+                                            GroundingPlan plan) {
         boolean isMemberOfFamily = false;
-        ComplexFormula standardFormula;
-        try {
-            standardFormula = (ComplexFormula) Formula.getStandardFormula(familyCandidate);
-        } catch (InvalidFormulaException e) {
-            Logger.getAnonymousLogger().log(Level.WARNING, "Not able to check if formula is member of family.", e);
-            return false;
-        }
-        for (Set<Formula> familyMember : getFormulasSetsFamily(formula))
+        for (Set<Formula> familyMember : plan.getFamily(formula))
             isMemberOfFamily = new ArrayList<>(familyMember).containsAll(familyCandidate)
                     && familyCandidate.containsAll(familyMember) || isMemberOfFamily;
         if (!isMemberOfFamily) {
@@ -399,26 +655,73 @@ public class Grounder {
         if (disjunction == null || episodicSet == null) {
             throw new NullPointerException("One of parameter was not provided");
         }
-        double relevantEpsilonValue = 0;
+        Double relevantEpsilonValue = getRelevantEpsilon(disjunction);
+        if (relevantEpsilonValue == null)
+            return false;
+        try {
+            return isSetEpsilonConcentrated(disjunction, GroundingPlan.createPlan(disjunction, episodicSet),
+                    relevantEpsilonValue);
+        } catch (InvalidFormulaException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot determine epsilon concentration.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks epsilon-concentrated condition for all base profiles available in given collection. Cardinalities of
+     * grounding sets are taken from grounding plan memoised for current content of collection, so subsequent checks
+     * for formulas built on the same traits don't repeat grounding.
+     *
+     * @param disjunction  ComplexFormula, namely simple or exclusive disjunction.
+     * @param bpCollection Collection of available base profiles.
+     * @return True, if this condition is fulfilled; false otherwise.
+     * @see #checkEpsilonConcentratedCondition(ComplexFormula, Set)
+     */
+    public static boolean checkEpsilonConcentratedCondition(ComplexFormula disjunction, BPCollection bpCollection) {
+        if (disjunction == null || bpCollection == null) {
+            throw new NullPointerException("One of parameter was not provided");
+        }
+        Double relevantEpsilonValue = getRelevantEpsilon(disjunction);
+        if (relevantEpsilonValue == null)
+            return false;
+        try {
+            return isSetEpsilonConcentrated(disjunction, GroundingPlan.getPlan(disjunction, bpCollection),
+                    relevantEpsilonValue);
+        } catch (InvalidFormulaException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot determine epsilon concentration.", e);
+            return false;
+        }
+    }
+
+    @Nullable
+    private static Double getRelevantEpsilon(ComplexFormula disjunction) {
+        try {
+            return getRelevantEpsilon(disjunction, getThresholds(Formula.Type.MODAL_CONJUNCTION));
+        } catch (InvalidConfigurationException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Epsilon-concentration checking was not performed.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns concentration-epsilon for given disjunction, determined by given thresholds of modal conjunctions.
+     */
+    @Nullable
+    static Double getRelevantEpsilon(ComplexFormula disjunction, double[] conjThresholds) {
+        double relevantEpsilonValue;
         try {
-            relevantEpsilonValue = getConcentrationEpsilon(disjunction);
+            relevantEpsilonValue = getConcentrationEpsilon(disjunction, conjThresholds);
             if (!isEpsilonLogged) {
                 Logger.getAnonymousLogger().log(Level.FINE, "epsilon: " + relevantEpsilonValue);
                 isEpsilonLogged = true;
             }
-        } catch (NotApplicableException | InvalidConfigurationException e) {
+        } catch (NotApplicableException e) {
             Logger.getAnonymousLogger().log(Level.WARNING, "Epsilon-concentration checking was not performed.", e);
-            return false;
+            return null;
         }
-        return isSetEpsilonConcentrated(disjunction, episodicSet, relevantEpsilonValue);
+        return relevantEpsilonValue;
     }
-    /**
-     *
-     * @param conjunction
-     * @param concentrationEpsilon
-     * @param episodicSet
-     * @return
-     */
+
     /**
      * Checks if set of dependent formulas is epsilon-concentrated for given epsilon value.
      * Method performs checking of fourth epistemic condition dedicated for certain set of formulas which is
@@ -431,28 +734,22 @@ public class Grounder {
      * </ol>
 
      * @param disjFormula
-     * @param episodicSet Set of all available base profiles.
+     * @param plan Grounding plan built for traits of given formula.
      * @param epsilon Value of epsilon.
      * @return True if condition is fulfilled; false otherwise.
      */
-    private static boolean isSetEpsilonConcentrated(ComplexFormula disjFormula,
-                                                    Set<BaseProfile> episodicSet, double epsilon) {
+    static boolean isSetEpsilonConcentrated(ComplexFormula disjFormula, GroundingPlan plan, double epsilon) {
 
         List<Formula> formulasSet = disjFormula.getDependentFormulas();
-        if (!isMemberOfFamily(disjFormula, formulasSet))
-            return false;
-        try {
-            return countSetDiameter(formulasSet, episodicSet) <= epsilon
-                    && isSetMinimal(formulasSet, episodicSet, epsilon);
-        } catch (InvalidFormulaException e) {
-            Logger.getAnonymousLogger().log(Level.WARNING, "Cannot determine epsilon concentration.", e);
+        if (!isMemberOfFamily(disjFormula, formulasSet, plan))
             return false;
-        }
+        return plan.countSetDiameter(formulasSet) <= epsilon
+                && isSetMinimal(formulasSet, plan, epsilon);
     }
 
 
     private static boolean isSetMinimal(Collection<Formula> formulasSet,
-                                        Set<BaseProfile> episodicSet, double concentrationEpsilon) {
+                                        GroundingPlan plan, double concentrationEpsilon) {
         if (formulasSet.isEmpty()) {
             Logger.getAnonymousLogger().log(Level.WARNING, "Provided collection of formulas cannot be empty.");
             return false;
@@ -465,18 +762,12 @@ public class Grounder {
             Logger.getAnonymousLogger().log(Level.WARNING, "Unable to determine if set is minimal", e);
             return false;
         }
-        List<Set<Formula>> relevantFamily = getFormulasSetsFamily(standardFormula);
+        List<Set<Formula>> relevantFamily = plan.getFamily(standardFormula);
         List<Set<Formula>> allPosMinimalSets = Formula.getFormulaSupersets(formulasSet, relevantFamily);
 
-        for (Collection<Formula> minimalElem : allPosMinimalSets) {
-            try {
-                if (countSetDiameter(minimalElem, episodicSet) < concentrationEpsilon)
-                    return false;
-            } catch (InvalidFormulaException e) {
-                Logger.getAnonymousLogger().log(Level.WARNING, "Cannot determine IsMinimal condition.", e);
+        for (Collection<Formula> minimalElem : allPosMinimalSets)
+            if (plan.countSetDiameter(minimalElem) < concentrationEpsilon)
                 return false;
-            }
-        }
         return true;
     }
 
@@ -793,34 +1084,29 @@ public class Grounder {
 
     /**
      * Returns number of occurrences in grounded formulas for given formula.Case of simple formulas.
+     * When grounding counters can't be used, grounding sets are visited, so past moments in time covered by
+     * consolidated segments are rejected.
      *
      * @param formula Considered Formula
      * @param dk      Distributed knowledge for respective grounding sets related with certain formula.
      * @return
+     * @throws IllegalStateException If grounding sets are required and some base profiles are consolidated.
      */
     public static Double simpleFormulaFinalGrounder(Formula formula, DistributedKnowledge dk, Map<Formula, Set<BaseProfile>> context) throws InvalidFormulaException, NotApplicableException {
         double sum = 0;
         if(context == null ||context.size()==0 ) {
-            for (BaseProfile bp : dk.getGroundingSet(formula)) {
-                if (bp.checkIfObserved(formula.getModel(), formula.getTraits().get(0), State.IS) && !((SimpleFormula) formula).isNegated()) {
-                    sum++;
-                } else if (bp.checkIfObserved(formula.getModel(), formula.getTraits().get(0), State.IS_NOT) && ((SimpleFormula) formula).isNegated()) {
-                    sum++;
-                } else if (bp.checkIfObserved(formula.getModel(), formula.getTraits().get(0), State.MAYHAPS)) {
-                    sum++;
-                }
+            if (dk.getGroundingStrategy() != null)
+                return dk.getGroundingStrategy().relativeCards(dk).get(formula);
+            GroundingCounters counters = dk.getRelatedObservationsBase().getGroundingCounters();
+            if (counters.isComplete(dk.getTimestamp())) {
+                int card = counters.getGroundingCard(formula);
+                return card != 0 ? card / (double) counters.getOccurrences(formula.getModel(), formula.getTraits().get(0)) : 0.0;
             }
+            dk.getRelatedObservationsBase().checkNotConsolidated(dk.getTimestamp());
+            sum = countFulfillingOrIndefinite(formula, dk.getGroundingSet(formula));
         } else {
             if (context.get(formula) != null) {
-                for (BaseProfile bp : context.get(formula)) {
-                    if (bp.checkIfObserved(formula.getModel(), formula.getTraits().get(0), State.IS) && !((SimpleFormula) formula).isNegated()) {
-                        sum++;
-                    } else if (bp.checkIfObserved(formula.getModel(), formula.getTraits().get(0), State.IS_NOT) && ((SimpleFormula) formula).isNegated()) {
-                        sum++;
-                    } else if (bp.checkIfObserved(formula.getModel(), formula.getTraits().get(0), State.MAYHAPS)) {
-                        sum++;
-                    }
-                }
+                sum = countFulfillingOrIndefinite(formula, context.get(formula));
             }
         }
         if (sum != 0) {
@@ -830,6 +1116,20 @@ public class Grounder {
         return 0.0;
     }
 
+    /**
+     * Counts base profiles which fulfill given simple modality or present its individual model with indefinite state
+     * of its trait.
+     */
+    private static int countFulfillingOrIndefinite(Formula formula, Set<BaseProfile> bps) {
+        CompiledFormula fulfilling = formula.compile();
+        CompiledFormula indefinite = CompiledFormula.compile(formula.getModel(), formula.getTraits().get(0), State.MAYHAPS);
+        int res = 0;
+        for (BaseProfile bp : bps)
+            if (fulfilling.isFulfilled(bp) || indefinite.isFulfilled(bp))
+                res++;
+        return res;
+    }
+
     /**
      * Returns number of occurrences in grounded formulas for given formula.Case of Complex formulas.
      *
@@ -0,0 +1,299 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.io.Configuration;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gathers time spent in particular phases of grounding and numbers of processed elements, separately for each type
+ * of formula. Phases are measured inclusively, e.g. time of summarization contains time of building distributions of
+ * knowledge for holons and time of epistemic conditions contains time of epsilon-concentration checking.
+ * When metrics are disabled, start() returns without reading clock and remaining methods return after checking
+ * single flag, so instrumented code has practically no overhead.
+ * Gathered values are available as snapshot and through JMX (bean com.pwr.zpi:type=GroundingMetrics).
+ *
+ * @author Grzegorz Kostkowski
+ * @see Configuration#GROUNDING_METRICS
+ */
+public final class GroundingMetrics {
+
+    /**
+     * Measured phases of grounding.
+     */
+    public enum Phase {
+        /**
+         * Building of distribution of knowledge (grounding sets and classes).
+         */
+        DISTRIBUTION,
+        /**
+         * Checking consistency of distribution of knowledge.
+         */
+        CONSISTENCY_CHECK,
+        /**
+         * Contextualisation of grounding sets.
+         */
+        CONTEXTUALISATION,
+        /**
+         * Retrieving summarization from holons, including their update.
+         */
+        SUMMARIZATION,
+        /**
+         * Checking epistemic conditions.
+         */
+        EPISTEMIC_CONDITIONS,
+        /**
+         * Checking epsilon-concentration condition, including creation of grounding plan.
+         */
+        EPSILON_CONCENTRATION
+    }
+
+    /**
+     * Counted elements.
+     */
+    public enum Counter {
+        PROFILES_SCANNED,
+        GROUNDING_SETS_BUILT,
+        HOLONS_UPDATED,
+        CACHE_HITS
+    }
+
+    public static final String OBJECT_NAME = "com.pwr.zpi:type=GroundingMetrics";
+    private static final long DISABLED = Long.MIN_VALUE;
+    private static final int TYPES = Formula.Type.values().length;
+
+    private static volatile boolean enabled = Configuration.GROUNDING_METRICS;
+    private static final LongAdder[][] nanos = newAdders(Phase.values().length);
+    private static final LongAdder[][] calls = newAdders(Phase.values().length);
+    private static final LongAdder[][] counts = newAdders(Counter.values().length);
+
+    static {
+        if (enabled)
+            registerMBean();
+    }
+
+    private GroundingMetrics() {
+    }
+
+    private static LongAdder[][] newAdders(int size) {
+        LongAdder[][] res = new LongAdder[TYPES][size];
+        for (LongAdder[] row : res)
+            for (int i = 0; i < size; i++)
+                row[i] = new LongAdder();
+        return res;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables gathering of metrics. Enabled metrics are also registered in MBean server.
+     */
+    public static void setEnabled(boolean enabled) {
+        if (enabled)
+            registerMBean();
+        GroundingMetrics.enabled = enabled;
+    }
+
+    /**
+     * Starts measurement of phase.
+     *
+     * @return Value which should be passed to stop(..).
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * Finishes measurement of phase started with start().
+     *
+     * @param phase
+     * @param type  Type of formula which is grounded.
+     * @param start Value returned by start().
+     */
+    public static void stop(Phase phase, Formula.Type type, long start) {
+        if (start == DISABLED || !enabled)
+            return;
+        nanos[type.ordinal()][phase.ordinal()].add(System.nanoTime() - start);
+        calls[type.ordinal()][phase.ordinal()].increment();
+    }
+
+    /**
+     * Increases given counter by given value.
+     */
+    public static void count(Counter counter, Formula.Type type, long value) {
+        if (enabled)
+            counts[type.ordinal()][counter.ordinal()].add(value);
+    }
+
+    /**
+     * Removes all gathered values.
+     */
+    public static void reset() {
+        for (LongAdder[][] adders : new LongAdder[][][]{nanos, calls, counts})
+            for (LongAdder[] row : adders)
+                for (LongAdder adder : row)
+                    adder.reset();
+    }
+
+    /**
+     * @return Copy of currently gathered values.
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot(sum(nanos), sum(calls), sum(counts));
+    }
+
+    private static long[][] sum(LongAdder[][] adders) {
+        long[][] res = new long[adders.length][];
+        for (int i = 0; i < adders.length; i++) {
+            res[i] = new long[adders[i].length];
+            for (int j = 0; j < adders[i].length; j++)
+                res[i][j] = adders[i][j].sum();
+        }
+        return res;
+    }
+
+    /**
+     * Registers metrics in platform MBean server, unless they are already registered.
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name))
+                server.registerMBean(new MXBean(), name);
+        } catch (JMException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Grounding metrics were not registered.", e);
+        }
+    }
+
+    /**
+     * Immutable copy of gathered values.
+     */
+    public static final class Snapshot {
+        private final long[][] nanos;
+        private final long[][] calls;
+        private final long[][] counts;
+
+        private Snapshot(long[][] nanos, long[][] calls, long[][] counts) {
+            this.nanos = nanos;
+            this.calls = calls;
+            this.counts = counts;
+        }
+
+        public long getNanos(Phase phase, Formula.Type type) {
+            return nanos[type.ordinal()][phase.ordinal()];
+        }
+
+        public long getCalls(Phase phase, Formula.Type type) {
+            return calls[type.ordinal()][phase.ordinal()];
+        }
+
+        public long getCount(Counter counter, Formula.Type type) {
+            return counts[type.ordinal()][counter.ordinal()];
+        }
+
+        /**
+         * @return Time spent in given phase for all types of formulas.
+         */
+        public long getNanos(Phase phase) {
+            long res = 0;
+            for (Formula.Type type : Formula.Type.values())
+                res += getNanos(phase, type);
+            return res;
+        }
+
+        /**
+         * @return Value of given counter for all types of formulas.
+         */
+        public long getCount(Counter counter) {
+            long res = 0;
+            for (Formula.Type type : Formula.Type.values())
+                res += getCount(counter, type);
+            return res;
+        }
+
+        Map<String, Long> asMap(long[][] values, Enum<?>[] columns) {
+            Map<String, Long> res = new LinkedHashMap<>();
+            for (Formula.Type type : Formula.Type.values())
+                for (Enum<?> column : columns)
+                    res.put(type + "." + column, values[type.ordinal()][column.ordinal()]);
+            return res;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder res = new StringBuilder();
+            for (Formula.Type type : Formula.Type.values()) {
+                res.append(type).append(':');
+                for (Phase phase : Phase.values())
+                    if (getCalls(phase, type) > 0)
+                        res.append(String.format(" %s=%.3fms/%d", phase, getNanos(phase, type) / 1e6,
+                                getCalls(phase, type)));
+                for (Counter counter : Counter.values())
+                    if (getCount(counter, type) > 0)
+                        res.append(' ').append(counter).append('=').append(getCount(counter, type));
+                res.append(System.lineSeparator());
+            }
+            return res.toString();
+        }
+    }
+
+    /**
+     * Management interface of grounding metrics. Keys of maps have form TYPE.PHASE or TYPE.COUNTER.
+     */
+    public interface GroundingMetricsMXBean {
+        boolean isEnabled();
+
+        void setEnabled(boolean enabled);
+
+        Map<String, Long> getPhaseNanos();
+
+        Map<String, Long> getPhaseCalls();
+
+        Map<String, Long> getCounters();
+
+        void reset();
+    }
+
+    private static class MXBean implements GroundingMetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return GroundingMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            GroundingMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Long> getPhaseNanos() {
+            Snapshot snapshot = snapshot();
+            return snapshot.asMap(snapshot.nanos, Phase.values());
+        }
+
+        @Override
+        public Map<String, Long> getPhaseCalls() {
+            Snapshot snapshot = snapshot();
+            return snapshot.asMap(snapshot.calls, Phase.values());
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            Snapshot snapshot = snapshot();
+            return snapshot.asMap(snapshot.counts, Counter.values());
+        }
+
+        @Override
+        public void reset() {
+            GroundingMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BPCollection;
+import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.episodic.GroundingIndex;
+import com.pwr.zpi.exceptions.InvalidFormulaException;
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Grounding plan gathers data required to check epsilon-concentration condition for disjunctions built on certain pair
+ * of traits: relative cardinalities of four conjunctive grounding sets (counted once, when plan is created) and
+ * families of sets of formulas. Each diameter and minimality test is derived from these values.
+ * Plans built for BPCollection are memoised per standard conjunction and dropped when content or timestamp of
+ * collection changes. Snapshots of collection share plans with it (and with each other) while they have the same
+ * version and timestamp.
+ *
+ * @author Grzegorz Kostkowski
+ */
+class GroundingPlan {
+
+    /**
+     * Memoised plans for particular collections of base profiles, kept under origin of collection (see
+     * BPCollection.getOrigin()). Collections are compared by reference.
+     */
+    private static final Map<BPCollection, CollectionPlans> memo = new WeakHashMap<>();
+
+    private static class CollectionPlans {
+        final long version;
+        final int timestamp;
+        final Map<Formula, GroundingPlan> plans = new HashMap<>();
+
+        CollectionPlans(BPCollection bpCollection) {
+            this.version = bpCollection.getVersion();
+            this.timestamp = bpCollection.getTimestamp();
+        }
+
+        boolean isValid(BPCollection bpCollection) {
+            return version == bpCollection.getVersion() && timestamp == bpCollection.getTimestamp();
+        }
+    }
+
+    /**
+     * Standard conjunction which complementary formulas are related with this plan.
+     */
+    private final Formula standardConjunction;
+    private final Map<Formula, Double> relativeCards;
+    private final Map<Formula, List<Set<Formula>>> families = new HashMap<>();
+
+    private GroundingPlan(Formula standardConjunction, Map<Formula, Integer> groundingCards) {
+        this.standardConjunction = standardConjunction;
+        int totalSize = 0;
+        for (int card : groundingCards.values())
+            totalSize += card;
+        relativeCards = new HashMap<>();
+        for (Map.Entry<Formula, Integer> entry : groundingCards.entrySet())
+            relativeCards.put(entry.getKey(), (double) entry.getValue() / (double) totalSize);
+    }
+
+    /**
+     * Returns plan for traits used in given complex formula and all base profiles available in given collection (till
+     * its timestamp). Plan is created only if there is no valid memoised one.
+     *
+     * @param formula      Complex formula (conjunction, disjunction or exclusive disjunction).
+     * @param bpCollection
+     * @return
+     * @throws InvalidFormulaException
+     */
+    static GroundingPlan getPlan(ComplexFormula formula, BPCollection bpCollection) throws InvalidFormulaException {
+        Formula standardConjunction = formula.transformTo(LogicOperator.AND).getStandardFormula();
+        synchronized (memo) {
+            CollectionPlans collectionPlans = memo.get(bpCollection.getOrigin());
+            if (collectionPlans == null || !collectionPlans.isValid(bpCollection)) {
+                collectionPlans = new CollectionPlans(bpCollection);
+                memo.put(bpCollection.getOrigin(), collectionPlans);
+            }
+            GroundingPlan res = collectionPlans.plans.get(standardConjunction);
+            if (res == null) {
+                res = new GroundingPlan(standardConjunction, Grounder.getGroundingCards(
+                        standardConjunction.getComplementaryFormulas(), bpCollection, bpCollection.getTimestamp()));
+                collectionPlans.plans.put(standardConjunction, res);
+            } else
+                GroundingMetrics.count(GroundingMetrics.Counter.CACHE_HITS, formula.getType(), 1);
+            return res;
+        }
+    }
+
+    /**
+     * Creates plan for traits used in given complex formula and given set of base profiles. Such plan is not memoised.
+     *
+     * @param formula     Complex formula (conjunction, disjunction or exclusive disjunction).
+     * @param episodicSet Set of available base profiles.
+     * @return
+     * @throws InvalidFormulaException
+     */
+    static GroundingPlan createPlan(ComplexFormula formula, Set<BaseProfile> episodicSet) throws InvalidFormulaException {
+        Formula standardConjunction = formula.transformTo(LogicOperator.AND).getStandardFormula();
+        GroundingIndex index = new GroundingIndex(episodicSet);
+        BitSet scope = index.getScope();
+        Map<Formula, Integer> cards = new HashMap<>();
+        for (Formula conjunction : standardConjunction.getComplementaryFormulas())
+            cards.put(conjunction, index.countGroundingProfiles(conjunction, scope));
+        return new GroundingPlan(standardConjunction, cards);
+    }
+
+    Formula getStandardConjunction() {
+        return standardConjunction;
+    }
+
+    /**
+     * Returns relative cardinality of grounding set for one of four conjunctions related with this plan.
+     */
+    Double getRelativeCard(Formula conjunction) {
+        return relativeCards.get(conjunction);
+    }
+
+    /**
+     * Returns family of sets of formulas for given protoform. Family is built once for each protoform.
+     *
+     * @see Grounder#getFormulasSetsFamily(ComplexFormula)
+     */
+    List<Set<Formula>> getFamily(ComplexFormula protoform) {
+        synchronized (families) {
+            List<Set<Formula>> res = families.get(protoform);
+            if (res == null) {
+                res = Grounder.getFormulasSetsFamily(protoform);
+                families.put(protoform, res);
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Counts diameter for given set of conjunctions related with this plan.
+     *
+     * @see Grounder#countSetDiameter(Collection, Set)
+     */
+    double countSetDiameter(Collection<? extends Formula> dependentFormulas) {
+        List<Double> relCards = new ArrayList<>();
+        for (Map.Entry<Formula, Double> entry : relativeCards.entrySet())
+            if (dependentFormulas.contains(entry.getKey()))
+                relCards.add(entry.getValue());
+        if (relCards.size() != dependentFormulas.size())
+            Logger.getAnonymousLogger().log(Level.WARNING, "Size of provided dependent formulas and entrySet used" +
+                    "to count diameter is different.");
+        return Collections.max(relCards) - Collections.min(relCards);
+    }
+}
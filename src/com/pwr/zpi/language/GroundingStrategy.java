@@ -0,0 +1,30 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.exceptions.InvalidFormulaException;
+
+import java.util.Map;
+
+/**
+ * Strategy of grounding determines which base profiles (and with which weights) are taken into consideration when
+ * relative cardinalities of grounding sets are counted for distributed knowledge. Strategy is selected per agent;
+ * when agent has no strategy, whole history of observations (till timestamp of distributed knowledge) is used with
+ * equal weights.
+ * Strategies are used by Grounder.relativeCard_(DistributedKnowledge) and therefore by holons which are not
+ * contextualised.
+ *
+ * @author Grzegorz Kostkowski
+ * @see WindowGroundingStrategy
+ * @see DecayGroundingStrategy
+ */
+public interface GroundingStrategy {
+
+    /**
+     * Counts relative cardinalities of grounding sets for all complementary formulas of given distributed knowledge.
+     *
+     * @param dk
+     * @return Map of relative cardinalities as values and respective formulas as keys.
+     * @throws InvalidFormulaException
+     */
+    Map<Formula, Double> relativeCards(DistributedKnowledge dk) throws InvalidFormulaException;
+}
@@ -0,0 +1,79 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.episodic.GroundingIndex;
+
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task which produces grounding sets for given formulas over list of base profiles. List is split in halves
+ * until chunk is small enough, then each chunk is indexed separately and grounding sets for all formulas are
+ * evaluated within this chunk. Partial grounding sets are merged as union, since every base profile belongs to
+ * exactly one chunk.
+ *
+ * @author Grzegorz Kostkowski
+ */
+class GroundingTask extends RecursiveTask<Map<Formula, Set<BaseProfile>>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Collection<Formula> formulas;
+    private final List<BaseProfile> profiles;
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+
+    /**
+     * @param formulas  Considered formulas.
+     * @param profiles  Base profiles which are split into chunks. Each base profile should occur in list only once.
+     * @param chunkSize Maximal number of base profiles grounded by single task.
+     */
+    GroundingTask(Collection<Formula> formulas, List<BaseProfile> profiles, int chunkSize) {
+        this(formulas, profiles, 0, profiles.size(), Math.max(1, chunkSize));
+    }
+
+    private GroundingTask(Collection<Formula> formulas, List<BaseProfile> profiles, int from, int to, int chunkSize) {
+        this.formulas = formulas;
+        this.profiles = profiles;
+        this.from = from;
+        this.to = to;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected Map<Formula, Set<BaseProfile>> compute() {
+        if (to - from <= chunkSize)
+            return groundChunk();
+        int middle = (from + to) >>> 1;
+        GroundingTask left = new GroundingTask(formulas, profiles, from, middle, chunkSize);
+        left.fork();
+        Map<Formula, Set<BaseProfile>> res = new GroundingTask(formulas, profiles, middle, to, chunkSize).compute();
+        return merge(res, left.join());
+    }
+
+    private Map<Formula, Set<BaseProfile>> groundChunk() {
+        GroundingIndex index = new GroundingIndex(profiles.subList(from, to));
+        BitSet scope = index.getScope();
+        Map<Formula, Set<BaseProfile>> res = new HashMap<>();
+        for (Formula f : formulas)
+            res.put(f, index.materialise(index.getGroundingProfiles(f, scope)));
+        return res;
+    }
+
+    /**
+     * Merges partial grounding sets into the larger of them.
+     */
+    private static Map<Formula, Set<BaseProfile>> merge(Map<Formula, Set<BaseProfile>> fst,
+                                                        Map<Formula, Set<BaseProfile>> snd) {
+        for (Map.Entry<Formula, Set<BaseProfile>> entry : fst.entrySet()) {
+            Set<BaseProfile> other = snd.get(entry.getKey());
+            if (other.size() > entry.getValue().size()) {
+                other.addAll(entry.getValue());
+                entry.setValue(other);
+            } else
+                entry.getValue().addAll(other);
+        }
+        return fst;
+    }
+}
@@ -9,11 +9,17 @@ package com.pwr.zpi.language;
  * @author Grrzegorz Kostkowski
  */
 public class Trait implements Comparable<Trait> {
-    private String name;
+    private final String name;
+    /**
+     * Hash code computed once - traits are used as keys of maps in every base profile and of grounding index and
+     * counters, so lowercasing name on each call is noticeable.
+     */
+    private final int hash;
 
     public Trait(String name)
     {
         this.name = name;
+        this.hash = 31 * 17 + (name != null ? name.toLowerCase().hashCode() : 0); // equals() ignores case
     }
 
     /**
@@ -31,14 +37,19 @@ public class Trait implements Comparable<Trait> {
     @Override
     public boolean equals(Object otherName)
     {
-        return this.toString().equalsIgnoreCase(otherName.toString());
+        return this == otherName || this.toString().equalsIgnoreCase(otherName.toString());
     }
 
     @Override
     public int hashCode() {
-        int result = 17;
-        result = 31 * result + name.hashCode();
-        return result;
+        return hash;
+    }
+
+    /**
+     * Traits read by XStream are created without calling constructor, so they are replaced by ones with computed hash.
+     */
+    private Object readResolve() {
+        return new Trait(name);
     }
 
     @Override
@@ -0,0 +1,66 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BPCollection;
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.core.memory.episodic.GroundingCounters;
+import com.pwr.zpi.core.memory.episodic.GroundingIndex;
+import com.pwr.zpi.core.memory.episodic.GroundingWindow;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grounding strategy which takes into consideration only base profiles related with given number of the most recent
+ * moments in time: (timestamp - size, timestamp]. For the current moment in time relative cardinalities are taken from
+ * counters of sliding window maintained by collection of base profiles (in constant time), otherwise from bitmap index.
+ *
+ * @author Grzegorz Kostkowski
+ * @see GroundingWindow
+ */
+public class WindowGroundingStrategy implements GroundingStrategy {
+
+    private final int size;
+
+    /**
+     * @param size Number of the most recent moments in time taken into consideration.
+     */
+    public WindowGroundingStrategy(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Size of window should be positive.");
+        this.size = size;
+    }
+
+    @Override
+    public Map<Formula, Double> relativeCards(DistributedKnowledge dk) {
+        BPCollection bpCollection = dk.getRelatedObservationsBase();
+        List<Formula> formulas = dk.getComplementaryFormulas();
+        GroundingWindow window = bpCollection.getGroundingWindow(size);
+        if (window.isComplete(dk.getTimestamp())) {
+            Map<Formula, Double> res = getCountedRelativeCards(formulas, window.getCounters());
+            if (res != null)
+                return res;
+        }
+        GroundingIndex index = bpCollection.getGroundingIndex();
+        BitSet scope = index.getScope(dk.getTimestamp() - size + 1, dk.getTimestamp());
+        return Grounder.relativeCard_(formulas, index, scope, BitSet::cardinality);
+    }
+
+    private static Map<Formula, Double> getCountedRelativeCards(List<Formula> formulas, GroundingCounters counters) {
+        int totalSize = 0;
+        for (Formula f : formulas) {
+            if (!counters.isSupported(f))
+                return null;
+            totalSize += counters.getGroundingCard(f);
+        }
+        Map<Formula, Double> res = new HashMap<>();
+        for (Formula f : formulas)
+            res.put(f, (double) counters.getGroundingCard(f) / (double) totalSize);
+        return res;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
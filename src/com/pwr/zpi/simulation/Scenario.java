@@ -40,6 +40,10 @@ public class Scenario {
     private List<String> IndModIDs;
     private List<Trait> traits;
     private ConversationSimulator conversation;
+    /**
+     * If set, questions are passed to listener (in thread of scenario) instead of conversation.
+     */
+    private QuestionListener questionListener;
 
     /**
      * natural_name, Pair(ID, traits)
@@ -80,11 +84,30 @@ public class Scenario {
         this.conversation = new ConversationSimulator(agent);
     }
 
+    /**
+     * Receives questions from scenario together with expected answers. Listener is notified when all observations
+     * preceding question are already loaded into agent.
+     */
+    public interface QuestionListener {
+        void questionAsked(String question, String expectedAnswer);
+    }
+
+    /**
+     * Sets listener which replaces conversation with agent: questions are passed to listener synchronously
+     * and no conversation thread is started.
+     *
+     * @param questionListener
+     */
+    public void setQuestionListener(QuestionListener questionListener) {
+        this.questionListener = questionListener;
+    }
+
     /**
      * Processes entire file and produces appropriate data structure.
      */
     public void execute() {
-        conversation.start();
+        if (questionListener == null)
+            conversation.start();
         List<String> readContent;
         try {
             readContent = readContent();
@@ -141,6 +164,12 @@ public class Scenario {
     }
 
     private void askQuestions() throws InterruptedException {
+        if (questionListener != null) {
+            for (Pair<String, String> questionAndAnswer : notUsedQuestionsAndAnswers)
+                questionListener.questionAsked(questionAndAnswer.getKey(), questionAndAnswer.getValue());
+            notUsedQuestionsAndAnswers.clear();
+            return;
+        }
         for (int i = 0; i < notUsedQuestionsAndAnswers.size(); i++) {
             Logger.getAnonymousLogger().log(Level.INFO, "asking...");
             conversation.addQuestion(notUsedQuestionsAndAnswers.get(i).getKey());
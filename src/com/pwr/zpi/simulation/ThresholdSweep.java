@@ -0,0 +1,247 @@
+/*
+ * Created by Grzegorz Kostkowski
+ */
+package com.pwr.zpi.simulation;
+
+import com.pwr.zpi.core.Agent;
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledge;
+import com.pwr.zpi.exceptions.InvalidConfigurationException;
+import com.pwr.zpi.exceptions.InvalidFormulaException;
+import com.pwr.zpi.exceptions.InvalidQuestionException;
+import com.pwr.zpi.exceptions.NotConsistentDKException;
+import com.pwr.zpi.io.Configuration;
+import com.pwr.zpi.language.*;
+import com.pwr.zpi.linguistic.ComplexStatement;
+import com.pwr.zpi.linguistic.Question;
+import com.pwr.zpi.linguistic.SimpleStatement;
+import com.pwr.zpi.linguistic.Statement;
+
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Class allows for tuning of grounding thresholds against scenario. Scenario is replayed only once: for every question
+ * values which epistemic conditions depend on (relative cardinalities, presence in working memory, clearness of last
+ * observation, data for epsilon-concentration) are recorded for all complementary formulas. Afterwards answers are
+ * determined from recorded values for any number of threshold vectors, without touching memory of agent, and compared
+ * with answers expected by scenario. Threshold vectors are evaluated in parallel.
+ *
+ * @author Grzegorz Kostkowski
+ * @see EpistemicRecord
+ */
+public class ThresholdSweep {
+
+    private static final Formula.Type[] TYPES = {Formula.Type.SIMPLE_MODALITY, Formula.Type.MODAL_CONJUNCTION,
+            Formula.Type.MODAL_DISJUNCTION, Formula.Type.MODAL_EXCLUSIVE_DISJUNCTION};
+
+    /**
+     * Single question of scenario with recorded grounding data.
+     */
+    private static class RecordedQuestion {
+        final Formula formula;
+        final String name;
+        final String expectedAnswer;
+        final List<EpistemicRecord> records;
+
+        RecordedQuestion(Formula formula, String name, String expectedAnswer, List<EpistemicRecord> records) {
+            this.formula = formula;
+            this.name = name;
+            this.expectedAnswer = expectedAnswer;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Thresholds for all types of formulas. Each array keeps values in order [MIN_POS, MAX_POS, MIN_BEL, MAX_BEL, KNOW].
+     */
+    public static class Thresholds {
+        private final Map<Formula.Type, double[]> thresholds;
+
+        private Thresholds(Map<Formula.Type, double[]> thresholds) {
+            this.thresholds = thresholds;
+        }
+
+        /**
+         * @return Thresholds currently used by grounder.
+         */
+        public static Thresholds fromConfiguration() throws InvalidConfigurationException {
+            Map<Formula.Type, double[]> res = new EnumMap<>(Formula.Type.class);
+            for (Formula.Type type : TYPES)
+                res.put(type, Configuration.getThresholds(type).clone());
+            return new Thresholds(res);
+        }
+
+        /**
+         * Returns copy of these thresholds where values for given type of formulas are replaced.
+         */
+        public Thresholds with(Formula.Type type, double[] values) {
+            if (values.length != 5)
+                throw new IllegalArgumentException("Invalid thresholds.");
+            Map<Formula.Type, double[]> res = new EnumMap<>(thresholds);
+            res.put(type, values.clone());
+            return new Thresholds(res);
+        }
+
+        public double[] get(Formula.Type type) {
+            return thresholds.get(type);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder res = new StringBuilder();
+            for (Map.Entry<Formula.Type, double[]> entry : thresholds.entrySet())
+                res.append(entry.getKey()).append(Arrays.toString(entry.getValue())).append(' ');
+            return res.toString().trim();
+        }
+    }
+
+    /**
+     * Accuracy of answers obtained for single threshold vector.
+     */
+    public static class Result {
+        private final Thresholds thresholds;
+        private final int correct;
+        private final int total;
+
+        Result(Thresholds thresholds, int correct, int total) {
+            this.thresholds = thresholds;
+            this.correct = correct;
+            this.total = total;
+        }
+
+        public Thresholds getThresholds() {
+            return thresholds;
+        }
+
+        public int getCorrect() {
+            return correct;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public double getAccuracy() {
+            return total > 0 ? (double) correct / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f (%d/%d) %s", getAccuracy(), correct, total, thresholds);
+        }
+    }
+
+    private final Agent agent;
+    private final String filename;
+    private final List<RecordedQuestion> recordedQuestions = new ArrayList<>();
+
+    /**
+     * @param agent    Agent which memory is filled by scenario.
+     * @param filename Name of scenario file.
+     */
+    public ThresholdSweep(Agent agent, String filename) {
+        this.agent = agent;
+        this.filename = filename;
+    }
+
+    /**
+     * Replays scenario and records grounding data for all questions. Questions which can't be understood are skipped.
+     *
+     * @return Number of recorded questions.
+     */
+    public int record() {
+        recordedQuestions.clear();
+        Scenario scenario = new Scenario(agent, filename);
+        scenario.setQuestionListener(this::recordQuestion);
+        scenario.execute();
+        return recordedQuestions.size();
+    }
+
+    private void recordQuestion(String question, String expectedAnswer) {
+        try {
+            Question parsedQuestion = new Question(question, agent);
+            Formula formula = parsedQuestion.getFormula();
+            DistributedKnowledge dk = agent.distributeKnowledge(formula, true);
+            int timestamp = dk.getTimestamp();
+            List<EpistemicRecord> records = new ArrayList<>();
+            for (Formula currFormula : formula.getStandardFormula().getComplementaryFormulas())
+                records.add(EpistemicRecord.record(currFormula, dk,
+                        agent.getSummarization(currFormula, timestamp), timestamp));
+            recordedQuestions.add(new RecordedQuestion(formula, parsedQuestion.getName(), expectedAnswer, records));
+        } catch (InvalidQuestionException | InvalidFormulaException | NotConsistentDKException e) {
+            Logger.getAnonymousLogger().log(Level.WARNING, "Question \"" + question + "\" was not recorded.", e);
+        }
+    }
+
+    /**
+     * Determines accuracy of answers for each of given threshold vectors. Vectors are evaluated in parallel,
+     * in pool used by grounder.
+     *
+     * @param candidates Threshold vectors which should be evaluated.
+     * @return Results in order of given vectors.
+     * @see Grounder#getGroundingPool()
+     */
+    public List<Result> evaluate(List<Thresholds> candidates) {
+        if (candidates == null)
+            throw new NullPointerException("Threshold vectors not specified.");
+        return Grounder.getGroundingPool().submit(() -> candidates.parallelStream()
+                .map(this::evaluate)
+                .collect(Collectors.toList())).join();
+    }
+
+    /**
+     * Determines accuracy of answers for single threshold vector.
+     */
+    public Result evaluate(Thresholds thresholds) {
+        double[] conjThresholds = thresholds.get(Formula.Type.MODAL_CONJUNCTION);
+        int correct = 0;
+        for (RecordedQuestion question : recordedQuestions) {
+            Map<Formula, ModalOperator> groundedFormulas = new HashMap<>();
+            for (EpistemicRecord record : question.records) {
+                ModalOperator operator = record.evaluate(thresholds.get(record.getFormula().getType()), conjThresholds);
+                if (operator != null)
+                    groundedFormulas.put(record.getFormula(), operator);
+            }
+            Statement statement = question.formula instanceof ComplexFormula ?
+                    new ComplexStatement((ComplexFormula) question.formula, groundedFormulas, question.name)
+                    : new SimpleStatement((SimpleFormula) question.formula, groundedFormulas, question.name);
+            if (normalise(statement.generateStatement()).equals(normalise(question.expectedAnswer)))
+                correct++;
+        }
+        return new Result(thresholds, correct, recordedQuestions.size());
+    }
+
+    /**
+     * Builds all threshold vectors for given type of formulas, which differ from given base vector only in MIN_POS,
+     * MAX_POS, MIN_BEL and MAX_BEL. Each value is multiple of given step and MIN_POS &lt; MAX_POS &lt;= MIN_BEL &lt;
+     * MAX_BEL &lt;= KNOW holds.
+     *
+     * @param base Thresholds used for other types of formulas, and value of KNOW.
+     * @param type
+     * @param step Distance between neighbouring values of thresholds, from range (0, 1).
+     * @return
+     */
+    public static List<Thresholds> grid(Thresholds base, Formula.Type type, double step) {
+        if (step <= 0 || step >= 1)
+            throw new IllegalArgumentException("Step should be from range (0, 1).");
+        double know = base.get(type)[4];
+        int steps = (int) Math.floor(know / step + 1e-9);
+        List<Thresholds> res = new ArrayList<>();
+        for (int minPos = 1; minPos < steps; minPos++)
+            for (int maxPos = minPos + 1; maxPos < steps; maxPos++)
+                for (int minBel = maxPos; minBel < steps; minBel++)
+                    for (int maxBel = minBel + 1; maxBel <= steps; maxBel++)
+                        res.add(base.with(type, new double[]{minPos * step, maxPos * step, minBel * step,
+                                maxBel * step, know}));
+        return res;
+    }
+
+    /**
+     * Answers are compared regardless of letter case, punctuation and whitespaces.
+     */
+    private static String normalise(String answer) {
+        return answer == null ? "" : answer.toLowerCase().replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+}
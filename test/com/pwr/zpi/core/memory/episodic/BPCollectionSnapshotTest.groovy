@@ -0,0 +1,138 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.Observation
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.Grounder
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if published snapshot of BPCollection isn't affected by later modifications of collection and if
+ * consecutive snapshots share unchanged base profiles.
+ */
+class BPCollectionSnapshotTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1
+    BPCollection testBpc
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1, tr2]))
+        testBpc = new BPCollection([] as Set, [] as Set)
+        (1..5).each {
+            def bp = new BaseProfile(it)
+            bp.addObservationByValue(model1, tr1, it % 2 == 0)
+            testBpc.addToMemory(bp)
+        }
+    }
+
+    @Test
+    void testSnapshotIsNotAffectedByUpdates() {
+        build()
+        def formulas = new SimpleFormula(model1, tr1, false).getComplementaryFormulas()
+        def snapshot = testBpc.publishSnapshot()
+        def before = Grounder.getGroundingCards(formulas, snapshot, 5)
+        assertTrue(snapshot.isSnapshot())
+        assertSame(snapshot, testBpc.getPublishedSnapshot())
+        assertSame(snapshot, testBpc.publishSnapshot())
+
+        testBpc.includeNewObservation(new Observation(model1.getIdentifier(), [(tr2): true], 5), model1)
+        (6..8).each {
+            def bp = new BaseProfile(it)
+            bp.addDescribedObservation(model1, tr1)
+            testBpc.addToMemory(bp)
+        }
+
+        assertEquals(5, snapshot.getTimestamp())
+        assertEquals(before, Grounder.getGroundingCards(formulas, snapshot, 5))
+        assertFalse(snapshot.getBaseProfile(5).checkIfObserved(model1, tr2, State.IS))
+        def next = testBpc.publishSnapshot()
+        assertNotSame(snapshot, next)
+        assertEquals(Grounder.getGroundingCards(formulas, testBpc, 8), Grounder.getGroundingCards(formulas, next, 8))
+    }
+
+    @Test
+    void testSnapshotIsReadOnly() {
+        build()
+        def snapshot = testBpc.publishSnapshot()
+        shouldFail(IllegalStateException) {
+            snapshot.addToMemory(new BaseProfile(6))
+        }
+        shouldFail(IllegalStateException) {
+            snapshot.publishSnapshot()
+        }
+        assertTrue(snapshot.getBaseProfile(5).isSealed())
+    }
+
+    void assertSameContent(BPCollection expected, BPCollection snapshot) {
+        assertEquals(expected.getWorkingMemory(), snapshot.getWorkingMemory())
+        assertEquals(expected.getLongTermMemory(), snapshot.getLongTermMemory())
+        assertEquals(expected.getEpisodicBaseSize(), snapshot.getGroundingIndex().size())
+        for (Trait trait : [tr1, tr2]) {
+            def formulas = new SimpleFormula(model1, trait, false).getComplementaryFormulas()
+            assertEquals(Grounder.getGroundingCards(formulas, expected, expected.getTimestamp()),
+                    Grounder.getGroundingCards(formulas, snapshot, snapshot.getTimestamp()))
+            for (State state : State.values())
+                assertEquals(expected.getGroundingCounters().getCount(model1, trait, state),
+                        snapshot.getGroundingCounters().getCount(model1, trait, state))
+        }
+        assertEquals(expected.getLatestBaseProfiles(model1, expected.getTimestamp()).collect { it.getTimestamp() },
+                snapshot.getLatestBaseProfiles(model1, snapshot.getTimestamp()).collect { it.getTimestamp() })
+        assertEquals(expected.getGroundingWindow(3).getCounters().getCount(model1, tr1, State.IS),
+                snapshot.getGroundingWindow(3).getCounters().getCount(model1, tr1, State.IS))
+    }
+
+    @Test
+    void testConsecutiveSnapshotFollowsChanges() {
+        build()
+        def snapshot = testBpc.publishSnapshot()
+        assertSameContent(testBpc, snapshot)
+        def wm = new HashSet<>(snapshot.getWorkingMemory())
+
+        testBpc.includeNewObservation(new Observation(model1.getIdentifier(), [(tr2): true], 5), model1)
+        (6..7).each {
+            def bp = new BaseProfile(it)
+            bp.addNotDescribedObservation(model1, tr1)
+            testBpc.addToMemory(bp)
+        }
+        testBpc.shiftBaseProfile(BPCollection.MemoryType.WM, BPCollection.MemoryType.LM, testBpc.getBaseProfile(2))
+        testBpc.deleteFromMemory(BPCollection.MemoryType.WM, 3)
+        def next = testBpc.publishSnapshot()
+
+        assertSameContent(testBpc, next)
+        assertEquals(wm, snapshot.getWorkingMemory())
+        assertTrue(snapshot.getLongTermMemory().isEmpty())
+        assertEquals(5, snapshot.getGroundingIndex().size())
+        assertFalse(snapshot.getBaseProfile(5).checkIfObserved(model1, tr2, State.IS))
+        assertSame(snapshot.getBaseProfile(1), next.getBaseProfile(1))
+        assertSame(snapshot.getBaseProfile(2), next.getBaseProfile(2, BPCollection.MemoryType.LM))
+        assertNotSame(snapshot.getBaseProfile(5), next.getBaseProfile(5))
+    }
+
+    @Test
+    void testSealedBaseProfilesAreSharedWithSnapshots() {
+        build()
+        testBpc.setSealing(true)
+        def snapshot = testBpc.publishSnapshot()
+        (1..4).each { assertSame(testBpc.getBaseProfile(it), snapshot.getBaseProfile(it)) }
+        assertNotSame(testBpc.getBaseProfile(5), snapshot.getBaseProfile(5))
+
+        def bp = new BaseProfile(6)
+        bp.addDescribedObservation(model1, tr2)
+        testBpc.addToMemory(bp)
+        def next = testBpc.publishSnapshot()
+        assertSameContent(testBpc, next)
+        (1..4).each { assertSame(testBpc.getBaseProfile(it), next.getBaseProfile(it)) }
+        assertSame(snapshot.getBaseProfile(5), next.getBaseProfile(5))
+        assertNotSame(bp, next.getBaseProfile(6))
+        assertTrue(next.getBaseProfile(6).isSealed())
+    }
+}
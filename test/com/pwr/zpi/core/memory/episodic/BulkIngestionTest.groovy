@@ -0,0 +1,69 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.Observation
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if batch of observations gives the same content of memory as observations included one by one.
+ */
+class BulkIngestionTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1, model2
+    List<Observation> observations
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        def type = new ObjectType("Typ1", [tr1, tr2])
+        model1 = new IndividualModel(new QRCode("ID1"), type)
+        model2 = new IndividualModel(new QRCode("ID2"), type)
+        observations = []
+        (1..6).each {
+            observations << new Observation(model1.getIdentifier(), [(tr1): it % 2 == 0, (tr2): null], it)
+            observations << new Observation(model2.getIdentifier(), [(tr1): it % 3 == 0], it)
+        }
+        Collections.shuffle(observations, new Random(7))
+    }
+
+    BPCollection includeOneByOne(List<Observation> obs) {
+        def res = new BPCollection([] as Set, [] as Set)
+        obs.sort { it.getTimestamp() }.each {
+            res.includeNewObservation(it, it.getIdentifier() == model1.getIdentifier() ? model1 : model2)
+        }
+        res
+    }
+
+    @Test
+    void testBatchIsEquivalentToSequentialInclusion() {
+        build()
+        def expected = includeOneByOne(new ArrayList<>(observations))
+        def testBpc = new BPCollection([] as Set, [] as Set)
+        testBpc.setSealing(true)
+        testBpc.includeNewObservations(observations.subList(0, 5),
+                [(model1.getIdentifier()): model1, (model2.getIdentifier()): model2])
+        testBpc.includeNewObservations(observations.subList(5, observations.size()),
+                [(model1.getIdentifier()): model1, (model2.getIdentifier()): model2])
+
+        assertEquals(6, testBpc.getTimestamp())
+        assertEquals(expected.getWorkingMemory(), testBpc.getWorkingMemory())
+        assertEquals(expected.getGroundingCounters().getCount(model2, tr1, State.IS),
+                testBpc.getGroundingCounters().getCount(model2, tr1, State.IS))
+        assertTrue(testBpc.getBaseProfile(5).isSealed())
+        assertFalse(testBpc.getBaseProfile(6).isSealed())
+    }
+
+    @Test
+    void testUnknownIdentifierIsRejected() {
+        build()
+        shouldFail(IllegalStateException) {
+            new BPCollection([] as Set, [] as Set).includeNewObservations(observations, [:])
+        }
+    }
+}
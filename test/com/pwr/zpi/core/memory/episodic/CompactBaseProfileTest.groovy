@@ -0,0 +1,85 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.CompactBaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if compact base profile is equivalent to regular base profile with the same observations.
+ */
+class CompactBaseProfileTest extends GroovyTestCase {
+
+    Trait tr1, tr2, tr3
+    IndividualModel model1, model2, model3
+    BaseProfile bp
+    CompactBaseProfile cbp
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        tr3 = new Trait("Round")
+        def type = new ObjectType("Typ1", [tr1, tr2, tr3])
+        model1 = new IndividualModel(new QRCode("ID1"), type)
+        model2 = new IndividualModel(new QRCode("ID2"), type)
+        model3 = new IndividualModel(new QRCode("ID3"), type)
+        bp = new BaseProfile(1)
+        cbp = new CompactBaseProfile(1)
+        [bp, cbp].each {
+            it.addDescribedObservation(model1, tr1)
+            it.addNotDescribedObservation(model1, tr2)
+            it.addIndefiniteObservations([model2, model3] as Set, tr3)
+            it.addDescribedObservation(model3, tr3)
+            it.addNotDescribedObservations([] as Set, tr1)
+        }
+    }
+
+    @Test
+    void testEqualToRegularBaseProfile() {
+        build()
+        assertEquals(bp, cbp)
+        assertEquals(cbp, bp)
+        assertEquals(bp.hashCode(), cbp.hashCode())
+        assertEquals(bp, new CompactBaseProfile(bp))
+        State.values().each { assertEquals(bp.getContainer(it), cbp.getContainer(it)) }
+        assertTrue(cbp.getNotDescribedByTraits().get(tr1).isEmpty())
+    }
+
+    @Test
+    void testQueries() {
+        build()
+        assertTrue(cbp.checkIfObserved(model3, tr3, State.IS))
+        assertTrue(cbp.checkIfObserved(model3, tr3, State.MAYHAPS))
+        assertFalse(cbp.checkIfObserved(model2, tr3, State.IS))
+        assertFalse(cbp.checkIfObserved(model2, tr1, State.IS))
+        assertTrue(cbp.isContainingClearDescriptionFor(model1, tr2))
+        assertFalse(cbp.isContainingClearDescriptionFor(model2, tr3))
+        assertEquals([tr1] as Set, cbp.getRelatedTraits(model1, State.IS) as Set)
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        build()
+        def traits = (0..9).collect { new Trait("T" + it) }
+        def models = (0..9).collect { new IndividualModel(new QRCode("M" + it), new ObjectType("Typ2", traits)) }
+        models.each { m -> traits.each { t -> [bp, cbp]*.addIndefiniteObservation(m, t) } }
+        assertEquals(bp, cbp)
+        assertTrue(cbp.checkIfObserved(model1, tr1, State.IS))
+        assertTrue(cbp.checkIfObserved(models[9], traits[9], State.MAYHAPS))
+    }
+
+    @Test
+    void testContainersAreReadOnly() {
+        build()
+        shouldFail(UnsupportedOperationException) {
+            cbp.getDescribedByTraits().put(tr2, [model1] as Set)
+        }
+        shouldFail(UnsupportedOperationException) {
+            cbp.getDescribedByTraits().get(tr1).add(model2)
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.Grounder
+import com.pwr.zpi.language.LogicOperator
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if consolidation of long-term memory keeps cardinalities of grounding sets obtained from counters.
+ */
+class ConsolidatedSegmentTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1
+    BPCollection testBpc
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1, tr2]))
+        testBpc = new BPCollection([] as Set, [] as Set)
+        (1..20).each {
+            def bp = new BaseProfile(it)
+            bp.addObservationByValue(model1, tr1, it % 3 == 0 ? null : it % 2 == 0)
+            bp.addObservationByValue(model1, tr2, it % 4 != 0)
+            testBpc.addToMemory(BPCollection.MemoryType.LM, bp)
+        }
+    }
+
+    @Test
+    void testCardinalitiesAreKept() {
+        build()
+        def formulas = new SimpleFormula(model1, tr1, false).getComplementaryFormulas() +
+                new ComplexFormula(model1, [tr1, tr2], [State.IS, State.IS], LogicOperator.AND).getComplementaryFormulas()
+        def before = Grounder.getGroundingCards(formulas, testBpc, 20)
+        def occurrences = testBpc.getGroundingCounters().getOccurrences(model1, tr1)
+
+        def segment = testBpc.consolidateLongTermMemory(5, 1)
+        assertEquals(1, segment.getBeginTimestamp())
+        assertEquals(15, segment.getEndTimestamp())
+        assertEquals(15, segment.size())
+        assertEquals(5, testBpc.getEpisodicBaseSize(BPCollection.MemoryType.LM))
+        assertEquals(15, testBpc.getConsolidatedSize())
+        assertNull(testBpc.getBaseProfile(3))
+
+        assertEquals(before, Grounder.getGroundingCards(formulas, testBpc, 20))
+        assertEquals(occurrences, testBpc.getGroundingCounters().getOccurrences(model1, tr1))
+    }
+
+    List disjunctions() {
+        new ComplexFormula(model1, [tr1, tr2], [State.IS, State.IS], LogicOperator.OR).getComplementaryFormulas() +
+                new ComplexFormula(model1, [tr1, tr2], [State.IS, State.IS], LogicOperator.XOR).getComplementaryFormulas()
+    }
+
+    @Test
+    void testDisjunctionCardinalitiesAreKept() {
+        build()
+        def formulas = disjunctions()
+        def index = testBpc.getGroundingIndex()
+        def indexed = formulas.collectEntries { [(it): index.countGroundingProfiles(it, index.getScope(20))] }
+        assertEquals(indexed, Grounder.getGroundingCards(formulas, testBpc, 20))
+
+        testBpc.consolidateLongTermMemory(5, 1)
+        assertEquals(indexed, Grounder.getGroundingCards(formulas, testBpc, 20))
+    }
+
+    @Test
+    void testPastCardinalitiesAreKept() {
+        build()
+        def formulas = new SimpleFormula(model1, tr1, false).getComplementaryFormulas() + disjunctions()
+        def before = Grounder.getGroundingCards(formulas, testBpc, 17)
+        def completeSize = testBpc.getCompleteSize(17)
+        def mayhaps = testBpc.getMayhapsNumber(17, formulas[0], 0)
+
+        testBpc.consolidateLongTermMemory(5, 1)
+        assertFalse(testBpc.getGroundingCounters().isComplete(17))
+        assertEquals(before, Grounder.getGroundingCards(formulas, testBpc, 17))
+        assertEquals(completeSize, testBpc.getCompleteSize(17))
+        assertEquals(mayhaps, testBpc.getMayhapsNumber(17, formulas[0], 0))
+    }
+
+    @Test
+    void testTimestampInsideSegmentIsRejected() {
+        build()
+        def formulas = new SimpleFormula(model1, tr1, false).getComplementaryFormulas()
+        testBpc.consolidateLongTermMemory(5, 1)
+        assertTrue(testBpc.isConsolidated(10))
+        shouldFail(IllegalStateException) {
+            Grounder.getGroundingCards(formulas, testBpc, 10)
+        }
+        shouldFail(IllegalStateException) {
+            testBpc.getCompleteSize(10)
+        }
+        shouldFail(IllegalStateException) {
+            testBpc.checkNotConsolidated(20)
+        }
+    }
+
+    @Test
+    void testContradictoryProfileDisablesCountedDisjunctions() {
+        build()
+        testBpc.getBaseProfile(2).addNotDescribedObservation(model1, tr1)
+        def formulas = disjunctions()
+        def counters = testBpc.getGroundingCounters()
+        assertFalse(formulas.any { counters.isSupported(it) })
+        def index = testBpc.getGroundingIndex()
+        def indexed = formulas.collectEntries { [(it): index.countGroundingProfiles(it, index.getScope(20))] }
+        assertEquals(indexed, Grounder.getGroundingCards(formulas, testBpc, 20))
+
+        testBpc.consolidateLongTermMemory(5, 1)
+        shouldFail(IllegalStateException) {
+            Grounder.getGroundingCards(formulas, testBpc, 20)
+        }
+    }
+
+    @Test
+    void testSmallBatchIsNotConsolidated() {
+        build()
+        assertNull(testBpc.consolidateLongTermMemory(5, 16))
+        assertEquals(20, testBpc.getEpisodicBaseSize(BPCollection.MemoryType.LM))
+        assertTrue(testBpc.getConsolidatedSegments().isEmpty())
+    }
+
+    @Test
+    void testGroundingWindowIsNotConsolidated() {
+        build()
+        testBpc.getGroundingWindow(8)
+        def segment = testBpc.consolidateLongTermMemory(5, 1)
+        assertEquals(12, segment.getEndTimestamp())
+        assertTrue(testBpc.getGroundingWindow(8).isComplete(20))
+    }
+}
@@ -0,0 +1,89 @@
+package episodic
+
+import com.pwr.zpi.core.Agent
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledge
+import com.pwr.zpi.core.memory.episodic.DistributedKnowledgeCache
+import com.pwr.zpi.core.memory.episodic.Observation
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if distributions of knowledge are shared by complementary formulas and rebuilt after knowledge base changed.
+ */
+class DistributedKnowledgeCacheTest extends GroovyTestCase {
+
+    Trait tr1
+    IndividualModel model1
+    Agent agent
+    SimpleFormula formula, negation
+
+    void build() {
+        tr1 = new Trait("Red")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1]))
+        def lm = (1..10).collect {
+            def bp = new BaseProfile(it)
+            bp.addObservationByValue(model1, tr1, it % 3 != 0)
+            bp
+        } as Set
+        agent = new Agent.AgentBuilder().knowledgeBase(new BPCollection([] as Set, lm)).build()
+        formula = new SimpleFormula(model1, tr1, false)
+        negation = new SimpleFormula(model1, tr1, true)
+    }
+
+    @Test
+    void testComplementaryFormulasShareEntry() {
+        build()
+        def cache = new DistributedKnowledgeCache(4)
+        def dk1 = cache.get(agent, formula, 10, true)
+        def dk2 = cache.get(agent, negation, 10, true)
+        assertEquals(1, cache.getMisses())
+        assertEquals(1, cache.getHits())
+        assertEquals(negation, dk2.getFormula())
+        assertSame(dk1.mapOfGroundingSets(), dk2.mapOfGroundingSets())
+        assertEquals(new DistributedKnowledge(agent, negation, 10, true).getDistributionClasses(),
+                dk2.getDistributionClasses())
+    }
+
+    @Test
+    void testEntryIsNotUsedAfterUpdate() {
+        build()
+        def cache = new DistributedKnowledgeCache(4)
+        def before = cache.get(agent, formula, 11, false).getGroundingSet(formula).size()
+        agent.getKnowledgeBase().includeNewObservation(new Observation(model1.getIdentifier(), [(tr1): true], 11), model1)
+        assertEquals(before + 1, cache.get(agent, formula, 11, false).getGroundingSet(formula).size())
+        assertEquals(2, cache.getMisses())
+    }
+
+    @Test
+    void testEntriesOfOlderVersionsAreRemoved() {
+        build()
+        def cache = new DistributedKnowledgeCache(4)
+        agent.publishKnowledge()
+        cache.get(agent, formula, 10, false)
+        cache.get(agent, formula, 9, false)
+        assertEquals(2, cache.size())
+        agent.getKnowledgeBase().includeNewObservation(new Observation(model1.getIdentifier(), [(tr1): true], 11), model1)
+        agent.publishKnowledge()
+        cache.get(agent, formula, 11, false)
+        assertEquals(1, cache.size())
+        assertEquals(3, cache.getMisses())
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        build()
+        def cache = new DistributedKnowledgeCache(2)
+        (1..5).each { cache.get(agent, formula, it, false) }
+        assertEquals(2, cache.size())
+        cache.get(agent, formula, 5, false)
+        cache.get(agent, formula, 1, false)
+        assertEquals(1, cache.getHits())
+        assertEquals(6, cache.getMisses())
+    }
+}
@@ -4,6 +4,7 @@ import com.pwr.zpi.core.Agent
 import com.pwr.zpi.core.memory.episodic.BPCollection
 import com.pwr.zpi.core.memory.episodic.BaseProfile
 import com.pwr.zpi.core.memory.episodic.DistributedKnowledge
+import com.pwr.zpi.core.memory.episodic.Observation
 import com.pwr.zpi.core.memory.semantic.IndividualModel
 import com.pwr.zpi.core.memory.semantic.ObjectType
 import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
@@ -210,4 +211,68 @@ class DistributedKnowledgeTest extends GroovyTestCase {
             assertNotNull dkClasses.get(new Pair(f, BPCollection.MemoryType.LM))
         }
     }
+
+    @Test
+    void testLazyDistribution() {
+        buildTestObject()
+        def wmClass = testCDk2.getDkClassByDesc(cformula1, BPCollection.MemoryType.WM)
+        assertSame(wmClass, testCDk2.getDkClassByDesc(cformula1, BPCollection.MemoryType.WM))
+        assertSame(wmClass, testCDk2.getDistributionClasses().get(new Pair(cformula1, BPCollection.MemoryType.WM)))
+        assertNull testDk1.getDkClassByDesc(sformula2, BPCollection.MemoryType.WM)
+        testCDk1.checkConsistency()
+        testCDk2.checkConsistency()
+
+        def copy = testDk4.clone()
+        assertEquals(testDk4.getDistributionClasses(), copy.getDistributionClasses())
+        assertEquals(testDk4.mapOfGroundingSets(), copy.mapOfGroundingSets())
+    }
+
+    @Test
+    void testVerificationModes() {
+        build()
+        def mode = DistributedKnowledge.getVerification()
+        try {
+            DistributedKnowledge.setVerification(DistributedKnowledge.Verification.ALWAYS)
+            def verified = DistributedKnowledge.getVerifiedCount()
+            new DistributedKnowledge(agent, cformula1, true)
+            assertEquals(verified + 1, DistributedKnowledge.getVerifiedCount())
+
+            DistributedKnowledge.setVerification(DistributedKnowledge.Verification.OFF)
+            def dk = new DistributedKnowledge(agent, sformula1, false)
+            assertEquals(verified + 1, DistributedKnowledge.getVerifiedCount())
+            dk.checkConsistency()
+            dk.checkConsistency()
+            assertEquals(verified + 2, DistributedKnowledge.getVerifiedCount())
+            assertEquals(0, DistributedKnowledge.getInconsistentCount())
+        } finally {
+            DistributedKnowledge.setVerification(mode)
+        }
+        assertEquals(DistributedKnowledge.Verification.SAMPLED, DistributedKnowledge.Verification.forName(" sampled "))
+        assertEquals(DistributedKnowledge.Verification.ALWAYS, DistributedKnowledge.Verification.forName("unknown"))
+    }
+
+    @Test
+    void testAdvancedDistributionIsTheSameAsBuilt() {
+        build()
+        def model = cformula1.getModel()
+        def traits = cformula1.getTraits()
+        def time = bpCollection1.getTimestamp()
+        def old = new DistributedKnowledge(agent, cformula1, time, true)
+        old.getDistributionClasses()
+
+        bpCollection1.includeNewObservation(new Observation(model.getIdentifier(),
+                [(traits[0]): false, (traits[1]): true], time + 1), model)
+        bpCollection1.includeNewObservation(new Observation(model.getIdentifier(), [(traits[0]): true], t2), model)
+        def newer = new DistributedKnowledge(agent, cformula1, time + 1, true)
+        assertSame(newer, old.advanceTo(newer))
+        def built = new DistributedKnowledge(agent, cformula1, time + 1, true)
+        assertEquals(built.mapOfGroundingSets(), newer.mapOfGroundingSets())
+        assertEquals(built.getDistributionClasses(), newer.getDistributionClasses())
+
+        def added = bpCollection1.getBaseProfile(time + 1, BPCollection.MemoryType.WM)
+        def advanced = old.advanceTo(time + 1, [added, bpCollection1.getBaseProfile(t2, BPCollection.MemoryType.WM)], [])
+        assertEquals(time + 1, advanced.getTimestamp())
+        assertEquals(built.mapOfGroundingSets(), advanced.mapOfGroundingSets())
+        assertEquals(built.getDistributionClasses(), advanced.getDistributionClasses())
+    }
 }
@@ -0,0 +1,109 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.EpisodicJournal
+import com.pwr.zpi.core.memory.episodic.Observation
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Checks if collection restored from episodic journal has the same content as journaled collection.
+ */
+class EpisodicJournalTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1, model2
+    Path directory
+    BPCollection testBpc
+    EpisodicJournal journal
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        def type = new ObjectType("Typ1", [tr1, tr2])
+        model1 = new IndividualModel(new QRCode("ID1"), type)
+        model2 = new IndividualModel(new QRCode("ID2"), type)
+        directory = Files.createTempDirectory("episodic-journal")
+        testBpc = new BPCollection([] as Set, [] as Set)
+        def bp = new BaseProfile(1)
+        bp.addDescribedObservation(model1, tr1)
+        testBpc.addToMemory(bp)
+        journal = new EpisodicJournal(directory, 1000)
+        testBpc.setJournal(journal)
+        (2..8).each {
+            testBpc.includeNewObservation(
+                    new Observation(model1.getIdentifier(), [(tr1): it % 2 == 0, (tr2): null], it), model1)
+            testBpc.includeNewObservation(new Observation(model2.getIdentifier(), [(tr1): it % 3 == 0], it), model2)
+        }
+        testBpc.shiftBaseProfile(BPCollection.MemoryType.WM, BPCollection.MemoryType.LM, testBpc.getBaseProfile(2))
+        testBpc.deleteFromMemory(BPCollection.MemoryType.WM, 3)
+        testBpc.setTimestamp(10)
+    }
+
+    void tearDown() {
+        journal?.close()
+        directory?.toFile()?.deleteDir()
+    }
+
+    void assertSameContent(BPCollection expected, BPCollection actual) {
+        assertEquals(expected.getTimestamp(), actual.getTimestamp())
+        assertEquals(expected.getWorkingMemory(), actual.getWorkingMemory())
+        assertEquals(expected.getLongTermMemory(), actual.getLongTermMemory())
+        assertEquals(expected.getConsolidatedSize(), actual.getConsolidatedSize())
+        [model1, model2].each { im ->
+            State.values().each { state ->
+                assertEquals(expected.getGroundingCounters().getCount(im, tr1, state),
+                        actual.getGroundingCounters().getCount(im, tr1, state))
+            }
+        }
+    }
+
+    @Test
+    void testCollectionIsRecovered() {
+        build()
+        journal.sync()
+        def recovered = new EpisodicJournal(directory, 1000)
+        assertTrue(recovered.hasCheckpoint())
+        assertSameContent(testBpc, recovered.recover())
+        assertEquals([model1, model2] as Set, recovered.getIndividualModels())
+        recovered.close()
+    }
+
+    @Test
+    void testCheckpointAndConsolidationAreRecovered() {
+        build()
+        journal.checkpoint()
+        testBpc.includeNewObservation(new Observation(model2.getIdentifier(), [(tr2): true], 10), model2)
+        testBpc.consolidateLongTermMemory(5, 1)
+        journal.sync()
+        def recovered = new EpisodicJournal(directory, 1000)
+        def restored = recovered.recover()
+        assertSameContent(testBpc, restored)
+        assertEquals(1, restored.getConsolidatedSegments().size())
+        restored.setSealing(true)
+        assertTrue(restored.getBaseProfile(8).isSealed())
+        assertFalse(restored.getBaseProfile(10).isSealed())
+        recovered.close()
+    }
+
+    @Test
+    void testTornTailIsDiscarded() {
+        build()
+        journal.close()
+        def file = directory.toFile().listFiles().find { it.getName().startsWith("journal-") }
+        def length = file.length()
+        file.append([0, 0, 0, 40, 1, 2] as byte[])
+        def recovered = new EpisodicJournal(directory, 1000)
+        assertSameContent(testBpc, recovered.recover())
+        assertEquals(length, file.length())
+        recovered.close()
+    }
+}
@@ -0,0 +1,93 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.EvictionPolicy
+import com.pwr.zpi.core.memory.episodic.TimestampedMemory
+import org.junit.Test
+
+/**
+ * Checks if eviction policies select expected base profiles and never select the most recent one.
+ */
+class EvictionPolicyTest extends GroovyTestCase {
+
+    List<BaseProfile> bps
+    TimestampedMemory memory
+
+    void build() {
+        bps = (0..3).collect { new BaseProfile(it) }
+        memory = new TimestampedMemory(bps)
+    }
+
+    EvictionPolicy create(EvictionPolicy.Type type) {
+        def policy = type.create()
+        bps.each { policy.register(it) }
+        policy
+    }
+
+    @Test
+    void testFifoSelectsOldest() {
+        build()
+        def policy = create(EvictionPolicy.Type.FIFO)
+        policy.recordGrounding([bps[0]])
+        assertEquals(bps[0], policy.evict(memory))
+        assertEquals(1, policy.getEvictionCount())
+        assertEquals(0, policy.getGroundingCount())
+    }
+
+    @Test
+    void testLruSelectsLeastRecentlyGrounded() {
+        build()
+        def policy = create(EvictionPolicy.Type.LRU)
+        policy.recordGrounding([bps[0], bps[1]])
+        assertEquals(bps[2], policy.selectVictim(memory))
+        memory.remove(bps[2])
+        policy.unregister(bps[2])
+        assertEquals(bps[0], policy.selectVictim(memory))
+        assertEquals(1, policy.getGroundingCount())
+    }
+
+    @Test
+    void testSalienceSelectsLeastContributing() {
+        build()
+        def policy = create(EvictionPolicy.Type.SALIENCE)
+        policy.recordGrounding([bps[0], bps[2]])
+        policy.recordGrounding([bps[0]])
+        policy.recordGrounding([bps[2]])
+        assertEquals(bps[1], policy.selectVictim(memory))
+        memory.remove(bps[1])
+        policy.unregister(bps[1])
+        assertEquals(bps[0], policy.selectVictim(memory))
+    }
+
+    @Test
+    void testSalienceMatchesEqualBaseProfiles() {
+        build()
+        def policy = create(EvictionPolicy.Type.SALIENCE)
+        policy.recordGrounding([new BaseProfile(0), new BaseProfile(2)])
+        assertTrue(policy.getSalience(bps[0]) > policy.getSalience(bps[1]))
+        assertEquals(bps[1], policy.selectVictim(memory))
+        policy.unregister(new BaseProfile(1))
+        assertEquals(0.0d, policy.getSalience(bps[1]), 1e-9d)
+        assertEquals(bps[0], policy.selectVictim(memory))
+    }
+
+    @Test
+    void testLatestIsNeverSelected() {
+        build()
+        EvictionPolicy.Type.values().each { type ->
+            def policy = create(type)
+            bps[0..2].each {
+                memory.remove(it)
+                policy.unregister(it)
+            }
+            assertNull(policy.selectVictim(memory))
+            build()
+        }
+    }
+
+    @Test
+    void testUnknownNameFallsBackToFifo() {
+        assertEquals(EvictionPolicy.Type.LRU, EvictionPolicy.forName(" lru ").getType())
+        assertEquals(EvictionPolicy.Type.FIFO, EvictionPolicy.forName("MRU").getType())
+    }
+}
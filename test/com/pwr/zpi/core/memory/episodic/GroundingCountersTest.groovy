@@ -0,0 +1,86 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.LogicOperator
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if grounding counters follow content of base profiles stored in BPCollection.
+ */
+class GroundingCountersTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1
+    BPCollection testBpc
+    BaseProfile bp1, bp2, bp3
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1, tr2]))
+
+        bp1 = new BaseProfile(1)
+        bp1.addDescribedObservation(model1, tr1)
+        bp1.addDescribedObservation(model1, tr2)
+        bp2 = new BaseProfile(2)
+        bp2.addNotDescribedObservation(model1, tr1)
+        bp2.addDescribedObservation(model1, tr2)
+        bp3 = new BaseProfile(3)
+        testBpc = new BPCollection([bp1, bp2] as Set, [] as Set)
+    }
+
+    @Test
+    void testCountsAfterConstruction() {
+        build()
+        def counters = testBpc.getGroundingCounters()
+        assertEquals(1, counters.getCount(model1, tr1, State.IS))
+        assertEquals(1, counters.getCount(model1, tr1, State.IS_NOT))
+        assertEquals(2, counters.getCount(model1, tr2, State.IS))
+        assertEquals(1, counters.getCount(model1, tr1, State.IS, tr2, State.IS))
+        assertEquals(1, counters.getCount(model1, tr2, State.IS, tr1, State.IS_NOT))
+        assertEquals(0, counters.getCount(model1, tr1, State.IS_NOT, tr2, State.IS_NOT))
+    }
+
+    @Test
+    void testCountsFollowNewObservations() {
+        build()
+        testBpc.addToMemory(bp3)
+        bp3.addDescribedObservation(model1, tr1)
+        bp3.addIndefiniteObservation(model1, tr2)
+        def counters = testBpc.getGroundingCounters()
+        assertEquals(2, counters.getCount(model1, tr1, State.IS))
+        assertEquals(1, counters.getCount(model1, tr2, State.MAYHAPS))
+        assertEquals(1, counters.getCount(model1, tr1, State.IS, tr2, State.IS))
+        assertTrue(counters.isComplete(3))
+        assertFalse(counters.isComplete(2))
+        assertEquals(2, counters.getGroundingCard(new SimpleFormula(model1, tr1, false)))
+        assertEquals(1, counters.getGroundingCard(
+                new ComplexFormula(model1, [tr1, tr2], [State.IS_NOT, State.IS], LogicOperator.AND)))
+    }
+
+    @Test
+    void testCountsAfterRemoval() {
+        build()
+        testBpc.deleteFromMemory(BPCollection.MemoryType.WM, bp2)
+        def counters = testBpc.getGroundingCounters()
+        assertEquals(0, counters.getCount(model1, tr1, State.IS_NOT))
+        assertEquals(1, counters.getCount(model1, tr2, State.IS))
+    }
+
+    @Test
+    void testCountsAfterReplacingProfile() {
+        build()
+        bp1.setNotDescribedByTraits([(tr1): [model1] as Set])
+        def counters = testBpc.getGroundingCounters()
+        assertEquals(2, counters.getCount(model1, tr1, State.IS_NOT))
+        assertEquals(2, counters.getCount(model1, tr1, State.IS_NOT, tr2, State.IS))
+    }
+}
@@ -0,0 +1,130 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.GroundingIndex
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.LogicOperator
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if grounding index follows registered and modified base profiles and limits scope to ranges of timestamps.
+ */
+class GroundingIndexTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1
+    List<BaseProfile> bps
+    GroundingIndex index
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1, tr2]))
+        bps = (1..10).collect {
+            def bp = new BaseProfile(it)
+            bp.addObservationByValue(model1, tr1, it % 2 == 0)
+            if (it % 3 == 0)
+                bp.addDescribedObservation(model1, tr2)
+            bp
+        }
+        index = new GroundingIndex(bps)
+    }
+
+    Set<BaseProfile> ground(GroundingIndex index, def formula, BitSet scope) {
+        index.materialise(index.getFulfillingProfiles(formula, scope))
+    }
+
+    @Test
+    void testRegisterAndUnregister() {
+        build()
+        def red = new SimpleFormula(model1, tr1, false)
+        assertEquals(10, index.size())
+        assertEquals(bps.findAll { it.getTimestamp() % 2 == 0 } as Set, ground(index, red, index.getScope()))
+
+        def extra = new BaseProfile(4)
+        extra.addDescribedObservation(model1, tr1)
+        extra.addDescribedObservation(model1, tr2)
+        assertTrue(index.register(extra, BPCollection.MemoryType.LM))
+        assertFalse(index.register(extra, BPCollection.MemoryType.WM))
+        assertEquals(11, index.size())
+        assertTrue(ground(index, red, index.getScope(4, 4)).contains(extra))
+        assertEquals([extra, bps[3]] as Set, index.materialise(index.getScope(4, 4)))
+        assertEquals([extra] as Set, index.materialise(index.getScope(4, 4, BPCollection.MemoryType.LM)))
+
+        long version = index.getVersion()
+        assertFalse(index.unregister(extra, BPCollection.MemoryType.WM))
+        assertTrue(index.unregister(extra, BPCollection.MemoryType.LM))
+        assertTrue(index.getVersion() > version)
+        assertEquals(10, index.size())
+        assertEquals([bps[3]] as Set, index.materialise(index.getScope(4, 4)))
+        assertFalse(ground(index, red, index.getScope()).contains(extra))
+    }
+
+    @Test
+    void testModificationsAreFollowed() {
+        build()
+        def bpc = new BPCollection(bps as Set, [] as Set)
+        def collectionIndex = bpc.getGroundingIndex()
+        def soft = new SimpleFormula(model1, tr2, false)
+        def redAndSoft = new ComplexFormula(model1, [tr1, tr2], [State.IS, State.IS], LogicOperator.AND)
+        assertEquals([bps[5]] as Set, ground(collectionIndex, redAndSoft, collectionIndex.getScope()))
+
+        bps[9].addDescribedObservation(model1, tr2)
+        assertEquals([bps[5], bps[9]] as Set, ground(collectionIndex, redAndSoft, collectionIndex.getScope()))
+        bps[9].setDescribedByTraits([:])
+        assertEquals([bps[2], bps[5], bps[8]] as Set, ground(collectionIndex, soft, collectionIndex.getScope()))
+        assertEquals([bps[5]] as Set, ground(collectionIndex, redAndSoft, collectionIndex.getScope()))
+    }
+
+    @Test
+    void testScopeIsLimitedToRange() {
+        build()
+        assertEquals(bps[0..8] as Set, index.materialise(index.getScope(9)))
+        assertEquals(bps[6..7] as Set, index.materialise(index.getScope(7, 8)))
+        assertEquals(bps[1..8] as Set, index.materialise(index.getScope(2, 9)))
+        assertEquals(bps as Set, index.materialise(index.getScope(0, 100)))
+        assertTrue(index.getScope(8, 7).isEmpty())
+        assertTrue(index.getScope(0).isEmpty())
+
+        bps[9].setTimestamp(0)
+        index.profileReplaced(bps[9])
+        assertEquals([bps[9]] as Set, index.materialise(index.getScope(0)))
+        assertEquals(bps[0..8] as Set, index.materialise(index.getScope(1, 10)))
+    }
+
+    @Test
+    void testOrdinalsAreReused() {
+        build()
+        def soft = new SimpleFormula(model1, tr2, false)
+        int ordinal = (0..9).find { index.getProfile(it).is(bps[2]) }
+        assertTrue(index.unregister(bps[2], BPCollection.MemoryType.WM))
+        assertNull(index.getProfile(ordinal))
+        assertEquals([bps[5], bps[8]] as Set, ground(index, soft, index.getScope()))
+
+        def bp = new BaseProfile(11)
+        bp.addDescribedObservation(model1, tr2)
+        assertTrue(index.register(bp, BPCollection.MemoryType.WM))
+        assertSame(bp, index.getProfile(ordinal))
+        assertNull(index.getProfile(10))
+        assertEquals([bps[5], bps[8], bp] as Set, ground(index, soft, index.getScope()))
+    }
+
+    @Test
+    void testShiftedProfileKeepsOrdinal() {
+        build()
+        def bpc = new BPCollection(bps as Set, [] as Set)
+        def collectionIndex = bpc.getGroundingIndex()
+        int ordinal = (0..9).find { collectionIndex.getProfile(it).is(bps[0]) }
+        bpc.shiftBaseProfile(BPCollection.MemoryType.WM, BPCollection.MemoryType.LM, bps[0])
+        assertSame(bps[0], collectionIndex.getProfile(ordinal))
+        assertEquals([bps[0]] as Set, collectionIndex.materialise(collectionIndex.getScope(100, BPCollection.MemoryType.LM)))
+        assertEquals(10, collectionIndex.size())
+    }
+}
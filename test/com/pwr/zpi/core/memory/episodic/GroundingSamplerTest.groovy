@@ -0,0 +1,89 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.GroundingSampler
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+import java.util.function.Function
+
+/**
+ * Checks if grounding sampler keeps bounded samples of registered base profiles.
+ */
+class GroundingSamplerTest extends GroovyTestCase {
+
+    Trait tr1
+    IndividualModel model1, model2
+    List<BaseProfile> bps
+
+    void build(int size) {
+        tr1 = new Trait("Red")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1]))
+        model2 = new IndividualModel(new QRCode("ID2"), new ObjectType("Typ1", [tr1]))
+        bps = (1..size).collect {
+            def bp = new BaseProfile(it)
+            bp.addDescribedObservation(model1, tr1)
+            bp
+        }
+    }
+
+    @Test
+    void testRequiredSampleSize() {
+        assertEquals(738, GroundingSampler.getRequiredSampleSize(0.05, 0.95))
+        assertTrue(GroundingSampler.getErrorBound(738, 0.95) <= 0.05)
+    }
+
+    @Test
+    void testSampleIsBounded() {
+        build(50)
+        def sampler = new GroundingSampler(10)
+        bps.each { sampler.register(it) }
+        assertEquals(10, sampler.getSample(model1).size())
+        assertEquals(50, sampler.getPopulation(model1))
+        assertTrue(sampler.getSample(model2).isEmpty())
+    }
+
+    @Test
+    void testSampleFollowsRegistration() {
+        build(5)
+        def sampler = new GroundingSampler(10)
+        bps.each { sampler.register(it) }
+        sampler.unregister(bps[0])
+        assertEquals(4, sampler.getSample(model1).size())
+        sampler.register(bps[0])
+        assertEquals(5, sampler.getSample(model1).size())
+        def bp = new BaseProfile(6)
+        bp.addNotDescribedObservation(model2, tr1)
+        sampler.register(bp)
+        assertEquals([bp], sampler.getSample(model2))
+        assertEquals(5, sampler.getPopulation(model1))
+    }
+
+    @Test
+    void testCopyKeepsSamplesOfSource() {
+        build(5)
+        def sampler = new GroundingSampler(10)
+        bps.each { sampler.register(it) }
+        def copy = new GroundingSampler(sampler, null, [], { it == bps[0] ? null : it } as Function)
+        assertEquals(bps.subList(1, 5) as Set, copy.getSample(model1) as Set)
+        assertEquals(5, copy.getPopulation(model1))
+
+        sampler.unregister(bps[1])
+        def bp = new BaseProfile(6)
+        bp.addNotDescribedObservation(model2, tr1)
+        sampler.register(bp)
+        assertEquals(4, copy.getSample(model1).size())
+        assertTrue(copy.getSample(model2).isEmpty())
+
+        def next = new GroundingSampler(sampler, copy, [], { it } as Function)
+        assertEquals([bps[0]] + bps.subList(2, 5) as Set, next.getSample(model1) as Set)
+        assertEquals([bp], next.getSample(model2))
+        def unchanged = new GroundingSampler(sampler, next, [model2], { it == bp ? null : it } as Function)
+        assertEquals(4, unchanged.getSample(model1).size())
+        assertTrue(unchanged.getSample(model2).isEmpty())
+        assertEquals(1, unchanged.getPopulation(model2))
+    }
+}
@@ -0,0 +1,52 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if grounding window follows the most recent base profiles stored in BPCollection.
+ */
+class GroundingWindowTest extends GroovyTestCase {
+
+    Trait tr1
+    IndividualModel model1
+    BPCollection testBpc
+
+    void build() {
+        tr1 = new Trait("Red")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1]))
+        testBpc = new BPCollection([] as Set, [] as Set)
+        (1..5).each {
+            def bp = new BaseProfile(it)
+            bp.addDescribedObservation(model1, tr1)
+            testBpc.addToMemory(BPCollection.MemoryType.LM, bp)
+        }
+    }
+
+    @Test
+    void testWindowCoversRecentProfiles() {
+        build()
+        def window = testBpc.getGroundingWindow(3)
+        assertEquals(3, window.getCounters().getCount(model1, tr1, State.IS))
+        assertTrue(window.isComplete(5))
+        assertFalse(window.isComplete(4))
+    }
+
+    @Test
+    void testWindowMovesForward() {
+        build()
+        def window = testBpc.getGroundingWindow(3)
+        def bp = new BaseProfile(7)
+        testBpc.addToMemory(BPCollection.MemoryType.LM, bp)
+        bp.addNotDescribedObservation(model1, tr1)
+        assertEquals(1, window.getCounters().getCount(model1, tr1, State.IS))
+        assertEquals(1, window.getCounters().getCount(model1, tr1, State.IS_NOT))
+        assertTrue(window.isComplete(7))
+    }
+}
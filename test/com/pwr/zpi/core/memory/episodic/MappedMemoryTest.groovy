@@ -0,0 +1,76 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.MappedMemory
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+import java.nio.file.Files
+
+/**
+ * Checks if mapped memory stores read-only copies of base profiles which are equal to added ones.
+ */
+class MappedMemoryTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1, model2
+    List<BaseProfile> bps
+    MappedMemory memory
+
+    void build(int segmentSize = 1024) {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1, tr2]))
+        model2 = new IndividualModel(new QRCode("ID2"), new ObjectType("Typ1", [tr1, tr2]))
+        bps = (0..9).collect { new BaseProfile(it) }
+        bps.eachWithIndex { bp, i ->
+            bp.addDescribedObservation(model1, tr1)
+            bp.addObservationByValue(model2, tr2, i % 3 == 0 ? null : i % 3 == 1)
+        }
+        def file = Files.createTempFile("mapped", ".bin")
+        file.toFile().deleteOnExit()
+        memory = new MappedMemory(file, segmentSize)
+        memory.addAll(bps)
+    }
+
+    @Test
+    void testStoredProfilesAreEqualCopies() {
+        build()
+        assertEquals(10, memory.size())
+        bps.each {
+            def stored = memory.get(it.getTimestamp())
+            assertNotSame(it, stored)
+            assertEquals(it, stored)
+            assertEquals(it.hashCode(), stored.hashCode())
+            assertTrue(memory.contains(it))
+        }
+        assertTrue(memory.get(4).checkIfObserved(model2, tr2, State.IS))
+        assertTrue(memory.get(3).checkIfObserved(model2, tr2, State.MAYHAPS))
+        assertEquals([bps[2], bps[3]] as Set, memory.subSet(2, 3))
+    }
+
+    @Test
+    void testStoredProfilesAreReadOnly() {
+        build()
+        shouldFail(UnsupportedOperationException) {
+            memory.get(1).addDescribedObservation(model2, tr1)
+        }
+        shouldFail(UnsupportedOperationException) {
+            memory.get(1).getDescribedByTraits().put(tr2, [model1] as Set)
+        }
+    }
+
+    @Test
+    void testRecordsDontCrossSegments() {
+        build(64)
+        assertTrue(memory.getStoredBytes() > 64)
+        bps.each { assertEquals(it, memory.get(it.getTimestamp())) }
+        assertTrue(memory.remove(bps[0]))
+        assertNull(memory.get(0))
+        memory.close()
+    }
+}
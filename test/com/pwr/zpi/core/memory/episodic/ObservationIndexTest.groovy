@@ -0,0 +1,85 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.ObservationIndex
+import com.pwr.zpi.core.memory.holons.context.selectors.LatestGroupSelector
+import com.pwr.zpi.core.memory.holons.context.selectors.LatestSelector
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.Grounder
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if observation index returns the latest base profiles observing given object and if selectors using it
+ * give the same representatives as selectors visiting whole grounding sets.
+ */
+class ObservationIndexTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1, model2
+    BPCollection testBpc
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        def type = new ObjectType("Typ1", [tr1, tr2])
+        model1 = new IndividualModel(new QRCode("ID1"), type)
+        model2 = new IndividualModel(new QRCode("ID2"), type)
+        testBpc = new BPCollection([] as Set, [] as Set)
+        (1..10).each {
+            def bp = new BaseProfile(it)
+            if (it % 3 == 0)
+                bp.addIndefiniteObservation(model1, tr1)
+            else
+                bp.addObservationByValue(model1, tr1, it % 2 == 0)
+            bp.addDescribedObservation(model2, tr2)
+            testBpc.addToMemory(bp)
+        }
+    }
+
+    @Test
+    void testLatestTimestamps() {
+        build()
+        def index = testBpc.getObservationIndex()
+        assertEquals([10, 8, 7], index.getLatestTimestamps(model1, 10, 3, State.IS, State.IS_NOT))
+        assertEquals([6, 3], index.getLatestTimestamps(model1, 7, 5, State.MAYHAPS))
+        assertEquals([10, 9], index.getLatestTimestamps(model1, 10, 2))
+
+        testBpc.getBaseProfile(10).addDescribedObservation(model1, tr2)
+        testBpc.deleteFromMemory(BPCollection.MemoryType.WM, 8)
+        assertEquals([10, 7, 5], index.getLatestTimestamps(model1, 10, 3, State.IS, State.IS_NOT))
+    }
+
+    @Test
+    void testSelectorsUsingIndex() {
+        build()
+        def groundingSets = Grounder.getGroundingSets(new SimpleFormula(model1, tr1, false).getComplementaryFormulas(),
+                testBpc, testBpc.getTimestamp())
+        [new LatestSelector(), new LatestGroupSelector(3)].each {
+            assertEquals(it.select(groundingSets), it.select(groundingSets, testBpc))
+        }
+        assertEquals([testBpc.getBaseProfile(10)] as Set, new LatestSelector().select(groundingSets, testBpc))
+    }
+
+    @Test
+    void testCopyIsIndependent() {
+        build()
+        def index = testBpc.getObservationIndex()
+        def copy = new ObservationIndex(index)
+        def bp = new BaseProfile(11)
+        bp.addDescribedObservation(model1, tr1)
+        copy.register(bp)
+        copy.unregister(testBpc.getBaseProfile(10))
+        testBpc.deleteFromMemory(BPCollection.MemoryType.WM, 8)
+
+        assertEquals([10, 7, 5], index.getLatestTimestamps(model1, 11, 3, State.IS, State.IS_NOT))
+        assertEquals([11, 8, 7], copy.getLatestTimestamps(model1, 11, 3, State.IS, State.IS_NOT))
+        assertEquals(9, index.size())
+        assertEquals(10, copy.size())
+    }
+}
@@ -0,0 +1,53 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.PersistentProfileSet
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if persistent sets derived from each other have expected content and don't affect their sources.
+ */
+class PersistentProfileSetTest extends GroovyTestCase {
+
+    Trait tr1
+    IndividualModel model1
+    List<BaseProfile> bps
+
+    void build() {
+        tr1 = new Trait("Red")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1]))
+        bps = [1, 5, 40, 1200, 40].withIndex().collect { ts, i ->
+            def bp = new BaseProfile(ts)
+            bp.addObservationByValue(model1, tr1, i < 3)
+            bp
+        }
+    }
+
+    @Test
+    void testContentAndOrder() {
+        build()
+        def set = PersistentProfileSet.of(bps.reverse())
+        assertEquals(bps as Set, set)
+        assertEquals(5, set.size())
+        assertEquals([1, 5, 40, 40, 1200], set.collect { it.getTimestamp() })
+        assertEquals([bps[2], bps[4]] as Set, set.getBaseProfiles(40) as Set)
+        assertTrue(set.getBaseProfiles(41).isEmpty())
+        assertFalse(set.contains(new BaseProfile(5)))
+    }
+
+    @Test
+    void testVersionsAreIndependent() {
+        build()
+        def first = PersistentProfileSet.of(bps[0..2])
+        def second = first.with(bps[3]).withoutTimestamp(5)
+        def third = second.toBuilder().removeTimestamp(1200).add(bps[4]).add(bps[4]).build()
+        assertEquals(bps[0..2] as Set, first)
+        assertEquals([bps[0], bps[2], bps[3]] as Set, second)
+        assertEquals([bps[0], bps[2], bps[4]] as Set, third)
+        assertSame(PersistentProfileSet.empty(), first.withoutTimestamp(1).withoutTimestamp(5).withoutTimestamp(40))
+    }
+}
@@ -0,0 +1,90 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.Observation
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if BPCollection seals base profiles once its timestamp advances past their timestamps.
+ */
+class SealedBaseProfileTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel model1
+    BPCollection testBpc
+    List<BaseProfile> bps
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Soft")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1, tr2]))
+        testBpc = new BPCollection([] as Set, [] as Set)
+        testBpc.setSealing(true)
+        bps = (1..3).collect {
+            def bp = new BaseProfile(it)
+            bp.addDescribedObservation(model1, tr1)
+            testBpc.addToMemory(bp)
+            bp
+        }
+    }
+
+    @Test
+    void testClosedProfilesAreSealed() {
+        build()
+        assertTrue(bps[0].isSealed())
+        assertTrue(bps[1].isSealed())
+        assertFalse(bps[2].isSealed())
+        bps[2].addNotDescribedObservation(model1, tr2)
+        shouldFail(IllegalStateException) {
+            bps[0].addNotDescribedObservation(model1, tr2)
+        }
+        shouldFail(UnsupportedOperationException) {
+            bps[0].getDescribedByTraits().get(tr1).add(model1)
+        }
+    }
+
+    @Test
+    void testSealedProfileKeepsEquality() {
+        build()
+        def copy = new BaseProfile(1)
+        copy.addDescribedObservation(model1, tr1)
+        assertEquals(copy, bps[0])
+        assertEquals(bps[0], copy)
+        assertEquals(copy.hashCode(), bps[0].hashCode())
+        assertFalse(bps[0].equals(bps[1]))
+        assertTrue(testBpc.getWorkingMemory().contains(copy))
+    }
+
+    @Test
+    void testObservationForSealedProfileReplacesIt() {
+        build()
+        testBpc.includeNewObservation(new Observation(model1.getIdentifier(), [(tr2): false], 1), model1)
+        def replaced = testBpc.getBaseProfile(1)
+        assertNotSame(bps[0], replaced)
+        assertTrue(replaced.isSealed())
+        assertTrue(replaced.checkIfObserved(model1, tr1, State.IS))
+        assertTrue(replaced.checkIfObserved(model1, tr2, State.IS_NOT))
+        assertEquals(1, testBpc.getGroundingCounters().getCount(model1, tr2, State.IS_NOT))
+        assertEquals(3, testBpc.getGroundingCounters().getCount(model1, tr1, State.IS))
+        assertFalse(bps[0].equals(replaced))
+        assertFalse(replaced.equals(bps[0]))
+    }
+
+    @Test
+    void testSealingIsOptIn() {
+        def bpc = new BPCollection([] as Set, [] as Set)
+        assertFalse(bpc.isSealing())
+        def bp = new BaseProfile(1)
+        bpc.addToMemory(bp)
+        bpc.addToMemory(new BaseProfile(2))
+        assertFalse(bp.isSealed())
+        bpc.setSealing(true)
+        assertTrue(bp.isSealed())
+    }
+}
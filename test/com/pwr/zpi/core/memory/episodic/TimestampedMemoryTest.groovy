@@ -0,0 +1,102 @@
+package episodic
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.episodic.TimestampedMemory
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if timestamped memory finds base profiles by timestamp, provides ranges as views and is independent of its
+ * copies.
+ */
+class TimestampedMemoryTest extends GroovyTestCase {
+
+    Trait tr1
+    IndividualModel model1
+    List<BaseProfile> bps
+    TimestampedMemory memory
+
+    void build() {
+        tr1 = new Trait("Red")
+        model1 = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [tr1]))
+        bps = [5, 1, 3].collect { new BaseProfile(it) }
+        memory = new TimestampedMemory(bps)
+    }
+
+    @Test
+    void testLookups() {
+        build()
+        assertEquals(bps[1], memory.get(1))
+        assertNull(memory.get(2))
+        assertEquals(bps[1], memory.getOldest())
+        assertEquals(bps[0], memory.getLatest())
+        assertEquals(bps[2], memory.getLatest(4))
+        assertEquals([1, 3, 5], memory.collect { it.getTimestamp() })
+    }
+
+    @Test
+    void testModifiedProfileCanBeRemoved() {
+        build()
+        bps[2].addDescribedObservation(model1, tr1)
+        assertTrue(memory.contains(bps[2]))
+        assertTrue(memory.remove(bps[2]))
+        assertEquals(2, memory.size())
+    }
+
+    @Test
+    void testProfilesWithTheSameTimestampAreKept() {
+        build()
+        def other = new BaseProfile(5)
+        other.addNotDescribedObservation(model1, tr1)
+        assertTrue(memory.add(other))
+        assertFalse(memory.add(new BaseProfile(5)))
+        assertEquals(4, memory.size())
+        assertEquals(bps[0], memory.get(5))
+        assertEquals([bps[0], other], memory.getAll(5))
+        assertEquals(2, memory.subSet(4, 5).size())
+        assertEquals([1, 3, 5, 5], memory.collect { it.getTimestamp() })
+        assertTrue(memory.remove(bps[0]))
+        assertEquals(other, memory.get(5))
+        assertEquals(3, memory.size())
+    }
+
+    @Test
+    void testRangesAreViews() {
+        build()
+        def head = memory.headSet(3)
+        assertEquals([bps[1], bps[2]] as Set, head)
+        def bp = new BaseProfile(2)
+        memory.add(bp)
+        assertTrue(head.contains(bp))
+        assertEquals(3, head.size())
+        assertEquals([bp, bps[2]] as Set, memory.subSet(2, 4))
+        shouldFail(UnsupportedOperationException) {
+            head.remove(bp)
+        }
+    }
+
+    @Test
+    void testCopiesAreIndependent() {
+        build()
+        def distant = [70000, 2000000, 0, Integer.MAX_VALUE].collect { new BaseProfile(it) }
+        memory.addAll(distant)
+        def copy = new TimestampedMemory(memory)
+        def bp = new BaseProfile(4)
+        copy.add(bp)
+        copy.remove(bps[0])
+        copy.remove(distant[1])
+        memory.remove(distant[0])
+
+        assertEquals([0, 1, 3, 5, 2000000, Integer.MAX_VALUE], memory.collect { it.getTimestamp() })
+        assertEquals([0, 1, 3, 4, 70000, Integer.MAX_VALUE], copy.collect { it.getTimestamp() })
+        assertEquals(6, memory.size())
+        assertEquals(6, copy.size())
+        assertEquals([bps[2], bp, distant[0]], copy.subSet(2, 1000000).toList())
+        assertEquals(distant[3], copy.getLatest())
+        assertSame(distant[0], copy.getLatest(1999999))
+        assertSame(bps[0], memory.getLatest(1999999))
+    }
+}
@@ -0,0 +1,108 @@
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.CompiledFormula
+import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.Formula
+import com.pwr.zpi.language.LogicOperator
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+/**
+ * Checks if compiled predicates are fulfilled by the same base profiles as formulas checked trait by trait.
+ */
+class CompiledFormulaTest extends GroovyTestCase {
+
+    Trait tr1, tr2
+    IndividualModel im1, im2
+    List<BaseProfile> bps
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Blinking")
+        def oType1 = new ObjectType("01", [tr1, tr2])
+        im1 = new IndividualModel(new QRCode("0124"), oType1)
+        im2 = new IndividualModel(new QRCode("0125"), oType1)
+        bps = []
+        int t = 0
+        // every combination of states of both traits (including not observed trait), for both models
+        def states = State.values().toList() + [null]
+        for (IndividualModel im : [im1, im2])
+            for (State s1 : states)
+                for (State s2 : states) {
+                    def bp = new BaseProfile(t++)
+                    observe(bp, im, tr1, s1)
+                    observe(bp, im, tr2, s2)
+                    bps.add(bp)
+                }
+    }
+
+    static void observe(BaseProfile bp, IndividualModel im, Trait trait, State state) {
+        switch (state) {
+            case State.IS:
+                bp.addDescribedObservation(im, trait)
+                break
+            case State.IS_NOT:
+                bp.addNotDescribedObservation(im, trait)
+                break
+            case State.MAYHAPS:
+                bp.addIndefiniteObservation(im, trait)
+        }
+    }
+
+    /**
+     * Checks fulfillment of formula in the same way as Formula did before formulas were compiled.
+     */
+    static boolean isFulfilledTraitByTrait(Formula formula, BaseProfile bp) {
+        def partial = (0..<formula.getTraits().size()).collect {
+            bp.checkIfObserved(formula.getModel(), formula.getTraits()[it], formula.getStates()[it])
+        }
+        if (formula.getType() == Formula.Type.SIMPLE_MODALITY)
+            return partial[0]
+        switch (((ComplexFormula) formula).getOperator()) {
+            case LogicOperator.AND:
+                return partial[0] && partial[1]
+            case LogicOperator.OR:
+                return partial[0] || partial[1]
+            case LogicOperator.XOR:
+                return partial[0] ^ partial[1]
+        }
+    }
+
+    void checkEquivalence(Formula formula) {
+        def compiled = CompiledFormula.compile(formula)
+        for (BaseProfile bp : bps) {
+            boolean expected = isFulfilledTraitByTrait(formula, bp)
+            assertEquals(formula.toString() + " at " + bp.getTimestamp(), expected, compiled.isFulfilled(bp))
+            assertEquals(expected, formula.isFormulaFulfilled(bp))
+        }
+    }
+
+    @Test
+    void testSimpleModalities() {
+        build()
+        checkEquivalence(new SimpleFormula(im1, tr1, false))
+        checkEquivalence(new SimpleFormula(im1, tr2, true))
+        for (State state : State.values())
+            for (BaseProfile bp : bps)
+                assertEquals(bp.checkIfObserved(im1, tr1, state), CompiledFormula.compile(im1, tr1, state).isFulfilled(bp))
+    }
+
+    @Test
+    void testComplexFormulas() {
+        build()
+        int fulfilled = 0
+        for (LogicOperator op : [LogicOperator.AND, LogicOperator.OR, LogicOperator.XOR])
+            for (State s1 : [State.IS, State.IS_NOT])
+                for (State s2 : [State.IS, State.IS_NOT]) {
+                    def formula = new ComplexFormula(im1, [tr1, tr2], [s1, s2], op)
+                    checkEquivalence(formula)
+                    fulfilled += bps.count { formula.isFormulaFulfilled(it) }
+                }
+        // profiles of im1 fulfil each conjunction once, each disjunction 7 times and each exclusive disjunction 6 times
+        assertEquals(4 * (1 + 7 + 6), fulfilled)
+    }
+}
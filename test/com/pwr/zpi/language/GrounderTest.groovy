@@ -3,6 +3,7 @@ import com.pwr.zpi.io.Configuration
 import com.pwr.zpi.core.memory.episodic.BPCollection
 import com.pwr.zpi.core.memory.episodic.BaseProfile
 import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.ConjunctiveGrounding
 import com.pwr.zpi.core.memory.episodic.DistributedKnowledge
 import com.pwr.zpi.language.Formula
 import com.pwr.zpi.language.Grounder
@@ -368,6 +369,28 @@ NR  RED WHI BLI
 
     }
 
+    @Test
+    void testBatchGroundingGivesTheSameResultsAsSingleFormulas() {
+        buildRelatedScenario(2)
+        def formulas = [cformula1, cformula2, cformula3, cformula4, cformula5, cformula6, cformula7, cformula8,
+                        new ComplexFormula(im1, [tr3, tr2], [State.IS, State.IS], LogicOperator.XOR),
+                        new SimpleFormula(im1, tr2, true)] as List<Formula>
+        def expected = formulas.collectEntries { [(it): Grounder.performFormulaGrounding(agent, it)] }
+
+        agent.getKnowledgeCache().clear()
+        def res = Grounder.performFormulaGrounding(agent, formulas)
+        assertEquals(expected, res)
+        assertSame(res[cformula5], res[cformula6])
+
+        // grounding sets composed from shared conjunctions are the same as evaluated for each family separately
+        def base = agent.getKnowledgeSnapshot()
+        def shared = new ConjunctiveGrounding(base, base.getTimestamp())
+        for (Formula formula : [cformula1, cformula5, formulas[8]]) {
+            def family = formula.getStandardFormula().getComplementaryFormulas()
+            assertEquals(Grounder.getGroundingSets(family, base, base.getTimestamp()), shared.getGroundingSets(family))
+        }
+    }
+
     @Test
     void testCheckEpistemicCondition() {
         final double[] simpleThresholds = Configuration.simpleThresholds;
@@ -0,0 +1,71 @@
+package com.pwr.zpi.language;
+
+import com.pwr.zpi.core.memory.episodic.BaseProfile;
+import com.pwr.zpi.core.memory.semantic.IndividualModel;
+import com.pwr.zpi.core.memory.semantic.ObjectType;
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures time of parallel grounding on large synthetic memory for each size of pool from 1 to given maximum.
+ * It isn't a unit test (it's run through main method only), so it doesn't slow down test run.
+ * Usage: GroundingBenchmark [number of base profiles] [number of repetitions] [maximal size of pool]
+ */
+public class GroundingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int profilesNumber = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxPoolSize = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Trait red = new Trait("Red");
+        Trait soft = new Trait("Soft");
+        IndividualModel model = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", Arrays.asList(red, soft)));
+        Set<BaseProfile> memory = buildMemory(model, red, soft, profilesNumber, new Random(1));
+        List<Formula> formulas = new ComplexFormula(model, Arrays.asList(red, soft), Arrays.asList(State.IS, State.IS),
+                LogicOperator.AND).getComplementaryFormulas();
+
+        System.out.println("Base profiles: " + profilesNumber);
+        Map<Formula, Set<BaseProfile>> expected = null;
+        long sequential = 0;
+        for (int poolSize = 1; poolSize <= maxPoolSize; poolSize++) {
+            ForkJoinPool pool = new ForkJoinPool(poolSize);
+            Map<Formula, Set<BaseProfile>> res = Grounder.getGroundingSets(formulas, memory, pool);
+            if (expected == null)
+                expected = res;
+            else if (!expected.equals(res))
+                throw new IllegalStateException("Grounding sets differ for pool size " + poolSize + ".");
+            long start = System.nanoTime();
+            for (int i = 0; i < repetitions; i++)
+                Grounder.getGroundingSets(formulas, memory, pool);
+            long avg = (System.nanoTime() - start) / repetitions;
+            if (poolSize == 1)
+                sequential = avg;
+            System.out.println(String.format("Pool size: %d, average time: %d ms, speedup: %.2f", poolSize,
+                    avg / 1000000, (double) sequential / avg));
+            pool.shutdown();
+        }
+    }
+
+    private static Set<BaseProfile> buildMemory(IndividualModel model, Trait fst, Trait snd, int size, Random random) {
+        Set<BaseProfile> res = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < size; i++) {
+            BaseProfile bp = new BaseProfile(i);
+            for (Trait trait : new Trait[]{fst, snd})
+                switch (random.nextInt(3)) {
+                    case 0:
+                        bp.addDescribedObservation(model, trait);
+                        break;
+                    case 1:
+                        bp.addNotDescribedObservation(model, trait);
+                        break;
+                    default:
+                        bp.addIndefiniteObservation(model, trait);
+                }
+            res.add(bp);
+        }
+        return res;
+    }
+}
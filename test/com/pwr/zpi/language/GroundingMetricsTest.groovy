@@ -0,0 +1,127 @@
+package com.pwr.zpi.language
+
+import org.junit.Test
+
+import javax.management.ObjectName
+import javax.management.openmbean.TabularData
+import java.lang.management.ManagementFactory
+
+import static com.pwr.zpi.language.GroundingMetrics.Counter
+import static com.pwr.zpi.language.GroundingMetrics.Phase
+
+/**
+ * Checks gathering, resetting and publishing of grounding metrics.
+ */
+class GroundingMetricsTest extends GroovyTestCase {
+
+    boolean wasEnabled
+
+    void setUp() {
+        wasEnabled = GroundingMetrics.isEnabled()
+        GroundingMetrics.reset()
+    }
+
+    void tearDown() {
+        GroundingMetrics.setEnabled(wasEnabled)
+        GroundingMetrics.reset()
+    }
+
+    void record() {
+        long start = GroundingMetrics.start()
+        GroundingMetrics.stop(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY, start)
+        GroundingMetrics.count(Counter.PROFILES_SCANNED, Formula.Type.SIMPLE_MODALITY, 5)
+    }
+
+    void assertEmpty(GroundingMetrics.Snapshot snapshot) {
+        for (Formula.Type type : Formula.Type.values()) {
+            for (Phase phase : Phase.values()) {
+                assertEquals(0L, snapshot.getNanos(phase, type))
+                assertEquals(0L, snapshot.getCalls(phase, type))
+            }
+            for (Counter counter : Counter.values())
+                assertEquals(0L, snapshot.getCount(counter, type))
+        }
+    }
+
+    @Test
+    void testDisabledMetricsRecordNothing() {
+        GroundingMetrics.setEnabled(false)
+        assertEquals(Long.MIN_VALUE, GroundingMetrics.start())
+        record()
+        assertEmpty(GroundingMetrics.snapshot())
+    }
+
+    @Test
+    void testMeasurementStartedBeforeDisablingIsIgnored() {
+        GroundingMetrics.setEnabled(true)
+        long start = GroundingMetrics.start()
+        GroundingMetrics.setEnabled(false)
+        GroundingMetrics.stop(Phase.SUMMARIZATION, Formula.Type.MODAL_CONJUNCTION, start)
+        assertEmpty(GroundingMetrics.snapshot())
+    }
+
+    @Test
+    void testValuesAccumulatePerPhaseAndType() {
+        GroundingMetrics.setEnabled(true)
+        record()
+        record()
+        long start = GroundingMetrics.start()
+        GroundingMetrics.stop(Phase.EPISTEMIC_CONDITIONS, Formula.Type.MODAL_DISJUNCTION, start)
+        GroundingMetrics.count(Counter.CACHE_HITS, Formula.Type.MODAL_DISJUNCTION, 1)
+
+        def snapshot = GroundingMetrics.snapshot()
+        assertEquals(2L, snapshot.getCalls(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY))
+        assertEquals(0L, snapshot.getCalls(Phase.DISTRIBUTION, Formula.Type.MODAL_DISJUNCTION))
+        assertEquals(1L, snapshot.getCalls(Phase.EPISTEMIC_CONDITIONS, Formula.Type.MODAL_DISJUNCTION))
+        assertEquals(0L, snapshot.getCalls(Phase.EPISTEMIC_CONDITIONS, Formula.Type.SIMPLE_MODALITY))
+        assertTrue(snapshot.getNanos(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY) >= 0)
+        assertEquals(snapshot.getNanos(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY),
+                snapshot.getNanos(Phase.DISTRIBUTION))
+        assertEquals(10L, snapshot.getCount(Counter.PROFILES_SCANNED, Formula.Type.SIMPLE_MODALITY))
+        assertEquals(0L, snapshot.getCount(Counter.PROFILES_SCANNED, Formula.Type.MODAL_DISJUNCTION))
+        assertEquals(1L, snapshot.getCount(Counter.CACHE_HITS, Formula.Type.MODAL_DISJUNCTION))
+        assertEquals(11L, snapshot.getCount(Counter.PROFILES_SCANNED) + snapshot.getCount(Counter.CACHE_HITS))
+    }
+
+    @Test
+    void testReset() {
+        GroundingMetrics.setEnabled(true)
+        record()
+        GroundingMetrics.reset()
+        assertEmpty(GroundingMetrics.snapshot())
+        record()
+        assertEquals(1L, GroundingMetrics.snapshot().getCalls(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY))
+    }
+
+    @Test
+    void testSnapshotIsNotChangedByLaterMeasurements() {
+        GroundingMetrics.setEnabled(true)
+        record()
+        def snapshot = GroundingMetrics.snapshot()
+        record()
+        GroundingMetrics.count(Counter.HOLONS_UPDATED, Formula.Type.MODAL_CONJUNCTION, 3)
+        assertEquals(1L, snapshot.getCalls(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY))
+        assertEquals(5L, snapshot.getCount(Counter.PROFILES_SCANNED, Formula.Type.SIMPLE_MODALITY))
+        assertEquals(0L, snapshot.getCount(Counter.HOLONS_UPDATED))
+        GroundingMetrics.reset()
+        assertEquals(1L, snapshot.getCalls(Phase.DISTRIBUTION, Formula.Type.SIMPLE_MODALITY))
+    }
+
+    @Test
+    void testMXBeanIsRegistered() {
+        GroundingMetrics.setEnabled(true)
+        def server = ManagementFactory.getPlatformMBeanServer()
+        def name = new ObjectName(GroundingMetrics.OBJECT_NAME)
+        assertTrue(server.isRegistered(name))
+        GroundingMetrics.registerMBean()
+        assertTrue(server.isRegistered(name))
+
+        record()
+        assertEquals(true, server.getAttribute(name, "Enabled"))
+        def calls = server.getAttribute(name, "PhaseCalls") as TabularData
+        def key = Formula.Type.SIMPLE_MODALITY.toString() + "." + Phase.DISTRIBUTION
+        assertEquals(1L, calls.get([key] as Object[]).get("value"))
+        server.invoke(name, "reset", null, null)
+        assertEmpty(GroundingMetrics.snapshot())
+    }
+}
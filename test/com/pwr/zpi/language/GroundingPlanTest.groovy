@@ -0,0 +1,92 @@
+package com.pwr.zpi.language
+
+import com.pwr.zpi.core.memory.episodic.BPCollection
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import org.junit.Test
+
+/**
+ * Checks if grounding plans are reused for formulas built on the same traits and recreated when memory changes.
+ */
+class GroundingPlanTest extends GroovyTestCase {
+
+    Trait tr1, tr2, tr3
+    IndividualModel im1
+    List<BaseProfile> bps
+    BPCollection bpCollection
+    ComplexFormula conjunction, disjunction, exclusiveDisjunction, otherConjunction
+
+    void build() {
+        tr1 = new Trait("Red")
+        tr2 = new Trait("Blinking")
+        tr3 = new Trait("White")
+        im1 = new IndividualModel(new QRCode("0124"), new ObjectType("01", [tr1, tr2, tr3]))
+        // (tr1, tr2): 2x (IS, IS), 1x (IS, IS_NOT), 1x (IS_NOT, IS)
+        bps = [[true, true], [true, false], [false, true], [true, true]].withIndex().collect { values, i ->
+            def bp = new BaseProfile(i + 1)
+            bp.addObservationByValue(im1, tr1, values[0])
+            bp.addObservationByValue(im1, tr2, values[1])
+            bp.addObservationByValue(im1, tr3, true)
+            bp
+        }
+        bpCollection = new BPCollection(bps as Set, [] as Set)
+        conjunction = new ComplexFormula(im1, [tr1, tr2], [State.IS, State.IS_NOT], LogicOperator.AND)
+        disjunction = new ComplexFormula(im1, [tr1, tr2], LogicOperator.OR)
+        exclusiveDisjunction = new ComplexFormula(im1, [tr1, tr2], LogicOperator.XOR)
+        otherConjunction = new ComplexFormula(im1, [tr1, tr3], LogicOperator.AND)
+    }
+
+    Map<Formula, Double> expectedRelativeCards(GroundingPlan plan, Collection<BaseProfile> episodicSet) {
+        plan.getStandardConjunction().getComplementaryFormulas().collectEntries {
+            [(it): episodicSet.count { bp -> it.isFormulaFulfilled(bp) } / (double) episodicSet.size()]
+        }
+    }
+
+    Map<Formula, Double> relativeCards(GroundingPlan plan) {
+        plan.getStandardConjunction().getComplementaryFormulas().collectEntries { [(it): plan.getRelativeCard(it)] }
+    }
+
+    @Test
+    void testPlanIsReusedForTheSameTraits() {
+        build()
+        def plan = GroundingPlan.getPlan(disjunction, bpCollection)
+        assertSame(plan, GroundingPlan.getPlan(conjunction, bpCollection))
+        assertSame(plan, GroundingPlan.getPlan(exclusiveDisjunction, bpCollection))
+        assertSame(plan, GroundingPlan.getPlan(disjunction, bpCollection))
+        assertNotSame(plan, GroundingPlan.getPlan(otherConjunction, bpCollection))
+        assertSame(plan.getFamily(disjunction), plan.getFamily(disjunction))
+
+        def expected = expectedRelativeCards(plan, bps)
+        assertEquals(expected, relativeCards(plan))
+        assertEquals(expected, relativeCards(GroundingPlan.createPlan(disjunction, bps as Set)))
+        assertEquals(0.5d, plan.getRelativeCard(plan.getStandardConjunction()))
+    }
+
+    @Test
+    void testPlanIsRecreatedAfterChangeOfMemory() {
+        build()
+        def plan = GroundingPlan.getPlan(disjunction, bpCollection)
+        def expectedBefore = expectedRelativeCards(plan, bps)
+
+        // base profile related with already existing moment replaces old one - only version of collection changes
+        def bp = new BaseProfile(2)
+        bp.addObservationByValue(im1, tr1, false)
+        bp.addObservationByValue(im1, tr2, false)
+        long version = bpCollection.getVersion()
+        bpCollection.addToMemory(bp)
+        assertTrue(bpCollection.getVersion() != version)
+
+        def recreated = GroundingPlan.getPlan(disjunction, bpCollection)
+        assertNotSame(plan, recreated)
+        assertEquals(expectedBefore, relativeCards(plan))
+        assertEquals(expectedRelativeCards(recreated, [bps[0], bp, bps[2], bps[3]]), relativeCards(recreated))
+        assertEquals(0.25d, recreated.getRelativeCard(new ComplexFormula(im1, [tr1, tr2], [State.IS_NOT, State.IS_NOT],
+                LogicOperator.AND)))
+        assertSame(recreated, GroundingPlan.getPlan(conjunction, bpCollection))
+
+        bpCollection.setTimestamp(bpCollection.getTimestamp() + 1)
+        assertNotSame(recreated, GroundingPlan.getPlan(conjunction, bpCollection))
+    }
+}
@@ -0,0 +1,86 @@
+import com.pwr.zpi.core.memory.episodic.BaseProfile
+import com.pwr.zpi.core.memory.semantic.IndividualModel
+import com.pwr.zpi.core.memory.semantic.ObjectType
+import com.pwr.zpi.core.memory.semantic.identifiers.QRCode
+import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.Formula
+import com.pwr.zpi.language.Grounder
+import com.pwr.zpi.language.LogicOperator
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.language.State
+import com.pwr.zpi.language.Trait
+import org.junit.Test
+
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * Checks if grounding sets evaluated in parallel (split into chunks) are the same as evaluated sequentially.
+ */
+class ParallelGroundingTest extends GroovyTestCase {
+
+    Trait red, soft
+    IndividualModel model
+    Set<BaseProfile> memory
+    List<Formula> formulas
+
+    void build(int size) {
+        red = new Trait("Red")
+        soft = new Trait("Soft")
+        model = new IndividualModel(new QRCode("ID1"), new ObjectType("Typ1", [red, soft]))
+        def random = new Random(1)
+        memory = [] as Set
+        for (int i = 0; i < size; i++) {
+            def bp = new BaseProfile(i)
+            for (Trait trait : [red, soft])
+                switch (random.nextInt(3)) {
+                    case 0:
+                        bp.addDescribedObservation(model, trait)
+                        break
+                    case 1:
+                        bp.addNotDescribedObservation(model, trait)
+                        break
+                    default:
+                        bp.addIndefiniteObservation(model, trait)
+                }
+            memory.add(bp)
+        }
+        formulas = [new SimpleFormula(model, red, false), new SimpleFormula(model, soft, true)]
+        for (LogicOperator op : [LogicOperator.AND, LogicOperator.OR, LogicOperator.XOR])
+            formulas.addAll(new ComplexFormula(model, [red, soft], op).getComplementaryFormulas())
+    }
+
+    /**
+     * Grounding set evaluated profile by profile, as union of base profiles fulfilling dependent conjunctions.
+     */
+    Set<BaseProfile> groundSequentially(Formula formula) {
+        memory.findAll { bp -> formula.getDependentFormulas().any { it.isFormulaFulfilled(bp) } } as Set
+    }
+
+    @Test
+    void testParallelGroundingEqualsSequential() {
+        build(3000)
+        def expected = formulas.collectEntries { [(it): groundSequentially(it)] }
+        assertEquals(expected, Grounder.getGroundingSets(formulas, memory))
+        for (int poolSize : [1, 2, 4]) {
+            def pool = new ForkJoinPool(poolSize)
+            try {
+                assertEquals(expected, Grounder.getGroundingSets(formulas, memory, pool))
+            } finally {
+                pool.shutdown()
+            }
+        }
+    }
+
+    @Test
+    void testChunksSmallerThanMemory() {
+        build(5)
+        def expected = formulas.collectEntries { [(it): groundSequentially(it)] }
+        // pool with more workers than base profiles produces chunks with single base profile or empty ones
+        def pool = new ForkJoinPool(8)
+        try {
+            assertEquals(expected, Grounder.getGroundingSets(formulas, memory, pool))
+        } finally {
+            pool.shutdown()
+        }
+    }
+}
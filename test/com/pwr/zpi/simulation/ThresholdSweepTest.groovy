@@ -0,0 +1,83 @@
+package com.pwr.zpi.simulation
+
+import com.pwr.zpi.core.Agent
+import com.pwr.zpi.language.ComplexFormula
+import com.pwr.zpi.language.Formula
+import com.pwr.zpi.language.Grounder
+import com.pwr.zpi.language.SimpleFormula
+import com.pwr.zpi.linguistic.ComplexStatement
+import com.pwr.zpi.linguistic.Question
+import com.pwr.zpi.linguistic.SimpleStatement
+import org.junit.Test
+
+/**
+ * Checks if answers determined by threshold sweep from recorded data are the same as answers given by grounder
+ * during replay of scenario.
+ */
+class ThresholdSweepTest extends GroovyTestCase {
+
+    static final String SCENARIO = "ex_disj_no_context_scenario05.csv"
+
+    static String normalise(String answer) {
+        answer.toLowerCase().replaceAll("[^\\p{L}\\p{N}]+", " ").trim()
+    }
+
+    /**
+     * Replays scenario, answering questions by grounder with thresholds from configuration.
+     *
+     * @return Pair of number of correct answers and number of all questions.
+     */
+    List<Integer> replayScenario() {
+        def agent = new Agent.AgentBuilder().build()
+        int correct = 0, total = 0
+        def scenario = new Scenario(agent, SCENARIO)
+        scenario.setQuestionListener({ String question, String expectedAnswer ->
+            def parsedQuestion = new Question(question, agent)
+            Formula formula = parsedQuestion.getFormula()
+            def groundedFormulas = Grounder.performFormulaGrounding(agent, formula)
+            def statement = formula instanceof ComplexFormula ?
+                    new ComplexStatement((ComplexFormula) formula, groundedFormulas, parsedQuestion.getName())
+                    : new SimpleStatement((SimpleFormula) formula, groundedFormulas, parsedQuestion.getName())
+            total++
+            if (normalise(statement.generateStatement()) == normalise(expectedAnswer))
+                correct++
+        } as Scenario.QuestionListener)
+        scenario.execute()
+        [correct, total]
+    }
+
+    @Test
+    void testRecordedAnswersAgreeWithReplay() {
+        def (correct, total) = replayScenario()
+        assertTrue(total > 0)
+
+        def sweep = new ThresholdSweep(new Agent.AgentBuilder().build(), SCENARIO)
+        assertEquals(total, sweep.record())
+        def configured = ThresholdSweep.Thresholds.fromConfiguration()
+        def result = sweep.evaluate(configured)
+        assertEquals(total, result.getTotal())
+        assertEquals(correct, result.getCorrect())
+    }
+
+    @Test
+    void testCandidatesAreEvaluatedInOrder() {
+        def sweep = new ThresholdSweep(new Agent.AgentBuilder().build(), SCENARIO)
+        int recorded = sweep.record()
+        def configured = ThresholdSweep.Thresholds.fromConfiguration()
+        def grid = ThresholdSweep.grid(configured, Formula.Type.MODAL_EXCLUSIVE_DISJUNCTION, 0.1)
+        assertFalse(grid.isEmpty())
+        grid.each {
+            double[] values = it.get(Formula.Type.MODAL_EXCLUSIVE_DISJUNCTION)
+            assertTrue(values[0] < values[1] && values[1] <= values[2] && values[2] < values[3] && values[3] <= values[4])
+            assertSame(configured.get(Formula.Type.MODAL_CONJUNCTION), it.get(Formula.Type.MODAL_CONJUNCTION))
+        }
+
+        def results = sweep.evaluate(grid)
+        assertEquals(grid.size(), results.size())
+        results.eachWithIndex { result, i ->
+            assertSame(grid[i], result.getThresholds())
+            assertEquals(recorded, result.getTotal())
+            assertEquals(sweep.evaluate(grid[i]).getCorrect(), result.getCorrect())
+        }
+    }
+}